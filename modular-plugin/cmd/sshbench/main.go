@@ -0,0 +1,110 @@
+// Command sshbench compares a metrics poll on a new SSH connection with one on a pooled, warm connection.
+// Run against a reachable device with:
+//
+//	go run ./cmd/sshbench -host 10.0.0.5 -user admin -password secret -n 20
+package main
+
+import
+(
+	"flag"
+	"fmt"
+	"os"
+	"sort"
+	"time"
+
+	"modular-plugin/models"
+	"modular-plugin/ssh"
+)
+
+func main(){
+	host := flag.String("host", "127.0.0.1", "device address")
+	port := flag.Int("port", 22, "SSH port")
+	user := flag.String("user", "", "SSH username")
+	password := flag.String("password", "", "SSH password")
+	polls := flag.Int("n", 20, "polls per mode")
+	flag.Parse()
+
+	if *polls < 1{
+		*polls = 1
+	}
+
+	device := models.DeviceInput{
+		IP:          *host,
+		Port:        *port,
+		Username:    *user,
+		Password:    *password,
+		Protocol:    "ssh",
+		DiscoveryID: 1,
+	}
+	script := ssh.GetMetricsScript()
+
+	// Cold: dial, key exchange and authentication on every poll
+	cold, err := measure(*polls, func() error{
+		_, err := ssh.NewUnpooledClient(device).RunCommand(script)
+		return err
+	})
+	if err != nil{
+		fmt.Printf("Cold poll failed: %v\n", err)
+		os.Exit(1)
+	}
+
+	// Warm: the first poll dials, the measured ones only open a session
+	_, err = ssh.NewClient(device).RunCommand(script)
+	if err != nil{
+		fmt.Printf("Warm-up poll failed: %v\n", err)
+		os.Exit(1)
+	}
+
+	warm, err := measure(*polls, func() error{
+		_, err := ssh.NewClient(device).RunCommand(script)
+		return err
+	})
+	if err != nil{
+		fmt.Printf("Warm poll failed: %v\n", err)
+		os.Exit(1)
+	}
+
+	fmt.Printf("Metrics poll of %s:%d, %d polls per mode\n", *host, *port, *polls)
+	report("cold", cold)
+	report("warm", warm)
+	fmt.Printf("  speedup : %6.2fx on the median\n", float64(median(cold))/float64(median(warm)))
+	fmt.Printf("  pool    : %v\n", ssh.DefaultPool.Stats())
+}
+
+// measure runs poll n times and returns the duration of each run
+func measure(n int, poll func() error) ([]time.Duration, error){
+	durations := make([]time.Duration, 0, n)
+
+	for i := 0; i < n; i++{
+		start := time.Now()
+		if err := poll(); err != nil{
+			return nil, err
+		}
+		durations = append(durations, time.Since(start))
+	}
+
+	return durations, nil
+}
+
+func report(mode string, durations []time.Duration){
+	var total time.Duration
+	for _, d := range durations{
+		total += d
+	}
+
+	sorted := append([]time.Duration(nil), durations...)
+	sort.Slice(sorted, func(i, j int) bool{ return sorted[i] < sorted[j] })
+
+	fmt.Printf("  %-7s : min %8.2f ms, median %8.2f ms, mean %8.2f ms, max %8.2f ms\n", mode,
+		ms(sorted[0]), ms(median(durations)), ms(total/time.Duration(len(durations))), ms(sorted[len(sorted)-1]))
+}
+
+func median(durations []time.Duration) time.Duration{
+	sorted := append([]time.Duration(nil), durations...)
+	sort.Slice(sorted, func(i, j int) bool{ return sorted[i] < sorted[j] })
+	return sorted[len(sorted)/2]
+}
+
+func ms(d time.Duration) float64{
+	return float64(d.Microseconds()) / 1000
+}
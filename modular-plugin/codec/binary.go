@@ -0,0 +1,277 @@
+package codec
+
+import (
+	"encoding/binary"
+	"encoding/json"
+	"errors"
+	"fmt"
+	"time"
+
+	"modular-plugin/models"
+)
+
+// Name is the codec name advertised during negotiation
+const Name = "binary-v1"
+
+// Frame header and message kinds, kept in sync with WireCodec on the Java side
+const (
+	Magic   byte = 0xB1
+	Version byte = 1
+
+	KindRequest         byte = 0x01
+	KindBatchMetrics    byte = 0x02
+	KindDiscoveryResult byte = 0x03
+	KindDeviceMetrics   byte = 0x04
+)
+
+// Request data kinds
+const (
+	dataJSON       byte = 0x00
+	dataDevice     byte = 0x01
+	dataDeviceList byte = 0x02
+)
+
+var errTruncated = errors.New("truncated binary frame")
+
+// IsBinary reports whether a frame uses the binary layout rather than JSON
+func IsBinary(message []byte) bool {
+	return len(message) >= 3 && message[0] == Magic
+}
+
+// DecodeRequest decodes a binary request frame
+func DecodeRequest(message []byte) (models.ZMQRequest, error) {
+	request := models.ZMQRequest{Binary: true}
+
+	if !IsBinary(message) || message[1] != Version {
+		return request, fmt.Errorf("unsupported binary frame")
+	}
+
+	r := &reader{buf: message, pos: 2}
+	if kind := r.readByte(); kind != KindRequest {
+		return request, fmt.Errorf("unexpected frame kind: %d", kind)
+	}
+
+	request.RequestID = r.readString()
+	request.Command = r.readString()
+
+	switch kind := r.readByte(); kind {
+	case dataJSON:
+		request.Data = json.RawMessage(r.readBytes())
+	case dataDevice:
+		device := readDevice(r)
+		request.Device = &device
+	case dataDeviceList:
+		count := r.readCount()
+		devices := make(models.BatchInput, 0, count)
+		for i := 0; i < count && r.err == nil; i++ {
+			devices = append(devices, readDevice(r))
+		}
+		request.Devices = devices
+	default:
+		if r.err == nil {
+			r.err = fmt.Errorf("unknown request data kind: %d", kind)
+		}
+	}
+
+	// Optional trailer
+	if r.err == nil && r.pos < len(r.buf) {
+		request.Parallelism = int(r.readUvarint())
+	}
+
+	return request, r.err
+}
+
+// EncodeResponse encodes a response in the binary layout.
+// Responses without a binary schema are sent as JSON, which the Java side detects by the missing magic byte.
+func EncodeResponse(response interface{}) ([]byte, error) {
+	w := &writer{buf: make([]byte, 0, 512)}
+	w.writeByte(Magic)
+	w.writeByte(Version)
+
+	switch res := response.(type) {
+	case models.BatchMetricsResult:
+		w.writeByte(KindBatchMetrics)
+		writeBatchMetrics(w, res)
+	case models.DeviceMetricsResult:
+		w.writeByte(KindDeviceMetrics)
+		w.writeString(res.RequestID)
+		w.writeString(res.Type)
+		w.writeUvarint(uint64(res.Seq))
+		w.writeUvarint(uint64(res.TotalDevices))
+		w.writeVarint(res.ExecutionMs)
+		writeDeviceMetrics(w, res.Metrics)
+	case models.DiscoveryResult:
+		w.writeByte(KindDiscoveryResult)
+		w.writeString(res.RequestID)
+		w.writeBool(res.Success)
+		w.writeString(res.Details)
+		w.writeString(res.Uptime)
+	default:
+		return json.Marshal(response)
+	}
+
+	return w.buf, nil
+}
+
+func writeBatchMetrics(w *writer, res models.BatchMetricsResult) {
+	w.writeString(res.RequestID)
+	w.writeString(res.Type)
+	w.writeUvarint(uint64(res.BatchID))
+	w.writeUvarint(uint64(res.BatchSize))
+	w.writeUvarint(uint64(res.TotalBatches))
+	w.writeTime(res.ProcessedAt)
+	w.writeVarint(res.ExecutionMs)
+
+	w.writeUvarint(uint64(len(res.Metrics)))
+	for _, metrics := range res.Metrics {
+		writeDeviceMetrics(w, metrics)
+	}
+}
+
+func writeDeviceMetrics(w *writer, metrics models.DeviceMetrics) {
+	w.writeVarint(int64(metrics.DiscoveryID))
+	w.writeString(metrics.IP)
+	w.writeString(metrics.SystemType)
+	w.writeString(metrics.Hostname)
+	w.writeString(metrics.Uptime)
+	w.writeVarint(metrics.InTraffic)
+	w.writeVarint(metrics.OutTraffic)
+	w.writeUvarint(uint64(len(metrics.Interfaces)))
+	for _, iface := range metrics.Interfaces {
+		w.writeString(iface)
+	}
+	w.writeString(metrics.CPUUsage)
+	w.writeString(metrics.MemoryUsage)
+	w.writeString(metrics.DiskUsage)
+	w.writeString(metrics.OS)
+	w.writeVarint(metrics.Bandwidth)
+	w.writeTime(metrics.Timestamp)
+	w.writeString(metrics.Error)
+}
+
+func readDevice(r *reader) models.DeviceInput {
+	return models.DeviceInput{
+		IP:          r.readString(),
+		Port:        int(r.readUvarint()),
+		Username:    r.readString(),
+		Password:    r.readString(),
+		Protocol:    r.readString(),
+		DiscoveryID: int(r.readVarint()),
+	}
+}
+
+// writer appends varint-encoded fields to a byte slice
+type writer struct {
+	buf []byte
+}
+
+func (w *writer) writeByte(b byte) {
+	w.buf = append(w.buf, b)
+}
+
+func (w *writer) writeBool(b bool) {
+	if b {
+		w.writeByte(1)
+	} else {
+		w.writeByte(0)
+	}
+}
+
+func (w *writer) writeUvarint(v uint64) {
+	w.buf = binary.AppendUvarint(w.buf, v)
+}
+
+func (w *writer) writeVarint(v int64) {
+	w.buf = binary.AppendVarint(w.buf, v)
+}
+
+func (w *writer) writeString(s string) {
+	w.writeUvarint(uint64(len(s)))
+	w.buf = append(w.buf, s...)
+}
+
+func (w *writer) writeTime(t time.Time) {
+	_, offset := t.Zone()
+	w.writeVarint(t.UnixNano())
+	w.writeVarint(int64(offset))
+}
+
+// reader consumes fields from a frame and records the first error
+type reader struct {
+	buf []byte
+	pos int
+	err error
+}
+
+func (r *reader) readByte() byte {
+	if r.err != nil {
+		return 0
+	}
+	if r.pos >= len(r.buf) {
+		r.err = errTruncated
+		return 0
+	}
+	b := r.buf[r.pos]
+	r.pos++
+	return b
+}
+
+func (r *reader) readUvarint() uint64 {
+	if r.err != nil {
+		return 0
+	}
+	v, n := binary.Uvarint(r.buf[r.pos:])
+	if n <= 0 {
+		r.err = errTruncated
+		return 0
+	}
+	r.pos += n
+	return v
+}
+
+func (r *reader) readVarint() int64 {
+	if r.err != nil {
+		return 0
+	}
+	v, n := binary.Varint(r.buf[r.pos:])
+	if n <= 0 {
+		r.err = errTruncated
+		return 0
+	}
+	r.pos += n
+	return v
+}
+
+// readCount reads an element count, which can never exceed the remaining bytes
+func (r *reader) readCount() int {
+	n := r.readUvarint()
+	if r.err != nil {
+		return 0
+	}
+	if n > uint64(len(r.buf)-r.pos) {
+		r.err = errTruncated
+		return 0
+	}
+	return int(n)
+}
+
+func (r *reader) readBytes() []byte {
+	n := r.readCount()
+	if r.err != nil {
+		return nil
+	}
+	b := make([]byte, n)
+	copy(b, r.buf[r.pos:r.pos+n])
+	r.pos += n
+	return b
+}
+
+func (r *reader) readString() string {
+	n := r.readCount()
+	if r.err != nil {
+		return ""
+	}
+	s := string(r.buf[r.pos : r.pos+n])
+	r.pos += n
+	return s
+}
@@ -0,0 +1,248 @@
+package codec
+
+import (
+	"bytes"
+	"encoding/binary"
+	"encoding/hex"
+	"math"
+	"os"
+	"path/filepath"
+	"reflect"
+	"strconv"
+	"strings"
+	"testing"
+	"time"
+
+	"modular-plugin/models"
+)
+
+// The vectors in testdata are shared with WireCodecTest on the Java side, so both codecs agree byte for byte
+
+func readVector(t *testing.T, name string) []byte {
+	t.Helper()
+	text, err := os.ReadFile(filepath.Join("testdata", name+".hex"))
+	if err != nil {
+		t.Fatal(err)
+	}
+	frame, err := hex.DecodeString(strings.TrimSpace(string(text)))
+	if err != nil {
+		t.Fatal(err)
+	}
+	return frame
+}
+
+func TestDecodeDeviceListRequest(t *testing.T) {
+	request, err := DecodeRequest(readVector(t, "request_device_list"))
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	expected := models.ZMQRequest{
+		RequestID: "r-1",
+		Command:   "metrics",
+		Binary:    true,
+		Devices: models.BatchInput{
+			{IP: "10.0.0.1", Port: 22, Username: "admin", Password: "", Protocol: "ssh", DiscoveryID: 7},
+			{IP: "", Port: 65535, Username: "", Password: "pässwörd", Protocol: "", DiscoveryID: math.MaxInt32},
+		},
+		Parallelism: 64,
+	}
+	if !reflect.DeepEqual(request, expected) {
+		t.Fatalf("got %+v, want %+v", request, expected)
+	}
+}
+
+func TestDecodeDeviceRequest(t *testing.T) {
+	request, err := DecodeRequest(readVector(t, "request_device"))
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	expected := models.ZMQRequest{
+		RequestID: "d-1",
+		Command:   "discovery",
+		Binary:    true,
+		Device:    &models.DeviceInput{IP: "192.168.1.10", Port: 22, Username: "root", Password: "secret", Protocol: "ssh", DiscoveryID: -1},
+	}
+	if !reflect.DeepEqual(request, expected) {
+		t.Fatalf("got %+v, want %+v", request, expected)
+	}
+}
+
+func TestDecodeJSONRequest(t *testing.T) {
+	request, err := DecodeRequest(readVector(t, "request_json"))
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	// Nested maps pass through untouched, in the order Java wrote them
+	data := `{"codecs":["binary-v1"],"nested":{"map":{"empty":{},"list":[1,"two",null]}}}`
+	if request.RequestID != "" || request.Command != "hello" || string(request.Data) != data {
+		t.Fatalf("got %+v", request)
+	}
+	if request.Device != nil || request.Devices != nil || request.Parallelism != 0 {
+		t.Fatalf("unexpected device payload or trailer: %+v", request)
+	}
+}
+
+func TestDecodeTruncatedRequest(t *testing.T) {
+	frame := readVector(t, "request_device_list")
+
+	// The parallelism trailer is optional, anything shorter than the device list is not
+	for length := 0; length < len(frame)-1; length++ {
+		if _, err := DecodeRequest(frame[:length]); err == nil {
+			t.Fatalf("frame truncated to %d bytes decoded without error", length)
+		}
+	}
+
+	request, err := DecodeRequest(frame[:len(frame)-1])
+	if err != nil || request.Parallelism != 0 || len(request.Devices) != 2 {
+		t.Fatalf("frame without trailer: %+v, %v", request, err)
+	}
+}
+
+func TestDecodeRejectsOversizedCount(t *testing.T) {
+	// Device list claiming more devices than there are bytes left
+	frame := []byte{Magic, Version, KindRequest, 0, 0, dataDeviceList, 0xff, 0x01}
+	if _, err := DecodeRequest(frame); err == nil {
+		t.Fatal("oversized count decoded without error")
+	}
+}
+
+var metricsTimestamp = time.Date(2024, 1, 2, 3, 4, 5, 600000000, time.FixedZone("", 19800))
+
+func TestEncodeDeviceMetrics(t *testing.T) {
+	frame, err := EncodeResponse(models.DeviceMetricsResult{
+		RequestID:    "m-1",
+		Type:         "metrics",
+		Seq:          1,
+		TotalDevices: 1,
+		ExecutionMs:  0,
+		Metrics: models.DeviceMetrics{
+			DiscoveryID: 7,
+			IP:          "10.0.0.1",
+			Hostname:    "host-ä",
+			InTraffic:   math.MaxInt64,
+			OutTraffic:  math.MinInt64,
+			Interfaces:  []string{"eth0", ""},
+			CPUUsage:    "12.5",
+			OS:          "Linux",
+			Timestamp:   metricsTimestamp,
+		},
+	})
+	if err != nil {
+		t.Fatal(err)
+	}
+	assertFrame(t, "device_metrics", frame)
+}
+
+func TestEncodeBatchMetrics(t *testing.T) {
+	processedAt := time.Date(2024, 1, 2, 3, 4, 5, 0, time.UTC)
+
+	frame, err := EncodeResponse(models.BatchMetricsResult{
+		RequestID:    "b-1",
+		Type:         "metrics",
+		BatchID:      3,
+		BatchSize:    1,
+		TotalBatches: 4,
+		ProcessedAt:  processedAt,
+		ExecutionMs:  1500,
+		Metrics: map[int]models.DeviceMetrics{
+			7: {
+				DiscoveryID: 7,
+				IP:          "10.0.0.1",
+				SystemType:  "linux",
+				Bandwidth:   -1,
+				Timestamp:   processedAt,
+				Error:       "ssh: handshake failed",
+			},
+		},
+	})
+	if err != nil {
+		t.Fatal(err)
+	}
+	assertFrame(t, "batch_metrics", frame)
+}
+
+func TestEncodeDiscoveryResult(t *testing.T) {
+	frame, err := EncodeResponse(models.DiscoveryResult{RequestID: "d-1"})
+	if err != nil {
+		t.Fatal(err)
+	}
+	assertFrame(t, "discovery_result_empty", frame)
+
+	frame, err = EncodeResponse(models.DiscoveryResult{RequestID: "d-2", Success: true, Details: "Discovery successful", Uptime: "up 3 days"})
+	if err != nil {
+		t.Fatal(err)
+	}
+	assertFrame(t, "discovery_result", frame)
+}
+
+func TestEncodeWithoutSchemaFallsBackToJSON(t *testing.T) {
+	frame, err := EncodeResponse(models.BatchResult{RequestID: "c-1", Batch: true})
+	if err != nil {
+		t.Fatal(err)
+	}
+	if IsBinary(frame) {
+		t.Fatalf("expected a JSON frame, got %x", frame)
+	}
+}
+
+func TestVarints(t *testing.T) {
+	text, err := os.ReadFile(filepath.Join("testdata", "varints.txt"))
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	for _, line := range strings.Split(string(text), "\n") {
+		fields := strings.Fields(line)
+		if len(fields) == 0 || strings.HasPrefix(fields[0], "#") {
+			continue
+		}
+
+		expected, err := hex.DecodeString(fields[2])
+		if err != nil {
+			t.Fatal(err)
+		}
+
+		w := &writer{}
+		r := &reader{buf: expected}
+
+		switch fields[0] {
+		case "u":
+			value, err := strconv.ParseUint(fields[1], 10, 64)
+			if err != nil {
+				t.Fatal(err)
+			}
+			w.writeUvarint(value)
+			if got := r.readUvarint(); got != value || r.err != nil {
+				t.Errorf("%s: read %d, %v", line, got, r.err)
+			}
+		case "s":
+			value, err := strconv.ParseInt(fields[1], 10, 64)
+			if err != nil {
+				t.Fatal(err)
+			}
+			w.writeVarint(value)
+			if got := r.readVarint(); got != value || r.err != nil {
+				t.Errorf("%s: read %d, %v", line, got, r.err)
+			}
+		default:
+			t.Fatalf("unknown varint kind in %q", line)
+		}
+
+		if !bytes.Equal(w.buf, expected) {
+			t.Errorf("%s: wrote %x", line, w.buf)
+		}
+		if len(expected) > binary.MaxVarintLen64 {
+			t.Errorf("%s: longer than a varint can be", line)
+		}
+	}
+}
+
+func assertFrame(t *testing.T, name string, frame []byte) {
+	t.Helper()
+	if expected := readVector(t, name); !bytes.Equal(frame, expected) {
+		t.Fatalf("%s:\n got  %x\n want %x", name, frame, expected)
+	}
+}
@@ -4,6 +4,7 @@ import
 (
 	"fmt"
 	"os"
+	"strconv"
 
 	"modular-plugin/zmq" // Removed the leading slash
 )
@@ -13,14 +14,26 @@ func main(){
 	pullEndpoint := "tcp://*:5555"         // For receiving requests from Vert.x
 	pushEndpoint := "tcp://localhost:5556" // For sending responses to Vert.x
 
+	capacity := zmq.DefaultCapacity
+
 	// Override endpoints if provided
 	if len(os.Args) > 2{
 		pullEndpoint = os.Args[1]
 		pushEndpoint = os.Args[2]
 	}
 
+	// Number of requests processed at once, advertised to Java as credits
+	if len(os.Args) > 3{
+		value, err := strconv.Atoi(os.Args[3])
+		if err != nil || value <= 0{
+			fmt.Printf("Invalid capacity %q, using %d\n", os.Args[3], capacity)
+		} else{
+			capacity = value
+		}
+	}
+
 	// Create and start ZMQ server
-	server, err := zmq.NewServer(pullEndpoint, pushEndpoint)
+	server, err := zmq.NewServer(pullEndpoint, pushEndpoint, capacity)
 	if err != nil{
 		fmt.Printf("Failed to create ZMQ server: %v\n", err)
 		os.Exit(1)
@@ -49,6 +49,17 @@ type BatchMetricsResult struct {
 	ExecutionMs  int64                 `json:"execution_ms"`
 }
 
+// DeviceMetricsResult carries the metrics of a single device in streaming mode.
+// Seq numbers the results of one request from 1 to TotalDevices in the order the devices finished.
+type DeviceMetricsResult struct {
+	RequestID    string        `json:"request_id,omitempty"`
+	Type         string        `json:"type,omitempty"`
+	Seq          int           `json:"seq"`
+	TotalDevices int           `json:"total_devices"`
+	ExecutionMs  int64         `json:"execution_ms"`
+	Metrics      DeviceMetrics `json:"metrics"`
+}
+
 // DiscoveryResult is used for basic discovery/connectivity checks
 type DiscoveryResult struct {
 	RequestID string `json:"request_id,omitempty"`
@@ -57,9 +68,32 @@ type DiscoveryResult struct {
 	Uptime    string `json:"uptime,omitempty"`
 }
 
+// BatchItem is one request of a batch coalesced by Java
+type BatchItem struct {
+	RequestID string      `json:"request_id"`
+	Data      DeviceInput `json:"data"`
+}
+
+// BatchResult carries results of a coalesced batch, each result keeps the ID of its own request.
+// A batch is answered in TotalResults frames of one result each, sent as the results become ready.
+type BatchResult struct {
+	RequestID    string            `json:"request_id"`
+	Batch        bool              `json:"batch"`
+	Results      []DiscoveryResult `json:"results"`
+	TotalResults int               `json:"total_results"`
+}
+
 // ZMQRequest represents a request from the Vert.x verticle
 type ZMQRequest struct {
 	RequestID string          `json:"request_id"`
 	Command   string          `json:"command"`
 	Data      json.RawMessage `json:"data"`
+
+	// Devices collected at once, chosen by Java; zero means the plugin default
+	Parallelism int `json:"parallelism,omitempty"`
+
+	// Set when the request arrived in the binary wire format, which decodes device payloads directly
+	Binary  bool         `json:"-"`
+	Device  *DeviceInput `json:"-"`
+	Devices BatchInput   `json:"-"`
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package monitor
 import
 (
 	"sync"
+	"sync/atomic"
 	"time"
 
 	"modular-plugin/models"
@@ -10,6 +11,9 @@ import
 	"modular-plugin/utils"
 )
 
+// DefaultParallelism is the number of devices of one request collected at once when Java does not choose it
+const DefaultParallelism = 20
+
 // CollectDeviceMetrics collects comprehensive metrics from a single device
 func CollectDeviceMetrics(device models.DeviceInput) models.DeviceMetrics{
 	metrics := models.DeviceMetrics{
@@ -88,10 +92,13 @@ func ProcessBatch(devices models.BatchInput, batchID, totalBatches int) models.B
 	}
 }
 
-// HandleMetrics processes all devices in batches and returns results
-func HandleMetrics(requestID string, input models.BatchInput) []models.BatchMetricsResult {
+// HandleMetrics processes all devices in batches and returns results.
+// Each batch is collected in parallel, so the batch size is the number of devices collected at once.
+func HandleMetrics(requestID string, input models.BatchInput, batchSize int) []models.BatchMetricsResult {
 	// Determine batch size and total number of batches
-	batchSize := 20
+	if batchSize <= 0 {
+		batchSize = DefaultParallelism
+	}
 	totalDevices := len(input)
 	totalBatches := (totalDevices + batchSize - 1) / batchSize // Ceiling division
 
@@ -120,4 +127,51 @@ func HandleMetrics(requestID string, input models.BatchInput) []models.BatchMetr
 	}
 
 	return results
-}
\ No newline at end of file
+}
+
+// StreamMetrics collects metrics for all devices and hands each device's result to emit as soon as it is collected,
+// so a slow device delays only its own result. Returns the first error emit returned.
+func StreamMetrics(requestID string, input models.BatchInput, parallelism int, emit func(models.DeviceMetricsResult) error) error {
+	var wg sync.WaitGroup
+	var seq int64
+	var errOnce sync.Once
+	var emitErr error
+
+	if parallelism <= 0 {
+		parallelism = DefaultParallelism
+	}
+
+	totalDevices := len(input)
+	slots := make(chan struct{}, parallelism)
+
+	for _, device := range input {
+		// A new device starts whenever one finishes, instead of once the whole batch finished
+		slots <- struct{}{}
+		wg.Add(1)
+
+		go func(dev models.DeviceInput) {
+			defer wg.Done()
+			defer func() { <-slots }()
+
+			startTime := time.Now()
+			metrics := CollectDeviceMetrics(dev)
+
+			result := models.DeviceMetricsResult{
+				RequestID:    requestID,
+				Type:         "metrics_device",
+				Seq:          int(atomic.AddInt64(&seq, 1)),
+				TotalDevices: totalDevices,
+				ExecutionMs:  time.Since(startTime).Milliseconds(),
+				Metrics:      metrics,
+			}
+
+			if err := emit(result); err != nil {
+				errOnce.Do(func() { emitErr = err })
+			}
+		}(device)
+	}
+
+	wg.Wait()
+
+	return emitErr
+}
@@ -0,0 +1,144 @@
+package monitor
+
+import (
+	"errors"
+	"fmt"
+	"sync"
+	"sync/atomic"
+	"testing"
+	"time"
+
+	"modular-plugin/models"
+)
+
+// devices returns n devices numbered from 1, none of them SSH so collecting them opens no connection
+func devices(n int) models.BatchInput {
+	input := make(models.BatchInput, 0, n)
+	for i := 1; i <= n; i++ {
+		input = append(input, models.DeviceInput{
+			IP:          fmt.Sprintf("10.0.0.%d", i),
+			Port:        22,
+			Protocol:    "telnet",
+			DiscoveryID: i,
+		})
+	}
+	return input
+}
+
+func TestHandleMetricsSplitsIntoBatches(t *testing.T) {
+	results := HandleMetrics("r-1", devices(5), 2)
+
+	if len(results) != 3 {
+		t.Fatalf("%d batches, want 3", len(results))
+	}
+
+	// Batches hold consecutive devices, every device exactly once
+	expected := [][]int{{1, 2}, {3, 4}, {5}}
+	for i, result := range results {
+		if result.RequestID != "r-1" || result.Type != "metrics" {
+			t.Errorf("batch %d: request %q, type %q", i, result.RequestID, result.Type)
+		}
+		if result.BatchID != i+1 || result.TotalBatches != 3 || result.BatchSize != len(expected[i]) {
+			t.Errorf("batch %d: id %d of %d, size %d", i, result.BatchID, result.TotalBatches, result.BatchSize)
+		}
+		if len(result.Metrics) != len(expected[i]) {
+			t.Errorf("batch %d: %d results, want %d", i, len(result.Metrics), len(expected[i]))
+		}
+
+		for _, monitorID := range expected[i] {
+			metrics, ok := result.Metrics[monitorID]
+			if !ok {
+				t.Errorf("batch %d: no result for device %d", i, monitorID)
+				continue
+			}
+			if metrics.DiscoveryID != monitorID || metrics.Error != "Only SSH protocol is supported" {
+				t.Errorf("batch %d: device %d got %+v", i, monitorID, metrics)
+			}
+		}
+	}
+}
+
+func TestHandleMetricsDefaultsBatchSize(t *testing.T) {
+	results := HandleMetrics("r-2", devices(DefaultParallelism+1), 0)
+
+	if len(results) != 2 || results[0].BatchSize != DefaultParallelism || results[1].BatchSize != 1 {
+		t.Fatalf("got %d batches for %d devices with the default batch size", len(results), DefaultParallelism+1)
+	}
+}
+
+func TestHandleMetricsWithoutDevices(t *testing.T) {
+	if results := HandleMetrics("r-3", nil, 4); len(results) != 0 {
+		t.Fatalf("%d batches for no devices", len(results))
+	}
+}
+
+func TestStreamMetricsNumbersEveryDevice(t *testing.T) {
+	var mu sync.Mutex
+	seqs := make(map[int]bool)
+	monitorIDs := make(map[int]bool)
+
+	err := StreamMetrics("s-1", devices(7), 3, func(result models.DeviceMetricsResult) error {
+		mu.Lock()
+		defer mu.Unlock()
+
+		if result.RequestID != "s-1" || result.Type != "metrics_device" || result.TotalDevices != 7 {
+			t.Errorf("unexpected result header: %+v", result)
+		}
+		seqs[result.Seq] = true
+		monitorIDs[result.Metrics.DiscoveryID] = true
+		return nil
+	})
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	for i := 1; i <= 7; i++ {
+		if !seqs[i] || !monitorIDs[i] {
+			t.Fatalf("seq %d or device %d missing, seqs %v, devices %v", i, i, seqs, monitorIDs)
+		}
+	}
+}
+
+func TestStreamMetricsBoundsParallelism(t *testing.T) {
+	var running, peak atomic.Int32
+
+	err := StreamMetrics("s-2", devices(12), 3, func(models.DeviceMetricsResult) error {
+		n := running.Add(1)
+		for {
+			p := peak.Load()
+			if n <= p || peak.CompareAndSwap(p, n) {
+				break
+			}
+		}
+
+		time.Sleep(5 * time.Millisecond)
+		running.Add(-1)
+		return nil
+	})
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	if p := peak.Load(); p > 3 {
+		t.Fatalf("%d devices collected at once, want at most 3", p)
+	}
+}
+
+func TestStreamMetricsReturnsEmitError(t *testing.T) {
+	failure := errors.New("socket closed")
+	var emitted atomic.Int32
+
+	err := StreamMetrics("s-3", devices(4), 2, func(models.DeviceMetricsResult) error {
+		emitted.Add(1)
+		return failure
+	})
+
+	if !errors.Is(err, failure) {
+		t.Fatalf("got %v, want %v", err, failure)
+	}
+
+	// A failed emit does not stop the other devices
+	if n := emitted.Load(); n != 4 {
+		t.Fatalf("%d results emitted, want 4", n)
+	}
+}
@@ -2,6 +2,7 @@ package ssh
 
 import
 (
+	"crypto/sha256"
 	"fmt"
 	"time"
 
@@ -9,10 +10,14 @@ import
 	"modular-plugin/models"
 )
 
-// Client represents an SSH connection client
+// Client represents an SSH connection client.
+// Clients of a provisioned device (monitor ID set) run on the device's pooled connection,
+// other clients dial a connection per call.
 type Client struct {
-	config *ssh.ClientConfig
-	addr   string
+	config      *ssh.ClientConfig
+	addr        string
+	monitorID   int
+	fingerprint string
 }
 
 // NewClient creates a new SSH client for a device
@@ -29,13 +34,26 @@ func NewClient(device models.DeviceInput) *Client {
 	addr := fmt.Sprintf("%s:%d", device.IP, device.Port)
 
 	return &Client{
-		config: config,
-		addr:   addr,
+		config:      config,
+		addr:        addr,
+		monitorID:   device.DiscoveryID,
+		fingerprint: fmt.Sprintf("%s|%s|%x", addr, device.Username, sha256.Sum256([]byte(device.Password))),
 	}
 }
 
+// NewUnpooledClient creates a client that always dials a new connection
+func NewUnpooledClient(device models.DeviceInput) *Client {
+	client := NewClient(device)
+	client.monitorID = 0
+	return client
+}
+
 // CheckConnectivity attempts to connect to a device via SSH
 func (c *Client) CheckConnectivity() bool {
+	if c.monitorID > 0{
+		return DefaultPool.withSession(c, func(*ssh.Session) error{ return nil }) == nil
+	}
+
 	// Try to connect
 	client, err := ssh.Dial("tcp", c.addr, c.config)
 	if err != nil {
@@ -55,6 +73,23 @@ func (c *Client) CheckConnectivity() bool {
 
 // RunCommand executes a command on the remote host and returns the output
 func (c *Client) RunCommand(cmd string) (string, error) {
+	if c.monitorID > 0{
+		var output []byte
+		err := DefaultPool.withSession(c, func(session *ssh.Session) error{
+			var err error
+			output, err = session.CombinedOutput(cmd)
+			if err != nil{
+				return fmt.Errorf("command execution failed: %v", err)
+			}
+			return nil
+		})
+		if err != nil{
+			return "", err
+		}
+
+		return string(output), nil
+	}
+
 	// Connect to the device
 	client, err := ssh.Dial("tcp", c.addr, c.config)
 	if err != nil {
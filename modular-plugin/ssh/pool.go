@@ -0,0 +1,299 @@
+package ssh
+
+import
+(
+	"fmt"
+	"sync"
+	"sync/atomic"
+	"time"
+
+	"golang.org/x/crypto/ssh"
+)
+
+// Pool defaults, an idle connection outlives the usual poll interval so every poll after the first is warm
+const (
+	DefaultIdleTimeout       = 5 * time.Minute
+	DefaultKeepaliveInterval = 30 * time.Second
+	DefaultKeepaliveTimeout  = 5 * time.Second
+	DefaultMaxSessions       = 2
+)
+
+// DefaultPool is shared by every client created with a monitor ID
+var DefaultPool = NewPool(DefaultIdleTimeout, DefaultKeepaliveInterval, DefaultMaxSessions)
+
+// Pool keeps one SSH connection per monitor open between polls, so a poll opens a session
+// on an authenticated connection instead of dialing, exchanging keys and authenticating again.
+// Connections idle for longer than the idle timeout are closed, the others are kept alive with
+// keepalive requests; a connection that fails its keepalive is dropped and dialed again on next use.
+type Pool struct {
+	mu      sync.Mutex
+	entries map[int]*entry
+
+	idleTimeout       time.Duration
+	keepaliveInterval time.Duration
+	maxSessions       int
+
+	// Counters
+	dials         int64
+	reuses        int64
+	evictions     int64
+	invalidations int64
+}
+
+// entry is the pooled connection of one monitor
+type entry struct {
+	fingerprint string
+
+	// One slot per session open at once on this device
+	slots chan struct{}
+
+	// Sessions using or waiting for the connection, changed under the pool lock or on release
+	active atomic.Int32
+
+	// Guards the fields below, held while dialing so concurrent polls of a device share one dial
+	mu       sync.Mutex
+	client   *ssh.Client
+	lastUsed time.Time
+	retired  bool
+}
+
+// NewPool creates a pool and starts its maintenance loop
+func NewPool(idleTimeout, keepaliveInterval time.Duration, maxSessions int) *Pool {
+	p := &Pool{
+		entries:           make(map[int]*entry),
+		idleTimeout:       idleTimeout,
+		keepaliveInterval: keepaliveInterval,
+		maxSessions:       maxSessions,
+	}
+
+	go p.maintain()
+
+	return p
+}
+
+// withSession runs fn on a new session of the monitor's pooled connection, dialing when there is none.
+// A pooled connection that died since its last use is dialed again once.
+func (p *Pool) withSession(c *Client, fn func(*ssh.Session) error) error {
+	e := p.acquire(c)
+	defer p.release(e)
+
+	for {
+		client, reused, err := p.connect(e, c)
+		if err != nil {
+			return fmt.Errorf("connection failed: %v", err)
+		}
+
+		session, err := client.NewSession()
+		if err != nil {
+			p.drop(e, client)
+			if reused {
+				continue
+			}
+			return fmt.Errorf("session creation failed: %v", err)
+		}
+
+		err = fn(session)
+		session.Close()
+
+		return err
+	}
+}
+
+// acquire returns the entry of the client's monitor and takes one of its session slots
+func (p *Pool) acquire(c *Client) *entry {
+	var stale *entry
+
+	p.mu.Lock()
+
+	e, ok := p.entries[c.monitorID]
+	if ok && e.fingerprint != c.fingerprint {
+		// Address or credentials changed without an invalidate, stop reusing the old connection
+		delete(p.entries, c.monitorID)
+		stale = e
+		ok = false
+	}
+	if !ok {
+		e = &entry{
+			fingerprint: c.fingerprint,
+			slots:       make(chan struct{}, p.maxSessions),
+			lastUsed:    time.Now(),
+		}
+		p.entries[c.monitorID] = e
+	}
+
+	e.active.Add(1)
+
+	p.mu.Unlock()
+
+	// Retired outside the pool lock, the entry may be locked for a dial
+	if stale != nil {
+		stale.retire()
+	}
+
+	e.slots <- struct{}{}
+
+	return e
+}
+
+// release gives back a session slot, closing the connection if it was retired while in use
+func (p *Pool) release(e *entry) {
+	<-e.slots
+
+	e.mu.Lock()
+	defer e.mu.Unlock()
+
+	e.lastUsed = time.Now()
+
+	if e.active.Add(-1) == 0 && e.retired {
+		e.closeLocked()
+	}
+}
+
+// connect returns the pooled connection of an entry, dialing one if needed
+func (p *Pool) connect(e *entry, c *Client) (*ssh.Client, bool, error) {
+	e.mu.Lock()
+	defer e.mu.Unlock()
+
+	if e.client != nil {
+		atomic.AddInt64(&p.reuses, 1)
+		return e.client, true, nil
+	}
+
+	client, err := ssh.Dial("tcp", c.addr, c.config)
+	if err != nil {
+		return nil, false, err
+	}
+
+	atomic.AddInt64(&p.dials, 1)
+	e.client = client
+
+	return client, false, nil
+}
+
+// drop closes a connection that failed, unless it was already replaced
+func (p *Pool) drop(e *entry, client *ssh.Client) {
+	e.mu.Lock()
+	defer e.mu.Unlock()
+
+	if e.client == client {
+		e.closeLocked()
+	}
+}
+
+// Invalidate closes the pooled connections of the given monitors, sessions in use finish first.
+// Returns the number of connections that were pooled.
+func (p *Pool) Invalidate(monitorIDs []int) int {
+	retired := make([]*entry, 0, len(monitorIDs))
+
+	p.mu.Lock()
+	for _, monitorID := range monitorIDs {
+		if e, ok := p.entries[monitorID]; ok {
+			delete(p.entries, monitorID)
+			retired = append(retired, e)
+		}
+	}
+	p.mu.Unlock()
+
+	for _, e := range retired {
+		e.retire()
+	}
+
+	atomic.AddInt64(&p.invalidations, int64(len(retired)))
+
+	return len(retired)
+}
+
+// CloseAll closes every pooled connection
+func (p *Pool) CloseAll() {
+	p.mu.Lock()
+	entries := p.entries
+	p.entries = make(map[int]*entry)
+	p.mu.Unlock()
+
+	for _, e := range entries {
+		e.retire()
+	}
+}
+
+// Stats returns the pool counters, reported to Java with the heartbeat
+func (p *Pool) Stats() map[string]interface{} {
+	p.mu.Lock()
+	pooled := len(p.entries)
+	p.mu.Unlock()
+
+	return map[string]interface{}{
+		"pooled":        pooled,
+		"dials":         atomic.LoadInt64(&p.dials),
+		"reuses":        atomic.LoadInt64(&p.reuses),
+		"evictions":     atomic.LoadInt64(&p.evictions),
+		"invalidations": atomic.LoadInt64(&p.invalidations),
+	}
+}
+
+// maintain closes idle connections and sends keepalives on the others
+func (p *Pool) maintain() {
+	ticker := time.NewTicker(p.keepaliveInterval)
+	defer ticker.Stop()
+
+	for range ticker.C {
+		now := time.Now()
+
+		p.mu.Lock()
+		for monitorID, e := range p.entries {
+			// An entry locked for a dial is in use, look at it next time
+			if !e.mu.TryLock() {
+				continue
+			}
+
+			if e.active.Load() == 0 && now.Sub(e.lastUsed) > p.idleTimeout {
+				delete(p.entries, monitorID)
+				e.closeLocked()
+				atomic.AddInt64(&p.evictions, 1)
+			} else if e.client != nil {
+				go p.keepalive(e, e.client)
+			}
+
+			e.mu.Unlock()
+		}
+		p.mu.Unlock()
+	}
+}
+
+// keepalive checks that a connection still answers, dropping it when it does not
+func (p *Pool) keepalive(e *entry, client *ssh.Client) {
+	done := make(chan error, 1)
+
+	go func() {
+		_, _, err := client.SendRequest("keepalive@openssh.com", true, nil)
+		done <- err
+	}()
+
+	select {
+	case err := <-done:
+		if err != nil {
+			p.drop(e, client)
+		}
+	case <-time.After(DefaultKeepaliveTimeout):
+		// Closing the connection also unblocks the pending request
+		p.drop(e, client)
+	}
+}
+
+// retire removes an entry from use, closing its connection once no session uses it
+func (e *entry) retire() {
+	e.mu.Lock()
+	defer e.mu.Unlock()
+
+	e.retired = true
+
+	if e.active.Load() == 0 {
+		e.closeLocked()
+	}
+}
+
+func (e *entry) closeLocked() {
+	if e.client != nil {
+		e.client.Close()
+		e.client = nil
+	}
+}
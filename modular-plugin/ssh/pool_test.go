@@ -0,0 +1,326 @@
+package ssh
+
+import (
+	"crypto/ed25519"
+	"crypto/rand"
+	"net"
+	"sync"
+	"sync/atomic"
+	"testing"
+	"time"
+
+	"golang.org/x/crypto/ssh"
+	"modular-plugin/models"
+)
+
+// testServer is an in-process SSH server that accepts any password and opens sessions without running anything
+type testServer struct {
+	listener net.Listener
+	config   *ssh.ServerConfig
+
+	// Authenticated connections so far
+	handshakes atomic.Int32
+
+	mu    sync.Mutex
+	conns []*ssh.ServerConn
+}
+
+func newTestServer(t *testing.T) *testServer {
+	t.Helper()
+
+	_, key, err := ed25519.GenerateKey(rand.Reader)
+	if err != nil {
+		t.Fatal(err)
+	}
+	signer, err := ssh.NewSignerFromKey(key)
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	config := &ssh.ServerConfig{
+		PasswordCallback: func(ssh.ConnMetadata, []byte) (*ssh.Permissions, error) {
+			return nil, nil
+		},
+	}
+	config.AddHostKey(signer)
+
+	listener, err := net.Listen("tcp", "127.0.0.1:0")
+	if err != nil {
+		t.Fatal(err)
+	}
+
+	s := &testServer{listener: listener, config: config}
+	go s.serve()
+	t.Cleanup(s.close)
+
+	return s
+}
+
+func (s *testServer) serve() {
+	for {
+		conn, err := s.listener.Accept()
+		if err != nil {
+			return
+		}
+		go s.handle(conn)
+	}
+}
+
+func (s *testServer) handle(conn net.Conn) {
+	serverConn, channels, requests, err := ssh.NewServerConn(conn, s.config)
+	if err != nil {
+		conn.Close()
+		return
+	}
+
+	s.handshakes.Add(1)
+	s.mu.Lock()
+	s.conns = append(s.conns, serverConn)
+	s.mu.Unlock()
+
+	go ssh.DiscardRequests(requests)
+
+	for newChannel := range channels {
+		if newChannel.ChannelType() != "session" {
+			newChannel.Reject(ssh.UnknownChannelType, "only sessions are supported")
+			continue
+		}
+
+		channel, channelRequests, err := newChannel.Accept()
+		if err != nil {
+			continue
+		}
+
+		go func() {
+			for request := range channelRequests {
+				if request.WantReply {
+					request.Reply(false, nil)
+				}
+			}
+			channel.Close()
+		}()
+	}
+}
+
+// dropConnections closes every connection from the server side, as a rebooted device would
+func (s *testServer) dropConnections() {
+	s.mu.Lock()
+	defer s.mu.Unlock()
+
+	for _, conn := range s.conns {
+		conn.Close()
+	}
+	s.conns = nil
+}
+
+func (s *testServer) close() {
+	s.listener.Close()
+	s.dropConnections()
+}
+
+func (s *testServer) device(monitorID int, password string) models.DeviceInput {
+	return models.DeviceInput{
+		IP:          "127.0.0.1",
+		Port:        s.listener.Addr().(*net.TCPAddr).Port,
+		Username:    "admin",
+		Password:    password,
+		Protocol:    "ssh",
+		DiscoveryID: monitorID,
+	}
+}
+
+func noop(*ssh.Session) error {
+	return nil
+}
+
+func expectStat(t *testing.T, pool *Pool, name string, expected int64) {
+	t.Helper()
+	if got := pool.Stats()[name]; got != expected {
+		t.Fatalf("%s = %v, want %d", name, got, expected)
+	}
+}
+
+func expectHandshakes(t *testing.T, server *testServer, expected int32) {
+	t.Helper()
+	if got := server.handshakes.Load(); got != expected {
+		t.Fatalf("%d handshakes, want %d", got, expected)
+	}
+}
+
+func TestPoolReusesConnection(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(time.Minute, time.Hour, DefaultMaxSessions)
+	client := NewClient(server.device(1, "secret"))
+
+	for i := 0; i < 3; i++ {
+		if err := pool.withSession(client, noop); err != nil {
+			t.Fatal(err)
+		}
+	}
+
+	expectHandshakes(t, server, 1)
+	expectStat(t, pool, "dials", 1)
+	expectStat(t, pool, "reuses", 2)
+
+	if pooled := pool.Stats()["pooled"]; pooled != 1 {
+		t.Fatalf("pooled = %v, want 1", pooled)
+	}
+}
+
+func TestPoolRedialsAfterInvalidate(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(time.Minute, time.Hour, DefaultMaxSessions)
+	client := NewClient(server.device(1, "secret"))
+
+	if err := pool.withSession(client, noop); err != nil {
+		t.Fatal(err)
+	}
+
+	if invalidated := pool.Invalidate([]int{1, 2}); invalidated != 1 {
+		t.Fatalf("invalidated %d connections, want 1", invalidated)
+	}
+	if invalidated := pool.Invalidate([]int{1}); invalidated != 0 {
+		t.Fatalf("invalidated %d connections twice", invalidated)
+	}
+
+	if err := pool.withSession(client, noop); err != nil {
+		t.Fatal(err)
+	}
+
+	expectHandshakes(t, server, 2)
+	expectStat(t, pool, "invalidations", 1)
+}
+
+func TestPoolRedialsWhenCredentialsChange(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(time.Minute, time.Hour, DefaultMaxSessions)
+
+	if err := pool.withSession(NewClient(server.device(1, "secret")), noop); err != nil {
+		t.Fatal(err)
+	}
+	if err := pool.withSession(NewClient(server.device(1, "changed")), noop); err != nil {
+		t.Fatal(err)
+	}
+
+	expectHandshakes(t, server, 2)
+	expectStat(t, pool, "dials", 2)
+	expectStat(t, pool, "reuses", 0)
+}
+
+func TestPoolRedialsDeadConnection(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(time.Minute, time.Hour, DefaultMaxSessions)
+	client := NewClient(server.device(1, "secret"))
+
+	if err := pool.withSession(client, noop); err != nil {
+		t.Fatal(err)
+	}
+
+	server.dropConnections()
+
+	// The pooled connection fails to open a session and is dialed again once
+	if err := pool.withSession(client, noop); err != nil {
+		t.Fatal(err)
+	}
+
+	expectHandshakes(t, server, 2)
+	expectStat(t, pool, "dials", 2)
+}
+
+func TestPoolLimitsSessionsPerDevice(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(time.Minute, time.Hour, 2)
+	client := NewClient(server.device(1, "secret"))
+
+	var running, peak atomic.Int32
+	release := make(chan struct{})
+
+	var wg sync.WaitGroup
+	for i := 0; i < 4; i++ {
+		wg.Add(1)
+		go func() {
+			defer wg.Done()
+
+			err := pool.withSession(client, func(*ssh.Session) error {
+				n := running.Add(1)
+				for {
+					p := peak.Load()
+					if n <= p || peak.CompareAndSwap(p, n) {
+						break
+					}
+				}
+
+				<-release
+				running.Add(-1)
+				return nil
+			})
+			if err != nil {
+				t.Error(err)
+			}
+		}()
+	}
+
+	deadline := time.Now().Add(2 * time.Second)
+	for running.Load() < 2 {
+		if time.Now().After(deadline) {
+			t.Fatalf("%d sessions running, want 2", running.Load())
+		}
+		time.Sleep(time.Millisecond)
+	}
+
+	// The other polls of the device wait for a session slot
+	time.Sleep(50 * time.Millisecond)
+	if n := running.Load(); n != 2 {
+		t.Fatalf("%d sessions running at once, want 2", n)
+	}
+
+	close(release)
+	wg.Wait()
+
+	if p := peak.Load(); p != 2 {
+		t.Fatalf("peak of %d sessions, want 2", p)
+	}
+
+	// Concurrent polls of one device share one dial
+	expectHandshakes(t, server, 1)
+}
+
+func TestPoolEvictsIdleConnections(t *testing.T) {
+	server := newTestServer(t)
+	pool := NewPool(10*time.Millisecond, 20*time.Millisecond, DefaultMaxSessions)
+
+	if err := pool.withSession(NewClient(server.device(1, "secret")), noop); err != nil {
+		t.Fatal(err)
+	}
+
+	deadline := time.Now().Add(2 * time.Second)
+	for pool.Stats()["evictions"] != int64(1) {
+		if time.Now().After(deadline) {
+			t.Fatalf("idle connection not evicted: %v", pool.Stats())
+		}
+		time.Sleep(5 * time.Millisecond)
+	}
+
+	if pooled := pool.Stats()["pooled"]; pooled != 0 {
+		t.Fatalf("pooled = %v after eviction, want 0", pooled)
+	}
+}
+
+func TestPoolReportsFailedDial(t *testing.T) {
+	// A port nothing listens on
+	listener, err := net.Listen("tcp", "127.0.0.1:0")
+	if err != nil {
+		t.Fatal(err)
+	}
+	port := listener.Addr().(*net.TCPAddr).Port
+	listener.Close()
+
+	pool := NewPool(time.Minute, time.Hour, DefaultMaxSessions)
+	client := NewClient(models.DeviceInput{IP: "127.0.0.1", Port: port, Username: "admin", Protocol: "ssh", DiscoveryID: 1})
+
+	if err := pool.withSession(client, noop); err == nil {
+		t.Fatal("session opened on a closed port")
+	}
+
+	expectStat(t, pool, "dials", 0)
+}
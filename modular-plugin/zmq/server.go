@@ -4,13 +4,19 @@ import
 (
 	"encoding/json"
 	"fmt"
+	"os"
 	"sync"
 
 	"github.com/pebbe/zmq4"
+	"modular-plugin/codec"
 	"modular-plugin/models"
 	"modular-plugin/monitor"
+	"modular-plugin/ssh"
 )
 
+// DefaultCapacity is the number of requests processed at once when none is configured
+const DefaultCapacity = 64
+
 // Server handles ZeroMQ communication with PUSH/PULL pattern
 type Server struct
 {
@@ -19,10 +25,26 @@ type Server struct
 	pullEndpoint string
 	pushEndpoint string
 	requestsWg   sync.WaitGroup
+
+	// ZMQ sockets are not thread safe, responses are sent from many goroutines
+	sendMu sync.Mutex
+
+	// One slot per request being processed, advertised to Java as credits
+	slots    chan struct{}
+	capacity int
+
+	// One slot per device of a coalesced batch being processed, shared by every batch
+	batchSlots chan struct{}
+
+	// Runs one request, handleRequest outside of tests
+	handle func(models.ZMQRequest)
 }
 
-// NewServer creates a new ZMQ server with PUSH/PULL pattern
-func NewServer(pullEndpoint, pushEndpoint string) (*Server, error) {
+// NewServer creates a new ZMQ server with PUSH/PULL pattern, processing at most capacity requests at once
+func NewServer(pullEndpoint, pushEndpoint string, capacity int) (*Server, error) {
+	if capacity <= 0{
+		capacity = DefaultCapacity
+	}
 
 	// Socket to receive tasks (PULL)
 	pullSocket, err := zmq4.NewSocket(zmq4.PULL)
@@ -37,13 +59,19 @@ func NewServer(pullEndpoint, pushEndpoint string) (*Server, error) {
 		return nil, fmt.Errorf("failed to create ZMQ PUSH socket: %v", err)
 	}
 
-	return &Server{
+	s := &Server{
 		pullSocket:   pullSocket,
 		pushSocket:   pushSocket,
 		pullEndpoint: pullEndpoint,
 		pushEndpoint: pushEndpoint,
 		requestsWg:   sync.WaitGroup{},
-	}, nil
+		slots:        make(chan struct{}, capacity),
+		capacity:     capacity,
+		batchSlots:   make(chan struct{}, capacity),
+	}
+	s.handle = s.handleRequest
+
+	return s, nil
 }
 
 // Start begins listening for messages
@@ -72,31 +100,53 @@ func (s *Server) Start() error{
 		 }
 
 
-		fmt.Printf("Received request: %d bytes\n", len(message))
-
-		// Process the message in a goroutine to handle multiple requests in parallel
-		s.requestsWg.Add(1)
-		go func(msg []byte){
-			defer s.requestsWg.Done()
-
-			// Process the message
-			err := s.processMessage(msg)
-			if err != nil {
-				fmt.Printf("Error processing message: %v\n", err)
-
-				// Try to extract the request ID for proper response
-				var request models.ZMQRequest
-				if jsonErr := json.Unmarshal(msg, &request); jsonErr == nil{
-					errorResponse := map[string]interface{}{
-						"request_id": request.RequestID,
-						"success":    false,
-						"details":    fmt.Sprintf("Error processing message: %v", err),
-					}
-					responseJSON, _ := json.Marshal(errorResponse)
-					s.pushSocket.SendBytes(responseJSON, 0)
-				}
-			}
-		}(message)
+		// Parse the request in whichever wire format it arrived
+		request, err := parseRequest(message)
+		if err != nil {
+			fmt.Printf("Error parsing message: %v\n", err)
+			continue
+		}
+
+		s.dispatch(request)
+	}
+}
+
+// dispatch runs a request, device work in its own goroutine holding one of the slots advertised as credits
+func (s *Server) dispatch(request models.ZMQRequest){
+	// Control commands are cheap and must not wait behind device work
+	if request.Command == "ping" || request.Command == "hello" || request.Command == "invalidate"{
+		s.handle(request)
+		return
+	}
+
+	// Java sends only while it holds credits, so a free slot is normally available.
+	// If not, stop reading until one frees up and let the ZMQ queue push back.
+	s.slots <- struct{}{}
+
+	// Process the message in a goroutine to handle multiple requests in parallel
+	s.requestsWg.Add(1)
+	go func(request models.ZMQRequest){
+		defer s.requestsWg.Done()
+		defer func(){ <-s.slots }()
+
+		s.handle(request)
+	}(request)
+}
+
+// handleRequest processes one request and reports a failure back to Java
+func (s *Server) handleRequest(request models.ZMQRequest){
+	err := s.processMessage(request)
+	if err != nil {
+		fmt.Printf("Error processing message: %v\n", err)
+
+		// Errors are always sent as JSON, the Java side detects the format per frame
+		errorResponse := map[string]interface{}{
+			"request_id": request.RequestID,
+			"success":    false,
+			"details":    fmt.Sprintf("Error processing message: %v", err),
+		}
+		responseJSON, _ := json.Marshal(errorResponse)
+		s.send(responseJSON)
 	}
 }
 
@@ -105,6 +155,8 @@ func (s *Server) Close(){
 	// Wait for all request goroutines to finish
 	s.requestsWg.Wait()
 
+	ssh.DefaultPool.CloseAll()
+
 	if s.pullSocket != nil{
 		s.pullSocket.Close()
 	}
@@ -113,36 +165,137 @@ func (s *Server) Close(){
 	}
 }
 
-// processMessage handles incoming ZMQ messages
-func (s *Server) processMessage(message []byte) error{
-	// Parse the command and data from the message
-	var request models.ZMQRequest
+// parseRequest decodes a request frame, which is either binary or JSON
+func parseRequest(message []byte) (models.ZMQRequest, error){
+	if codec.IsBinary(message){
+		return codec.DecodeRequest(message)
+	}
 
+	var request models.ZMQRequest
 	err := json.Unmarshal(message, &request)
 	if err != nil{
-		return fmt.Errorf("failed to parse request: %v", err)
+		return request, fmt.Errorf("failed to parse request: %v", err)
 	}
 
+	return request, nil
+}
+
+// processMessage handles incoming ZMQ messages
+func (s *Server) processMessage(request models.ZMQRequest) error{
 	switch request.Command{
+	case "hello":
+		return s.handleHello(request)
+	case "ping":
+		return s.handlePing(request)
+	case "invalidate":
+		return s.handleInvalidate(request)
 	case "discovery":
 		return s.handleDiscovery(request)
 	case "polling":
 		return s.handlePolling(request)
+	case "discovery_batch":
+		return s.handleBatch(request, monitor.HandleDiscovery)
+	case "polling_batch":
+		return s.handleBatch(request, monitor.HandlePolling)
 	case "metrics":
 		return s.handleMetrics(request)
+	case "metrics_stream":
+		return s.handleMetricsStream(request)
 	default:
 		return fmt.Errorf("unknown command: %s", request.Command)
 	}
 }
 
-// handleDiscovery processes discovery requests
-func (s *Server) handleDiscovery(request models.ZMQRequest) error{
-	var input models.DeviceInput
+// handleHello answers codec negotiation with the wire formats this plugin understands
+func (s *Server) handleHello(request models.ZMQRequest) error{
+	response := map[string]interface{}{
+		"request_id": request.RequestID,
+		"success":    true,
+		"codecs":     []string{codec.Name, "json"},
+		"credits":    s.capacity,
+	}
+
+	return s.sendResponse(response, false)
+}
+
+// handlePing answers the supervisor heartbeat, the pid lets it match the answer to the process it started
+func (s *Server) handlePing(request models.ZMQRequest) error{
+	response := map[string]interface{}{
+		"request_id": request.RequestID,
+		"success":    true,
+		"pid":        os.Getpid(),
+		"credits":    s.capacity,
+		"in_flight":  len(s.slots),
+		"ssh_pool":   ssh.DefaultPool.Stats(),
+	}
+
+	return s.sendResponse(response, false)
+}
+
+// handleInvalidate closes the pooled SSH connections of devices whose address or credentials changed.
+// Java broadcasts it to every worker without a request ID, only requests with an ID are answered.
+func (s *Server) handleInvalidate(request models.ZMQRequest) error{
+	var input struct {
+		MonitorIDs []int `json:"monitor_ids"`
+	}
+
 	err := json.Unmarshal(request.Data, &input)
 	if err != nil{
 		return fmt.Errorf("failed to parse input: %v", err)
 	}
 
+	invalidated := ssh.DefaultPool.Invalidate(input.MonitorIDs)
+
+	if request.RequestID == ""{
+		return nil
+	}
+
+	response := map[string]interface{}{
+		"request_id":  request.RequestID,
+		"success":     true,
+		"invalidated": invalidated,
+	}
+
+	return s.sendResponse(response, false)
+}
+
+// decodeDevice returns the single device carried by a request
+func decodeDevice(request models.ZMQRequest) (models.DeviceInput, error){
+	if request.Device != nil{
+		return *request.Device, nil
+	}
+
+	var input models.DeviceInput
+	err := json.Unmarshal(request.Data, &input)
+	if err != nil{
+		return input, fmt.Errorf("failed to parse input: %v", err)
+	}
+
+	return input, nil
+}
+
+// decodeDevices returns the device list carried by a request
+func decodeDevices(request models.ZMQRequest) (models.BatchInput, error){
+	if request.Devices != nil{
+		return request.Devices, nil
+	}
+
+	var input models.BatchInput
+	err := json.Unmarshal(request.Data, &input)
+	if err != nil{
+		return input, fmt.Errorf("failed to parse input: %v", err)
+	}
+
+	return input, nil
+}
+
+// handleDiscovery processes discovery requests
+func (s *Server) handleDiscovery(request models.ZMQRequest) error{
+	input, err := decodeDevice(request)
+	if err != nil{
+		return err
+	}
+
 	// Process the discovery request
 	result := monitor.HandleDiscovery(input)
 
@@ -150,15 +303,14 @@ func (s *Server) handleDiscovery(request models.ZMQRequest) error{
 	result.RequestID = request.RequestID
 
 	// Send response
-	return s.sendResponse(result)
+	return s.sendResponse(result, request.Binary)
 }
 
 // handlePolling processes polling requests
 func (s *Server) handlePolling(request models.ZMQRequest) error{
-	var input models.DeviceInput
-	err := json.Unmarshal(request.Data, &input)
+	input, err := decodeDevice(request)
 	if err != nil {
-		return fmt.Errorf("failed to parse input: %v", err)
+		return err
 	}
 
 	// Process the polling request
@@ -168,23 +320,87 @@ func (s *Server) handlePolling(request models.ZMQRequest) error{
 	result.RequestID = request.RequestID
 
 	// Send response
-	return s.sendResponse(result)
+	return s.sendResponse(result, request.Binary)
+}
+
+// handleBatch processes a batch of single-device requests coalesced by Java. Each result is sent as soon as
+// it is ready, in a frame of its own under the batch's request ID, so a slow device holds back only its own
+// result; total_results tells Java how many frames answer the batch.
+func (s *Server) handleBatch(request models.ZMQRequest, handle func(models.DeviceInput) models.DiscoveryResult) error{
+	var items []models.BatchItem
+	err := json.Unmarshal(request.Data, &items)
+	if err != nil{
+		return fmt.Errorf("failed to parse input: %v", err)
+	}
+
+	// Nothing to stream, one empty frame still completes the batch
+	if len(items) == 0{
+		return s.sendResponse(models.BatchResult{
+			RequestID: request.RequestID,
+			Batch:     true,
+			Results:   []models.DiscoveryResult{},
+		}, request.Binary)
+	}
+
+	err = s.runBatch(items, handle, func(result models.DiscoveryResult) error{
+		return s.sendResponse(models.BatchResult{
+			RequestID:    request.RequestID,
+			Batch:        true,
+			Results:      []models.DiscoveryResult{result},
+			TotalResults: len(items),
+		}, request.Binary)
+	})
+	if err != nil{
+		return fmt.Errorf("failed to send batch result: %v", err)
+	}
+
+	return nil
+}
+
+// runBatch runs the items of a batch and hands each result to emit as soon as it is ready.
+// A batch holds a single credit, so its devices take the batch slots instead: however many batches are
+// in flight, at most capacity of their devices are checked at once. Returns the first error emit returned.
+func (s *Server) runBatch(items []models.BatchItem, handle func(models.DeviceInput) models.DiscoveryResult, emit func(models.DiscoveryResult) error) error{
+	var wg sync.WaitGroup
+	var errOnce sync.Once
+	var emitErr error
+
+	for _, item := range items{
+		s.batchSlots <- struct{}{}
+		wg.Add(1)
+
+		go func(item models.BatchItem){
+			defer wg.Done()
+
+			result := handle(item.Data)
+			result.RequestID = item.RequestID
+
+			// Free for the next device before the result is sent
+			<-s.batchSlots
+
+			if err := emit(result); err != nil{
+				errOnce.Do(func(){ emitErr = err })
+			}
+		}(item)
+	}
+	wg.Wait()
+
+	return emitErr
 }
 
 // handleMetrics processes metrics collection requests
 func (s *Server) handleMetrics(request models.ZMQRequest) error{
-	var input models.BatchInput
-	err := json.Unmarshal(request.Data, &input)
+	input, err := decodeDevices(request)
 	if err != nil {
-		return fmt.Errorf("failed to parse input: %v", err)
+		return err
 	}
 
 	// Process the metrics request and get batch results
-	results := monitor.HandleMetrics(request.RequestID, input)
+	results := monitor.HandleMetrics(request.RequestID, input, request.Parallelism)
 
 	// Send each batch result separately
 	for _, result := range results {
-		err := s.sendResponse(result)
+		err := s.sendResponse(result, request.Binary)
 		if err != nil {
 			return fmt.Errorf("failed to send batch result: %v", err)
 		}
@@ -193,19 +409,50 @@ func (s *Server) handleMetrics(request models.ZMQRequest) error{
 	return nil
 }
 
-// sendResponse sends a response back to the client
-func (s *Server) sendResponse(response interface{}) error{
-	// Marshal the response to JSON
-	jsonData, err := json.Marshal(response)
+// handleMetricsStream processes metrics collection requests, sending each device's result as soon as it is collected
+func (s *Server) handleMetricsStream(request models.ZMQRequest) error{
+	input, err := decodeDevices(request)
+	if err != nil {
+		return err
+	}
+
+	err = monitor.StreamMetrics(request.RequestID, input, request.Parallelism, func(result models.DeviceMetricsResult) error{
+		return s.sendResponse(result, request.Binary)
+	})
+	if err != nil {
+		return fmt.Errorf("failed to send device result: %v", err)
+	}
+
+	return nil
+}
+
+// sendResponse sends a response back to the client, in the wire format the request used
+func (s *Server) sendResponse(response interface{}, binary bool) error{
+	var data []byte
+	var err error
+
+	if binary{
+		data, err = codec.EncodeResponse(response)
+	} else{
+		data, err = json.Marshal(response)
+	}
 	if err != nil{
 		return fmt.Errorf("failed to marshal response: %v", err)
 	}
 
 	// Send the response
-	_, err = s.pushSocket.SendBytes(jsonData, 0)
+	_, err = s.send(data)
 	if err != nil{
 		return fmt.Errorf("failed to send response: %v", err)
 	}
 
 	return nil
+}
+
+// send writes one frame to the PUSH socket, one goroutine at a time
+func (s *Server) send(data []byte) (int, error){
+	s.sendMu.Lock()
+	defer s.sendMu.Unlock()
+
+	return s.pushSocket.SendBytes(data, 0)
 }
\ No newline at end of file
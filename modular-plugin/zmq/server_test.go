@@ -0,0 +1,200 @@
+package zmq
+
+import (
+	"sync"
+	"sync/atomic"
+	"testing"
+	"time"
+
+	"modular-plugin/models"
+)
+
+// newTestServer returns a server without sockets, its metrics requests run until released
+func newTestServer(capacity int) (*Server, chan string, chan struct{}) {
+	started := make(chan string, 16)
+	release := make(chan struct{})
+
+	s := &Server{
+		slots:      make(chan struct{}, capacity),
+		capacity:   capacity,
+		batchSlots: make(chan struct{}, capacity),
+	}
+	s.handle = func(request models.ZMQRequest) {
+		started <- request.RequestID
+		if request.Command == "metrics" {
+			<-release
+		}
+	}
+
+	return s, started, release
+}
+
+func expectStarted(t *testing.T, started chan string) string {
+	t.Helper()
+	select {
+	case requestID := <-started:
+		return requestID
+	case <-time.After(2 * time.Second):
+		t.Fatal("request did not start")
+		return ""
+	}
+}
+
+func TestDispatchHoldsOneCreditPerRequest(t *testing.T) {
+	s, started, release := newTestServer(2)
+
+	s.dispatch(models.ZMQRequest{RequestID: "m-1", Command: "metrics"})
+	s.dispatch(models.ZMQRequest{RequestID: "m-2", Command: "metrics"})
+	expectStarted(t, started)
+	expectStarted(t, started)
+
+	if inFlight := len(s.slots); inFlight != 2 {
+		t.Fatalf("%d credits in use, want 2", inFlight)
+	}
+
+	// Out of credits, the next request waits for a free slot
+	dispatched := make(chan struct{})
+	go func() {
+		s.dispatch(models.ZMQRequest{RequestID: "m-3", Command: "metrics"})
+		close(dispatched)
+	}()
+
+	select {
+	case <-dispatched:
+		t.Fatal("request dispatched without a free credit")
+	case <-time.After(50 * time.Millisecond):
+	}
+
+	// One request finishes, its credit goes to the waiting one
+	release <- struct{}{}
+
+	select {
+	case <-dispatched:
+	case <-time.After(2 * time.Second):
+		t.Fatal("waiting request not dispatched after a credit was freed")
+	}
+	if requestID := expectStarted(t, started); requestID != "m-3" {
+		t.Fatalf("started %s, want m-3", requestID)
+	}
+
+	close(release)
+	s.requestsWg.Wait()
+
+	if inFlight := len(s.slots); inFlight != 0 {
+		t.Fatalf("%d credits still in use after every request finished", inFlight)
+	}
+}
+
+func TestDispatchRunsControlCommandsWithoutCredit(t *testing.T) {
+	s, started, release := newTestServer(1)
+	defer close(release)
+
+	s.dispatch(models.ZMQRequest{RequestID: "m-1", Command: "metrics"})
+	expectStarted(t, started)
+
+	// Every credit is in use, control commands still run at once and take none
+	for _, command := range []string{"ping", "hello", "invalidate"} {
+		s.dispatch(models.ZMQRequest{RequestID: command, Command: command})
+
+		if requestID := expectStarted(t, started); requestID != command {
+			t.Fatalf("started %s, want %s", requestID, command)
+		}
+		if inFlight := len(s.slots); inFlight != 1 {
+			t.Fatalf("%d credits in use after %s, want 1", inFlight, command)
+		}
+	}
+}
+
+func TestRunBatchBoundsDevicesAcrossBatches(t *testing.T) {
+	s, _, _ := newTestServer(2)
+
+	var running, peak atomic.Int32
+	handle := func(models.DeviceInput) models.DiscoveryResult {
+		n := running.Add(1)
+		for {
+			p := peak.Load()
+			if n <= p || peak.CompareAndSwap(p, n) {
+				break
+			}
+		}
+
+		time.Sleep(5 * time.Millisecond)
+		running.Add(-1)
+		return models.DiscoveryResult{Success: true}
+	}
+
+	items := make([]models.BatchItem, 10)
+	var emitted atomic.Int32
+
+	// Two batches at once, each holding one credit, still check at most capacity devices together
+	var wg sync.WaitGroup
+	for b := 0; b < 2; b++ {
+		wg.Add(1)
+		go func() {
+			defer wg.Done()
+			err := s.runBatch(items, handle, func(models.DiscoveryResult) error {
+				emitted.Add(1)
+				return nil
+			})
+			if err != nil {
+				t.Error(err)
+			}
+		}()
+	}
+	wg.Wait()
+
+	if p := peak.Load(); p > 2 {
+		t.Fatalf("%d devices checked at once, want at most 2", p)
+	}
+	if n := emitted.Load(); n != 20 {
+		t.Fatalf("%d results emitted, want 20", n)
+	}
+	if inUse := len(s.batchSlots); inUse != 0 {
+		t.Fatalf("%d batch slots still in use", inUse)
+	}
+}
+
+func TestRunBatchSendsEachResultWhenReady(t *testing.T) {
+	s, _, _ := newTestServer(4)
+
+	release := make(chan struct{})
+	handle := func(device models.DeviceInput) models.DiscoveryResult {
+		if device.IP == "slow" {
+			<-release
+		}
+		return models.DiscoveryResult{Success: true, Details: device.IP}
+	}
+
+	items := []models.BatchItem{
+		{RequestID: "d-slow", Data: models.DeviceInput{IP: "slow"}},
+		{RequestID: "d-fast", Data: models.DeviceInput{IP: "fast"}},
+	}
+
+	emitted := make(chan models.DiscoveryResult, len(items))
+	done := make(chan error, 1)
+	go func() {
+		done <- s.runBatch(items, handle, func(result models.DiscoveryResult) error {
+			emitted <- result
+			return nil
+		})
+	}()
+
+	// The fast device is answered while the slow one is still running
+	select {
+	case result := <-emitted:
+		if result.RequestID != "d-fast" || result.Details != "fast" {
+			t.Fatalf("first result %+v, want the fast device", result)
+		}
+	case <-time.After(2 * time.Second):
+		t.Fatal("fast result held back by the slow device")
+	}
+
+	close(release)
+
+	if err := <-done; err != nil {
+		t.Fatal(err)
+	}
+	if result := <-emitted; result.RequestID != "d-slow" {
+		t.Fatalf("second result %+v, want the slow device", result)
+	}
+}
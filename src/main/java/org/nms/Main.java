@@ -1,27 +1,47 @@
 package org.nms;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import org.nms.polling.MetricsCollectionVerticle;
+import org.nms.polling.PluginSupervisor;
+import org.nms.polling.RediscoveryVerticle;
+import org.nms.polling.ShardLeaseVerticle;
 import org.nms.routerController.HttpVerticle;
+import org.nms.service.ProvisionRegistry;
+import org.nms.database.ChangeFeedVerticle;
 import org.nms.database.DatabaseVerticle;
+import org.nms.database.PartitionMaintenanceVerticle;
 import org.nms.polling.ZMQCommunicationVerticle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Starts the NMS. Settings are read from a JSON file, config.json in the working directory unless the
+ * nms.config system property or the NMS_CONFIG environment variable names another, and passed to every
+ * verticle as its config. Every key is optional, a missing file runs with the defaults;
+ * config.example.json lists the keys operators usually set.
+ */
 public class Main
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
     private static final Vertx VERTX = Vertx.vertx();
+    private static final String DEFAULT_CONFIG_PATH = "config.json";
+
+    // Config of every verticle, loaded before the first deployment
+    private static JsonObject config = new JsonObject();
 
     // Track deployed components
     private static final Map<String, String> deployedVerticles = new HashMap<>();
-    private static Process goProcess;
 
     public static Vertx getVertx()
     {
@@ -31,6 +51,18 @@ public class Main
     public static void main(String[] args)
     {
         ensureLogDirectoryExists();
+
+        try
+        {
+            config = loadConfig();
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("Failed to load config: {}", exception.getMessage());
+            VERTX.close();
+            return;
+        }
+
         // Setup shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown()));
 
@@ -39,23 +71,47 @@ public class Main
                 .compose(dbVerticleId ->
                 {
                     deployedVerticles.put("DATABASE", dbVerticleId);
-                    return deployVerticle(new HttpVerticle(), "HTTP");
+                    return deployVerticle(new PartitionMaintenanceVerticle(), "PARTITIONS");
+                })
+                .compose(partitionVerticleId ->
+                {
+                    deployedVerticles.put("PARTITIONS", partitionVerticleId);
+                    return deployVerticle(new ChangeFeedVerticle(), "CHANGEFEED");
+                })
+                .compose(changeFeedVerticleId ->
+                {
+                    deployedVerticles.put("CHANGEFEED", changeFeedVerticleId);
+
+                    // Warm the shared provision registry before anything schedules polls
+                    return ProvisionRegistry.getInstance().load();
                 })
+                .compose(snapshot -> deployVerticle(new HttpVerticle(), "HTTP"))
                 .compose(httpVerticleId ->
                 {
                     deployedVerticles.put("HTTP", httpVerticleId);
-                    return startGoPlugin();
+
+                    // Starts and supervises the plugin workers
+                    return deployVerticle(new ZMQCommunicationVerticle(), "ZMQ");
                 })
-                .compose(v -> deployVerticle(new ZMQCommunicationVerticle(), "ZMQ"))
                 .compose(zmqVerticleId ->
                 {
                     deployedVerticles.put("ZMQ", zmqVerticleId);
+                    return deployVerticle(new ShardLeaseVerticle(), "SHARDS");
+                })
+                .compose(shardVerticleId ->
+                {
+                    deployedVerticles.put("SHARDS", shardVerticleId);
                     // For class-based deployment
                     return deployVerticleClass(MetricsCollectionVerticle.class, "METRICS");
                 })
                 .compose(metricsVerticleId ->
                 {
                     deployedVerticles.put("METRICS", metricsVerticleId);
+                    return deployVerticle(new RediscoveryVerticle(), "REDISCOVERY");
+                })
+                .compose(rediscoveryVerticleId ->
+                {
+                    deployedVerticles.put("REDISCOVERY", rediscoveryVerticleId);
                     LOGGER.info("Application started successfully");
                     return Future.succeededFuture();
                 })
@@ -83,12 +139,28 @@ public class Main
         }
     }
 
+    private static JsonObject loadConfig() throws IOException
+    {
+        var location = System.getProperty("nms.config", System.getenv().getOrDefault("NMS_CONFIG", DEFAULT_CONFIG_PATH));
+        var path = Path.of(location);
+
+        if (!Files.exists(path))
+        {
+            LOGGER.info("No config file at {}, using defaults", path.toAbsolutePath());
+            return new JsonObject();
+        }
+
+        LOGGER.info("Loading config from {}", path.toAbsolutePath());
+
+        return new JsonObject(Files.readString(path));
+    }
+
     // Deploy a verticle instance
     private static Future<String> deployVerticle(Verticle verticle, String name)
     {
         LOGGER.info("Deploying {} verticle", name);
 
-        return VERTX.deployVerticle(verticle)
+        return VERTX.deployVerticle(verticle, new DeploymentOptions().setConfig(config.copy()))
                 .onSuccess(id ->
                         LOGGER.info("{} verticle deployed with ID {}", name, id)
                 )
@@ -102,7 +174,7 @@ public class Main
     {
         LOGGER.info("Deploying {} verticle from class", name);
 
-        return VERTX.deployVerticle(verticleClass.getName())
+        return VERTX.deployVerticle(verticleClass.getName(), new DeploymentOptions().setConfig(config.copy()))
                 .onSuccess(id ->
                         LOGGER.info("{} verticle deployed with ID {}", name, id)
                 )
@@ -111,58 +183,13 @@ public class Main
                 );
     }
 
-    private static Future<Void> startGoPlugin()
-    {
-        return VERTX.executeBlocking(promise ->
-        {
-            try
-            {
-                // Kill any existing instance
-                try
-                {
-                    new ProcessBuilder("pkill", "-f", "plugin-zmq").start().waitFor();
-
-                    LOGGER.info("Killed existing go_plugin if any");
-                }
-                catch (Exception exception)
-                {
-                    LOGGER.warn("No existing go_plugin found or failed to kill: {}", exception.getMessage());
-                }
-
-                // Start new plugin
-                var projectDir = System.getProperty("user.dir");
-                var goPlugin = new File(projectDir + "/modular-plugin/plugin-zmq");
-
-                if (!goPlugin.exists() || !goPlugin.canExecute())
-                {
-                    throw new IllegalStateException("go_plugin not found or not executable at: " + goPlugin.getAbsolutePath());
-                }
-
-                goProcess = new ProcessBuilder(goPlugin.getAbsolutePath(), "zmq").start();
-                LOGGER.info("go_plugin started successfully");
-
-                // Auto-cleanup on JVM shutdown is handled by the main shutdown hook
-                promise.complete();
-            }
-            catch (Exception exception)
-            {
-                LOGGER.error("Failed to start go_plugin: {}", exception.getMessage());
-                promise.fail(exception);
-            }
-        });
-    }
-
     public static void shutdown()
     {
         LOGGER.info("Shutting down application...");
 
-        // Stop Go plugin
-        if (goProcess != null && goProcess.isAlive())
-        {
-            goProcess.destroy();
-
-            LOGGER.info("go_plugin terminated");
-        }
+        // Stop the plugin workers
+        PluginSupervisor.destroyAll();
+        LOGGER.info("go_plugin workers terminated");
 
         // Undeploy verticles
         for (var entry : deployedVerticles.entrySet())
@@ -0,0 +1,277 @@
+package org.nms.database;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.pubsub.PgSubscriber;
+import org.nms.database.queries.ChangeFeedQueries;
+import org.nms.service.DatabaseService;
+import org.nms.service.ProvisionRegistry;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+
+/**
+ * Listens for configuration changes on the database change feed and applies them to the provision registry.
+ * Triggers on provision, discovery_profiles and credential_profiles log each change with a version and NOTIFY it,
+ * so every node sees changes made by other nodes or with plain SQL.
+ * The log version at startup is read before the registry is loaded. After every (re)subscription, including the
+ * first, the changes missed since the last version seen are read back from the log; when the log no longer reaches
+ * back that far, the registry is reloaded in full.
+ */
+public class ChangeFeedVerticle extends AbstractVerticle
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeedVerticle.class);
+
+    public static final String EB_CHANGE_FEED_STATS = "changefeed.stats";
+
+    private static final long DEFAULT_RECONNECT_DELAY_MS = 1000;
+    private static final int DEFAULT_RETENTION_HOURS = 24;
+    private static final long DEFAULT_PRUNE_INTERVAL_MS = 3600000; // 1 hour
+    private static final int DEFAULT_CATCH_UP_LIMIT = 1000;
+
+    // Versions are assigned at insert but notified at commit, so a catch-up re-reads a few versions
+    // before the last one seen. Applying a change twice only re-reads the rows.
+    private static final long CATCH_UP_OVERLAP = 100;
+
+    private PgSubscriber subscriber;
+    private long reconnectDelayMs;
+    private int retentionHours;
+    private int catchUpLimit;
+    private long timerPruneId;
+    private long timerConnectId = -1;
+    private long lastVersion = -1; // Unknown until the watermark is read at startup
+    private boolean isStopping = false;
+    private boolean isSubscribed = false;
+
+    // Counters
+    private long notifications;
+    private long catchUps;
+    private long fullReloads;
+
+    @Override
+    public void start(Promise<Void> startPromise)
+    {
+        reconnectDelayMs = config().getLong("changefeed.reconnect.delay.ms", DEFAULT_RECONNECT_DELAY_MS);
+        retentionHours = config().getInteger("changefeed.retention.hours", DEFAULT_RETENTION_HOURS);
+        catchUpLimit = config().getInteger("changefeed.catchup.limit", DEFAULT_CATCH_UP_LIMIT);
+
+        subscriber = PgSubscriber.subscriber(vertx, DatabaseService.getConnectOptions())
+                .reconnectPolicy(retries ->
+                {
+                    // Called on every lost connection; until resubscribed, changes come from local events
+                    isSubscribed = false;
+                    ProvisionRegistry.getInstance().setChangeFeedActive(false);
+                    return reconnectDelayMs;
+                });
+
+        subscriber.channel(ChangeFeedQueries.CHANNEL)
+                .subscribeHandler(v -> onSubscribed())
+                .handler(this::onNotification);
+
+        subscriber.closeHandler(v ->
+        {
+            isSubscribed = false;
+            ProvisionRegistry.getInstance().setChangeFeedActive(false);
+
+            if (!isStopping)
+            {
+                // The reconnect policy gave up, start over
+                LOGGER.warn("Change feed connection lost, retrying in {} ms", reconnectDelayMs);
+                scheduleConnect();
+            }
+        });
+
+        timerPruneId = vertx.setPeriodic(config().getLong("changefeed.prune.interval.ms", DEFAULT_PRUNE_INTERVAL_MS),
+                id -> pruneChangeLog());
+
+        vertx.eventBus().<JsonObject>localConsumer(EB_CHANGE_FEED_STATS, message -> message.reply(getStats()));
+
+        // The registry is loaded once this verticle started, so the watermark read here is older than the load:
+        // the first subscription catches up on everything committed since, whenever it connects
+        execute(ChangeFeedQueries.SELECT_VERSION_BOUNDS, new JsonArray())
+                .onSuccess(rows ->
+                {
+                    lastVersion = rows.getJsonArray("rows", new JsonArray()).getJsonObject(0).getLong("max_version", 0L);
+                    LOGGER.info("Change feed watermark at version {}", lastVersion);
+                })
+                .onFailure(error -> LOGGER.warn("Failed to read change feed watermark, reloading on subscription: {}", error.getMessage()))
+                .onComplete(result ->
+                {
+                    // Startup does not wait for the feed, the local change events cover this node until it connects
+                    connect();
+
+                    startPromise.complete();
+                    LOGGER.info("ChangeFeedVerticle started, listening on {}", ChangeFeedQueries.CHANNEL);
+                });
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise)
+    {
+        isStopping = true;
+        vertx.cancelTimer(timerPruneId);
+
+        if (timerConnectId != -1)
+        {
+            vertx.cancelTimer(timerConnectId);
+        }
+
+        ProvisionRegistry.getInstance().setChangeFeedActive(false);
+
+        subscriber.close()
+                .onComplete(result ->
+                {
+                    stopPromise.complete();
+                    LOGGER.info("ChangeFeedVerticle stopped successfully");
+                });
+    }
+
+    private void connect()
+    {
+        subscriber.connect()
+                .onFailure(error ->
+                {
+                    LOGGER.warn("Change feed connection failed: {}, retrying in {} ms", error.getMessage(), reconnectDelayMs);
+                    scheduleConnect();
+                });
+    }
+
+    private void scheduleConnect()
+    {
+        timerConnectId = vertx.setTimer(reconnectDelayMs, id ->
+        {
+            timerConnectId = -1;
+            connect();
+        });
+    }
+
+    // Called on every (re)subscription, once LISTEN is in place
+    private void onSubscribed()
+    {
+        var registry = ProvisionRegistry.getInstance();
+
+        execute(ChangeFeedQueries.SELECT_VERSION_BOUNDS, new JsonArray())
+                .compose(rows ->
+                {
+                    var bounds = rows.getJsonArray("rows", new JsonArray()).getJsonObject(0);
+                    var minVersion = bounds.getLong("min_version", 0L);
+                    var maxVersion = bounds.getLong("max_version", 0L);
+
+                    if (maxVersion <= lastVersion)
+                    {
+                        return Future.succeededFuture();
+                    }
+
+                    // No watermark from startup, nothing tells which changes the registry already has
+                    if (lastVersion < 0 || minVersion > lastVersion + 1 || maxVersion - lastVersion > catchUpLimit)
+                    {
+                        // Missed changes were pruned, or too many to apply one by one
+                        fullReloads++;
+                        LOGGER.info("Change feed behind by {} versions, reloading all provisions", maxVersion - lastVersion);
+
+                        lastVersion = maxVersion;
+                        return registry.load().mapEmpty();
+                    }
+
+                    return catchUp();
+                })
+                .onSuccess(v ->
+                {
+                    isSubscribed = true;
+                    registry.setChangeFeedActive(true);
+                    LOGGER.info("Change feed subscribed at version {}", lastVersion);
+                })
+                .onFailure(error -> LOGGER.error("Change feed catch-up failed: {}", error.getMessage()));
+    }
+
+    private Future<Void> catchUp()
+    {
+        var params = new JsonArray()
+                .add(Math.max(0, lastVersion - CATCH_UP_OVERLAP))
+                .add(catchUpLimit + (int) CATCH_UP_OVERLAP);
+
+        return execute(ChangeFeedQueries.SELECT_CHANGES_SINCE, params)
+                .map(rows ->
+                {
+                    var rowsArray = rows.getJsonArray("rows", new JsonArray());
+
+                    // Apply each changed row once, whatever the number of changes it had
+                    var changed = new LinkedHashSet<String>();
+
+                    for (var i = 0; i < rowsArray.size(); i++)
+                    {
+                        var change = rowsArray.getJsonObject(i);
+
+                        if (changed.add(change.getString("entity") + ":" + change.getLong("entity_id")))
+                        {
+                            ProvisionRegistry.getInstance().applyChange(change.getString("entity"), change.getLong("entity_id"));
+                        }
+
+                        lastVersion = Math.max(lastVersion, change.getLong("version"));
+                    }
+
+                    catchUps++;
+                    LOGGER.info("Change feed caught up on {} changed rows, now at version {}", changed.size(), lastVersion);
+                    return null;
+                });
+    }
+
+    private void onNotification(String payload)
+    {
+        try
+        {
+            var change = new JsonObject(payload);
+
+            notifications++;
+            lastVersion = Math.max(lastVersion, change.getLong("version"));
+
+            ProvisionRegistry.getInstance().applyChange(change.getString("entity"), change.getLong("id"));
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("Invalid change notification {}: {}", payload, exception.getMessage());
+        }
+    }
+
+    private void pruneChangeLog()
+    {
+        execute(ChangeFeedQueries.PRUNE_CHANGE_LOG, new JsonArray().add(retentionHours))
+                .onSuccess(rows ->
+                {
+                    var rowsArray = rows.getJsonArray("rows", new JsonArray());
+                    var pruned = rowsArray.isEmpty() ? 0L : rowsArray.getJsonObject(0).getLong("pruned", 0L);
+
+                    if (pruned > 0)
+                    {
+                        LOGGER.info("Pruned {} change log entries older than {} hours", pruned, retentionHours);
+                    }
+                })
+                .onFailure(error -> LOGGER.error("Change log pruning failed: {}", error.getMessage()));
+    }
+
+    private Future<JsonObject> execute(String query, JsonArray params)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_PARAMS, params);
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .map(reply -> reply.body());
+    }
+
+    private JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("subscribed", isSubscribed)
+                .put("last_version", lastVersion)
+                .put("notifications", notifications)
+                .put("catch_ups", catchUps)
+                .put("full_reloads", fullReloads)
+                .put("registry_version", ProvisionRegistry.getInstance().getSnapshot().getVersion());
+    }
+}
@@ -7,8 +7,12 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import org.nms.database.queries.ChangeFeedQueries;
+import org.nms.database.queries.ClusterQueries;
 import org.nms.database.queries.CredentialQueries;
 import org.nms.database.queries.DiscoveryQueries;
+import org.nms.database.queries.JobQueries;
 //import org.nms.database.queries.PollingQueries;
 //import org.nms.database.queries.ProvisionQueries;
 import org.nms.database.queries.PollingQueries;
@@ -19,6 +23,8 @@ import org.nms.utils.DbUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+
 public class DatabaseVerticle extends AbstractVerticle {
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseVerticle.class);
     private DatabaseService dbService;
@@ -43,7 +49,17 @@ public class DatabaseVerticle extends AbstractVerticle {
         var sql = CredentialQueries.CREATE_CREDENTIAL_PROFILES_TABLE +
                 DiscoveryQueries.CREATE_DISCOVERY_PROFILES_TABLE +
                 ProvisionQueries.CREATE_PROVISION_TABLE +
-                PollingQueries.CREATE_POLLING_DATA_TABLE;
+                PollingQueries.RENAME_LEGACY_POLLING_DATA_TABLE +
+                PollingQueries.CREATE_POLLING_DATA_TABLE +
+                PollingQueries.CREATE_ENSURE_PARTITION_FUNCTION +
+                PollingQueries.CREATE_DROP_EXPIRED_PARTITIONS_FUNCTION +
+                PollingQueries.CREATE_PARSE_LEGACY_TIMESTAMP_FUNCTION +
+                PollingQueries.MIGRATE_LEGACY_POLLING_DATA +
+                ChangeFeedQueries.CREATE_CHANGE_LOG_TABLE +
+                ChangeFeedQueries.CREATE_NOTIFY_FUNCTION +
+                ChangeFeedQueries.CREATE_CHANGE_TRIGGERS +
+                ClusterQueries.CREATE_CLUSTER_TABLES +
+                JobQueries.CREATE_JOBS_TABLE;
 
         dbService.executeQuery(sql)
                 .onSuccess(rows -> promise.complete())
@@ -98,6 +114,49 @@ public class DatabaseVerticle extends AbstractVerticle {
                 handler.fail(400, "Invalid request format: " + exception.getMessage());
             }
         });
+
+        vertx.eventBus().<JsonObject>localConsumer(Constants.DB_EXECUTE_BATCH_EVENTBUS, handler ->
+        {
+            try
+            {
+                var request = handler.body();
+                var query = request.getString(Constants.DB_QUERY);
+                var batchParams = request.getJsonArray(Constants.DB_BATCH_PARAMS);
+
+                var batch = new ArrayList<Tuple>(batchParams.size());
+                for (var i = 0; i < batchParams.size(); i++)
+                {
+                    batch.add(DbUtil.jsonArrayToTuple(batchParams.getJsonArray(i)));
+                }
+
+                // One pipelined round trip for the whole batch
+                dbService.executeBatch(query, batch)
+                        .onSuccess(rows -> handler.reply(new JsonObject().put("rowCount", countBatchRows(rows))))
+                        .onFailure(error ->
+                        {
+                            LOGGER.error("Error executing batch of {} rows: {}", batch.size(), error.getMessage());
+                            handler.fail(500, error.getMessage());
+                        });
+            }
+            catch (Exception exception)
+            {
+                LOGGER.error("Error processing batch request: {}", exception.getMessage());
+                handler.fail(400, "Invalid request format: " + exception.getMessage());
+            }
+        });
+    }
+
+    // Each tuple of a batch produces its own RowSet, chained through next()
+    private int countBatchRows(RowSet<Row> rows)
+    {
+        var rowCount = 0;
+
+        for (var current = rows; current != null; current = current.next())
+        {
+            rowCount += current.rowCount();
+        }
+
+        return rowCount;
     }
 
     private JsonObject convertRowsToJson(RowSet<Row> rows)
@@ -0,0 +1,119 @@
+package org.nms.database;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.database.queries.PollingQueries;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the daily partitions of polling_data in shape.
+ * Partitions are created a few days ahead so inserts never land in the default partition,
+ * and partitions older than the retention window are dropped as a whole instead of deleting rows.
+ * Retention, days created ahead and the maintenance interval are set in the NMS config file (see Main) with
+ * polling.retention.days, polling.partition.precreate.days and polling.partition.maintenance.interval.ms.
+ */
+public class PartitionMaintenanceVerticle extends AbstractVerticle
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionMaintenanceVerticle.class);
+
+    private static final int DEFAULT_RETENTION_DAYS = 30;
+    private static final int DEFAULT_PRECREATE_DAYS = 7;
+    private static final long DEFAULT_MAINTENANCE_INTERVAL_MS = 3600000; // 1 hour
+
+    private int retentionDays;
+    private int precreateDays;
+    private long timerMaintenanceId;
+    private boolean isRunning = false;
+
+    @Override
+    public void start(Promise<Void> startPromise)
+    {
+        retentionDays = config().getInteger("polling.retention.days", DEFAULT_RETENTION_DAYS);
+        precreateDays = config().getInteger("polling.partition.precreate.days", DEFAULT_PRECREATE_DAYS);
+        var intervalMs = config().getLong("polling.partition.maintenance.interval.ms", DEFAULT_MAINTENANCE_INTERVAL_MS);
+
+        // Today's partition must exist before metrics start flowing
+        runMaintenance()
+                .onComplete(result ->
+                {
+                    timerMaintenanceId = vertx.setPeriodic(intervalMs, id -> runMaintenance());
+
+                    startPromise.complete();
+                    LOGGER.info("PartitionMaintenanceVerticle started, retention {} days, {} days created ahead", retentionDays, precreateDays);
+                });
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise)
+    {
+        if (timerMaintenanceId != 0)
+        {
+            vertx.cancelTimer(timerMaintenanceId);
+        }
+
+        stopPromise.complete();
+        LOGGER.info("PartitionMaintenanceVerticle stopped successfully");
+    }
+
+    private Future<Void> runMaintenance()
+    {
+        if (isRunning)
+        {
+            return Future.succeededFuture();
+        }
+
+        isRunning = true;
+
+        return execute(PollingQueries.ENSURE_FUTURE_PARTITIONS, precreateDays)
+                .compose(rows ->
+                {
+                    var created = firstValue(rows, "created");
+                    if (created > 0)
+                    {
+                        LOGGER.info("Created {} polling_data partitions", created);
+                    }
+
+                    return execute(PollingQueries.DROP_EXPIRED_PARTITIONS, retentionDays);
+                })
+                .<Void>map(rows ->
+                {
+                    var dropped = firstValue(rows, "dropped");
+                    if (dropped > 0)
+                    {
+                        LOGGER.info("Dropped {} polling_data partitions older than {} days", dropped, retentionDays);
+                    }
+
+                    return null;
+                })
+                .onFailure(error -> LOGGER.error("Partition maintenance failed: {}", error.getMessage()))
+                .onComplete(result -> isRunning = false);
+    }
+
+    private Future<JsonObject> execute(String query, int param)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_PARAMS, new JsonArray().add(param));
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .map(reply -> reply.body());
+    }
+
+    private long firstValue(JsonObject rows, String column)
+    {
+        var rowsArray = rows.getJsonArray("rows", new JsonArray());
+
+        if (rowsArray.isEmpty())
+        {
+            return 0;
+        }
+
+        var value = rowsArray.getJsonObject(0).getLong(column);
+        return value != null ? value : 0;
+    }
+}
@@ -0,0 +1,107 @@
+package org.nms.database.queries;
+
+public class ChangeFeedQueries
+{
+    // Channel the triggers notify on
+    public static final String CHANNEL = "nms_config_changes";
+
+    // Versioned log of configuration changes, lets a listener catch up on what it missed while disconnected
+    public static final String CREATE_CHANGE_LOG_TABLE = """
+
+            CREATE TABLE IF NOT EXISTS config_change_log (
+                version BIGSERIAL PRIMARY KEY,
+                entity VARCHAR(50) NOT NULL,
+                entity_id INTEGER NOT NULL,
+                operation VARCHAR(10) NOT NULL,
+                changed_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP
+            );
+
+            CREATE INDEX IF NOT EXISTS idx_config_change_log_changed_at ON config_change_log (changed_at);
+            """;
+
+    // Log every row change and notify listeners with its version.
+    // Updates of discovery_profiles that only touch the discovery run result (status, time, message) are skipped,
+    // no provision query reads them, so they do not change what is polled.
+    public static final String CREATE_NOTIFY_FUNCTION = """
+
+            CREATE OR REPLACE FUNCTION notify_config_change() RETURNS TRIGGER AS $$
+            DECLARE
+                ignored TEXT[] := CASE WHEN TG_TABLE_NAME = 'discovery_profiles'
+                        THEN ARRAY['lastdiscoverytime', 'message', 'status']
+                        ELSE ARRAY[]::TEXT[] END;
+                row_data JSONB;
+                changed_id INTEGER;
+                change_version BIGINT;
+            BEGIN
+                IF TG_OP = 'DELETE' THEN
+                    row_data := to_jsonb(OLD);
+                ELSE
+                    row_data := to_jsonb(NEW);
+                END IF;
+
+                IF TG_OP = 'UPDATE' AND to_jsonb(OLD) - ignored = row_data - ignored THEN
+                    RETURN NULL;
+                END IF;
+
+                changed_id := (row_data ->> CASE WHEN TG_TABLE_NAME = 'provision' THEN 'monitor_id' ELSE 'id' END)::INTEGER;
+
+                INSERT INTO config_change_log (entity, entity_id, operation)
+                VALUES (TG_TABLE_NAME, changed_id, TG_OP)
+                RETURNING version INTO change_version;
+
+                PERFORM pg_notify('nms_config_changes', json_build_object(
+                        'version', change_version,
+                        'entity', TG_TABLE_NAME,
+                        'id', changed_id,
+                        'op', TG_OP)::text);
+
+                RETURN NULL;
+            END;
+            $$ LANGUAGE plpgsql;
+            """;
+
+    public static final String CREATE_CHANGE_TRIGGERS = """
+
+            DROP TRIGGER IF EXISTS credential_profiles_config_change ON credential_profiles;
+            CREATE TRIGGER credential_profiles_config_change
+                AFTER INSERT OR UPDATE OR DELETE ON credential_profiles
+                FOR EACH ROW EXECUTE FUNCTION notify_config_change();
+
+            DROP TRIGGER IF EXISTS discovery_profiles_config_change ON discovery_profiles;
+            CREATE TRIGGER discovery_profiles_config_change
+                AFTER INSERT OR UPDATE OR DELETE ON discovery_profiles
+                FOR EACH ROW EXECUTE FUNCTION notify_config_change();
+
+            DROP TRIGGER IF EXISTS provision_config_change ON provision;
+            CREATE TRIGGER provision_config_change
+                AFTER INSERT OR UPDATE OR DELETE ON provision
+                FOR EACH ROW EXECUTE FUNCTION notify_config_change();
+            """;
+
+    // Oldest and newest version still in the log, 0 when empty
+    public static final String SELECT_VERSION_BOUNDS = """
+            SELECT
+                COALESCE(MIN(version), 0) AS min_version,
+                COALESCE(MAX(version), 0) AS max_version
+            FROM config_change_log;
+            """;
+
+    // Changes after a version, oldest first
+    public static final String SELECT_CHANGES_SINCE = """
+            SELECT version, entity, entity_id, operation
+            FROM config_change_log
+            WHERE version > $1
+            ORDER BY version
+            LIMIT $2;
+            """;
+
+    // Drop log entries older than the given number of hours, returns the number deleted
+    public static final String PRUNE_CHANGE_LOG = """
+            WITH pruned AS (
+                DELETE FROM config_change_log
+                WHERE changed_at < CURRENT_TIMESTAMP - make_interval(hours => $1)
+                RETURNING 1
+            )
+            SELECT COUNT(*) AS pruned FROM pruned;
+            """;
+}
@@ -0,0 +1,68 @@
+package org.nms.database.queries;
+
+public class ClusterQueries
+{
+    // Nodes taking part in polling, and which node holds each monitor shard
+    public static final String CREATE_CLUSTER_TABLES = """
+
+            CREATE TABLE IF NOT EXISTS polling_nodes (
+                node_id VARCHAR(100) PRIMARY KEY,
+                started_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                heartbeat_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP
+            );
+
+            CREATE TABLE IF NOT EXISTS polling_shard_leases (
+                shard INTEGER PRIMARY KEY,
+                node_id VARCHAR(100) NOT NULL,
+                lease_expires_at TIMESTAMPTZ NOT NULL
+            );
+            """;
+
+    public static final String HEARTBEAT_NODE = """
+            INSERT INTO polling_nodes (node_id)
+            VALUES ($1)
+            ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = CURRENT_TIMESTAMP;
+            """;
+
+    // Nodes that sent a heartbeat within the given number of milliseconds
+    public static final String SELECT_LIVE_NODES = """
+            SELECT node_id
+            FROM polling_nodes
+            WHERE heartbeat_at > CURRENT_TIMESTAMP - make_interval(secs => $1::INTEGER / 1000.0)
+            ORDER BY node_id;
+            """;
+
+    // Give up the leases of a node on shards outside the comma separated list
+    public static final String RELEASE_SHARDS = """
+            DELETE FROM polling_shard_leases
+            WHERE node_id = $1 AND NOT (shard = ANY (string_to_array($2, ',')::INTEGER[]));
+            """;
+
+    // Take or renew the leases on the comma separated shards. A shard held by another node is only
+    // taken once that lease expired. Returns the shards the node now holds.
+    public static final String CLAIM_SHARDS = """
+            INSERT INTO polling_shard_leases (shard, node_id, lease_expires_at)
+            SELECT shard, $1, CURRENT_TIMESTAMP + make_interval(secs => $3::INTEGER / 1000.0)
+            FROM unnest(string_to_array($2, ',')::INTEGER[]) AS shard
+            ON CONFLICT (shard) DO UPDATE
+                SET node_id = EXCLUDED.node_id,
+                    lease_expires_at = EXCLUDED.lease_expires_at
+                WHERE polling_shard_leases.node_id = EXCLUDED.node_id
+                   OR polling_shard_leases.lease_expires_at < CURRENT_TIMESTAMP
+            RETURNING shard;
+            """;
+
+    // Leave the cluster, the remaining nodes take the shards without waiting for the leases to expire
+    public static final String REMOVE_NODE = """
+            WITH released AS (
+                DELETE FROM polling_shard_leases WHERE node_id = $1
+            )
+            DELETE FROM polling_nodes WHERE node_id = $1;
+            """;
+
+    // Forget nodes silent for longer than the given number of milliseconds
+    public static final String PRUNE_DEAD_NODES = """
+            DELETE FROM polling_nodes
+            WHERE heartbeat_at < CURRENT_TIMESTAMP - make_interval(secs => $1::INTEGER / 1000.0);
+            """;
+}
@@ -35,6 +35,15 @@ public class CredentialQueries
             SELECT id, profile_name, protocol, username, password
             FROM credential_profiles""";
 
+    // One page of credential profiles after the cursor ID, optionally of one protocol
+    public static final String SELECT_CREDENTIAL_PROFILES_PAGE = """
+            SELECT id, profile_name, protocol, username, password
+            FROM credential_profiles
+            WHERE id > COALESCE($1::INTEGER, 0)
+              AND ($2::TEXT IS NULL OR protocol = $2::TEXT)
+            ORDER BY id
+            LIMIT $3""";
+
     // Update a credential profile by ID
     public static final String UPDATE_CREDENTIAL_PROFILE = """
             UPDATE credential_profiles
@@ -46,6 +46,27 @@ public class DiscoveryQueries
         JOIN credential_profiles c ON d. credential_id = c.id;
     """;
 
+    // One page of discovery profiles after the cursor ID, optionally with one status
+    public static final String SELECT_DISCOVERY_PAGE_WITH_CREDENTIALS = """
+        SELECT
+            d.id AS discovery_id,
+            d.discovery_name,
+            d.ip_address,
+            d.status,
+            d.port_no,
+            d.lastdiscoverytime,
+            c.id AS credential_id,
+            c.profile_name,
+            c.username,
+            c.protocol
+        FROM discovery_profiles d
+        JOIN credential_profiles c ON d.credential_id = c.id
+        WHERE d.id > COALESCE($1::INTEGER, 0)
+          AND ($2::TEXT IS NULL OR d.status = $2::TEXT::BOOLEAN)
+        ORDER BY d.id
+        LIMIT $3;
+    """;
+
     public static final String SELECT_DISCOVERY_BY_STATUS_WITH_CREDENTIALS = """
         SELECT 
             d.id AS discovery_id,
@@ -81,16 +102,74 @@ public class DiscoveryQueries
     WHERE d.id = $1;
 """;
 
+    // Read the discovery profiles with the comma separated IDs, with their credentials
+    public static final String SELECT_DISCOVERIES_BY_IDS_WITH_CREDENTIALS = """
+        SELECT
+            d.id AS discovery_id,
+            d.discovery_name,
+            d.ip_address,
+            d.port_no,
+            c.id AS credential_id,
+            c.username,
+            c.password,
+            c.protocol
+        FROM discovery_profiles d
+        JOIN credential_profiles c ON d.credential_id = c.id
+        WHERE d.id = ANY (string_to_array($1, ',')::INTEGER[]);
+    """;
+
+    // Every discovery profile with its last result and credentials, re-validated by the rediscovery scheduler
+    public static final String SELECT_DISCOVERIES_FOR_REDISCOVERY = """
+        SELECT
+            d.id AS discovery_id,
+            d.discovery_name,
+            d.ip_address,
+            d.port_no,
+            d.status,
+            d.message,
+            c.id AS credential_id,
+            c.username,
+            c.password,
+            c.protocol
+        FROM discovery_profiles d
+        JOIN credential_profiles c ON d.credential_id = c.id;
+    """;
+
+    // Record the outcome of a discovery run
+    public static final String UPDATE_DISCOVERY_RESULT = """
+            UPDATE discovery_profiles
+            SET status = $1, lastDiscoveryTime = $2, message = $3
+            WHERE id = $4""";
+
+    // Create or refresh the profile of a host found by a range discovery
+    public static final String UPSERT_DISCOVERED_PROFILE = """
+            INSERT INTO discovery_profiles (discovery_name, credential_id, ip_address, port_no, status, lastDiscoveryTime, message)
+            VALUES ($1, $2, $3, $4, $5, $6, $7)
+            ON CONFLICT (discovery_name) DO UPDATE
+                SET credential_id = EXCLUDED.credential_id,
+                    status = EXCLUDED.status,
+                    lastDiscoveryTime = EXCLUDED.lastDiscoveryTime,
+                    message = EXCLUDED.message""";
+
     // Read all discovery profiles
     public static final String SELECT_ALL_DISCOVERY_PROFILES = """
             SELECT id, discovery_name, credential_id, ip_address, port_no, status, lastDiscoveryTime, message
             FROM discovery_profiles""";
 
-    // Update a discovery profile by ID
+    // Update a discovery profile by ID, returning whether its address, port or credential changed
     public static final String UPDATE_DISCOVERY_PROFILE = """
-            UPDATE discovery_profiles
+            WITH previous AS (
+                SELECT id, credential_id, ip_address, port_no
+                FROM discovery_profiles
+                WHERE id = $8
+                FOR UPDATE
+            )
+            UPDATE discovery_profiles d
             SET discovery_name = $1, credential_id = $2, ip_address = $3, port_no = $4, status = $5, lastDiscoveryTime = $6 , message = $7
-            WHERE id = $8""";
+            FROM previous
+            WHERE d.id = previous.id
+            RETURNING (d.credential_id, d.ip_address, d.port_no)
+                IS DISTINCT FROM (previous.credential_id, previous.ip_address, previous.port_no) AS connection_changed""";
 
     // Delete a discovery profile by ID
     public static final String DELETE_DISCOVERY_PROFILE = """
@@ -0,0 +1,62 @@
+package org.nms.database.queries;
+
+public class JobQueries
+{
+    // Jobs of the job API, kept here so a job can still be looked up once it left the in-memory table.
+    // Times are epoch milliseconds.
+    public static final String CREATE_JOBS_TABLE = """
+
+            CREATE TABLE IF NOT EXISTS jobs (
+                id VARCHAR(64) PRIMARY KEY,
+                type VARCHAR(50) NOT NULL,
+                job_key VARCHAR(100),
+                status VARCHAR(20) NOT NULL,
+                result JSONB,
+                error TEXT,
+                created_at BIGINT NOT NULL,
+                started_at BIGINT,
+                finished_at BIGINT
+            );
+
+            CREATE INDEX IF NOT EXISTS idx_jobs_created_at ON jobs (created_at);
+            """;
+
+    // Record a submitted job, a finished job written first is left as it is
+    public static final String INSERT_JOB = """
+            INSERT INTO jobs (id, type, job_key, status, created_at, started_at)
+            VALUES ($1, $2, $3, $4, $5, $6)
+            ON CONFLICT (id) DO NOTHING;
+            """;
+
+    // Record the outcome of a job
+    public static final String UPSERT_JOB_RESULT = """
+            INSERT INTO jobs (id, type, job_key, status, result, error, created_at, started_at, finished_at)
+            VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9)
+            ON CONFLICT (id) DO UPDATE
+                SET status = EXCLUDED.status,
+                    result = EXCLUDED.result,
+                    error = EXCLUDED.error,
+                    started_at = EXCLUDED.started_at,
+                    finished_at = EXCLUDED.finished_at;
+            """;
+
+    public static final String SELECT_JOB_BY_ID = """
+            SELECT id, type, job_key, status, result, error, created_at, started_at, finished_at
+            FROM jobs
+            WHERE id = $1;
+            """;
+
+    // Jobs a previous run of this process left unfinished, created before the given time, can never finish
+    public static final String FAIL_INTERRUPTED_JOBS = """
+            UPDATE jobs
+            SET status = $1, error = $2, finished_at = $3
+            WHERE finished_at IS NULL
+              AND created_at < $3;
+            """;
+
+    // Forget jobs created before the given time
+    public static final String DELETE_EXPIRED_JOBS = """
+            DELETE FROM jobs
+            WHERE created_at < $1;
+            """;
+}
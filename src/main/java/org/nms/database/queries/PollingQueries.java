@@ -3,47 +3,177 @@ package org.nms.database.queries;
 public class PollingQueries
 {
 
-    // Create the polling_data table
+    // Move a pre-partitioning polling_data table out of the way, its rows are copied by MIGRATE_LEGACY_POLLING_DATA
+    public static final String RENAME_LEGACY_POLLING_DATA_TABLE = """
+            
+            DO $$
+            BEGIN
+                IF (SELECT relkind FROM pg_class WHERE oid = to_regclass('polling_data')) = 'r' THEN
+                    ALTER TABLE polling_data RENAME TO polling_data_legacy;
+                END IF;
+            END
+            $$;
+            """;
+
+    // Create the polling_data table, range partitioned by day on ts (UTC day boundaries)
     public static final String CREATE_POLLING_DATA_TABLE = """
             
-            CREATE TABLE IF NOT EXISTS Polling_data (
+            CREATE TABLE IF NOT EXISTS polling_data (
                 monitor_id INTEGER NOT NULL,
                 data JSONB NOT NULL,
-                timestamp VARCHAR(50) DEFAULT CURRENT_TIMESTAMP,
+                ts TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
                 FOREIGN KEY (monitor_id) REFERENCES provision(monitor_id)
-            );
-           """;
+            ) PARTITION BY RANGE (ts);
+            
+            CREATE TABLE IF NOT EXISTS polling_data_default PARTITION OF polling_data DEFAULT;
+            
+            CREATE INDEX IF NOT EXISTS idx_polling_data_monitor_ts ON polling_data (monitor_id, ts);
+            """;
 
-//    -- Add index for faster lookups
-//    CREATE INDEX IF NOT EXISTS idx_polling_data_monitor_id ON Polling_data(monitor_id);
-//    CREATE INDEX IF NOT EXISTS idx_polling_data_timestamp ON Polling_data(timestamp);
+    // Create the partition for one UTC day, returns true when it did not exist yet.
+    // Rows of that day that already landed in the default partition are moved into it.
+    public static final String CREATE_ENSURE_PARTITION_FUNCTION = """
+            
+            CREATE OR REPLACE FUNCTION ensure_polling_partition(day DATE) RETURNS BOOLEAN AS $$
+            DECLARE
+                partition_name TEXT := 'polling_data_' || to_char(day, 'YYYYMMDD');
+                lower_bound TIMESTAMPTZ := day::timestamp AT TIME ZONE 'UTC';
+                upper_bound TIMESTAMPTZ := (day + 1)::timestamp AT TIME ZONE 'UTC';
+            BEGIN
+                IF to_regclass(partition_name) IS NOT NULL THEN
+                    RETURN FALSE;
+                END IF;
+            
+                CREATE TEMP TABLE polling_partition_move ON COMMIT DROP AS
+                WITH moved AS (
+                    DELETE FROM polling_data_default
+                    WHERE ts >= lower_bound AND ts < upper_bound
+                    RETURNING monitor_id, data, ts
+                )
+                SELECT * FROM moved;
+            
+                EXECUTE format('CREATE TABLE %I PARTITION OF polling_data FOR VALUES FROM (%L) TO (%L)',
+                        partition_name, lower_bound, upper_bound);
+            
+                INSERT INTO polling_data (monitor_id, data, ts)
+                SELECT monitor_id, data, ts FROM polling_partition_move;
+            
+                DROP TABLE polling_partition_move;
+                RETURN TRUE;
+            END;
+            $$ LANGUAGE plpgsql;
+            """;
 
+    // Drop daily partitions that ended before the retention window, returns the number dropped
+    public static final String CREATE_DROP_EXPIRED_PARTITIONS_FUNCTION = """
+            
+            CREATE OR REPLACE FUNCTION drop_expired_polling_partitions(retention_days INTEGER) RETURNS INTEGER AS $$
+            DECLARE
+                partition_name TEXT;
+                dropped INTEGER := 0;
+            BEGIN
+                FOR partition_name IN
+                    SELECT child.relname
+                    FROM pg_inherits
+                    JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+                    WHERE pg_inherits.inhparent = 'polling_data'::regclass
+                      AND child.relname ~ '^polling_data_[0-9]{8}$'
+                      AND to_date(substring(child.relname FROM 14), 'YYYYMMDD')
+                            < (CURRENT_TIMESTAMP AT TIME ZONE 'UTC')::date - retention_days
+                LOOP
+                    EXECUTE format('DROP TABLE %I', partition_name);
+                    dropped := dropped + 1;
+                END LOOP;
+                RETURN dropped;
+            END;
+            $$ LANGUAGE plpgsql;
+            """;
+
+    // Parse a timestamp of a pre-partitioning row, the current time when it is missing or unparsable
+    public static final String CREATE_PARSE_LEGACY_TIMESTAMP_FUNCTION = """
+            
+            CREATE OR REPLACE FUNCTION parse_legacy_polling_timestamp(value TEXT) RETURNS TIMESTAMPTZ AS $$
+            BEGIN
+                RETURN COALESCE(value::timestamptz, CURRENT_TIMESTAMP);
+            EXCEPTION WHEN invalid_datetime_format OR datetime_field_overflow OR invalid_parameter_value THEN
+                RETURN CURRENT_TIMESTAMP;
+            END;
+            $$ LANGUAGE plpgsql STABLE;
+            """;
+
+    // Copy rows of a renamed pre-partitioning table into daily partitions, then drop it.
+    // Unparsable timestamps fall back to the migration time instead of aborting startup.
+    public static final String MIGRATE_LEGACY_POLLING_DATA = """
+            
+            DO $$
+            BEGIN
+                IF to_regclass('polling_data_legacy') IS NOT NULL THEN
+                    PERFORM ensure_polling_partition(day)
+                    FROM (
+                        SELECT DISTINCT (parse_legacy_polling_timestamp(timestamp::text) AT TIME ZONE 'UTC')::date AS day
+                        FROM polling_data_legacy
+                    ) AS days;
+            
+                    INSERT INTO polling_data (monitor_id, data, ts)
+                    SELECT monitor_id, data, parse_legacy_polling_timestamp(timestamp::text)
+                    FROM polling_data_legacy;
+            
+                    DROP TABLE polling_data_legacy;
+                END IF;
+            END
+            $$;
+            """;
+
+    // Make sure partitions exist from today up to $1 days ahead, returns the number created
+    public static final String ENSURE_FUTURE_PARTITIONS = """
+            SELECT COUNT(*) FILTER (WHERE created) AS created
+            FROM (
+                SELECT ensure_polling_partition((CURRENT_TIMESTAMP AT TIME ZONE 'UTC')::date + day_offset) AS created
+                FROM generate_series(0, $1) AS day_offset
+            ) AS partitions""";
+
+    public static final String DROP_EXPIRED_PARTITIONS = """
+            SELECT drop_expired_polling_partitions($1) AS dropped""";
 
     // Create a new polling profile
     public static final String INSERT_POLLING_DATA_PROFILE = """
-            INSERT INTO Polling_data (monitor_id, data, timestamp) VALUES ($1, $2, $3)
+            INSERT INTO polling_data (monitor_id, data, ts) VALUES ($1, $2, $3::text::timestamptz)
             """;
 
-    // Read a polling profile by ID
+    // Read the latest polling sample of a monitor
     public static final String SELECT_POLLING_PROFILE_BY_ID = """
-            SELECT monitor_id, data, timestamp
-            FROM Polling_data
-            WHERE id = $1""";
+            SELECT monitor_id, data, ts::text AS timestamp
+            FROM polling_data
+            WHERE monitor_id = $1
+            ORDER BY ts DESC
+            LIMIT 1""";
 
     // Read all polling profiles
     public static final String SELECT_ALL_POLLING_DATA = """
-            SELECT monitor_id, data, timestamp
-            FROM Polling_data""";
+            SELECT monitor_id, data, ts::text AS timestamp
+            FROM polling_data""";
+
+    // One page of polling data after the cursor (monitor_id, ts), in the order of idx_polling_data_monitor_ts.
+    // Optionally of one monitor and within [from, to).
+    public static final String SELECT_POLLING_DATA_PAGE = """
+            SELECT monitor_id, data, ts::text AS timestamp
+            FROM polling_data
+            WHERE (monitor_id, ts) > (COALESCE($1::INTEGER, -1), COALESCE($2::TEXT::TIMESTAMPTZ, '-infinity'::TIMESTAMPTZ))
+              AND ($3::TEXT IS NULL OR monitor_id = $3::TEXT::INTEGER)
+              AND ($4::TEXT IS NULL OR ts >= $4::TEXT::TIMESTAMPTZ)
+              AND ($5::TEXT IS NULL OR ts < $5::TEXT::TIMESTAMPTZ)
+            ORDER BY monitor_id, ts
+            LIMIT $6""";
 
 
     // Delete a polling profile by ID
     public static final String DELETE_POLLING_PROFILE = """
-            DELETE FROM Polling_data
+            DELETE FROM polling_data
             WHERE monitor_id = $1""";
 
     public static final String UPDATE_POLLING_DATA_PROFILE = """
         UPDATE polling_data
-        SET data = $1, timestamp = $2
+        SET data = $1, ts = $2::text::timestamptz
         WHERE monitor_id = $3;
     """;
 }
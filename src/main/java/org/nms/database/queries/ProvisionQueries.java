@@ -136,6 +136,8 @@ public class ProvisionQueries
                 is_deleted BOOLEAN DEFAULT FALSE,
                 FOREIGN KEY (discovery_id) REFERENCES discovery_profiles(id)
             );
+            
+            ALTER TABLE provision ADD COLUMN IF NOT EXISTS poll_interval_seconds INTEGER NOT NULL DEFAULT 60;
             """;
 
     // Insert a new provision record
@@ -160,14 +162,35 @@ public class ProvisionQueries
             WHERE p.is_deleted = FALSE;
             """;
 
+    // One page of provisions after the cursor monitor ID, optionally with one status
+    public static final String SELECT_PROVISIONS_PAGE = """
+            SELECT
+                p.monitor_id,
+                p.discovery_id,
+                p.status AS provision_status,
+                d.discovery_name,
+                d.ip_address,
+                d.port_no,
+                d.lastdiscoverytime
+            FROM provision p
+            JOIN discovery_profiles d ON p.discovery_id = d.id
+            WHERE p.is_deleted = FALSE
+              AND p.monitor_id > COALESCE($1::INTEGER, 0)
+              AND ($2::TEXT IS NULL OR p.status = $2::TEXT::BOOLEAN)
+            ORDER BY p.monitor_id
+            LIMIT $3;
+            """;
+
     public static final String SELECT_ALL_STATUS_TRUE_PROVISIONS = """
             SELECT
                 p.monitor_id,
                 p.discovery_id,
                 p.status AS provision_status,
+                p.poll_interval_seconds,
                 d.discovery_name,
                 d.ip_address,
                 d.port_no,
+                d.credential_id,
                 c.username,
                 c.password,
                 c.protocol
@@ -207,9 +230,11 @@ public class ProvisionQueries
                 p.monitor_id,
                 p.discovery_id,
                 p.status AS provision_status,
+                p.poll_interval_seconds,
                 d.discovery_name,
                 d.ip_address,
                 d.port_no,
+                d.credential_id,
                 c.username,
                 c.password,
                 c.protocol
@@ -219,6 +244,46 @@ public class ProvisionQueries
             WHERE p.status = TRUE AND p.is_deleted = FALSE AND p.monitor_id = $1;
             """;
 
+    // Active provisions of one discovery profile
+    public static final String SELECT_ACTIVE_PROVISIONS_BY_DISCOVERY_ID = """
+            SELECT
+                p.monitor_id,
+                p.discovery_id,
+                p.status AS provision_status,
+                p.poll_interval_seconds,
+                d.discovery_name,
+                d.ip_address,
+                d.port_no,
+                d.credential_id,
+                c.username,
+                c.password,
+                c.protocol
+            FROM provision p
+            JOIN discovery_profiles d ON p.discovery_id = d.id
+            JOIN credential_profiles c ON d.credential_id = c.id
+            WHERE p.status = TRUE AND p.is_deleted = FALSE AND d.id = $1;
+            """;
+
+    // Active provisions using one credential profile
+    public static final String SELECT_ACTIVE_PROVISIONS_BY_CREDENTIAL_ID = """
+            SELECT
+                p.monitor_id,
+                p.discovery_id,
+                p.status AS provision_status,
+                p.poll_interval_seconds,
+                d.discovery_name,
+                d.ip_address,
+                d.port_no,
+                d.credential_id,
+                c.username,
+                c.password,
+                c.protocol
+            FROM provision p
+            JOIN discovery_profiles d ON p.discovery_id = d.id
+            JOIN credential_profiles c ON d.credential_id = c.id
+            WHERE p.status = TRUE AND p.is_deleted = FALSE AND c.id = $1;
+            """;
+
     // Soft delete provision record by discovery ID
     public static final String DELETE_PROVISION_BY_DISCOVERY_ID = """
             UPDATE provision
@@ -0,0 +1,287 @@
+package org.nms.polling;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the batches of each metrics request.
+ * The plugin answers one request with total_batches results, each tagged with a 1-based batch_id.
+ * In streaming mode each device is sent on its own, tagged with a 1-based seq out of total_devices,
+ * and is tracked like a batch of one.
+ * A request is complete once every batch arrived; until then its progress is reported as partial.
+ * If no batch arrives for the timeout, the request is handed to the timeout handler with the devices
+ * that are still missing, so only those are retried or marked.
+ * Runs on the owning verticle's event loop.
+ */
+public class BatchCompletionTracker
+{
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final Vertx vertx;
+    private final long timeoutMs;
+    private final Handler<RequestProgress> timeoutHandler;
+    private final Map<String, RequestProgress> requests = new HashMap<>();
+
+    // Counters
+    private long completedRequests;
+    private long timedOutRequests;
+    private long partialRequests;
+    private long lastCycleLatencyMs;
+    private long maxCycleLatencyMs;
+    private long totalCycleLatencyMs;
+
+    public BatchCompletionTracker(Vertx vertx, long timeoutMs, Handler<RequestProgress> timeoutHandler)
+    {
+        this.vertx = vertx;
+        this.timeoutMs = timeoutMs;
+        this.timeoutHandler = timeoutHandler;
+    }
+
+    /**
+     * Start tracking a request that was just sent.
+     * @param provisions Devices in the request, keyed by monitor_id
+     * @param attempt 0 for the first send, incremented for each retry
+     */
+    public void register(String requestId, JsonArray provisions, int attempt)
+    {
+        var progress = new RequestProgress(requestId, attempt);
+
+        for (var i = 0; i < provisions.size(); i++)
+        {
+            var provision = provisions.getJsonObject(i);
+            progress.missing.put(provision.getLong(Constants.MONITOR_ID), provision);
+
+            var intervalMs = provision.getInteger(Constants.PROVISION_POLL_INTERVAL, DEFAULT_INTERVAL_SECONDS) * 1000L;
+            progress.intervalMs = progress.intervalMs > 0 ? Math.min(progress.intervalMs, intervalMs) : intervalMs;
+        }
+
+        requests.put(requestId, progress);
+        arm(progress);
+    }
+
+    /**
+     * Forget a request that could not be sent.
+     */
+    public void cancel(String requestId)
+    {
+        var progress = requests.remove(requestId);
+
+        if (progress != null)
+        {
+            vertx.cancelTimer(progress.timerId);
+        }
+    }
+
+    /**
+     * Record one batch result.
+     * @return Progress of the request, or null when the request is unknown or already finished
+     */
+    public RequestProgress onBatch(JsonObject response)
+    {
+        var progress = requests.get(response.getString("request_id"));
+
+        if (progress == null)
+        {
+            return null;
+        }
+
+        progress.totalBatches = response.getInteger("total_batches", 1);
+        progress.receivedBatches.set(response.getInteger("batch_id", 1));
+
+        response.getJsonObject("metrics", new JsonObject()).forEach(entry ->
+        {
+            if (entry.getValue() instanceof JsonObject deviceMetrics)
+            {
+                progress.missing.remove(deviceMetrics.getLong(Constants.MONITOR_ID));
+            }
+        });
+
+        return record(progress);
+    }
+
+    /**
+     * Record the streamed result of one device.
+     * @return Progress of the request, or null when the request is unknown or already finished
+     */
+    public RequestProgress onDevice(JsonObject response)
+    {
+        var progress = requests.get(response.getString("request_id"));
+
+        if (progress == null)
+        {
+            return null;
+        }
+
+        progress.totalBatches = response.getInteger("total_devices", 1);
+        progress.receivedBatches.set(response.getInteger("seq", 1));
+
+        var deviceMetrics = response.getJsonObject("metrics");
+
+        if (deviceMetrics != null)
+        {
+            progress.missing.remove(deviceMetrics.getLong(Constants.MONITOR_ID));
+        }
+
+        return record(progress);
+    }
+
+    private RequestProgress record(RequestProgress progress)
+    {
+        if (progress.isComplete())
+        {
+            requests.remove(progress.requestId);
+            vertx.cancelTimer(progress.timerId);
+
+            var latencyMs = progress.getElapsedMs();
+            completedRequests++;
+            lastCycleLatencyMs = latencyMs;
+            maxCycleLatencyMs = Math.max(maxCycleLatencyMs, latencyMs);
+            totalCycleLatencyMs += latencyMs;
+        }
+        else
+        {
+            // Progress was made, give the remaining batches a full timeout
+            vertx.cancelTimer(progress.timerId);
+            arm(progress);
+        }
+
+        return progress;
+    }
+
+    private void arm(RequestProgress progress)
+    {
+        progress.timerId = vertx.setTimer(timeoutMs, id ->
+        {
+            if (requests.remove(progress.requestId) == null)
+            {
+                return;
+            }
+
+            timedOutRequests++;
+
+            if (progress.receivedBatches.cardinality() > 0)
+            {
+                partialRequests++;
+            }
+
+            timeoutHandler.handle(progress);
+        });
+    }
+
+    public int getPendingCount()
+    {
+        return requests.size();
+    }
+
+    public JsonObject getStats()
+    {
+        var pending = new JsonArray();
+        requests.values().forEach(progress -> pending.add(progress.toJson()));
+
+        return new JsonObject()
+                .put("pending_requests", requests.size())
+                .put("completed_requests", completedRequests)
+                .put("timed_out_requests", timedOutRequests)
+                .put("partial_requests", partialRequests)
+                .put("last_cycle_latency_ms", lastCycleLatencyMs)
+                .put("max_cycle_latency_ms", maxCycleLatencyMs)
+                .put("avg_cycle_latency_ms", completedRequests > 0 ? totalCycleLatencyMs / completedRequests : 0)
+                .put("pending", pending);
+    }
+
+    public static final class RequestProgress
+    {
+        private final String requestId;
+        private final int attempt;
+        private final long startTimeMs = System.currentTimeMillis();
+        private final BitSet receivedBatches = new BitSet();
+        private final Map<Long, JsonObject> missing = new LinkedHashMap<>();
+        private int totalBatches = -1; // Unknown until the first batch arrives
+        private long intervalMs; // Shortest poll interval among the devices
+        private long timerId;
+
+        private RequestProgress(String requestId, int attempt)
+        {
+            this.requestId = requestId;
+            this.attempt = attempt;
+        }
+
+        public boolean isComplete()
+        {
+            // Batches can arrive without every device, e.g. a device the plugin could not parse
+            return missing.isEmpty() || (totalBatches > 0 && receivedBatches.cardinality() >= totalBatches);
+        }
+
+        public String getRequestId()
+        {
+            return requestId;
+        }
+
+        public int getAttempt()
+        {
+            return attempt;
+        }
+
+        public long getElapsedMs()
+        {
+            return System.currentTimeMillis() - startTimeMs;
+        }
+
+        public long getIntervalMs()
+        {
+            return intervalMs;
+        }
+
+        /**
+         * Provisions of the devices that have not reported yet, in request order.
+         */
+        public JsonArray getMissingProvisions()
+        {
+            return new JsonArray(new ArrayList<>(missing.values()));
+        }
+
+        public List<Long> getMissingMonitorIds()
+        {
+            return new ArrayList<>(missing.keySet());
+        }
+
+        /**
+         * 1-based IDs of batches that have not arrived, empty while total_batches is unknown.
+         */
+        public JsonArray getMissingBatches()
+        {
+            var batches = new JsonArray();
+
+            for (var batchId = 1; batchId <= totalBatches; batchId++)
+            {
+                if (!receivedBatches.get(batchId))
+                {
+                    batches.add(batchId);
+                }
+            }
+
+            return batches;
+        }
+
+        public JsonObject toJson()
+        {
+            return new JsonObject()
+                    .put("request_id", requestId)
+                    .put("attempt", attempt)
+                    .put("received_batches", receivedBatches.cardinality())
+                    .put("total_batches", totalBatches)
+                    .put("missing_devices", missing.size())
+                    .put("elapsed_ms", getElapsedMs());
+        }
+    }
+}
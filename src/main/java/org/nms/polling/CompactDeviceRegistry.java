@@ -0,0 +1,598 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.nms.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Struct-of-arrays store for the monitored devices, keyed by an int monitor ID.
+ * Every field lives in a parallel primitive array indexed by slot; IPv4 addresses are packed into ints,
+ * and credentials are dictionary encoded so devices sharing a profile share one entry.
+ * Slots stay dense: removing a device moves the last one into its slot.
+ * The ID to slot index is an open addressing table of ints, so lookups never box.
+ * Not thread safe, the owner drives it from a single event loop.
+ */
+public class CompactDeviceRegistry
+{
+    public static final int STATUS_DISABLED = 0;
+    public static final int STATUS_ACTIVE = 1;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int EMPTY_KEY = 0; // Monitor IDs start at 1
+    private static final int DELETED_KEY = -1;
+
+    // Per-slot columns
+    private int[] monitorIds;
+    private int[] ips;
+    private int[] ports;
+    private int[] statuses;
+    private int[] credentialRefs;
+    private int[] intervalsMs;
+    private long[] nextDueMs;
+    private int size = 0;
+
+    // monitor ID -> slot
+    private int[] indexKeys;
+    private int[] indexSlots;
+    private int indexUsed = 0; // Live and deleted keys, drives rehashing
+
+    // Credential dictionary with reference counts, freed entries are reused
+    private final List<Credential> credentials = new ArrayList<>();
+    private final Map<Credential, Integer> credentialIds = new HashMap<>();
+    private int[] credentialRefCounts = new int[16];
+    private final List<Integer> freeCredentialIds = new ArrayList<>();
+
+    // Hosts that are not IPv4 literals, rare enough for a map
+    private final Map<Integer, String> unpackedHosts = new HashMap<>();
+
+    public CompactDeviceRegistry()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompactDeviceRegistry(int initialCapacity)
+    {
+        var capacity = Math.max(16, initialCapacity);
+
+        monitorIds = new int[capacity];
+        ips = new int[capacity];
+        ports = new int[capacity];
+        statuses = new int[capacity];
+        credentialRefs = new int[capacity];
+        intervalsMs = new int[capacity];
+        nextDueMs = new long[capacity];
+
+        var indexCapacity = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        indexKeys = new int[indexCapacity];
+        indexSlots = new int[indexCapacity];
+    }
+
+    /**
+     * Insert or update a device from a provision.
+     * The next due time of an existing device is kept.
+     * @param provision Provision with monitor_id, ip, port, username, password, protocol and status
+     * @param intervalMs Poll interval
+     * @return Slot of the device
+     */
+    public int upsert(JsonObject provision, int intervalMs)
+    {
+        var monitorId = toMonitorId(provision.getLong(Constants.MONITOR_ID));
+        var credentialRef = internCredential(new Credential(provision.getString("username"),
+                provision.getString("password"), provision.getString("protocol")));
+
+        var slot = slotOf(monitorId);
+
+        if (slot < 0)
+        {
+            ensureCapacity(size + 1);
+
+            slot = size++;
+            monitorIds[slot] = monitorId;
+            nextDueMs[slot] = 0;
+            indexPut(monitorId, slot);
+        }
+        else
+        {
+            releaseCredential(credentialRefs[slot]);
+        }
+
+        var host = provision.getString("ip");
+        var packed = packIpv4(host);
+
+        if (packed == null)
+        {
+            ips[slot] = 0;
+            unpackedHosts.put(monitorId, host);
+        }
+        else
+        {
+            ips[slot] = packed;
+            unpackedHosts.remove(monitorId);
+        }
+
+        ports[slot] = provision.getInteger("port", 0);
+        statuses[slot] = provision.getBoolean("status", true) ? STATUS_ACTIVE : STATUS_DISABLED;
+        credentialRefs[slot] = credentialRef;
+        intervalsMs[slot] = intervalMs;
+
+        return slot;
+    }
+
+    /**
+     * Remove a device. The last slot is moved into the freed one.
+     * @return false when the device is unknown
+     */
+    public boolean remove(int monitorId)
+    {
+        var slot = slotOf(monitorId);
+
+        if (slot < 0)
+        {
+            return false;
+        }
+
+        releaseCredential(credentialRefs[slot]);
+        unpackedHosts.remove(monitorId);
+        indexRemove(monitorId);
+
+        var last = --size;
+
+        if (slot != last)
+        {
+            monitorIds[slot] = monitorIds[last];
+            ips[slot] = ips[last];
+            ports[slot] = ports[last];
+            statuses[slot] = statuses[last];
+            credentialRefs[slot] = credentialRefs[last];
+            intervalsMs[slot] = intervalsMs[last];
+            nextDueMs[slot] = nextDueMs[last];
+            indexPut(monitorIds[slot], slot);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return Slot of the device, or -1 when unknown
+     */
+    public int slotOf(int monitorId)
+    {
+        var mask = indexKeys.length - 1;
+
+        for (var i = mix(monitorId) & mask; ; i = (i + 1) & mask)
+        {
+            var key = indexKeys[i];
+
+            if (key == monitorId)
+            {
+                return indexSlots[i];
+            }
+
+            if (key == EMPTY_KEY)
+            {
+                return -1;
+            }
+        }
+    }
+
+    public boolean contains(int monitorId)
+    {
+        return slotOf(monitorId) >= 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getMonitorId(int slot)
+    {
+        return monitorIds[slot];
+    }
+
+    public int getPackedIp(int slot)
+    {
+        return ips[slot];
+    }
+
+    public String getIp(int slot)
+    {
+        var host = unpackedHosts.get(monitorIds[slot]);
+        return host != null ? host : unpackIpv4(ips[slot]);
+    }
+
+    public int getPort(int slot)
+    {
+        return ports[slot];
+    }
+
+    public int getStatus(int slot)
+    {
+        return statuses[slot];
+    }
+
+    public int getCredentialRef(int slot)
+    {
+        return credentialRefs[slot];
+    }
+
+    public int getIntervalMs(int slot)
+    {
+        return intervalsMs[slot];
+    }
+
+    public long getNextDueMs(int slot)
+    {
+        return nextDueMs[slot];
+    }
+
+    public void setNextDueMs(int slot, long dueMs)
+    {
+        nextDueMs[slot] = dueMs;
+    }
+
+    public int getCredentialCount()
+    {
+        return credentialIds.size();
+    }
+
+    /**
+     * Build the provision sent to the plugin for one device.
+     * The only allocation on the polling path, made per dispatched device.
+     */
+    public JsonObject toProvision(int slot)
+    {
+        var credential = credentials.get(credentialRefs[slot]);
+
+        return new JsonObject()
+                .put(Constants.MONITOR_ID, (long) monitorIds[slot])
+                .put("ip", getIp(slot))
+                .put("port", ports[slot])
+                .put("username", credential.username)
+                .put("password", credential.password)
+                .put("protocol", credential.protocol)
+                .put("status", statuses[slot] == STATUS_ACTIVE)
+                .put(Constants.PROVISION_POLL_INTERVAL, intervalsMs[slot] / 1000);
+    }
+
+    /**
+     * Cursor over every slot in order. The cursor is reusable and reading through it does not allocate.
+     * The registry must not be modified while iterating.
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Approximate bytes held by the columns, the index and the credential dictionary.
+     */
+    public long estimateFootprintBytes()
+    {
+        var columns = (long) monitorIds.length * (Integer.BYTES * 6 + Long.BYTES);
+        var index = (long) indexKeys.length * Integer.BYTES * 2;
+
+        // String header and array, roughly, for each distinct credential field
+        var dictionary = 0L;
+        for (var credential : credentialIds.keySet())
+        {
+            dictionary += 64 + 3 * 56 + length(credential.username) + length(credential.password) + length(credential.protocol);
+        }
+
+        return columns + index + dictionary + unpackedHosts.size() * 96L;
+    }
+
+    private static int length(String value)
+    {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Converts the database monitor ID, rejecting IDs that do not fit the int key space.
+     */
+    public static int toMonitorId(Long monitorId)
+    {
+        if (monitorId == null || monitorId <= 0 || monitorId > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Monitor ID out of range: " + monitorId);
+        }
+        return monitorId.intValue();
+    }
+
+    /**
+     * @return The address packed big-endian into an int, or null when the host is not an IPv4 literal
+     */
+    public static Integer packIpv4(String host)
+    {
+        if (host == null)
+        {
+            return null;
+        }
+
+        var packed = 0;
+        var octet = -1;
+        var dots = 0;
+
+        for (var i = 0; i < host.length(); i++)
+        {
+            var c = host.charAt(i);
+
+            if (c == '.')
+            {
+                if (octet < 0 || ++dots > 3)
+                {
+                    return null;
+                }
+                packed = (packed << 8) | octet;
+                octet = -1;
+            }
+            else if (c >= '0' && c <= '9')
+            {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+
+                if (octet > 255)
+                {
+                    return null;
+                }
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        if (octet < 0 || dots != 3)
+        {
+            return null;
+        }
+
+        return (packed << 8) | octet;
+    }
+
+    public static String unpackIpv4(int packed)
+    {
+        return ((packed >>> 24) & 0xFF) + "." + ((packed >>> 16) & 0xFF) + "." + ((packed >>> 8) & 0xFF) + "." + (packed & 0xFF);
+    }
+
+    private int internCredential(Credential credential)
+    {
+        var id = credentialIds.get(credential);
+
+        if (id == null)
+        {
+            if (freeCredentialIds.isEmpty())
+            {
+                id = credentials.size();
+                credentials.add(credential);
+
+                if (id >= credentialRefCounts.length)
+                {
+                    credentialRefCounts = Arrays.copyOf(credentialRefCounts, credentialRefCounts.length * 2);
+                }
+            }
+            else
+            {
+                id = freeCredentialIds.remove(freeCredentialIds.size() - 1);
+                credentials.set(id, credential);
+            }
+
+            credentialIds.put(credential, id);
+        }
+
+        credentialRefCounts[id]++;
+        return id;
+    }
+
+    private void releaseCredential(int id)
+    {
+        if (--credentialRefCounts[id] == 0)
+        {
+            credentialIds.remove(credentials.get(id));
+            credentials.set(id, null);
+            freeCredentialIds.add(id);
+        }
+    }
+
+    private void ensureCapacity(int required)
+    {
+        if (required <= monitorIds.length)
+        {
+            return;
+        }
+
+        var capacity = Math.max(required, monitorIds.length + (monitorIds.length >> 1));
+
+        monitorIds = Arrays.copyOf(monitorIds, capacity);
+        ips = Arrays.copyOf(ips, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        credentialRefs = Arrays.copyOf(credentialRefs, capacity);
+        intervalsMs = Arrays.copyOf(intervalsMs, capacity);
+        nextDueMs = Arrays.copyOf(nextDueMs, capacity);
+    }
+
+    private void indexPut(int monitorId, int slot)
+    {
+        // Keep the load factor, live plus deleted keys, under one half
+        if ((indexUsed + 1) * 2 > indexKeys.length)
+        {
+            rehash(size * 4 > indexKeys.length ? indexKeys.length * 2 : indexKeys.length);
+        }
+
+        var mask = indexKeys.length - 1;
+        var tombstone = -1;
+
+        for (var i = mix(monitorId) & mask; ; i = (i + 1) & mask)
+        {
+            var key = indexKeys[i];
+
+            if (key == monitorId)
+            {
+                indexSlots[i] = slot;
+                return;
+            }
+
+            if (key == DELETED_KEY && tombstone < 0)
+            {
+                tombstone = i;
+            }
+            else if (key == EMPTY_KEY)
+            {
+                var target = tombstone >= 0 ? tombstone : i;
+
+                if (tombstone < 0)
+                {
+                    indexUsed++;
+                }
+
+                indexKeys[target] = monitorId;
+                indexSlots[target] = slot;
+                return;
+            }
+        }
+    }
+
+    private void indexRemove(int monitorId)
+    {
+        var mask = indexKeys.length - 1;
+
+        for (var i = mix(monitorId) & mask; ; i = (i + 1) & mask)
+        {
+            var key = indexKeys[i];
+
+            if (key == monitorId)
+            {
+                indexKeys[i] = DELETED_KEY;
+                return;
+            }
+
+            if (key == EMPTY_KEY)
+            {
+                return;
+            }
+        }
+    }
+
+    private void rehash(int capacity)
+    {
+        indexKeys = new int[capacity];
+        indexSlots = new int[capacity];
+        indexUsed = 0;
+
+        var mask = capacity - 1;
+
+        for (var slot = 0; slot < size; slot++)
+        {
+            var i = mix(monitorIds[slot]) & mask;
+
+            while (indexKeys[i] != EMPTY_KEY)
+            {
+                i = (i + 1) & mask;
+            }
+
+            indexKeys[i] = monitorIds[slot];
+            indexSlots[i] = slot;
+            indexUsed++;
+        }
+    }
+
+    // Sequential IDs would otherwise fill runs of adjacent buckets
+    private static int mix(int key)
+    {
+        var h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reusable forward cursor over the slots.
+     */
+    public final class Cursor
+    {
+        private int slot = -1;
+
+        public boolean next()
+        {
+            return ++slot < size;
+        }
+
+        public void reset()
+        {
+            slot = -1;
+        }
+
+        public int slot()
+        {
+            return slot;
+        }
+
+        public int monitorId()
+        {
+            return monitorIds[slot];
+        }
+
+        public int packedIp()
+        {
+            return ips[slot];
+        }
+
+        public int port()
+        {
+            return ports[slot];
+        }
+
+        public int status()
+        {
+            return statuses[slot];
+        }
+
+        public int credentialRef()
+        {
+            return credentialRefs[slot];
+        }
+
+        public int intervalMs()
+        {
+            return intervalsMs[slot];
+        }
+
+        public long nextDueMs()
+        {
+            return nextDueMs[slot];
+        }
+    }
+
+    private static final class Credential
+    {
+        private final String username;
+        private final String password;
+        private final String protocol;
+
+        private Credential(String username, String password, String protocol)
+        {
+            this.username = username;
+            this.password = password;
+            this.protocol = protocol;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof Credential credential
+                    && Objects.equals(username, credential.username)
+                    && Objects.equals(password, credential.password)
+                    && Objects.equals(protocol, credential.protocol);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(username, password, protocol);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-monitor circuit breaker fed by the error field of each device's metrics.
+ * CLOSED: polled normally. After enough consecutive failures the device goes OPEN and is not polled
+ * until its backoff elapses; the next poll is then a single HALF_OPEN probe. A successful probe closes
+ * the breaker, a failed one reopens it with twice the backoff, up to a maximum. A probe that is never
+ * answered must be given up with abortProbe(), otherwise the device stays HALF_OPEN.
+ * Runs on the owning verticle's event loop.
+ */
+public class DeviceCircuitBreaker
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_BASE_BACKOFF_MS = 60000;
+    private static final long DEFAULT_MAX_BACKOFF_MS = 3600000;
+
+    private final int failureThreshold;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final Map<Long, DeviceHealth> devices = new HashMap<>();
+
+    // Counters
+    private long suppressedPolls;
+    private long probes;
+
+    public DeviceCircuitBreaker(JsonObject config)
+    {
+        this.failureThreshold = config.getInteger("polling.breaker.failure.threshold", DEFAULT_FAILURE_THRESHOLD);
+        this.baseBackoffMs = config.getLong("polling.breaker.backoff.base.ms", DEFAULT_BASE_BACKOFF_MS);
+        this.maxBackoffMs = config.getLong("polling.breaker.backoff.max.ms", DEFAULT_MAX_BACKOFF_MS);
+    }
+
+    /**
+     * Decide whether a due poll should be sent.
+     * @return false while the breaker is open, or while a half-open probe is outstanding
+     */
+    public boolean allowPoll(long monitorId)
+    {
+        var health = devices.get(monitorId);
+
+        if (health == null || health.state == State.CLOSED)
+        {
+            return true;
+        }
+
+        if (health.state == State.OPEN && System.currentTimeMillis() >= health.retryAtMs)
+        {
+            // Backoff elapsed, let one probe through
+            health.state = State.HALF_OPEN;
+            health.lastTransitionMs = System.currentTimeMillis();
+            probes++;
+            return true;
+        }
+
+        suppressedPolls++;
+        health.suppressed++;
+        return false;
+    }
+
+    public void recordSuccess(long monitorId)
+    {
+        var health = devices.get(monitorId);
+
+        if (health == null)
+        {
+            return;
+        }
+
+        if (health.state != State.CLOSED)
+        {
+            health.state = State.CLOSED;
+            health.lastTransitionMs = System.currentTimeMillis();
+        }
+
+        health.consecutiveFailures = 0;
+        health.backoffMs = 0;
+        health.lastError = null;
+    }
+
+    public void recordFailure(long monitorId, String error)
+    {
+        var health = devices.computeIfAbsent(monitorId, id -> new DeviceHealth());
+
+        health.consecutiveFailures++;
+        health.totalFailures++;
+        health.lastError = error;
+
+        if (health.state == State.HALF_OPEN
+                || (health.state == State.CLOSED && health.consecutiveFailures >= failureThreshold))
+        {
+            // Double the backoff on every reopen, with jitter so failed devices do not retry in lockstep
+            health.backoffMs = health.backoffMs == 0 ? baseBackoffMs : Math.min(maxBackoffMs, health.backoffMs * 2);
+
+            var jitterMs = ThreadLocalRandom.current().nextLong(Math.max(1, health.backoffMs / 10));
+
+            health.state = State.OPEN;
+            health.retryAtMs = System.currentTimeMillis() + health.backoffMs + jitterMs;
+            health.lastTransitionMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Give up on a half-open probe whose result will never arrive: it could not be sent, or timed out.
+     * The breaker reopens with the next backoff. Devices that are not probing are left as they are.
+     * @return true when the device was probing
+     */
+    public boolean abortProbe(long monitorId, String error)
+    {
+        if (getState(monitorId) != State.HALF_OPEN)
+        {
+            return false;
+        }
+
+        recordFailure(monitorId, error);
+        return true;
+    }
+
+    /**
+     * Record the outcome of one device poll.
+     * @param error Error reported for the device, null or empty on success
+     */
+    public void record(long monitorId, String error)
+    {
+        if (error == null || error.isEmpty())
+        {
+            recordSuccess(monitorId);
+        }
+        else
+        {
+            recordFailure(monitorId, error);
+        }
+    }
+
+    public State getState(long monitorId)
+    {
+        var health = devices.get(monitorId);
+        return health != null ? health.state : State.CLOSED;
+    }
+
+    public JsonObject getHealth(long monitorId)
+    {
+        var health = devices.get(monitorId);
+
+        return health != null
+                ? health.toJson().put("monitor_id", monitorId)
+                : new JsonObject().put("monitor_id", monitorId).put("state", State.CLOSED.name());
+    }
+
+    public JsonObject getStats()
+    {
+        var open = 0;
+        var halfOpen = 0;
+        var perDevice = new JsonObject();
+
+        for (var entry : devices.entrySet())
+        {
+            var health = entry.getValue();
+
+            switch (health.state)
+            {
+                case OPEN -> open++;
+                case HALF_OPEN -> halfOpen++;
+                default -> {}
+            }
+
+            // Healthy devices are left out to keep the reply small
+            if (health.state != State.CLOSED || health.consecutiveFailures > 0)
+            {
+                perDevice.put(String.valueOf(entry.getKey()), health.toJson());
+            }
+        }
+
+        return new JsonObject()
+                .put("open", open)
+                .put("half_open", halfOpen)
+                .put("suppressed_polls", suppressedPolls)
+                .put("probes", probes)
+                .put("devices", perDevice);
+    }
+
+    private static final class DeviceHealth
+    {
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long totalFailures;
+        private long suppressed;
+        private long backoffMs;
+        private long retryAtMs;
+        private long lastTransitionMs = System.currentTimeMillis();
+        private String lastError;
+
+        private JsonObject toJson()
+        {
+            var json = new JsonObject()
+                    .put("state", state.name())
+                    .put("consecutive_failures", consecutiveFailures)
+                    .put("total_failures", totalFailures)
+                    .put("suppressed_polls", suppressed)
+                    .put("backoff_ms", backoffMs)
+                    .put("last_transition_ms", lastTransitionMs)
+                    .put("last_error", lastError);
+
+            if (state == State.OPEN)
+            {
+                json.put("retry_in_ms", Math.max(0, retryAtMs - System.currentTimeMillis()));
+            }
+
+            return json;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses how metrics requests are sized and how many devices the plugin collects at once for each of them.
+ * Parallelism follows an AIMD rule on the cycle latency of each request: it grows by one while requests finish
+ * within the target share of their poll interval, and is halved when one finishes late or times out.
+ * The batch size (devices per request) is then sized so a request needs no more rounds of parallelism-wide
+ * collection than fit in the target, using the per-device execution_ms the plugin reports.
+ * Runs on the owning verticle's event loop.
+ */
+public class DispatchController
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DispatchController.class);
+
+    private static final int DEFAULT_MIN_BATCH_SIZE = 5;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    private static final int DEFAULT_INITIAL_BATCH_SIZE = 25;
+    private static final int DEFAULT_MIN_PARALLELISM = 2;
+    private static final int DEFAULT_MAX_PARALLELISM = 64;
+    private static final int DEFAULT_INITIAL_PARALLELISM = 20;
+    private static final double DEFAULT_TARGET_RATIO = 0.5; // Of the poll interval
+    private static final double EXECUTION_EWMA_WEIGHT = 0.2;
+
+    private final boolean adaptive;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int minParallelism;
+    private final int maxParallelism;
+    private final double targetRatio;
+
+    private int batchSize;
+    private int parallelism;
+    private double avgDeviceMs = -1; // Unknown until the first result
+    private long targetMs;
+
+    // Counters
+    private long increases;
+    private long decreases;
+    private long lastCycleMs;
+    private long lastChangeMs;
+
+    public DispatchController(JsonObject config)
+    {
+        this.adaptive = config.getBoolean("polling.adaptive.enabled", true);
+        this.minBatchSize = config.getInteger("polling.batch.size.min", DEFAULT_MIN_BATCH_SIZE);
+        this.maxBatchSize = config.getInteger("polling.batch.size.max", DEFAULT_MAX_BATCH_SIZE);
+        this.minParallelism = config.getInteger("polling.parallelism.min", DEFAULT_MIN_PARALLELISM);
+        this.maxParallelism = config.getInteger("polling.parallelism.max", DEFAULT_MAX_PARALLELISM);
+        this.targetRatio = config.getDouble("polling.adaptive.target.ratio", DEFAULT_TARGET_RATIO);
+        this.batchSize = clamp(config.getInteger("polling.dispatch.batch.size", DEFAULT_INITIAL_BATCH_SIZE), minBatchSize, maxBatchSize);
+        this.parallelism = clamp(config.getInteger("polling.parallelism", DEFAULT_INITIAL_PARALLELISM), minParallelism, maxParallelism);
+    }
+
+    /**
+     * Devices to put in one metrics request.
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Devices the plugin collects at once for one request.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Record how long the plugin took for one device, or for one batch collected in parallel.
+     */
+    public void onExecution(long executionMs)
+    {
+        if (executionMs <= 0)
+        {
+            return;
+        }
+
+        avgDeviceMs = avgDeviceMs < 0
+                ? executionMs
+                : avgDeviceMs + EXECUTION_EWMA_WEIGHT * (executionMs - avgDeviceMs);
+    }
+
+    /**
+     * Record a request whose results all arrived.
+     * @param cycleMs Time from sending the request to its last result
+     * @param intervalMs Shortest poll interval among the devices of the request
+     * @return true if the batch size changed
+     */
+    public boolean onComplete(long cycleMs, long intervalMs)
+    {
+        lastCycleMs = cycleMs;
+        targetMs = (long) (intervalMs * targetRatio);
+
+        if (!adaptive)
+        {
+            return false;
+        }
+
+        if (cycleMs <= targetMs)
+        {
+            if (parallelism < maxParallelism)
+            {
+                parallelism++;
+                increases++;
+                lastChangeMs = System.currentTimeMillis();
+            }
+        }
+        else
+        {
+            decrease("cycle took " + cycleMs + " ms, target " + targetMs + " ms");
+        }
+
+        return resize();
+    }
+
+    /**
+     * Record a request that timed out before all results arrived.
+     * @return true if the batch size changed
+     */
+    public boolean onTimeout()
+    {
+        if (!adaptive)
+        {
+            return false;
+        }
+
+        decrease("request timed out");
+
+        return resize();
+    }
+
+    private void decrease(String reason)
+    {
+        var decreased = Math.max(minParallelism, parallelism / 2);
+
+        if (decreased != parallelism)
+        {
+            LOGGER.info("Dispatch parallelism {} -> {}: {}", parallelism, decreased, reason);
+
+            parallelism = decreased;
+            decreases++;
+            lastChangeMs = System.currentTimeMillis();
+        }
+    }
+
+    // As many rounds of parallel collection per request as fit in the target
+    private boolean resize()
+    {
+        if (avgDeviceMs <= 0 || targetMs <= 0)
+        {
+            return false;
+        }
+
+        var rounds = Math.max(1, (long) (targetMs / avgDeviceMs));
+        var resized = clamp((int) Math.min(Integer.MAX_VALUE, rounds * parallelism), minBatchSize, maxBatchSize);
+
+        if (resized == batchSize)
+        {
+            return false;
+        }
+
+        LOGGER.debug("Dispatch batch size {} -> {} (parallelism {}, {} ms per device)", batchSize, resized, parallelism, Math.round(avgDeviceMs));
+
+        batchSize = resized;
+        lastChangeMs = System.currentTimeMillis();
+
+        return true;
+    }
+
+    private static int clamp(int value, int min, int max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("adaptive", adaptive)
+                .put("batch_size", batchSize)
+                .put("parallelism", parallelism)
+                .put("batch_size_range", minBatchSize + "-" + maxBatchSize)
+                .put("parallelism_range", minParallelism + "-" + maxParallelism)
+                .put("target_ratio", targetRatio)
+                .put("target_ms", targetMs)
+                .put("avg_device_ms", avgDeviceMs < 0 ? null : Math.round(avgDeviceMs))
+                .put("last_cycle_ms", lastCycleMs)
+                .put("increases", increases)
+                .put("decreases", decreases)
+                .put("last_change_ms", lastChangeMs);
+    }
+}
@@ -0,0 +1,108 @@
+package org.nms.polling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: a ring of buckets, one per tick.
+ * Scheduling and expiry are O(1) per entry, whatever the number of scheduled items.
+ * Delays longer than one revolution are kept in their bucket with a remaining round count.
+ * Not thread safe, the owner drives it from a single event loop.
+ */
+public class HashedTimingWheel<T>
+{
+    private final long tickMs;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    private final int mask;
+    private long currentTick = 0;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickMs, int wheelSize)
+    {
+        // Power of two so the bucket index is a mask instead of a modulo
+        var slots = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+
+        this.tickMs = tickMs;
+        this.buckets = (ArrayDeque<Entry<T>>[]) new ArrayDeque<?>[slots];
+        this.mask = slots - 1;
+
+        for (var i = 0; i < slots; i++)
+        {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Schedule an item to expire after the given delay, rounded up to whole ticks.
+     * @param item Item to return from advance()
+     * @param delayMs Delay relative to the current tick
+     */
+    public void schedule(T item, long delayMs)
+    {
+        // Never schedule into the bucket being expired right now
+        var ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        var targetTick = currentTick + ticks;
+
+        buckets[(int) (targetTick & mask)].add(new Entry<>(item, (ticks - 1) / buckets.length));
+        size++;
+    }
+
+    /**
+     * Move the wheel forward by one tick.
+     * @return Items that expired on this tick, in scheduling order
+     */
+    public List<T> advance()
+    {
+        currentTick++;
+
+        var bucket = buckets[(int) (currentTick & mask)];
+        var expired = new ArrayList<T>();
+
+        for (var count = bucket.size(); count > 0; count--)
+        {
+            var entry = bucket.poll();
+
+            if (entry.rounds == 0)
+            {
+                expired.add(entry.item);
+                size--;
+            }
+            else
+            {
+                entry.rounds--;
+                bucket.add(entry);
+            }
+        }
+
+        return expired;
+    }
+
+    public long getTickMs()
+    {
+        return tickMs;
+    }
+
+    public int getWheelSize()
+    {
+        return buckets.length;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private static final class Entry<T>
+    {
+        private final T item;
+        private long rounds;
+
+        private Entry(T item, long rounds)
+        {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks which monitors have a poll outstanding, keyed by monitor ID.
+ * A device is skipped only while its own previous poll is in flight, so slow hosts never hold back the rest.
+ * Per device it counts skipped polls (due while still in flight), late results (after the timeout or
+ * after the poll was expired) and overlapping results (arriving while a newer poll owns the device).
+ */
+public class InFlightTracker
+{
+    private final ConcurrentHashMap<Long, DeviceState> devices = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * Claim a device for a new poll.
+     * @param monitorId Device to poll
+     * @param requestId Request that will carry the poll
+     * @param timeoutMs Time after dispatch after which a result counts as late
+     * @return false when the previous poll of the device is still outstanding
+     */
+    public boolean tryAcquire(long monitorId, String requestId, long timeoutMs)
+    {
+        var state = devices.computeIfAbsent(monitorId, id -> new DeviceState());
+
+        if (!state.owner.compareAndSet(null, requestId))
+        {
+            state.skipped.incrementAndGet();
+            return false;
+        }
+
+        state.dispatchedAtMs = System.currentTimeMillis();
+        state.timeoutMs = timeoutMs;
+        state.polls.incrementAndGet();
+        inFlight.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Record the result of a device poll.
+     * @return true when the result belongs to the poll currently in flight for the device
+     */
+    public boolean complete(long monitorId, String requestId)
+    {
+        var state = devices.get(monitorId);
+
+        if (state == null)
+        {
+            return false;
+        }
+
+        if (state.owner.compareAndSet(requestId, null))
+        {
+            inFlight.decrementAndGet();
+
+            if (System.currentTimeMillis() - state.dispatchedAtMs > state.timeoutMs)
+            {
+                state.late.incrementAndGet();
+            }
+            return true;
+        }
+
+        if (state.owner.get() == null)
+        {
+            // Already expired, the result is still stored
+            state.late.incrementAndGet();
+        }
+        else
+        {
+            state.overlapping.incrementAndGet();
+        }
+
+        return false;
+    }
+
+    /**
+     * Release devices of a request whose results never arrived.
+     * @return Number of devices that were still in flight
+     */
+    public int expire(String requestId, List<Long> monitorIds)
+    {
+        var expired = 0;
+
+        for (var monitorId : monitorIds)
+        {
+            var state = devices.get(monitorId);
+
+            if (state != null && state.owner.compareAndSet(requestId, null))
+            {
+                state.expired.incrementAndGet();
+                inFlight.decrementAndGet();
+                expired++;
+            }
+        }
+
+        return expired;
+    }
+
+    /**
+     * Release devices of a request that was never sent, without counting anything against them.
+     */
+    public void release(String requestId, List<Long> monitorIds)
+    {
+        for (var monitorId : monitorIds)
+        {
+            var state = devices.get(monitorId);
+
+            if (state != null && state.owner.compareAndSet(requestId, null))
+            {
+                state.polls.decrementAndGet();
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Forget devices that are no longer scheduled, including any poll still outstanding for them.
+     * A result arriving later for such a poll is not counted.
+     */
+    public void remove(List<Integer> monitorIds)
+    {
+        for (var monitorId : monitorIds)
+        {
+            var state = devices.remove((long) monitorId);
+
+            if (state != null && state.owner.getAndSet(null) != null)
+            {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Check for an outstanding poll before anything else decides about a due poll.
+     * @return true, counted as a skipped poll, when the previous poll of the device is still outstanding
+     */
+    public boolean skipIfInFlight(long monitorId)
+    {
+        var state = devices.get(monitorId);
+
+        if (state == null || state.owner.get() == null)
+        {
+            return false;
+        }
+
+        state.skipped.incrementAndGet();
+        return true;
+    }
+
+    public boolean isInFlight(long monitorId)
+    {
+        var state = devices.get(monitorId);
+        return state != null && state.owner.get() != null;
+    }
+
+    public long getInFlightCount()
+    {
+        return inFlight.get();
+    }
+
+    public JsonObject getStats()
+    {
+        var perDevice = new JsonObject();
+        long skipped = 0, late = 0, overlapping = 0, expired = 0;
+
+        for (var entry : devices.entrySet())
+        {
+            var state = entry.getValue();
+
+            skipped += state.skipped.get();
+            late += state.late.get();
+            overlapping += state.overlapping.get();
+            expired += state.expired.get();
+
+            // Only devices with something to report
+            if (state.skipped.get() + state.late.get() + state.overlapping.get() + state.expired.get() > 0)
+            {
+                perDevice.put(String.valueOf(entry.getKey()), state.toJson());
+            }
+        }
+
+        return new JsonObject()
+                .put("in_flight", inFlight.get())
+                .put("tracked_devices", devices.size())
+                .put("skipped", skipped)
+                .put("late", late)
+                .put("overlapping", overlapping)
+                .put("expired", expired)
+                .put("devices", perDevice);
+    }
+
+    private static final class DeviceState
+    {
+        // Request ID of the outstanding poll, null when idle
+        private final AtomicReference<String> owner = new AtomicReference<>();
+        private volatile long dispatchedAtMs;
+        private volatile long timeoutMs;
+
+        private final AtomicLong polls = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong late = new AtomicLong();
+        private final AtomicLong overlapping = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+
+        private JsonObject toJson()
+        {
+            return new JsonObject()
+                    .put("in_flight", owner.get() != null)
+                    .put("polls", polls.get())
+                    .put("skipped", skipped.get())
+                    .put("late", late.get())
+                    .put("overlapping", overlapping.get())
+                    .put("expired", expired.get());
+        }
+    }
+}
@@ -6,16 +6,18 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.nms.service.DatabaseService;
 import org.nms.service.PollingService;
+import org.nms.service.ProvisionRegistry;
 import org.nms.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Verticle responsible for scheduling and managing metrics collection.
@@ -27,171 +29,321 @@ public class MetricsCollectionVerticle extends AbstractVerticle
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MetricsCollectionVerticle.class);
 
-    private static final long METRICS_INTERVAL_MS = 60000; // 1 minute interval
-    private static final long REQUEST_TIMEOUT_MS = 180000; // 3 minutes timeout
+    private static final long DEVICE_REFRESH_INTERVAL_MS = 1000; // Check the provision registry for a new version
+    private static final long REQUEST_TIMEOUT_MS = 60000; // Without any batch arriving
+    private static final int DEFAULT_RETRY_ATTEMPTS = 1;
+    private static final String METRICS_RESPONSE_TYPE = "metrics";
+    private static final String DEVICE_METRICS_RESPONSE_TYPE = "metrics_device";
+
+    public static final String EB_METRICS_STATS = "metrics.stats";
+    public static final String EB_POLLING_HEALTH = "polling.health";
+    public static final String EB_DISPATCH_SETTINGS = "polling.dispatch";
 
     private PollingService pollingService;
     private DatabaseService dbService;
-    private long timerMetricsId;
-    private final ConcurrentMap<String, Promise<JsonObject>> pendingRequests = new ConcurrentHashMap<>();
-    private final AtomicBoolean isCollecting = new AtomicBoolean(false);
-    private final ConcurrentMap<String, Long> timeoutTimers = new ConcurrentHashMap<>();
+    private long timerRefreshId;
+    private PollScheduler scheduler;
+    private long scheduledVersion = -1;
+    private long scheduledShardVersion = -1;
+    private final InFlightTracker inFlightTracker = new InFlightTracker();
+    private DeviceCircuitBreaker circuitBreaker;
+    private BatchCompletionTracker batchTracker;
+    private DispatchController dispatchController;
+    private int retryAttempts;
+    private boolean streamResults;
+
+    private PollingIngestBuffer ingestBuffer;
 
     @Override
     public void start(Promise<Void> startPromise)
     {
         dbService = DatabaseService.getInstance();
         pollingService = new PollingService();
+        ingestBuffer = new PollingIngestBuffer(vertx, pollingService, config());
+        scheduler = new PollScheduler(vertx, config(), this::sendMetricsRequest);
+        dispatchController = new DispatchController(config());
+        scheduler.setDispatchBatchSize(dispatchController.getBatchSize());
+        batchTracker = new BatchCompletionTracker(vertx, config().getLong("polling.request.timeout.ms", REQUEST_TIMEOUT_MS),
+                this::handleRequestTimeout);
+        retryAttempts = config().getInteger("polling.retry.attempts", DEFAULT_RETRY_ATTEMPTS);
+        streamResults = config().getBoolean("polling.stream.results", true);
+        circuitBreaker = new DeviceCircuitBreaker(config());
+
+        // Open the spill log before any metrics arrive
+        ingestBuffer.start().onComplete(result ->
+        {
+            if (result.failed())
+            {
+                LOGGER.error("Failed to open ingest spill log: {}", result.cause().getMessage());
+                startPromise.fail(result.cause());
+                return;
+            }
 
-        // Set up event bus consumer for ZMQ responses
-        setupEventBusConsumer();
+            // Subscribe to streamed metrics batches
+            setupResponseSubscription();
 
-        // Schedule periodic metrics collection
-        scheduleMetricsCollection();
+            // Schedule periodic metrics collection
+            scheduleMetricsCollection();
+
+            vertx.eventBus().<JsonObject>localConsumer(EB_METRICS_STATS, message -> message.reply(getIngestStats()));
+
+            // Effective batch size and parallelism chosen by the dispatch controller
+            vertx.eventBus().<JsonObject>localConsumer(EB_DISPATCH_SETTINGS, message -> message.reply(dispatchController.getStats()));
+
+            // Breaker state of one device when monitor_id is given, of all unhealthy devices otherwise
+            vertx.eventBus().<JsonObject>localConsumer(EB_POLLING_HEALTH, message ->
+            {
+                var monitorId = message.body() != null ? message.body().getLong(Constants.MONITOR_ID) : null;
 
-        startPromise.complete();
-        LOGGER.info("MetricsCollectionVerticle started successfully");
+                message.reply(monitorId != null ? circuitBreaker.getHealth(monitorId) : circuitBreaker.getStats());
+            });
+
+            startPromise.complete();
+            LOGGER.info("MetricsCollectionVerticle started successfully");
+        });
     }
 
     @Override
     public void stop(Promise<Void> stopPromise)
     {
-        if (timerMetricsId != 0)
+        if (timerRefreshId != 0)
         {
-            vertx.cancelTimer(timerMetricsId);
+            vertx.cancelTimer(timerRefreshId);
         }
 
-        // Cancel all pending timeout timers
-        timeoutTimers.values().forEach(vertx::cancelTimer);
-        timeoutTimers.clear();
+        scheduler.stop();
+
+        ZMQResponseRouter.getInstance().unsubscribe(METRICS_RESPONSE_TYPE);
+        ZMQResponseRouter.getInstance().unsubscribe(DEVICE_METRICS_RESPONSE_TYPE);
 
-        stopPromise.complete();
-        LOGGER.info("MetricsCollectionVerticle stopped successfully");
+        ingestBuffer.stop().onComplete(result ->
+        {
+            stopPromise.complete();
+            LOGGER.info("MetricsCollectionVerticle stopped successfully");
+        });
     }
 
-    private void setupEventBusConsumer()
+    private void setupResponseSubscription()
     {
-        // Register a consumer for the ZMQ responses based on pattern matching
-        vertx.eventBus().consumer(ZMQCommunicationVerticle.EB_ZMQ_RESPONSE , message ->
+        // Only metrics results are delivered here, one-shot replies go straight to their waiter
+        ZMQResponseRouter.getInstance().subscribe(METRICS_RESPONSE_TYPE, response ->
         {
-            var response = (JsonObject) message.body();
             String requestId = response.getString("request_id");
 
             LOGGER.info("Received ZMQ response for request ID: {}", requestId);
 
-            // Complete the pending promise for this request ID
-            if (requestId != null && pendingRequests.containsKey(requestId))
+            // A batch is collected in parallel, its execution time is that of its slowest device
+            dispatchController.onExecution(response.getLong("execution_ms", 0L));
+
+            onProgress(requestId, batchTracker.onBatch(response));
+
+            // Free each device that reported back, even if other batches of the request are still running
+            var metrics = response.getJsonObject("metrics", new JsonObject());
+            metrics.forEach(entry ->
             {
-                var promise = pendingRequests.<JsonObject>remove(requestId);
-                if (promise != null)
+                if (entry.getValue() instanceof JsonObject deviceMetrics)
                 {
-                    promise.complete(response);
-
-                    // Cancel the timeout timer
-                    var timerId = timeoutTimers.remove(requestId);
-                    if (timerId != null)
-                    {
-                        vertx.cancelTimer(timerId);
-                    }
+                    completeDevice(requestId, deviceMetrics);
                 }
-            }
+            });
+
+            storeMetricsInDatabase(response);
+
+        });
+
+        // Streamed results, one device at a time as soon as the plugin collected it
+        ZMQResponseRouter.getInstance().subscribe(DEVICE_METRICS_RESPONSE_TYPE, response ->
+        {
+            String requestId = response.getString("request_id");
+
+            dispatchController.onExecution(response.getLong("execution_ms", 0L));
 
-            // If this is a metrics response, store it in the database
-            if ("metrics".equals(response.getString("type")))
+            onProgress(requestId, batchTracker.onDevice(response));
+
+            var deviceMetrics = response.getJsonObject("metrics");
+
+            if (deviceMetrics == null)
             {
-                storeMetricsInDatabase(response);
+                LOGGER.warn("No metrics found in device result of request {}", requestId);
+                return;
             }
 
+            completeDevice(requestId, deviceMetrics);
+
+            var monitorId = deviceMetrics.getInteger(Constants.MONITOR_ID);
+
+            if (monitorId != null)
+            {
+                ingestBuffer.offer(List.of(toPollingRecord(monitorId, deviceMetrics)));
+            }
         });
     }
 
+    private void onProgress(String requestId, BatchCompletionTracker.RequestProgress progress)
+    {
+        if (progress == null || !progress.isComplete())
+        {
+            return;
+        }
+
+        LOGGER.info("Metrics request {} complete in {} ms", requestId, progress.getElapsedMs());
+
+        if (dispatchController.onComplete(progress.getElapsedMs(), progress.getIntervalMs()))
+        {
+            scheduler.setDispatchBatchSize(dispatchController.getBatchSize());
+        }
+
+        // All results arrived but some devices were left out of them
+        var missingIds = progress.getMissingMonitorIds();
+        if (!missingIds.isEmpty())
+        {
+            LOGGER.warn("Metrics request {} completed without monitors {}", requestId, missingIds);
+            inFlightTracker.expire(requestId, missingIds);
+            missingIds.forEach(monitorId -> circuitBreaker.recordFailure(monitorId, "No metrics in response"));
+        }
+    }
+
+    private void completeDevice(String requestId, JsonObject deviceMetrics)
+    {
+        var monitorId = deviceMetrics.getLong(Constants.MONITOR_ID);
+
+        if (monitorId != null)
+        {
+            inFlightTracker.complete(monitorId, requestId);
+            circuitBreaker.record(monitorId, deviceMetrics.getString("error"));
+        }
+    }
+
     private void scheduleMetricsCollection()
     {
-        // Schedule the first collection after a short delay
-        vertx.setTimer(1000, id -> collectMetrics());
+        scheduler.start();
 
-        // Then schedule recurring collections
-        timerMetricsId = vertx.setPeriodic(METRICS_INTERVAL_MS, id -> collectMetrics());
+        // Load devices right away, then keep the schedule in sync
+        refreshDevices();
 
-        LOGGER.info("Metrics collection scheduled every {} ms", METRICS_INTERVAL_MS);
+        timerRefreshId = vertx.setPeriodic(config().getLong("polling.refresh.interval.ms", DEVICE_REFRESH_INTERVAL_MS),
+                id -> refreshDevices());
     }
 
-    private void collectMetrics()
+    private void refreshDevices()
     {
-        // Avoid concurrent collection attempts
-        if (isCollecting.compareAndSet(false, true))
+        // Volatile reads; the schedule is only reconciled when the registry or the shard leases changed
+        var snapshot = ProvisionRegistry.getInstance().getSnapshot();
+        var shards = ShardOwnership.getInstance();
+        var shardVersion = shards.getVersion();
+
+        if (snapshot.getVersion() == scheduledVersion && shardVersion == scheduledShardVersion)
         {
-            // Get devices to monitor asynchronously
-            pollingService.getDeviceToMonitor().onComplete(result ->
+            return;
+        }
+
+        scheduledVersion = snapshot.getVersion();
+        scheduledShardVersion = shardVersion;
+
+        // In cluster mode only the monitors of the shards leased to this node
+        var removed = scheduler.update(shards.filter(snapshot.getProvisions()));
+
+        // Outstanding polls of dropped monitors are not waited for
+        inFlightTracker.remove(removed);
+    }
+
+    private void sendMetricsRequest(JsonArray provisions)
+    {
+        sendMetricsRequest(provisions, 0);
+    }
+
+    private void sendMetricsRequest(JsonArray provisions, int attempt)
+    {
+        // Bounded shards, each its own request: the plugin starts polling the first one while the later ones
+        // are still being encoded (off the event loop, in PluginSupervisor) and sent
+        var shardSize = dispatchController.getBatchSize();
+
+        // Every shard holds devices of one plugin worker only, so a device keeps its worker and SSH session
+        for (var slot : groupByWorker(provisions))
+        {
+            for (var from = 0; from < slot.size(); from += shardSize)
             {
-                if (result.succeeded())
-                {
-                    var devices = result.result();
-
-                    var provisions = devices.getJsonArray("provisions");
-                    if (provisions != null && !provisions.isEmpty())
-                    {
-                        sendMetricsRequest(provisions);
-                    }
-                    else
-                    {
-                        LOGGER.info("No devices to monitor");
-                        isCollecting.set(false);
-                    }
-                }
-                else
-                {
-                    // Handle failure in fetching devices
-                    LOGGER.error("Failed to fetch devices to monitor: {}", result.cause().getMessage());
-                    isCollecting.set(false);
-                }
-            });
+                sendShard(slot, from, Math.min(slot.size(), from + shardSize), attempt);
+            }
         }
-        else
+    }
+
+    private static Collection<JsonArray> groupByWorker(JsonArray provisions)
+    {
+        var slots = new TreeMap<Integer, JsonArray>();
+
+        for (var i = 0; i < provisions.size(); i++)
         {
-            LOGGER.warn("Previous metrics collection still in progress, skipping this cycle");
+            var provision = provisions.getJsonObject(i);
+            var monitorId = provision.getLong(Constants.MONITOR_ID);
+            var slot = monitorId != null ? PluginSupervisor.workerSlotOf(monitorId) : 0;
+
+            slots.computeIfAbsent(slot, key -> new JsonArray()).add(provision);
         }
+
+        return slots.values();
     }
 
-    private void sendMetricsRequest(JsonArray provisions)
+    private void sendShard(JsonArray provisions, int from, int to, int attempt)
     {
-        // Convert Vert.x JSON to ZMQ plugin format
+        var requestId = UUID.randomUUID().toString();
+
+        // Convert Vert.x JSON to ZMQ plugin format, leaving out devices whose previous poll is outstanding
         var batchInput = new JsonArray();
+        var monitorIds = new ArrayList<Long>(to - from);
 
-        for (var i = 0; i < provisions.size(); i++)
+        for (var i = from; i < to; i++)
         {
             var provision = provisions.getJsonObject(i);
+            var monitorId = provision.getLong(Constants.MONITOR_ID);
+            var timeoutMs = provision.getInteger(Constants.PROVISION_POLL_INTERVAL, 60) * 1000L;
 
-            LOGGER.info("Processing provision: {}", provision.encodePrettily());
+            if (monitorId == null)
+            {
+                continue;
+            }
+
+            // Checked before the breaker, which turns a due probe half-open only when it is let through
+            if (inFlightTracker.skipIfInFlight(monitorId))
+            {
+                LOGGER.warn("Previous poll of monitor {} still in progress, skipping", monitorId);
+                continue;
+            }
+
+            // Unreachable devices are only probed once their backoff elapsed
+            if (!circuitBreaker.allowPoll(monitorId))
+            {
+                continue;
+            }
+
+            if (!inFlightTracker.tryAcquire(monitorId, requestId, timeoutMs))
+            {
+                LOGGER.warn("Previous poll of monitor {} still in progress, skipping", monitorId);
+                circuitBreaker.abortProbe(monitorId, "Previous poll still in progress");
+                continue;
+            }
 
             batchInput.add(provision);
+            monitorIds.add(monitorId);
         }
 
-        var requestId = UUID.randomUUID().toString();
+        if (batchInput.isEmpty())
+        {
+            return;
+        }
 
         // Create the ZMQ request
         var request = new JsonObject()
                 .put("request_id", requestId)
-                .put("command", "metrics")
+                .put("command", streamResults ? "metrics_stream" : "metrics")
+                .put("parallelism", dispatchController.getParallelism())
                 .put("data", batchInput);
 
-        LOGGER.info("Sending metrics request: {}", request.encodePrettily());
+        // Provisions carry credentials and can be many, log the request by size only
+        LOGGER.debug("Sending metrics request {} for {} devices", requestId, batchInput.size());
 
-        var responsePromise = Promise.<JsonObject>promise();
-        pendingRequests.put(requestId, responsePromise);
-
-        // Set a timeout for the request
-        long timeoutId = vertx.setTimer(REQUEST_TIMEOUT_MS, id ->
-        {
-            if (pendingRequests.remove(requestId) != null)
-            {
-                LOGGER.warn("Metrics request {} timed out", requestId);
-                isCollecting.set(false);
-                timeoutTimers.remove(requestId);
-            }
-        });
-
-        timeoutTimers.put(requestId, timeoutId);
+        // Track the batches of this request, timing out only when no batch arrives
+        batchTracker.register(requestId, batchInput, attempt);
 
         // Send the request through the event bus to ZMQCommunicationVerticle
         vertx.eventBus().request(ZMQCommunicationVerticle.EB_ZMQ_SEND, request, reply ->
@@ -203,28 +355,57 @@ public class MetricsCollectionVerticle extends AbstractVerticle
             else
             {
                 LOGGER.error("Failed to send ZMQ request: {}", reply.cause().getMessage());
-                pendingRequests.remove(requestId);
-                vertx.cancelTimer(timeoutId);
-                timeoutTimers.remove(requestId);
-                isCollecting.set(false);
+                batchTracker.cancel(requestId);
+                inFlightTracker.release(requestId, monitorIds);
+                monitorIds.forEach(monitorId -> circuitBreaker.abortProbe(monitorId, "Failed to send metrics request"));
             }
         });
+    }
+
+    private void handleRequestTimeout(BatchCompletionTracker.RequestProgress progress)
+    {
+        var requestId = progress.getRequestId();
+        var missingIds = progress.getMissingMonitorIds();
 
-        // Handle the response
-        responsePromise.future().onComplete(result ->
+        // Only the devices that never reported are released, the rest completed normally
+        inFlightTracker.expire(requestId, missingIds);
+
+        if (dispatchController.onTimeout())
+        {
+            scheduler.setDispatchBatchSize(dispatchController.getBatchSize());
+        }
+
+        if (progress.getAttempt() < retryAttempts)
         {
-            if (result.succeeded())
+            // A half-open probe gets no retry, the breaker would hold it back; it reopens with the next backoff
+            var retry = new JsonArray();
+            var missingProvisions = progress.getMissingProvisions();
+
+            for (var i = 0; i < missingProvisions.size(); i++)
             {
-                LOGGER.info("Received metrics response for request ID: {}", requestId);
+                var provision = missingProvisions.getJsonObject(i);
+
+                if (!circuitBreaker.abortProbe(provision.getLong(Constants.MONITOR_ID), "Metrics request timed out"))
+                {
+                    retry.add(provision);
+                }
             }
-            else
+
+            LOGGER.warn("Metrics request {} timed out after {} ms, retrying {} missing devices (batches {})",
+                    requestId, progress.getElapsedMs(), retry.size(), progress.getMissingBatches().encode());
+
+            if (!retry.isEmpty())
             {
-                LOGGER.error("Failed to get metrics", result.cause());
+                sendMetricsRequest(retry, progress.getAttempt() + 1);
             }
+        }
+        else
+        {
+            LOGGER.error("Metrics request {} timed out after {} ms, no metrics from monitors {} (batches {})",
+                    requestId, progress.getElapsedMs(), missingIds, progress.getMissingBatches().encode());
 
-            // Allow new collection cycle
-            isCollecting.set(false);
-        });
+            missingIds.forEach(monitorId -> circuitBreaker.recordFailure(monitorId, "Metrics request timed out"));
+        }
     }
 
     private void storeMetricsInDatabase(JsonObject metricsResponse)
@@ -238,6 +419,8 @@ public class MetricsCollectionVerticle extends AbstractVerticle
             return;
         }
 
+        var records = new ArrayList<JsonObject>(metrics.size());
+
         // Process each device's metrics
         metrics.forEach(entry ->
         {
@@ -254,25 +437,40 @@ public class MetricsCollectionVerticle extends AbstractVerticle
                 return;
             }
 
-            // Insert the data into Polling_data table
-            storePollingData(monitorId, deviceMetrics);
+            records.add(toPollingRecord(monitorId, deviceMetrics));
         });
+
+        if (records.isEmpty())
+        {
+            return;
+        }
+
+        // Group commit and spill handling happen in the ingest buffer
+        ingestBuffer.offer(records);
     }
 
-    private void storePollingData(Integer monitorId, JsonObject deviceMetrics)
+    private JsonObject toPollingRecord(Integer monitorId, JsonObject deviceMetrics)
     {
         var timestampStr = deviceMetrics.getString("timestamp");
 
-        // Parse the timestamp String to a LocalDateTime object
-        var timestamp = LocalDateTime.parse(timestampStr, DateTimeFormatter.ISO_DATE_TIME);
+        // Keep the offset so the row lands in the right daily partition
+        var timestamp = OffsetDateTime.parse(timestampStr, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
 
         // Store the entire metrics object as JSONB
-        var params = new JsonObject()
+        return new JsonObject()
                 .put(Constants.MONITOR_ID, monitorId)
                 .put("data", deviceMetrics)
                 .put("timestamp", timestamp.toString());
+    }
 
-        // Execute the query
-        pollingService.insertPollingData(params);
+    private JsonObject getIngestStats()
+    {
+        return ingestBuffer.getStats()
+                .put("scheduler", scheduler.getStats())
+                .put("dispatch", dispatchController.getStats())
+                .put("in_flight", inFlightTracker.getStats())
+                .put("requests", batchTracker.getStats())
+                .put("circuit_breaker", circuitBreaker.getStats())
+                .put("shards", ShardOwnership.getInstance().getStats());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,863 @@
+package org.nms.polling;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a pool of Go plugin worker processes and spreads requests across them.
+ * Each worker pulls requests from its own endpoint and pushes every response to the shared results endpoint,
+ * so the receive side is unchanged. Metrics requests go to the worker their devices hash to, so every device keeps
+ * being polled by the same worker and reuses its pooled SSH session; callers group devices with workerSlotOf().
+ * Other requests, and metrics requests whose worker is down or out of credit, go to the ready worker with the
+ * fewest requests outstanding.
+ * Flow control is credit based: each worker advertises how many requests it processes at once, a request
+ * takes a credit until it is fully answered, and with no credit left requests wait in a bounded queue.
+ * Requests that wait too long, or find the queue full, are failed so callers see the backpressure.
+ * Workers are pinged periodically; a worker that exits or misses several pings is restarted with backoff,
+ * and its requests that had no response yet are sent again. Requests that were partly answered are left
+ * to the caller's own timeout, which only retries the missing devices.
+ * Runs on the owning verticle's event loop, except the socket sends.
+ */
+public class PluginSupervisor
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PluginSupervisor.class);
+
+    private static final String PLUGIN_PATH = "modular-plugin/plugin-zmq";
+    private static final String DEFAULT_ENDPOINT_PREFIX = "ipc:///tmp/nms-plugin";
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 5000;
+    private static final long DEFAULT_HEARTBEAT_TIMEOUT_MS = 3000;
+    private static final int DEFAULT_MAX_MISSED_HEARTBEATS = 3;
+    private static final long DEFAULT_REQUEST_RETENTION_MS = 300000; // Forget requests never fully answered
+    private static final int DEFAULT_WORKER_CAPACITY = 64;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_QUEUE_MAX_WAIT_MS = 20000; // Below the event bus reply timeout
+    private static final int DEFAULT_SEND_TIMEOUT_MS = 1000;
+    private static final long MIN_RESTART_DELAY_MS = 1000;
+    private static final long MAX_RESTART_DELAY_MS = 30000;
+
+    // Every plugin process started by this JVM, killed on shutdown
+    private static final Set<Process> PROCESSES = ConcurrentHashMap.newKeySet();
+
+    // Size of the worker pool, read by callers that group devices per worker
+    private static volatile int poolSize;
+
+    public enum WorkerState
+    {
+        STARTING, READY, RESTARTING, STOPPED
+    }
+
+    private final Vertx vertx;
+    private final Context context;
+    private final ZContext zmqContext;
+    private final String resultsEndpoint;
+    private final List<Worker> workers = new ArrayList<>();
+    private final Map<String, TrackedRequest> requests = new HashMap<>();
+    private final ArrayDeque<QueuedRequest> queue = new ArrayDeque<>();
+    private final ZMQResponseRouter responseRouter = ZMQResponseRouter.getInstance();
+
+    private final long heartbeatIntervalMs;
+    private final long heartbeatTimeoutMs;
+    private final int maxMissedHeartbeats;
+    private final long requestRetentionMs;
+    private final int workerCapacity;
+    private final int queueCapacity;
+    private final long queueMaxWaitMs;
+    private final int sendTimeoutMs;
+
+    private long timerHeartbeatId;
+    private int nextWorker = 0;
+    private boolean isStopping = false;
+
+    // Counters
+    private long resentRequests;
+    private long abandonedRequests;
+    private long queuedRequests;
+    private long rejectedRequests;
+    private long expiredInQueue;
+    private int maxQueueDepth;
+    private long totalQueueWaitMs;
+    private long affinityHits;
+    private long affinityFallbacks;
+
+    public PluginSupervisor(Vertx vertx, ZContext zmqContext, JsonObject config)
+    {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.zmqContext = zmqContext;
+        this.heartbeatIntervalMs = config.getLong("plugin.heartbeat.interval.ms", DEFAULT_HEARTBEAT_INTERVAL_MS);
+        this.heartbeatTimeoutMs = config.getLong("plugin.heartbeat.timeout.ms", DEFAULT_HEARTBEAT_TIMEOUT_MS);
+        this.maxMissedHeartbeats = config.getInteger("plugin.heartbeat.max.missed", DEFAULT_MAX_MISSED_HEARTBEATS);
+        this.requestRetentionMs = config.getLong("plugin.request.retention.ms", DEFAULT_REQUEST_RETENTION_MS);
+        this.workerCapacity = config.getInteger("plugin.worker.capacity", DEFAULT_WORKER_CAPACITY);
+        this.queueCapacity = config.getInteger("plugin.queue.capacity", DEFAULT_QUEUE_CAPACITY);
+        this.queueMaxWaitMs = config.getLong("plugin.queue.max.wait.ms", DEFAULT_QUEUE_MAX_WAIT_MS);
+        this.sendTimeoutMs = config.getInteger("plugin.send.timeout.ms", DEFAULT_SEND_TIMEOUT_MS);
+
+        var prefix = config.getString("plugin.endpoint.prefix", DEFAULT_ENDPOINT_PREFIX);
+        var count = config.getInteger("plugin.workers", Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+        this.resultsEndpoint = prefix + "-results.ipc";
+
+        for (var i = 0; i < count; i++)
+        {
+            workers.add(new Worker(i, prefix + "-" + i + ".ipc", workerCapacity));
+        }
+
+        poolSize = count;
+    }
+
+    /**
+     * Worker a device is polled by while that worker is up. Stable for as long as the pool size is.
+     * @return Index of the worker, 0 before the pool exists
+     */
+    public static int workerSlotOf(long monitorId)
+    {
+        var size = poolSize;
+        return size > 0 ? (int) Math.floorMod(monitorId, (long) size) : 0;
+    }
+
+    /**
+     * Endpoint the workers push their responses to, the caller binds its PULL socket here.
+     */
+    public String getResultsEndpoint()
+    {
+        return resultsEndpoint;
+    }
+
+    /**
+     * Kill leftover plugins of an earlier run, then start every worker.
+     */
+    public Future<Void> start()
+    {
+        return vertx.<Void>executeBlocking(promise ->
+                {
+                    try
+                    {
+                        new ProcessBuilder("pkill", "-f", "plugin-zmq").start().waitFor();
+                        LOGGER.info("Killed existing go_plugin if any");
+                    }
+                    catch (Exception exception)
+                    {
+                        LOGGER.warn("No existing go_plugin found or failed to kill: {}", exception.getMessage());
+                    }
+
+                    promise.complete();
+                })
+                .compose(v ->
+                {
+                    var starts = new ArrayList<Future<Void>>();
+                    workers.forEach(worker -> starts.add(spawn(worker)));
+
+                    return Future.all(starts).<Void>mapEmpty();
+                })
+                .onSuccess(v ->
+                {
+                    timerHeartbeatId = vertx.setPeriodic(heartbeatIntervalMs, id -> heartbeat());
+
+                    LOGGER.info("Plugin supervisor started {} workers, results on {}", workers.size(), resultsEndpoint);
+                });
+    }
+
+    /**
+     * Stop every worker. Blocking, call from a worker thread.
+     */
+    public void stop()
+    {
+        isStopping = true;
+        vertx.cancelTimer(timerHeartbeatId);
+
+        for (var worker : workers)
+        {
+            worker.state = WorkerState.STOPPED;
+
+            synchronized (worker)
+            {
+                if (worker.socket != null)
+                {
+                    worker.socket.close();
+                    worker.socket = null;
+                }
+            }
+
+            if (worker.process != null)
+            {
+                worker.process.destroy();
+                PROCESSES.remove(worker.process);
+            }
+        }
+    }
+
+    /**
+     * Kill every plugin process started by this JVM, used from the shutdown hook.
+     */
+    public static void destroyAll()
+    {
+        PROCESSES.forEach(Process::destroy);
+        PROCESSES.clear();
+    }
+
+    /**
+     * Send a request to the least loaded worker holding a credit and track it until fully answered.
+     * Without a free credit the request waits in the queue.
+     * @return Future completed once the request was handed to a worker socket
+     */
+    public Future<Void> send(JsonObject message)
+    {
+        var promise = Promise.<Void>promise();
+
+        if (!queue.isEmpty() || !dispatch(message, promise))
+        {
+            enqueue(new QueuedRequest(message, promise), false);
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Send a control message to every running worker, e.g. an SSH session invalidation.
+     * Broadcasts take no credit and expect no response; a worker started later has nothing to invalidate.
+     * @return Future completed once every running worker accepted the message
+     */
+    public Future<Void> broadcast(JsonObject message)
+    {
+        var writes = new ArrayList<Future<Void>>();
+
+        for (var worker : workers)
+        {
+            if (worker.state == WorkerState.STARTING || worker.state == WorkerState.READY)
+            {
+                writes.add(write(worker, message));
+            }
+        }
+
+        return Future.join(writes).mapEmpty();
+    }
+
+    // Send right away if some worker has a credit left
+    private boolean dispatch(JsonObject message, Promise<Void> promise)
+    {
+        var worker = selectWorker(message);
+
+        if (worker == null)
+        {
+            return false;
+        }
+
+        var requestId = message.getString("request_id");
+        var tracked = new TrackedRequest(message, worker);
+
+        // Without an ID no response can be matched, such a request does not take a credit
+        if (requestId != null)
+        {
+            requests.put(requestId, tracked);
+            worker.outstanding++;
+        }
+
+        worker.sent++;
+
+        write(worker, message)
+                .onComplete(result ->
+                {
+                    if (result.failed() && requestId != null && requests.remove(requestId) == tracked)
+                    {
+                        releaseCredit(tracked.worker);
+                    }
+
+                    if (promise != null)
+                    {
+                        promise.handle(result);
+                    }
+                    else if (result.failed())
+                    {
+                        abandonedRequests++;
+                        LOGGER.warn("Failed to resend request {}: {}", requestId, result.cause().getMessage());
+                    }
+                });
+
+        return true;
+    }
+
+    private void enqueue(QueuedRequest queued, boolean first)
+    {
+        if (queue.size() >= queueCapacity && !first)
+        {
+            rejectedRequests++;
+            queued.promise.fail("Plugin request queue is full (" + queueCapacity + ")");
+            return;
+        }
+
+        if (first)
+        {
+            queue.addFirst(queued);
+        }
+        else
+        {
+            queue.addLast(queued);
+        }
+
+        queuedRequests++;
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+    }
+
+    // Hand queued requests to workers while credits last
+    private void drainQueue()
+    {
+        var now = System.currentTimeMillis();
+
+        while (!queue.isEmpty())
+        {
+            var queued = queue.peekFirst();
+            var waitedMs = now - queued.enqueuedAtMs;
+
+            // The caller has given up waiting by now, sending would only produce orphan results
+            if (waitedMs > queueMaxWaitMs)
+            {
+                queue.pollFirst();
+                expiredInQueue++;
+
+                if (queued.promise != null)
+                {
+                    queued.promise.fail("Request waited " + waitedMs + " ms for a plugin credit");
+                }
+                continue;
+            }
+
+            if (!dispatch(queued.message, queued.promise))
+            {
+                return;
+            }
+
+            queue.pollFirst();
+            totalQueueWaitMs += waitedMs;
+        }
+    }
+
+    private void releaseCredit(Worker worker)
+    {
+        worker.outstanding = Math.max(0, worker.outstanding - 1);
+        drainQueue();
+    }
+
+    /**
+     * Record a response from any worker. A request is done once every batch arrived, which returns its credit.
+     */
+    public void onResponse(JsonObject response)
+    {
+        var requestId = response.getString("request_id");
+        var tracked = requestId != null ? requests.get(requestId) : null;
+
+        if (tracked == null)
+        {
+            return;
+        }
+
+        tracked.responses++;
+
+        // Batched metrics answer with total_batches results, streamed metrics with one per device,
+        // coalesced batches with one per request
+        var expected = response.containsKey("total_devices")
+                ? response.getInteger("total_devices")
+                : response.containsKey("total_results")
+                        ? response.getInteger("total_results")
+                        : response.getInteger("total_batches", 1);
+
+        if (tracked.responses >= expected)
+        {
+            requests.remove(requestId);
+            releaseCredit(tracked.worker);
+        }
+    }
+
+    // The worker the devices of a metrics request hash to, while it is ready and has a credit left
+    private Worker selectWorker(JsonObject message)
+    {
+        var monitorId = affinityKey(message);
+
+        if (monitorId != null)
+        {
+            var preferred = workers.get(workerSlotOf(monitorId));
+
+            if (preferred.state == WorkerState.READY && preferred.outstanding < preferred.capacity)
+            {
+                affinityHits++;
+                return preferred;
+            }
+
+            affinityFallbacks++;
+        }
+
+        return selectWorker();
+    }
+
+    // Metrics requests carry a device list grouped by workerSlotOf(), the first device stands for all of them
+    private static Long affinityKey(JsonObject message)
+    {
+        if (message.getValue("data") instanceof JsonArray devices
+                && !devices.isEmpty()
+                && devices.getValue(0) instanceof JsonObject device)
+        {
+            return device.getLong(Constants.MONITOR_ID);
+        }
+
+        return null;
+    }
+
+    // Worker with a free credit and the lowest load, starting workers only when no ready one has credit
+    private Worker selectWorker()
+    {
+        var best = selectWorker(WorkerState.READY);
+
+        if (best == null)
+        {
+            best = selectWorker(WorkerState.STARTING);
+        }
+
+        // Rotate the starting point so equal loads take turns
+        nextWorker = (nextWorker + 1) % Math.max(1, workers.size());
+
+        return best;
+    }
+
+    private Worker selectWorker(WorkerState state)
+    {
+        Worker best = null;
+
+        for (var offset = 0; offset < workers.size(); offset++)
+        {
+            var worker = workers.get((nextWorker + offset) % workers.size());
+
+            if (worker.state != state || worker.outstanding >= worker.capacity)
+            {
+                continue;
+            }
+
+            // Compare load relative to capacity, workers may advertise different sizes
+            if (best == null || (long) worker.outstanding * best.capacity < (long) best.outstanding * worker.capacity)
+            {
+                best = worker;
+            }
+        }
+
+        return best;
+    }
+
+    private Future<Void> write(Worker worker, JsonObject message)
+    {
+        return vertx.executeBlocking(promise ->
+        {
+            // ZMQ sockets are not thread safe, one send per worker socket at a time
+            synchronized (worker)
+            {
+                if (worker.socket == null)
+                {
+                    promise.fail("Plugin worker " + worker.index + " is not running");
+                    return;
+                }
+
+                var frame = worker.binaryWire ? WireCodec.encodeRequest(message) : WireCodec.encodeJson(message);
+
+                // Blocks up to the send timeout at the high-water mark instead of dropping the frame
+                if (worker.socket.send(frame, 0))
+                {
+                    promise.complete();
+                }
+                else
+                {
+                    promise.fail("Plugin worker " + worker.index + " did not accept the request within " + sendTimeoutMs + " ms");
+                }
+            }
+        }, false);
+    }
+
+    private Future<Void> spawn(Worker worker)
+    {
+        return vertx.<Process>executeBlocking(promise ->
+                {
+                    try
+                    {
+                        synchronized (worker)
+                        {
+                            // A fresh socket drops whatever was queued for the previous process
+                            if (worker.socket != null)
+                            {
+                                worker.socket.setLinger(0);
+                                worker.socket.close();
+                            }
+
+                            worker.socket = zmqContext.createSocket(SocketType.PUSH);
+                            worker.socket.setSendTimeOut(sendTimeoutMs);
+                            worker.socket.connect(worker.endpoint);
+                            worker.binaryWire = false;
+                        }
+
+                        var plugin = new File(System.getProperty("user.dir"), PLUGIN_PATH);
+
+                        if (!plugin.exists() || !plugin.canExecute())
+                        {
+                            throw new IllegalStateException("go_plugin not found or not executable at: " + plugin.getAbsolutePath());
+                        }
+
+                        var log = new File("logs", "plugin-worker-" + worker.index + ".log");
+
+                        var process = new ProcessBuilder(plugin.getAbsolutePath(), worker.endpoint, resultsEndpoint,
+                                String.valueOf(workerCapacity))
+                                .redirectErrorStream(true)
+                                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                                .start();
+
+                        PROCESSES.add(process);
+                        promise.complete(process);
+                    }
+                    catch (Exception exception)
+                    {
+                        promise.fail(exception);
+                    }
+                })
+                .<Void>map(process ->
+                {
+                    worker.process = process;
+                    worker.state = WorkerState.STARTING;
+                    worker.missedHeartbeats = 0;
+                    worker.startedAtMs = System.currentTimeMillis();
+                    worker.capacity = workerCapacity;
+
+                    process.onExit().thenAccept(exited -> context.runOnContext(v -> onExit(worker, exited)));
+
+                    LOGGER.info("Plugin worker {} started with pid {} on {}", worker.index, process.pid(), worker.endpoint);
+
+                    // Requests of a failed worker that found no other worker go here
+                    drainQueue();
+                    return null;
+                })
+                .onFailure(error ->
+                {
+                    LOGGER.error("Failed to start plugin worker {}: {}", worker.index, error.getMessage());
+                    scheduleRestart(worker);
+                });
+    }
+
+    private void onExit(Worker worker, Process exited)
+    {
+        PROCESSES.remove(exited);
+
+        if (isStopping || worker.process != exited || worker.state == WorkerState.RESTARTING)
+        {
+            return;
+        }
+
+        restart(worker, "exited with code " + exited.exitValue());
+    }
+
+    private void heartbeat()
+    {
+        for (var worker : workers)
+        {
+            if (worker.state != WorkerState.STARTING && worker.state != WorkerState.READY)
+            {
+                continue;
+            }
+
+            var requestId = "ping-" + worker.index + "-" + UUID.randomUUID();
+            var process = worker.process;
+
+            responseRouter.register(requestId, heartbeatTimeoutMs).onComplete(result ->
+            {
+                // Answer from a process that has since been replaced
+                if (worker.process != process)
+                {
+                    return;
+                }
+
+                if (result.succeeded())
+                {
+                    updateCapacity(worker, result.result());
+                    worker.missedHeartbeats = 0;
+                    worker.lastHeartbeatMs = System.currentTimeMillis();
+                    worker.restartDelayMs = 0;
+
+                    if (worker.state == WorkerState.STARTING)
+                    {
+                        worker.state = WorkerState.READY;
+                        LOGGER.info("Plugin worker {} is ready", worker.index);
+
+                        negotiateCodec(worker);
+                        drainQueue();
+                    }
+                }
+                else if (++worker.missedHeartbeats >= maxMissedHeartbeats)
+                {
+                    restart(worker, worker.missedHeartbeats + " missed heartbeats");
+                }
+            });
+
+            write(worker, new JsonObject().put("request_id", requestId).put("command", "ping"))
+                    .onFailure(error -> responseRouter.cancel(requestId));
+        }
+    }
+
+    private void negotiateCodec(Worker worker)
+    {
+        var requestId = "hello-" + worker.index + "-" + UUID.randomUUID();
+
+        // Older plugins answer an unknown command with an error, which keeps the JSON format
+        var hello = new JsonObject()
+                .put("request_id", requestId)
+                .put("command", "hello")
+                .put("data", new JsonObject().put("codecs", new JsonArray().add(WireCodec.BINARY_CODEC_NAME)));
+
+        responseRouter.register(requestId, heartbeatTimeoutMs).onComplete(result ->
+        {
+            if (result.succeeded())
+            {
+                updateCapacity(worker, result.result());
+            }
+
+            if (result.succeeded() && result.result().getJsonArray("codecs", new JsonArray()).contains(WireCodec.BINARY_CODEC_NAME))
+            {
+                worker.binaryWire = true;
+                LOGGER.info("Plugin worker {} supports {}, switching to binary wire format", worker.index, WireCodec.BINARY_CODEC_NAME);
+            }
+        });
+
+        write(worker, hello).onFailure(error -> responseRouter.cancel(requestId));
+    }
+
+    // Workers advertise their capacity as credits in ping and hello answers
+    private void updateCapacity(Worker worker, JsonObject answer)
+    {
+        var credits = answer.getInteger("credits");
+
+        if (answer.getJsonObject("ssh_pool") != null)
+        {
+            worker.sshPool = answer.getJsonObject("ssh_pool");
+        }
+
+        if (credits != null && credits > 0 && credits != worker.capacity)
+        {
+            LOGGER.info("Plugin worker {} advertises {} credits", worker.index, credits);
+            worker.capacity = credits;
+            drainQueue();
+        }
+    }
+
+    private void restart(Worker worker, String reason)
+    {
+        if (isStopping || worker.state == WorkerState.RESTARTING)
+        {
+            return;
+        }
+
+        LOGGER.warn("Restarting plugin worker {}: {}", worker.index, reason);
+
+        worker.state = WorkerState.RESTARTING;
+        worker.restarts++;
+
+        if (worker.process != null && worker.process.isAlive())
+        {
+            worker.process.destroyForcibly();
+        }
+
+        // Requests nobody answered are sent again ahead of new work; partly answered ones are retried by their owner
+        var now = System.currentTimeMillis();
+        var resend = new ArrayList<JsonObject>();
+        var it = requests.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            var tracked = it.next().getValue();
+
+            if (tracked.worker != worker)
+            {
+                continue;
+            }
+
+            it.remove();
+
+            if (tracked.responses == 0 && now - tracked.sentAtMs < requestRetentionMs)
+            {
+                resend.add(tracked.message);
+            }
+            else
+            {
+                abandonedRequests++;
+            }
+        }
+
+        worker.outstanding = 0;
+
+        for (var i = resend.size() - 1; i >= 0; i--)
+        {
+            enqueue(new QueuedRequest(resend.get(i), null), true);
+        }
+
+        resentRequests += resend.size();
+
+        if (!resend.isEmpty())
+        {
+            LOGGER.info("Re-queued {} requests of plugin worker {}", resend.size(), worker.index);
+        }
+
+        drainQueue();
+        scheduleRestart(worker);
+    }
+
+    private void scheduleRestart(Worker worker)
+    {
+        worker.state = WorkerState.RESTARTING;
+
+        // Back off while the worker keeps failing, reset by the first answered heartbeat
+        worker.restartDelayMs = worker.restartDelayMs == 0
+                ? MIN_RESTART_DELAY_MS
+                : Math.min(MAX_RESTART_DELAY_MS, worker.restartDelayMs * 2);
+
+        vertx.setTimer(worker.restartDelayMs, id ->
+        {
+            if (!isStopping)
+            {
+                spawn(worker);
+            }
+        });
+    }
+
+    /**
+     * Drop requests that never completed, e.g. because a batch was lost.
+     */
+    public void expireRequests()
+    {
+        var now = System.currentTimeMillis();
+
+        requests.values().removeIf(tracked ->
+        {
+            if (now - tracked.sentAtMs < requestRetentionMs)
+            {
+                return false;
+            }
+
+            tracked.worker.outstanding = Math.max(0, tracked.worker.outstanding - 1);
+            return true;
+        });
+
+        drainQueue();
+    }
+
+    public boolean isBinaryWire()
+    {
+        // Reported for the pool as a whole
+        return workers.stream().anyMatch(worker -> worker.binaryWire);
+    }
+
+    public JsonObject getStats()
+    {
+        var list = new JsonArray();
+
+        for (var worker : workers)
+        {
+            list.add(new JsonObject()
+                    .put("index", worker.index)
+                    .put("endpoint", worker.endpoint)
+                    .put("state", worker.state.name())
+                    .put("pid", worker.process != null ? worker.process.pid() : null)
+                    .put("outstanding", worker.outstanding)
+                    .put("credits", worker.capacity - worker.outstanding)
+                    .put("capacity", worker.capacity)
+                    .put("sent", worker.sent)
+                    .put("restarts", worker.restarts)
+                    .put("missed_heartbeats", worker.missedHeartbeats)
+                    .put("last_heartbeat_ms", worker.lastHeartbeatMs)
+                    .put("uptime_ms", worker.process != null ? System.currentTimeMillis() - worker.startedAtMs : 0)
+                    .put("wire_format", worker.binaryWire ? WireCodec.BINARY_CODEC_NAME : "json")
+                    .put("ssh_pool", worker.sshPool));
+        }
+
+        return new JsonObject()
+                .put("workers", list)
+                .put("tracked_requests", requests.size())
+                .put("queue_depth", queue.size())
+                .put("queue_capacity", queueCapacity)
+                .put("max_queue_depth", maxQueueDepth)
+                .put("queued_requests", queuedRequests)
+                .put("rejected_requests", rejectedRequests)
+                .put("expired_in_queue", expiredInQueue)
+                .put("avg_queue_wait_ms", queuedRequests > 0 ? totalQueueWaitMs / queuedRequests : 0)
+                .put("resent_requests", resentRequests)
+                .put("abandoned_requests", abandonedRequests)
+                .put("affinity_hits", affinityHits)
+                .put("affinity_fallbacks", affinityFallbacks);
+    }
+
+    private static final class Worker
+    {
+        private final int index;
+        private final String endpoint;
+
+        // Guarded by the worker's monitor, used from worker threads
+        private ZMQ.Socket socket;
+        private volatile boolean binaryWire;
+
+        private volatile WorkerState state = WorkerState.STOPPED;
+        private volatile Process process;
+        private int outstanding;
+        private int capacity;
+        private long sent;
+        private int restarts;
+        private int missedHeartbeats;
+        private long lastHeartbeatMs;
+        private long startedAtMs;
+        private long restartDelayMs;
+        private JsonObject sshPool; // Pooled SSH connection counters from the last heartbeat
+
+        private Worker(int index, String endpoint, int capacity)
+        {
+            this.index = index;
+            this.endpoint = endpoint;
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class TrackedRequest
+    {
+        private final JsonObject message;
+        private final Worker worker;
+        private final long sentAtMs = System.currentTimeMillis();
+        private int responses;
+
+        private TrackedRequest(JsonObject message, Worker worker)
+        {
+            this.message = message;
+            this.worker = worker;
+        }
+    }
+
+    private static final class QueuedRequest
+    {
+        private final JsonObject message;
+        private final Promise<Void> promise; // Null for requests re-sent after a worker restart
+        private final long enqueuedAtMs = System.currentTimeMillis();
+
+        private QueuedRequest(JsonObject message, Promise<Void> promise)
+        {
+            this.message = message;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.nms.polling;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Schedules each monitor on its own interval using a hashed timing wheel.
+ * A monitor starts at a random phase within its interval, so the fleet is spread evenly
+ * and every tick dispatches only the few devices that are due, in small batches.
+ * Per-device state lives in a {@link CompactDeviceRegistry}; the wheel only carries monitor IDs.
+ * Runs on the owning verticle's event loop.
+ */
+public class PollScheduler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollScheduler.class);
+
+    private static final long DEFAULT_TICK_MS = 250;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private static final int DEFAULT_DISPATCH_BATCH_SIZE = 25;
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final Vertx vertx;
+    private final Consumer<JsonArray> dispatcher;
+    private final HashedTimingWheel<Integer> wheel;
+    private int dispatchBatchSize;
+    private final CompactDeviceRegistry monitors = new CompactDeviceRegistry();
+
+    private long timerTickId;
+    private long startTimeMs;
+    private long ticks = 0;
+
+    // Counters
+    private long dispatchedBatches;
+    private long dispatchedPolls;
+    private int lastTickDue;
+    private int maxTickDue;
+
+    public PollScheduler(Vertx vertx, JsonObject config, Consumer<JsonArray> dispatcher)
+    {
+        this.vertx = vertx;
+        this.dispatcher = dispatcher;
+        this.wheel = new HashedTimingWheel<>(config.getLong("polling.tick.ms", DEFAULT_TICK_MS),
+                config.getInteger("polling.wheel.size", DEFAULT_WHEEL_SIZE));
+        this.dispatchBatchSize = config.getInteger("polling.dispatch.batch.size", DEFAULT_DISPATCH_BATCH_SIZE);
+    }
+
+    public void start()
+    {
+        startTimeMs = System.currentTimeMillis();
+        timerTickId = vertx.setPeriodic(wheel.getTickMs(), id -> tick());
+
+        LOGGER.info("Poll scheduler started, {} ms ticks, {} slots, batches of {}", wheel.getTickMs(), wheel.getWheelSize(), dispatchBatchSize);
+    }
+
+    public void stop()
+    {
+        vertx.cancelTimer(timerTickId);
+    }
+
+    /**
+     * Change the number of devices per dispatched batch, from the next tick on.
+     */
+    public void setDispatchBatchSize(int dispatchBatchSize)
+    {
+        this.dispatchBatchSize = Math.max(1, dispatchBatchSize);
+    }
+
+    /**
+     * Reconcile the scheduled monitors with the current set of active provisions.
+     * New monitors get a random phase, removed ones are dropped when their slot comes up.
+     * @param provisions Active provisions with monitor_id and optional poll_interval_seconds
+     * @return Monitors that were dropped from the schedule
+     */
+    public List<Integer> update(JsonArray provisions)
+    {
+        var seen = new HashSet<Integer>();
+        var now = System.currentTimeMillis();
+        var added = 0;
+
+        for (var i = 0; i < provisions.size(); i++)
+        {
+            var provision = provisions.getJsonObject(i);
+            int monitorId;
+
+            try
+            {
+                monitorId = CompactDeviceRegistry.toMonitorId(provision.getLong(Constants.MONITOR_ID));
+            }
+            catch (IllegalArgumentException exception)
+            {
+                LOGGER.warn("Skipping provision: {}", exception.getMessage());
+                continue;
+            }
+
+            seen.add(monitorId);
+
+            var intervalMs = (int) Math.max(wheel.getTickMs(),
+                    provision.getInteger(Constants.PROVISION_POLL_INTERVAL, DEFAULT_INTERVAL_SECONDS) * 1000L);
+            var isNew = !monitors.contains(monitorId);
+
+            // Credentials or interval of a known monitor may have changed, the next reschedule picks them up
+            var slot = monitors.upsert(provision, intervalMs);
+
+            if (isNew)
+            {
+                var phaseMs = ThreadLocalRandom.current().nextLong(intervalMs);
+
+                monitors.setNextDueMs(slot, now + phaseMs);
+                wheel.schedule(monitorId, phaseMs);
+                added++;
+            }
+        }
+
+        // Collect first, removing moves slots under the cursor
+        var stale = new ArrayList<Integer>();
+        var cursor = monitors.cursor();
+
+        while (cursor.next())
+        {
+            if (!seen.contains(cursor.monitorId()))
+            {
+                stale.add(cursor.monitorId());
+            }
+        }
+
+        stale.forEach(monitors::remove);
+
+        if (added > 0 || !stale.isEmpty())
+        {
+            LOGGER.info("Poll schedule updated: {} monitors ({} added, {} removed)", monitors.size(), added, stale.size());
+        }
+
+        return stale;
+    }
+
+    private void tick()
+    {
+        // Catch up on ticks missed while the event loop was busy
+        var targetTicks = (System.currentTimeMillis() - startTimeMs) / wheel.getTickMs();
+        var batch = new JsonArray();
+        var due = 0;
+
+        while (ticks < targetTicks)
+        {
+            ticks++;
+
+            var now = System.currentTimeMillis();
+
+            for (var monitorId : wheel.advance())
+            {
+                var slot = monitors.slotOf(monitorId);
+
+                // Dropped since it was scheduled, or a stale entry of a monitor that was removed and added again
+                if (slot < 0 || monitors.getNextDueMs(slot) > now + wheel.getTickMs())
+                {
+                    continue;
+                }
+
+                batch.add(monitors.toProvision(slot));
+                due++;
+                reschedule(monitorId, slot, now);
+
+                if (batch.size() >= dispatchBatchSize)
+                {
+                    dispatch(batch);
+                    batch = new JsonArray();
+                }
+            }
+        }
+
+        if (!batch.isEmpty())
+        {
+            dispatch(batch);
+        }
+
+        lastTickDue = due;
+        maxTickDue = Math.max(maxTickDue, due);
+    }
+
+    private void reschedule(int monitorId, int slot, long now)
+    {
+        var intervalMs = monitors.getIntervalMs(slot);
+
+        // Keep the phase stable instead of drifting by the dispatch delay
+        var nextDueMs = monitors.getNextDueMs(slot) + intervalMs;
+
+        if (nextDueMs <= now)
+        {
+            nextDueMs = now + intervalMs;
+        }
+
+        monitors.setNextDueMs(slot, nextDueMs);
+        wheel.schedule(monitorId, nextDueMs - now);
+    }
+
+    private void dispatch(JsonArray batch)
+    {
+        dispatchedBatches++;
+        dispatchedPolls += batch.size();
+
+        dispatcher.accept(batch);
+    }
+
+    public JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("scheduled_monitors", monitors.size())
+                .put("wheel_entries", wheel.size())
+                .put("credential_profiles", monitors.getCredentialCount())
+                .put("registry_bytes", monitors.estimateFootprintBytes())
+                .put("tick_ms", wheel.getTickMs())
+                .put("dispatch_batch_size", dispatchBatchSize)
+                .put("dispatched_batches", dispatchedBatches)
+                .put("dispatched_polls", dispatchedPolls)
+                .put("last_tick_due", lastTickDue)
+                .put("max_tick_due", maxTickDue);
+    }
+}
@@ -0,0 +1,403 @@
+package org.nms.polling;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.nms.service.PollingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-behind stage between metrics collection and the database.
+ * Records are queued in a bounded in-memory queue and written with group commit,
+ * either when enough rows are queued or when the flush interval elapses.
+ * When the queue overflows or the database is unreachable, records are appended to a local
+ * SpillLog instead; once the database accepts writes again the log is replayed in order
+ * at full batch speed before the in-memory path resumes. A spill flag is set as soon as records
+ * are sent to disk and cleared only once replay has drained the log, so records offered while an
+ * append is still running on a worker thread cannot overtake the spilled ones.
+ * All methods must be called on the owning verticle's event loop.
+ */
+public class PollingIngestBuffer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingIngestBuffer.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_GROUP_COMMIT_ROWS = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    private static final long DEFAULT_REPLAY_RETRY_MS = 5000;
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String DEFAULT_SPOOL_DIR = "spool/polling";
+
+    private final Vertx vertx;
+    private final PollingService pollingService;
+    private final SpillLog spillLog;
+    private final int queueCapacity;
+    private final int groupCommitRows;
+    private final long flushIntervalMs;
+    private final long replayRetryMs;
+
+    private final ArrayDeque<JsonObject> queue = new ArrayDeque<>();
+    private boolean flushInFlight = false;
+    private boolean replayInFlight = false;
+    private boolean databaseAvailable = true;
+
+    // Set when records are sent to disk, cleared once replay has drained the log
+    private boolean spillActive = false;
+    private int spillsInFlight = 0;
+    private long flushTimerId;
+    private long replayTimerId = -1;
+
+    // Counters
+    private long flushCount;
+    private long failedFlushCount;
+    private long flushedRows;
+    private long lastFlushRows;
+    private long lastFlushLatencyMs;
+    private long spilledRecords;
+    private long replayedRecords;
+    private double lastReplayRate;
+
+    public PollingIngestBuffer(Vertx vertx, PollingService pollingService, JsonObject config)
+    {
+        this.vertx = vertx;
+        this.pollingService = pollingService;
+        this.queueCapacity = config.getInteger("ingest.queue.capacity", DEFAULT_QUEUE_CAPACITY);
+        this.groupCommitRows = config.getInteger("ingest.group.commit.rows", DEFAULT_GROUP_COMMIT_ROWS);
+        this.flushIntervalMs = config.getLong("ingest.flush.interval.ms", DEFAULT_FLUSH_INTERVAL_MS);
+        this.replayRetryMs = config.getLong("ingest.replay.retry.ms", DEFAULT_REPLAY_RETRY_MS);
+        this.spillLog = new SpillLog(Path.of(config.getString("ingest.spool.dir", DEFAULT_SPOOL_DIR)),
+                config.getInteger("ingest.segment.size", DEFAULT_SEGMENT_SIZE));
+    }
+
+    public Future<Void> start()
+    {
+        return vertx.<Void>executeBlocking(promise ->
+        {
+            try
+            {
+                spillLog.open();
+                promise.complete();
+            }
+            catch (Exception exception)
+            {
+                promise.fail(exception);
+            }
+        }).onSuccess(v ->
+        {
+            flushTimerId = vertx.setPeriodic(flushIntervalMs, id -> flush());
+
+            // Records left over from a previous run go first
+            if (spillLog.hasPending())
+            {
+                spillActive = true;
+                replay();
+            }
+        });
+    }
+
+    /**
+     * Stop flushing and replaying.
+     * @return Future completed once anything still queued is kept on disk for the next run
+     */
+    public Future<Void> stop()
+    {
+        vertx.cancelTimer(flushTimerId);
+
+        if (replayTimerId != -1)
+        {
+            vertx.cancelTimer(replayTimerId);
+        }
+
+        if (queue.isEmpty())
+        {
+            return Future.succeededFuture();
+        }
+
+        var remaining = new ArrayList<>(queue);
+        queue.clear();
+
+        // Ordered behind any spill or replay still running on a worker thread
+        return vertx.<Void>executeBlocking(promise ->
+        {
+            try
+            {
+                spillLog.append(remaining);
+                promise.complete();
+            }
+            catch (Exception exception)
+            {
+                promise.fail(exception);
+            }
+        }).recover(error ->
+        {
+            LOGGER.error("Failed to spill {} queued records on stop: {}", remaining.size(), error.getMessage());
+            return Future.succeededFuture();
+        });
+    }
+
+    /**
+     * Accept records for writing. Never blocks on the database.
+     * @param records Polling rows with monitor_id, data and timestamp
+     */
+    public void offer(List<JsonObject> records)
+    {
+        // Keep order: once anything is on disk, new records follow it there
+        if (!databaseAvailable || spillActive)
+        {
+            spill(records);
+            return;
+        }
+
+        var free = queueCapacity - queue.size();
+
+        if (records.size() > free)
+        {
+            queue.addAll(records.subList(0, Math.max(free, 0)));
+
+            LOGGER.warn("Ingest queue full ({} rows), spilling {} rows to disk", queueCapacity, records.size() - free);
+            spill(records.subList(Math.max(free, 0), records.size()));
+        }
+        else
+        {
+            queue.addAll(records);
+        }
+
+        if (queue.size() >= groupCommitRows)
+        {
+            flush();
+        }
+    }
+
+    private void flush()
+    {
+        if (flushInFlight || queue.isEmpty())
+        {
+            return;
+        }
+
+        var batch = new ArrayList<JsonObject>(Math.min(queue.size(), groupCommitRows));
+        while (!queue.isEmpty() && batch.size() < groupCommitRows)
+        {
+            batch.add(queue.poll());
+        }
+
+        flushInFlight = true;
+        var startTime = System.nanoTime();
+
+        pollingService.insertPollingDataBatch(batch).onComplete(result ->
+        {
+            flushInFlight = false;
+            var latencyMs = (System.nanoTime() - startTime) / 1_000_000;
+
+            if (result.succeeded())
+            {
+                flushCount++;
+                flushedRows += result.result();
+                lastFlushRows = result.result();
+                lastFlushLatencyMs = latencyMs;
+
+                LOGGER.info("Flushed {} polling rows in {} ms", result.result(), latencyMs);
+
+                // Keep draining while enough rows are queued
+                if (queue.size() >= groupCommitRows)
+                {
+                    flush();
+                }
+                return;
+            }
+
+            failedFlushCount++;
+            databaseAvailable = false;
+
+            LOGGER.error("Failed to flush {} polling rows after {} ms, spilling to disk: {}",
+                    batch.size(), latencyMs, result.cause().getMessage());
+
+            // The failed batch is older than anything still queued
+            batch.addAll(queue);
+            queue.clear();
+
+            spill(batch);
+        });
+    }
+
+    private void spill(List<JsonObject> records)
+    {
+        if (records.isEmpty())
+        {
+            return;
+        }
+
+        var copy = new ArrayList<>(records);
+
+        // Set before the append runs so records offered meanwhile follow these to disk
+        spillActive = true;
+        spillsInFlight++;
+
+        // Ordered, so appends and replay reads never interleave
+        vertx.<Void>executeBlocking(promise ->
+        {
+            try
+            {
+                spillLog.append(copy);
+                promise.complete();
+            }
+            catch (Exception exception)
+            {
+                promise.fail(exception);
+            }
+        }).onComplete(result ->
+        {
+            spillsInFlight--;
+
+            if (result.succeeded())
+            {
+                spilledRecords += copy.size();
+            }
+            else
+            {
+                LOGGER.error("Failed to spill {} polling rows, samples lost: {}", copy.size(), result.cause().getMessage());
+            }
+
+            scheduleReplay(databaseAvailable ? 0 : replayRetryMs);
+        });
+    }
+
+    private void scheduleReplay(long delayMs)
+    {
+        if (replayInFlight || replayTimerId != -1)
+        {
+            return;
+        }
+
+        if (delayMs <= 0)
+        {
+            replay();
+            return;
+        }
+
+        replayTimerId = vertx.setTimer(delayMs, id ->
+        {
+            replayTimerId = -1;
+            replay();
+        });
+    }
+
+    private void replay()
+    {
+        if (replayInFlight)
+        {
+            return;
+        }
+
+        replayInFlight = true;
+        var startTime = System.nanoTime();
+
+        replayNext(startTime, 0);
+    }
+
+    // Replay one group commit worth of records, then continue until the log is empty
+    private void replayNext(long startTime, long replayedInRun)
+    {
+        vertx.<SpillLog.ReadResult>executeBlocking(promise ->
+                {
+                    try
+                    {
+                        promise.complete(spillLog.read(groupCommitRows));
+                    }
+                    catch (Exception exception)
+                    {
+                        promise.fail(exception);
+                    }
+                })
+                .compose(readResult ->
+                {
+                    if (readResult.getRecords().isEmpty())
+                    {
+                        return Future.succeededFuture(0);
+                    }
+
+                    return pollingService.insertPollingDataBatch(readResult.getRecords())
+                            .compose(rowCount -> vertx.<Integer>executeBlocking(promise ->
+                            {
+                                try
+                                {
+                                    spillLog.commit(readResult);
+                                    promise.complete(readResult.getRecords().size());
+                                }
+                                catch (Exception exception)
+                                {
+                                    promise.fail(exception);
+                                }
+                            }));
+                })
+                .onComplete(result ->
+                {
+                    if (result.failed())
+                    {
+                        replayInFlight = false;
+                        databaseAvailable = false;
+
+                        LOGGER.warn("Spill replay paused, database still unavailable: {}", result.cause().getMessage());
+                        scheduleReplay(replayRetryMs);
+                        return;
+                    }
+
+                    var replayed = replayedInRun + result.result();
+                    replayedRecords += result.result();
+
+                    if (result.result() > 0 && spillLog.hasPending())
+                    {
+                        replayNext(startTime, replayed);
+                        return;
+                    }
+
+                    replayInFlight = false;
+                    databaseAvailable = true;
+
+                    var elapsedMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+                    lastReplayRate = replayed * 1000.0 / elapsedMs;
+
+                    if (replayed > 0)
+                    {
+                        LOGGER.info("Replayed {} spilled polling rows in {} ms ({} rows/s)", replayed, elapsedMs, (long) lastReplayRate);
+                    }
+
+                    // Records spilled while the last read was in flight
+                    if (spillLog.hasPending())
+                    {
+                        scheduleReplay(0);
+                    }
+                    // Drained; an append still running replays again when it completes
+                    else if (spillsInFlight == 0)
+                    {
+                        spillActive = false;
+                    }
+                });
+    }
+
+    public JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("queue_depth", queue.size())
+                .put("queue_capacity", queueCapacity)
+                .put("database_available", databaseAvailable)
+                .put("spill_active", spillActive)
+                .put("flushes", flushCount)
+                .put("failed_flushes", failedFlushCount)
+                .put("flushed_rows", flushedRows)
+                .put("last_flush_rows", lastFlushRows)
+                .put("last_flush_latency_ms", lastFlushLatencyMs)
+                .put("spilled_rows", spilledRecords)
+                .put("spill_pending_rows", spillLog.getPendingRecords())
+                .put("spill_bytes", spillLog.getPendingBytes())
+                .put("spill_segments", spillLog.getSegmentCount())
+                .put("replayed_rows", replayedRecords)
+                .put("last_replay_rate_rows_per_sec", lastReplayRate);
+    }
+}
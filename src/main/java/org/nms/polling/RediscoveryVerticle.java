@@ -0,0 +1,266 @@
+package org.nms.polling;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.database.queries.DiscoveryQueries;
+import org.nms.service.BulkDiscoveryPipeline;
+import org.nms.utils.Constants;
+import org.nms.utils.ReachabilityEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Re-validates discovery profiles in the background, so the status provisioning is gated on stays fresh
+ * without manual runs. Each cycle loads the profiles this node owns and spreads their checks evenly over the
+ * cycle interval, starting at most rediscovery.rate.per.second checks a second and running at most
+ * rediscovery.max.concurrent at once. A profile is written only when its status or message changed; every
+ * status change is published on EVENT_DISCOVERY_TRANSITION once written.
+ * A check the plugin did not answer, or that could not be sent, is inconclusive and leaves the profile as it is.
+ * The rediscovery.* settings, including the cycle interval and rediscovery.enabled, are set in the NMS config
+ * file (see Main).
+ */
+public class RediscoveryVerticle extends AbstractVerticle
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RediscoveryVerticle.class);
+
+    public static final String EVENT_DISCOVERY_TRANSITION = "discovery.transition";
+
+    private static final long DEFAULT_INTERVAL_MS = 3600000; // 1 hour
+    private static final int DEFAULT_RATE_PER_SECOND = 5;
+    private static final int DEFAULT_MAX_CONCURRENT = 20;
+    private static final long TICK_MS = 1000;
+    private static final int MAX_MESSAGE_LENGTH = 255;
+
+    private long intervalMs;
+    private int ratePerSecond;
+    private int maxConcurrent;
+
+    private final ArrayDeque<JsonObject> pending = new ArrayDeque<>();
+    private final List<JsonArray> pendingWrites = new ArrayList<>();
+    private final List<JsonObject> pendingTransitions = new ArrayList<>();
+
+    private long tickTimerId = -1;
+    private long cycleStartedAt;
+    private boolean loading = false;
+    private int inFlight;
+
+    // Counters
+    private long cycles;
+    private long checked;
+    private long unchanged;
+    private long inconclusive;
+    private long written;
+    private long transitions;
+
+    @Override
+    public void start(Promise<Void> startPromise)
+    {
+        if (!config().getBoolean("rediscovery.enabled", true))
+        {
+            LOGGER.info("RediscoveryVerticle disabled");
+            startPromise.complete();
+            return;
+        }
+
+        intervalMs = config().getLong("rediscovery.interval.ms", DEFAULT_INTERVAL_MS);
+        ratePerSecond = config().getInteger("rediscovery.rate.per.second", DEFAULT_RATE_PER_SECOND);
+        maxConcurrent = config().getInteger("rediscovery.max.concurrent", DEFAULT_MAX_CONCURRENT);
+
+        // The first cycle starts on the first tick
+        tickTimerId = vertx.setPeriodic(TICK_MS, id -> tick());
+
+        startPromise.complete();
+        LOGGER.info("RediscoveryVerticle started, every {} ms, at most {} checks per second", intervalMs, ratePerSecond);
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise)
+    {
+        if (tickTimerId != -1)
+        {
+            vertx.cancelTimer(tickTimerId);
+        }
+
+        flushWrites();
+
+        stopPromise.complete();
+        LOGGER.info("RediscoveryVerticle stopped successfully");
+    }
+
+    private void tick()
+    {
+        flushWrites();
+
+        var now = System.currentTimeMillis();
+
+        if (pending.isEmpty())
+        {
+            if (!loading && inFlight == 0 && now - cycleStartedAt >= intervalMs)
+            {
+                startCycle();
+            }
+            return;
+        }
+
+        // Spread what is left over what is left of the cycle
+        var ticksLeft = Math.max(1, (cycleStartedAt + intervalMs - now) / TICK_MS);
+        var due = (int) Math.min(ratePerSecond, Math.max(1, (pending.size() + ticksLeft - 1) / ticksLeft));
+
+        for (var i = 0; i < due && inFlight < maxConcurrent && !pending.isEmpty(); i++)
+        {
+            check(pending.poll());
+        }
+    }
+
+    private void startCycle()
+    {
+        loading = true;
+
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, DiscoveryQueries.SELECT_DISCOVERIES_FOR_REDISCOVERY);
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_WITHOUT_PARAM_EVENTBUS, dbRequest)
+                .onComplete(result ->
+                {
+                    loading = false;
+                    cycleStartedAt = System.currentTimeMillis();
+
+                    if (result.failed())
+                    {
+                        LOGGER.error("Failed to load discovery profiles for rediscovery: {}", result.cause().getMessage());
+                        return;
+                    }
+
+                    var rows = result.result().body().getJsonArray("rows", new JsonArray());
+                    var ownership = ShardOwnership.getInstance();
+
+                    for (var i = 0; i < rows.size(); i++)
+                    {
+                        var row = rows.getJsonObject(i);
+
+                        // In cluster mode every node re-validates the profiles of its own shards
+                        if (ownership.owns(row.getLong(Constants.DISC_ID)))
+                        {
+                            pending.add(row);
+                        }
+                    }
+
+                    cycles++;
+
+                    LOGGER.info("Rediscovery cycle {}: {} profiles over {} ms ({} checked, {} unchanged, {} inconclusive, {} written, {} transitions so far)",
+                            cycles, pending.size(), intervalMs, checked, unchanged, inconclusive, written, transitions);
+                });
+    }
+
+    private void check(JsonObject profile)
+    {
+        var target = new BulkDiscoveryPipeline.Target(
+                profile.getLong(Constants.DISC_ID),
+                profile.getString(Constants.DISC_NAME),
+                profile.getString(Constants.DISC_IP_ADDRESS),
+                profile.getInteger(Constants.DISC_PORT_NO),
+                profile.getLong(Constants.DISC_CREDENTIAL_ID),
+                profile.getString(Constants.CRED_USERNAME),
+                profile.getString(Constants.CRED_PASSWORD),
+                profile.getString(Constants.CRED_PROTOCOL));
+
+        var context = vertx.getOrCreateContext();
+
+        inFlight++;
+
+        // Same checks and messages as a discovery run from the API
+        ReachabilityEngine.getInstance().check(target.ipAddress(), target.port())
+                .recover(error -> Future.failedFuture("Failed to perform checks: " + error.getMessage()))
+                .compose(v -> BulkDiscoveryPipeline.discover(vertx, target))
+                .onComplete(result -> context.runOnContext(v ->
+                {
+                    inFlight--;
+                    checked++;
+
+                    if (result.failed() && (BulkDiscoveryPipeline.DISCOVERY_TIMEOUT_MESSAGE.equals(result.cause().getMessage())
+                            || BulkDiscoveryPipeline.DISCOVERY_NOT_SENT_MESSAGE.equals(result.cause().getMessage())))
+                    {
+                        inconclusive++;
+                        return;
+                    }
+
+                    record(profile, result.succeeded(), result.succeeded() ? result.result() : result.cause().getMessage());
+                }));
+    }
+
+    private void record(JsonObject profile, boolean status, String message)
+    {
+        var storedMessage = message == null ? "" : message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+        var previousStatus = Boolean.TRUE.equals(profile.getValue(Constants.DISC_STATUS));
+        var previousMessage = profile.getString(Constants.DISC_MESSAGE);
+
+        if (status == previousStatus && Objects.equals(storedMessage, previousMessage))
+        {
+            unchanged++;
+            return;
+        }
+
+        var discoveryId = profile.getLong(Constants.DISC_ID);
+
+        pendingWrites.add(new JsonArray().add(status).add(Instant.now().toString()).add(storedMessage).add(discoveryId));
+
+        if (status != previousStatus)
+        {
+            pendingTransitions.add(new JsonObject()
+                    .put(Constants.DISC_ID, discoveryId)
+                    .put(Constants.DISC_IP_ADDRESS, profile.getString(Constants.DISC_IP_ADDRESS))
+                    .put("previous_status", previousStatus)
+                    .put(Constants.DISC_STATUS, status)
+                    .put(Constants.DISC_MESSAGE, storedMessage));
+        }
+    }
+
+    private void flushWrites()
+    {
+        if (pendingWrites.isEmpty())
+        {
+            return;
+        }
+
+        var rows = new JsonArray(new ArrayList<>(pendingWrites));
+        var events = new ArrayList<>(pendingTransitions);
+
+        pendingWrites.clear();
+        pendingTransitions.clear();
+
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, DiscoveryQueries.UPDATE_DISCOVERY_RESULT)
+                .put(Constants.DB_BATCH_PARAMS, rows);
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_BATCH_EVENTBUS, dbRequest)
+                .onComplete(result ->
+                {
+                    if (result.failed())
+                    {
+                        // Checked again next cycle
+                        LOGGER.error("Failed to write {} rediscovery results: {}", rows.size(), result.cause().getMessage());
+                        return;
+                    }
+
+                    written += rows.size();
+                    transitions += events.size();
+
+                    for (var event : events)
+                    {
+                        LOGGER.info("Discovery {} ({}) is now {}", event.getLong(Constants.DISC_ID),
+                                event.getString(Constants.DISC_IP_ADDRESS), event.getBoolean(Constants.DISC_STATUS) ? "reachable" : "unreachable");
+
+                        vertx.eventBus().publish(EVENT_DISCOVERY_TRANSITION, event);
+                    }
+                });
+    }
+}
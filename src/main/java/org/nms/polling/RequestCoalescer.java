@@ -0,0 +1,169 @@
+package org.nms.polling;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Coalesces small single-device plugin commands, such as discovery, into batched commands.
+ * Requests of the same command are held for a short window or until the batch is full, then sent as one
+ * "&lt;command&gt;_batch" request whose data lists each request's ID and data. The plugin answers every request as
+ * soon as its result is ready, in a frame carrying "batch": true, a "results" array and "total_results", the
+ * number of such frames; each result keeps the ID of its request, so splitting the reply only means routing
+ * every result on its own.
+ * A window that closes with a single request sends that request unchanged.
+ * Runs on the owning verticle's event loop.
+ */
+public class RequestCoalescer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    public static final String BATCH_SUFFIX = "_batch";
+
+    private final Vertx vertx;
+    private final Set<String> commands;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final Function<JsonObject, Future<Void>> sender;
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+
+    // Counters
+    private long coalescedRequests;
+    private long sentBatches;
+    private int maxSentBatchSize;
+
+    /**
+     * @param commands Commands that may be coalesced
+     * @param windowMs How long the first request of a batch waits for others, 0 disables coalescing
+     * @param maxBatchSize A full batch is sent without waiting for the window
+     * @param sender Sends one request to the plugin
+     */
+    public RequestCoalescer(Vertx vertx, Set<String> commands, long windowMs, int maxBatchSize, Function<JsonObject, Future<Void>> sender)
+    {
+        this.vertx = vertx;
+        this.commands = commands;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.sender = sender;
+    }
+
+    /**
+     * Whether a request is held for coalescing. Requests without an ID get no reply to split and are sent directly.
+     */
+    public boolean accepts(JsonObject request)
+    {
+        return windowMs > 0 && maxBatchSize > 1
+                && request.getString("request_id") != null
+                && commands.contains(request.getString("command"));
+    }
+
+    /**
+     * Hold a request until its batch is sent.
+     * @return Future completed once the batch holding the request was handed to the plugin
+     */
+    public Future<Void> submit(JsonObject request)
+    {
+        var command = request.getString("command");
+        var batch = pending.computeIfAbsent(command, key -> new PendingBatch());
+        var promise = Promise.<Void>promise();
+
+        batch.requests.add(request);
+        batch.promises.add(promise);
+        coalescedRequests++;
+
+        if (batch.requests.size() >= maxBatchSize)
+        {
+            vertx.cancelTimer(batch.timerId);
+            flush(command);
+        }
+        else if (batch.requests.size() == 1)
+        {
+            batch.timerId = vertx.setTimer(windowMs, id -> flush(command));
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Send every batch still waiting for its window.
+     */
+    public void flushAll()
+    {
+        for (var command : new ArrayList<>(pending.keySet()))
+        {
+            vertx.cancelTimer(pending.get(command).timerId);
+            flush(command);
+        }
+    }
+
+    private void flush(String command)
+    {
+        var batch = pending.remove(command);
+
+        if (batch == null || batch.requests.isEmpty())
+        {
+            return;
+        }
+
+        JsonObject message;
+
+        if (batch.requests.size() == 1)
+        {
+            message = batch.requests.get(0);
+        }
+        else
+        {
+            var items = new JsonArray();
+
+            for (var request : batch.requests)
+            {
+                items.add(new JsonObject()
+                        .put("request_id", request.getString("request_id"))
+                        .put("data", request.getValue("data")));
+            }
+
+            message = new JsonObject()
+                    .put("request_id", "batch-" + UUID.randomUUID())
+                    .put("command", command + BATCH_SUFFIX)
+                    .put("data", items);
+        }
+
+        sentBatches++;
+        maxSentBatchSize = Math.max(maxSentBatchSize, batch.requests.size());
+
+        LOGGER.debug("Sending {} {} requests as one", batch.requests.size(), command);
+
+        sender.apply(message).onComplete(result -> batch.promises.forEach(promise -> promise.handle(result)));
+    }
+
+    public JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("commands", new JsonArray(new ArrayList<>(commands)))
+                .put("window_ms", windowMs)
+                .put("max_batch_size", maxBatchSize)
+                .put("coalesced_requests", coalescedRequests)
+                .put("sent_batches", sentBatches)
+                .put("avg_batch_size", sentBatches > 0 ? (double) coalescedRequests / sentBatches : 0)
+                .put("max_sent_batch_size", maxSentBatchSize);
+    }
+
+    private static final class PendingBatch
+    {
+        private final List<JsonObject> requests = new ArrayList<>();
+        private final List<Promise<Void>> promises = new ArrayList<>();
+        private long timerId;
+    }
+}
@@ -0,0 +1,257 @@
+package org.nms.polling;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.database.queries.ClusterQueries;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Splits polling across the NMS nodes sharing one database.
+ * Each node sends a heartbeat to polling_nodes, computes its shards from the live nodes by rendezvous hashing,
+ * gives up leases on shards that moved to other nodes and claims or renews leases on its own.
+ * A shard is polled only by the node holding an unexpired lease on it, so a node that dies loses its shards
+ * once its leases expire and a joining node receives its shards as soon as their holders release them.
+ * A node whose leases were not renewed in time stops polling its shards a heartbeat before they expire,
+ * checked on its own timer so a stalled database call cannot delay it.
+ * Cluster mode is off unless cluster.enabled is set in the config.
+ */
+public class ShardLeaseVerticle extends AbstractVerticle
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardLeaseVerticle.class);
+
+    public static final String EB_CLUSTER_STATS = "cluster.stats";
+
+    private static final long DEFAULT_HEARTBEAT_INTERVAL_MS = 5000;
+    private static final int DEFAULT_NODE_TTL_MS = 15000;
+    private static final int DEFAULT_LEASE_TTL_MS = 15000;
+    private static final int DEAD_NODE_RETENTION_FACTOR = 20;
+    private static final int PRUNE_EVERY_REBALANCES = 20;
+    private static final long FENCE_CHECK_INTERVAL_MS = 1000;
+
+    private String nodeId;
+    private int shardCount;
+    private int nodeTtlMs;
+    private int leaseTtlMs;
+    private long heartbeatIntervalMs;
+    private long timerHeartbeatId;
+    private long timerFenceId;
+    private long lastClaimMs;
+    private DeliveryOptions requestOptions;
+    private long rebalances = 0;
+    private boolean isRunning = false;
+    private List<String> liveNodes = List.of();
+
+    @Override
+    public void start(Promise<Void> startPromise)
+    {
+        if (!config().getBoolean("cluster.enabled", false))
+        {
+            ShardOwnership.getInstance().disable();
+
+            startPromise.complete();
+            LOGGER.info("ShardLeaseVerticle started, cluster mode disabled, this node polls every monitor");
+            return;
+        }
+
+        nodeId = config().getString("cluster.node.id", defaultNodeId());
+        shardCount = config().getInteger("cluster.shard.count", ShardOwnership.DEFAULT_SHARD_COUNT);
+        nodeTtlMs = config().getInteger("cluster.node.ttl.ms", DEFAULT_NODE_TTL_MS);
+        leaseTtlMs = config().getInteger("cluster.lease.ttl.ms", DEFAULT_LEASE_TTL_MS);
+        heartbeatIntervalMs = config().getLong("cluster.heartbeat.interval.ms", DEFAULT_HEARTBEAT_INTERVAL_MS);
+
+        // A stalled database call gives up well before the leases run out, not after the default 30 s
+        requestOptions = new DeliveryOptions().setSendTimeout(
+                config().getLong("cluster.request.timeout.ms", Math.max(1, heartbeatIntervalMs / 2)));
+
+        ShardOwnership.getInstance().enable(shardCount);
+
+        vertx.eventBus().<JsonObject>localConsumer(EB_CLUSTER_STATS, message -> message.reply(getStats()));
+
+        // Claim the first shards before polling starts
+        rebalance()
+                .onComplete(result ->
+                {
+                    timerHeartbeatId = vertx.setPeriodic(heartbeatIntervalMs, id -> rebalance());
+
+                    // Independent of the heartbeat, which skips its turn while a rebalance is stuck
+                    timerFenceId = vertx.setPeriodic(FENCE_CHECK_INTERVAL_MS, id -> fenceIfExpiring());
+
+                    startPromise.complete();
+                    LOGGER.info("ShardLeaseVerticle started as node {}, {} shards, heartbeat every {} ms", nodeId, shardCount, heartbeatIntervalMs);
+                });
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise)
+    {
+        if (nodeId == null)
+        {
+            stopPromise.complete();
+            return;
+        }
+
+        vertx.cancelTimer(timerHeartbeatId);
+        vertx.cancelTimer(timerFenceId);
+        ShardOwnership.getInstance().update(List.of());
+
+        // Hand the shards over right away instead of letting the leases run out
+        execute(ClusterQueries.REMOVE_NODE, new JsonArray().add(nodeId))
+                .onComplete(result ->
+                {
+                    stopPromise.complete();
+                    LOGGER.info("ShardLeaseVerticle stopped, node {} left the cluster", nodeId);
+                });
+    }
+
+    private Future<Void> rebalance()
+    {
+        if (isRunning)
+        {
+            return Future.succeededFuture();
+        }
+
+        isRunning = true;
+        var claimSentMs = new long[1];
+
+        return execute(ClusterQueries.HEARTBEAT_NODE, new JsonArray().add(nodeId))
+                .compose(v -> execute(ClusterQueries.SELECT_LIVE_NODES, new JsonArray().add(nodeTtlMs)))
+                .compose(rows ->
+                {
+                    var nodes = new ArrayList<String>();
+                    rows.getJsonArray("rows", new JsonArray()).forEach(row -> nodes.add(((JsonObject) row).getString("node_id")));
+
+                    if (!nodes.contains(nodeId))
+                    {
+                        nodes.add(nodeId);
+                    }
+
+                    if (!nodes.equals(liveNodes))
+                    {
+                        LOGGER.info("Polling cluster membership changed: {}", nodes);
+                        liveNodes = nodes;
+                    }
+
+                    var desired = desiredShards(nodes);
+
+                    return execute(ClusterQueries.RELEASE_SHARDS, new JsonArray().add(nodeId).add(desired))
+                            .compose(v ->
+                            {
+                                // Leases run from when the claim is sent, not from when its answer arrives
+                                claimSentMs[0] = System.currentTimeMillis();
+                                return execute(ClusterQueries.CLAIM_SHARDS, new JsonArray().add(nodeId).add(desired).add(leaseTtlMs));
+                            });
+                })
+                .<Void>map(rows ->
+                {
+                    if (isExpiring(claimSentMs[0]))
+                    {
+                        LOGGER.warn("Shard claim answered after {} ms, too late to poll on it", System.currentTimeMillis() - claimSentMs[0]);
+                        return null;
+                    }
+
+                    var shards = new ArrayList<Integer>();
+                    rows.getJsonArray("rows", new JsonArray()).forEach(row -> shards.add(((JsonObject) row).getInteger("shard")));
+
+                    var before = ShardOwnership.getInstance().getVersion();
+                    ShardOwnership.getInstance().update(shards);
+                    lastClaimMs = claimSentMs[0];
+
+                    if (ShardOwnership.getInstance().getVersion() != before)
+                    {
+                        LOGGER.info("Node {} now holds {} of {} shards", nodeId, shards.size(), shardCount);
+                    }
+
+                    return null;
+                })
+                .onFailure(error ->
+                {
+                    LOGGER.error("Shard rebalance failed: {}", error.getMessage());
+                    fenceIfExpiring();
+                })
+                .onComplete(result ->
+                {
+                    isRunning = false;
+
+                    // Now and then forget nodes that are long gone
+                    if (result.succeeded() && ++rebalances % PRUNE_EVERY_REBALANCES == 0)
+                    {
+                        execute(ClusterQueries.PRUNE_DEAD_NODES, new JsonArray().add(nodeTtlMs * DEAD_NODE_RETENTION_FACTOR));
+                    }
+                });
+    }
+
+    // Leases that could not be renewed expire and another node may take them over,
+    // stop polling a heartbeat before that happens, whether or not a rebalance is still in flight
+    private void fenceIfExpiring()
+    {
+        if (ShardOwnership.getInstance().getOwnedCount() > 0 && isExpiring(lastClaimMs))
+        {
+            LOGGER.warn("Shard leases of node {} not renewed for {} ms, stopped polling its shards",
+                    nodeId, System.currentTimeMillis() - lastClaimMs);
+
+            ShardOwnership.getInstance().update(List.of());
+        }
+    }
+
+    private boolean isExpiring(long claimedAtMs)
+    {
+        return System.currentTimeMillis() - claimedAtMs >= leaseTtlMs - heartbeatIntervalMs;
+    }
+
+    // Comma separated shards this node wins among the live nodes
+    private String desiredShards(List<String> nodes)
+    {
+        var shards = new ArrayList<Integer>();
+
+        for (var shard = 0; shard < shardCount; shard++)
+        {
+            if (nodeId.equals(ShardOwnership.ownerOf(shard, nodes)))
+            {
+                shards.add(shard);
+            }
+        }
+
+        return shards.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private Future<JsonObject> execute(String query, JsonArray params)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_PARAMS, params);
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest, requestOptions)
+                .map(reply -> reply.body());
+    }
+
+    private static String defaultNodeId()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        }
+        catch (Exception exception)
+        {
+            return "node-" + ProcessHandle.current().pid();
+        }
+    }
+
+    private JsonObject getStats()
+    {
+        return ShardOwnership.getInstance().getStats()
+                .put("node_id", nodeId)
+                .put("live_nodes", new JsonArray(new ArrayList<>(liveNodes)))
+                .put("last_claim_ms", lastClaimMs);
+    }
+}
@@ -0,0 +1,182 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.utils.Constants;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Monitor shards this node currently polls.
+ * Monitor IDs are hashed onto a fixed number of shards; in cluster mode the lease verticle publishes the
+ * shards this node holds a lease on, and the metrics verticle schedules only monitors in those shards.
+ * Outside cluster mode every monitor belongs to this node.
+ */
+public class ShardOwnership
+{
+    public static final int DEFAULT_SHARD_COUNT = 256;
+
+    private static ShardOwnership instance;
+
+    private volatile boolean enabled = false;
+    private volatile int shardCount = DEFAULT_SHARD_COUNT;
+    private volatile BitSet owned = new BitSet();
+    private volatile long version = 0;
+
+    private ShardOwnership() {}
+
+    public static synchronized ShardOwnership getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ShardOwnership();
+        }
+        return instance;
+    }
+
+    /**
+     * Switch to cluster mode. No monitor is owned until the first leases are published.
+     */
+    public synchronized void enable(int shardCount)
+    {
+        this.shardCount = shardCount;
+        this.owned = new BitSet(shardCount);
+        this.enabled = true;
+        this.version++;
+    }
+
+    public synchronized void disable()
+    {
+        this.enabled = false;
+        this.version++;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public int getShardCount()
+    {
+        return shardCount;
+    }
+
+    /**
+     * Publish the shards this node holds. The version only moves when the set changed.
+     */
+    public synchronized void update(Collection<Integer> shards)
+    {
+        var updated = new BitSet(shardCount);
+        shards.forEach(updated::set);
+
+        if (!updated.equals(owned))
+        {
+            owned = updated;
+            version++;
+        }
+    }
+
+    public int getOwnedCount()
+    {
+        return owned.cardinality();
+    }
+
+    /**
+     * Changes whenever the owned shards change, lets readers skip re-filtering.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public boolean owns(long monitorId)
+    {
+        return !enabled || owned.get(shardOf(monitorId, shardCount));
+    }
+
+    /**
+     * Provisions of the monitors this node owns. Returns the given array itself outside cluster mode.
+     */
+    public JsonArray filter(JsonArray provisions)
+    {
+        if (!enabled)
+        {
+            return provisions;
+        }
+
+        var owns = owned;
+        var count = shardCount;
+        var result = new JsonArray();
+
+        for (var i = 0; i < provisions.size(); i++)
+        {
+            var provision = provisions.getJsonObject(i);
+            var monitorId = provision.getLong(Constants.MONITOR_ID);
+
+            if (monitorId != null && owns.get(shardOf(monitorId, count)))
+            {
+                result.add(provision);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Shard of a monitor. Stable across processes, every node must agree on it.
+     */
+    public static int shardOf(long monitorId, int shardCount)
+    {
+        return (int) Long.remainderUnsigned(mix(monitorId), shardCount);
+    }
+
+    /**
+     * Rendezvous (highest random weight) choice of the node for a shard.
+     * When a node joins or leaves, only the shards it wins or held move.
+     * @param nodes Live node IDs
+     * @return Winning node, null when there are no nodes
+     */
+    public static String ownerOf(int shard, List<String> nodes)
+    {
+        String owner = null;
+        var best = Long.MIN_VALUE;
+
+        for (var node : nodes)
+        {
+            // String.hashCode is specified, so every JVM computes the same weight
+            var weight = mix(((long) node.hashCode() << 32) ^ shard);
+
+            if (owner == null || weight > best || (weight == best && node.compareTo(owner) < 0))
+            {
+                owner = node;
+                best = weight;
+            }
+        }
+
+        return owner;
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long value)
+    {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public JsonObject getStats()
+    {
+        var owns = owned;
+
+        return new JsonObject()
+                .put("enabled", enabled)
+                .put("shard_count", shardCount)
+                .put("owned_shards", enabled ? owns.cardinality() : shardCount)
+                .put("version", version);
+    }
+}
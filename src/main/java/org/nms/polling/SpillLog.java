@@ -0,0 +1,355 @@
+package org.nms.polling;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of polling records on local disk, split into memory-mapped segments.
+ * Each segment starts with the committed read offset, followed by length-prefixed records.
+ * A zero length marks the end of the written data, so a segment can be recovered after a crash.
+ * Fully replayed segments are deleted. Not thread safe, callers serialize access.
+ * Durability: append() forces the written records to disk before it returns, so appended records
+ * survive a crash of the process or the host. commit() forces the read offset the same way; a crash
+ * after records were stored but before their commit replays them again (at least once).
+ */
+public class SpillLog
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = Long.BYTES; // Committed read offset
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence = 0;
+
+    // Bytes written but not yet replayed
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong pendingRecords = new AtomicLong();
+
+    public SpillLog(Path directory, int segmentSize)
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Map existing segments left over from a previous run.
+     */
+    public void open() throws IOException
+    {
+        Files.createDirectories(directory);
+
+        var files = new ArrayList<Path>();
+        try (var stream = Files.list(directory))
+        {
+            stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(files::add);
+        }
+
+        files.sort(Comparator.comparingLong(SpillLog::sequenceOf));
+
+        for (var file : files)
+        {
+            var segment = Segment.map(file, sequenceOf(file), segmentSize);
+            segment.recover();
+
+            segments.add(segment);
+            nextSequence = segment.sequence + 1;
+
+            pendingBytes.addAndGet(segment.writeOffset - segment.readOffset);
+            pendingRecords.addAndGet(segment.countPending());
+        }
+
+        if (!segments.isEmpty())
+        {
+            LOGGER.info("Recovered {} spill segments with {} pending records", segments.size(), pendingRecords.get());
+        }
+    }
+
+    /**
+     * Append records to the tail segment, rolling over to a new segment when full.
+     * @param records Records to append
+     */
+    public void append(List<JsonObject> records) throws IOException
+    {
+        for (var record : records)
+        {
+            var payload = record.toBuffer().getBytes();
+            var size = LENGTH_SIZE + payload.length;
+
+            if (size + LENGTH_SIZE > segmentSize - HEADER_SIZE)
+            {
+                LOGGER.error("Dropping polling record of {} bytes, larger than a spill segment", payload.length);
+                continue;
+            }
+
+            var tail = segments.peekLast();
+
+            // Keep room for the zero length that terminates the segment
+            if (tail == null || tail.writeOffset + size + LENGTH_SIZE > segmentSize)
+            {
+                if (tail != null)
+                {
+                    tail.force();
+                }
+
+                tail = Segment.create(directory.resolve(String.format("%016d%s", nextSequence, SEGMENT_SUFFIX)), nextSequence, segmentSize);
+                nextSequence++;
+                segments.add(tail);
+            }
+
+            tail.write(payload);
+
+            pendingBytes.addAndGet(size);
+            pendingRecords.incrementAndGet();
+        }
+
+        var tail = segments.peekLast();
+
+        if (tail != null)
+        {
+            tail.force();
+        }
+    }
+
+    /**
+     * Read records from the head of the log without consuming them.
+     * @param maxRecords Upper bound of records to return
+     * @return Records in append order, with the position to commit once they are stored
+     */
+    public ReadResult read(int maxRecords) throws IOException
+    {
+        // A replayed head is only kept while it is the tail, an append may have rolled past it since
+        deleteReplayedSegments();
+
+        var records = new ArrayList<JsonObject>();
+        var head = segments.peekFirst();
+
+        if (head == null)
+        {
+            return new ReadResult(records, null, 0, 0);
+        }
+
+        var offset = head.readOffset;
+        var bytes = 0L;
+
+        while (records.size() < maxRecords && offset < head.writeOffset)
+        {
+            var payload = head.readAt(offset);
+
+            records.add(Buffer.buffer(payload).toJsonObject());
+
+            offset += LENGTH_SIZE + payload.length;
+            bytes += LENGTH_SIZE + payload.length;
+        }
+
+        return new ReadResult(records, head, offset, bytes);
+    }
+
+    /**
+     * Mark records returned by read() as stored and delete segments that are fully replayed.
+     * @param result Result of the preceding read
+     */
+    public void commit(ReadResult result) throws IOException
+    {
+        if (result.segment == null)
+        {
+            return;
+        }
+
+        result.segment.commitReadOffset(result.nextOffset);
+
+        pendingBytes.addAndGet(-result.bytes);
+        pendingRecords.addAndGet(-result.records.size());
+
+        deleteReplayedSegments();
+    }
+
+    // The tail segment stays open for appends even when fully replayed
+    private void deleteReplayedSegments() throws IOException
+    {
+        while (segments.size() > 1 && segments.peekFirst().isFullyRead())
+        {
+            var segment = segments.pollFirst();
+            Files.deleteIfExists(segment.file);
+
+            LOGGER.info("Deleted replayed spill segment {}", segment.file.getFileName());
+        }
+    }
+
+    public boolean hasPending()
+    {
+        return pendingRecords.get() > 0;
+    }
+
+    public long getPendingBytes()
+    {
+        return pendingBytes.get();
+    }
+
+    public long getPendingRecords()
+    {
+        return pendingRecords.get();
+    }
+
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    private static long sequenceOf(Path file)
+    {
+        var name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static final class ReadResult
+    {
+        private final List<JsonObject> records;
+        private final Segment segment;
+        private final int nextOffset;
+        private final long bytes;
+
+        private ReadResult(List<JsonObject> records, Segment segment, int nextOffset, long bytes)
+        {
+            this.records = records;
+            this.segment = segment;
+            this.nextOffset = nextOffset;
+            this.bytes = bytes;
+        }
+
+        public List<JsonObject> getRecords()
+        {
+            return records;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final Path file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private int readOffset;
+        private int writeOffset;
+
+        // Records before this offset are forced to disk
+        private int forcedOffset;
+
+        private Segment(Path file, long sequence, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, long sequence, int size) throws IOException
+        {
+            var segment = map(file, sequence, size);
+
+            segment.readOffset = HEADER_SIZE;
+            segment.writeOffset = HEADER_SIZE;
+            segment.buffer.putLong(0, HEADER_SIZE);
+            segment.buffer.force(0, HEADER_SIZE);
+            segment.forcedOffset = HEADER_SIZE;
+
+            return segment;
+        }
+
+        static Segment map(Path file, long sequence, int size) throws IOException
+        {
+            // The mapping stays valid after the channel is closed
+            try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                return new Segment(file, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        // Find the end of the written data after a restart
+        void recover()
+        {
+            readOffset = (int) Math.max(HEADER_SIZE, buffer.getLong(0));
+            writeOffset = HEADER_SIZE;
+
+            while (writeOffset + LENGTH_SIZE <= buffer.capacity())
+            {
+                var length = buffer.getInt(writeOffset);
+
+                if (length <= 0 || writeOffset + LENGTH_SIZE + length > buffer.capacity())
+                {
+                    break;
+                }
+
+                writeOffset += LENGTH_SIZE + length;
+            }
+
+            readOffset = Math.min(readOffset, writeOffset);
+            forcedOffset = writeOffset;
+        }
+
+        long countPending()
+        {
+            var count = 0L;
+
+            for (var offset = readOffset; offset < writeOffset; offset += LENGTH_SIZE + buffer.getInt(offset))
+            {
+                count++;
+            }
+
+            return count;
+        }
+
+        void write(byte[] payload)
+        {
+            // Write the payload before its length so a torn write is never seen as a complete record
+            buffer.put(writeOffset + LENGTH_SIZE, payload);
+            buffer.putInt(writeOffset, payload.length);
+
+            writeOffset += LENGTH_SIZE + payload.length;
+        }
+
+        // Write the records appended since the last force back to the file
+        void force()
+        {
+            if (writeOffset > forcedOffset)
+            {
+                buffer.force(forcedOffset, writeOffset - forcedOffset);
+                forcedOffset = writeOffset;
+            }
+        }
+
+        byte[] readAt(int offset)
+        {
+            var payload = new byte[buffer.getInt(offset)];
+            buffer.get(offset + LENGTH_SIZE, payload);
+            return payload;
+        }
+
+        void commitReadOffset(int offset)
+        {
+            readOffset = offset;
+            buffer.putLong(0, offset);
+            buffer.force(0, HEADER_SIZE);
+        }
+
+        boolean isFullyRead()
+        {
+            return readOffset >= writeOffset;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package org.nms.polling;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Encoder and decoder for the Java to plugin wire protocol.
+ * Frames are either UTF-8 JSON or a schema'd binary layout that starts with MAGIC.
+ * The binary layout stores fields positionally, so field names are never repeated per record:
+ *
+ * <pre>
+ * frame       := MAGIC VERSION kind body
+ * REQUEST     := str request_id, str command, byte data_kind, data [uvarint parallelism]
+ * data        := DATA_JSON bytes | DATA_DEVICE device | DATA_DEVICE_LIST uvarint n, device * n
+ * device      := str ip, uvarint port, str username, str password, str protocol, varint monitor_id
+ * BATCH       := str request_id, str type, uvarint batch_id, uvarint batch_size, uvarint total_batches,
+ *                time processed_at, varint execution_ms, uvarint n, metrics * n
+ * metrics     := varint monitor_id, str ip, str system_type, str hostname, str uptime, varint in_traffic,
+ *                varint out_traffic, uvarint n, str * n, str cpu_usage, str memory_usage, str disk_usage,
+ *                str os_info, varint bandwidth, time timestamp, str error
+ * DEVICE      := str request_id, str type, uvarint seq, uvarint total_devices, varint execution_ms, metrics
+ * DISCOVERY   := str request_id, bool success, str details, str uptime
+ * time        := varint unix_nanos, varint utc_offset_seconds
+ * str, bytes  := uvarint length, raw bytes
+ * </pre>
+ *
+ * Varints use the same LEB128/zigzag encoding as Go's encoding/binary package.
+ */
+public final class WireCodec
+{
+    public static final String BINARY_CODEC_NAME = "binary-v1";
+
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    // Message kinds
+    public static final byte KIND_REQUEST = 0x01;
+    public static final byte KIND_BATCH_METRICS = 0x02;
+    public static final byte KIND_DISCOVERY_RESULT = 0x03;
+    public static final byte KIND_DEVICE_METRICS = 0x04;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // Request data kinds
+    private static final byte DATA_JSON = 0x00;
+    private static final byte DATA_DEVICE = 0x01;
+    private static final byte DATA_DEVICE_LIST = 0x02;
+
+    private WireCodec() {}
+
+    public static boolean isBinary(byte[] frame)
+    {
+        return frame.length >= 3 && frame[0] == MAGIC;
+    }
+
+    public static byte[] encodeJson(JsonObject message)
+    {
+        return message.toBuffer().getBytes();
+    }
+
+    /**
+     * Decode a frame received from the plugin, whichever format it uses.
+     * @param frame Raw frame bytes
+     * @return Decoded message
+     */
+    public static JsonObject decode(byte[] frame)
+    {
+        if (!isBinary(frame))
+        {
+            return new JsonObject(Buffer.buffer(frame));
+        }
+
+        var reader = new Reader(frame);
+
+        if (reader.readByte() != MAGIC || reader.readByte() != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported binary frame version");
+        }
+
+        var kind = reader.readByte();
+
+        return switch (kind)
+        {
+            case KIND_REQUEST -> readRequest(reader);
+            case KIND_BATCH_METRICS -> readBatchMetrics(reader);
+            case KIND_DISCOVERY_RESULT -> readDiscoveryResult(reader);
+            case KIND_DEVICE_METRICS -> readDeviceMetrics(reader);
+            default -> throw new IllegalArgumentException("Unknown binary frame kind: " + kind);
+        };
+    }
+
+    /**
+     * Encode a request in the binary layout.
+     * @param request Request with request_id, command and data
+     * @return Encoded frame
+     */
+    public static byte[] encodeRequest(JsonObject request)
+    {
+        var writer = new Writer(256);
+
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeByte(KIND_REQUEST);
+        writer.writeString(request.getString("request_id"));
+        writer.writeString(request.getString("command"));
+
+        var data = request.getValue("data");
+
+        if (data instanceof JsonArray devices && isDeviceList(devices))
+        {
+            writer.writeByte(DATA_DEVICE_LIST);
+            writer.writeUvarint(devices.size());
+
+            for (var i = 0; i < devices.size(); i++)
+            {
+                writeDevice(writer, devices.getJsonObject(i));
+            }
+        }
+        else if (data instanceof JsonObject device && device.containsKey("ip"))
+        {
+            writer.writeByte(DATA_DEVICE);
+            writeDevice(writer, device);
+        }
+        else
+        {
+            writer.writeByte(DATA_JSON);
+            writer.writeBytes(data == null ? new byte[0] : Json.encodeToBuffer(data).getBytes());
+        }
+
+        // Optional trailer, older decoders stop reading before it
+        if (request.getInteger("parallelism") != null)
+        {
+            writer.writeUvarint(request.getInteger("parallelism"));
+        }
+
+        return writer.toBytes();
+    }
+
+    /**
+     * Encode a metrics batch in the binary layout, as the plugin does.
+     * @param batch Batch with the same fields as the JSON form
+     * @return Encoded frame
+     */
+    public static byte[] encodeBatchMetrics(JsonObject batch)
+    {
+        var writer = new Writer(1024);
+
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeByte(KIND_BATCH_METRICS);
+        writer.writeString(batch.getString("request_id"));
+        writer.writeString(batch.getString("type"));
+        writer.writeUvarint(batch.getInteger("batch_id", 0));
+        writer.writeUvarint(batch.getInteger("batch_size", 0));
+        writer.writeUvarint(batch.getInteger("total_batches", 0));
+        writer.writeTime(batch.getString("processed_at"));
+        writer.writeVarint(batch.getLong("execution_ms", 0L));
+
+        var metrics = batch.getJsonObject("metrics", new JsonObject());
+        writer.writeUvarint(metrics.size());
+
+        for (var entry : metrics)
+        {
+            writeMetrics(writer, (JsonObject) entry.getValue());
+        }
+
+        return writer.toBytes();
+    }
+
+    /**
+     * Encode the streamed result of one device in the binary layout, as the plugin does.
+     * @param result Result with request_id, type, seq, total_devices and metrics
+     * @return Encoded frame
+     */
+    public static byte[] encodeDeviceMetrics(JsonObject result)
+    {
+        var writer = new Writer(256);
+
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeByte(KIND_DEVICE_METRICS);
+        writer.writeString(result.getString("request_id"));
+        writer.writeString(result.getString("type"));
+        writer.writeUvarint(result.getInteger("seq", 0));
+        writer.writeUvarint(result.getInteger("total_devices", 0));
+        writer.writeVarint(result.getLong("execution_ms", 0L));
+        writeMetrics(writer, result.getJsonObject("metrics", new JsonObject()));
+
+        return writer.toBytes();
+    }
+
+    private static void writeMetrics(Writer writer, JsonObject device)
+    {
+        var interfaces = device.getJsonArray("interfaces") != null ? device.getJsonArray("interfaces") : new JsonArray();
+
+        writer.writeVarint(device.getInteger("monitor_id", 0));
+        writer.writeString(device.getString("ip"));
+        writer.writeString(device.getString("system_type"));
+        writer.writeString(device.getString("hostname"));
+        writer.writeString(device.getString("uptime"));
+        writer.writeVarint(device.getLong("in_traffic", 0L));
+        writer.writeVarint(device.getLong("out_traffic", 0L));
+        writer.writeUvarint(interfaces.size());
+
+        for (var i = 0; i < interfaces.size(); i++)
+        {
+            writer.writeString(interfaces.getString(i));
+        }
+
+        writer.writeString(device.getString("cpu_usage"));
+        writer.writeString(device.getString("memory_usage"));
+        writer.writeString(device.getString("disk_usage"));
+        writer.writeString(device.getString("os_info"));
+        writer.writeVarint(device.getLong("bandwidth", 0L));
+        writer.writeTime(device.getString("timestamp"));
+        writer.writeString(device.getString("error"));
+    }
+
+    private static boolean isDeviceList(JsonArray devices)
+    {
+        for (var i = 0; i < devices.size(); i++)
+        {
+            if (!(devices.getValue(i) instanceof JsonObject device) || !device.containsKey("ip"))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeDevice(Writer writer, JsonObject device)
+    {
+        writer.writeString(device.getString("ip"));
+        writer.writeUvarint(device.getInteger("port", 0));
+        writer.writeString(device.getString("username"));
+        writer.writeString(device.getString("password"));
+        writer.writeString(device.getString("protocol"));
+        writer.writeVarint(device.getInteger("monitor_id", 0));
+    }
+
+    private static JsonObject readDevice(Reader reader)
+    {
+        return new JsonObject()
+                .put("ip", reader.readString())
+                .put("port", (int) reader.readUvarint())
+                .put("username", reader.readString())
+                .put("password", reader.readString())
+                .put("protocol", reader.readString())
+                .put("monitor_id", (int) reader.readVarint());
+    }
+
+    private static JsonObject readRequest(Reader reader)
+    {
+        var request = new JsonObject()
+                .put("request_id", reader.readString())
+                .put("command", reader.readString());
+
+        var dataKind = reader.readByte();
+
+        switch (dataKind)
+        {
+            case DATA_DEVICE -> request.put("data", readDevice(reader));
+            case DATA_DEVICE_LIST ->
+            {
+                var count = reader.readCount();
+                var devices = new JsonArray();
+
+                for (var i = 0; i < count; i++)
+                {
+                    devices.add(readDevice(reader));
+                }
+
+                request.put("data", devices);
+            }
+            case DATA_JSON ->
+            {
+                var bytes = reader.readBytes();
+
+                if (bytes.length > 0)
+                {
+                    request.put("data", Buffer.buffer(bytes).toJson());
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown request data kind: " + dataKind);
+        }
+
+        if (reader.hasRemaining())
+        {
+            request.put("parallelism", (int) reader.readUvarint());
+        }
+
+        return request;
+    }
+
+    private static JsonObject readBatchMetrics(Reader reader)
+    {
+        var batch = new JsonObject()
+                .put("request_id", reader.readString())
+                .put("type", reader.readString())
+                .put("batch_id", (int) reader.readUvarint())
+                .put("batch_size", (int) reader.readUvarint())
+                .put("total_batches", (int) reader.readUvarint())
+                .put("processed_at", reader.readTime())
+                .put("execution_ms", reader.readVarint());
+
+        var count = reader.readCount();
+        var metrics = new JsonObject();
+
+        for (var i = 0; i < count; i++)
+        {
+            var device = readMetrics(reader);
+
+            metrics.put(String.valueOf(device.getInteger("monitor_id")), device);
+        }
+
+        return batch.put("metrics", metrics);
+    }
+
+    private static JsonObject readDeviceMetrics(Reader reader)
+    {
+        return new JsonObject()
+                .put("request_id", reader.readString())
+                .put("type", reader.readString())
+                .put("seq", (int) reader.readUvarint())
+                .put("total_devices", (int) reader.readUvarint())
+                .put("execution_ms", reader.readVarint())
+                .put("metrics", readMetrics(reader));
+    }
+
+    private static JsonObject readMetrics(Reader reader)
+    {
+        var device = new JsonObject()
+                .put("monitor_id", (int) reader.readVarint())
+                .put("ip", reader.readString())
+                .put("system_type", reader.readString())
+                .put("hostname", reader.readString())
+                .put("uptime", reader.readString())
+                .put("in_traffic", reader.readVarint())
+                .put("out_traffic", reader.readVarint());
+
+        var interfaceCount = reader.readCount();
+        var interfaces = new JsonArray();
+
+        for (var j = 0; j < interfaceCount; j++)
+        {
+            interfaces.add(reader.readString());
+        }
+
+        device.put("interfaces", interfaces)
+                .put("cpu_usage", reader.readString())
+                .put("memory_usage", reader.readString())
+                .put("disk_usage", reader.readString())
+                .put("os_info", reader.readString())
+                .put("bandwidth", reader.readVarint())
+                .put("timestamp", reader.readTime());
+
+        var error = reader.readString();
+
+        if (!error.isEmpty())
+        {
+            device.put("error", error);
+        }
+
+        return device;
+    }
+
+    private static JsonObject readDiscoveryResult(Reader reader)
+    {
+        var result = new JsonObject()
+                .put("request_id", reader.readString())
+                .put("success", reader.readByte() != 0)
+                .put("details", reader.readString());
+
+        var uptime = reader.readString();
+
+        if (!uptime.isEmpty())
+        {
+            result.put("uptime", uptime);
+        }
+
+        return result;
+    }
+
+    // Writer and Reader are visible to the tests, which check them against the varint vectors shared with the plugin
+    static final class Writer
+    {
+        private final Buffer buffer;
+
+        Writer(int initialSize)
+        {
+            this.buffer = Buffer.buffer(initialSize);
+        }
+
+        void writeByte(byte value)
+        {
+            buffer.appendByte(value);
+        }
+
+        void writeUvarint(long value)
+        {
+            while ((value & ~0x7FL) != 0)
+            {
+                buffer.appendByte((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.appendByte((byte) value);
+        }
+
+        void writeVarint(long value)
+        {
+            writeUvarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeBytes(byte[] bytes)
+        {
+            writeUvarint(bytes.length);
+            buffer.appendBytes(bytes);
+        }
+
+        void writeString(String value)
+        {
+            writeBytes(value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeTime(String isoTimestamp)
+        {
+            if (isoTimestamp == null || isoTimestamp.isEmpty())
+            {
+                writeVarint(0);
+                writeVarint(0);
+                return;
+            }
+
+            var timestamp = OffsetDateTime.parse(isoTimestamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            var instant = timestamp.toInstant();
+            writeVarint(instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano());
+            writeVarint(timestamp.getOffset().getTotalSeconds());
+        }
+
+        byte[] toBytes()
+        {
+            return buffer.getBytes();
+        }
+    }
+
+    static final class Reader
+    {
+        private final byte[] frame;
+        private int position;
+
+        Reader(byte[] frame)
+        {
+            this.frame = frame;
+        }
+
+        boolean hasRemaining()
+        {
+            return position < frame.length;
+        }
+
+        byte readByte()
+        {
+            if (position >= frame.length)
+            {
+                throw new IllegalArgumentException("Truncated binary frame");
+            }
+            return frame[position++];
+        }
+
+        long readUvarint()
+        {
+            var value = 0L;
+
+            for (var shift = 0; shift < 64; shift += 7)
+            {
+                var current = readByte();
+                value |= (long) (current & 0x7F) << shift;
+
+                if ((current & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Malformed varint in binary frame");
+        }
+
+        long readVarint()
+        {
+            var value = readUvarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        // Element counts can never exceed the remaining bytes, which guards against corrupt frames
+        int readCount()
+        {
+            var count = readUvarint();
+
+            if (count > frame.length - position)
+            {
+                throw new IllegalArgumentException("Invalid element count in binary frame");
+            }
+            return (int) count;
+        }
+
+        byte[] readBytes()
+        {
+            var length = readCount();
+            var bytes = new byte[length];
+
+            System.arraycopy(frame, position, bytes, 0, length);
+            position += length;
+
+            return bytes;
+        }
+
+        String readString()
+        {
+            var length = readCount();
+            var value = new String(frame, position, length, StandardCharsets.UTF_8);
+
+            position += length;
+
+            return value;
+        }
+
+        String readTime()
+        {
+            var epochNanos = readVarint();
+            var offsetSeconds = (int) readVarint();
+            var instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+
+            return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(offsetSeconds))
+                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        }
+    }
+}
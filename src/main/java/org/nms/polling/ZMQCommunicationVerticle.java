@@ -3,6 +3,7 @@ package org.nms.polling;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,66 +11,113 @@ import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
+import java.util.HashSet;
+import java.util.List;
+
 /**
- * Verticle responsible for ZeroMQ communication with the Go plugin.
- * This verticle handles socket initialization, message sending, and response receiving.
+ * Verticle responsible for ZeroMQ communication with the Go plugin workers.
+ * This verticle handles socket initialization, message sending, and response receiving;
+ * the workers themselves are started, balanced and restarted by the PluginSupervisor.
+ * At most zmq.burst.limit frames are drained per wakeup, set in the NMS config file (see Main).
  */
 public class ZMQCommunicationVerticle extends AbstractVerticle
 {
 
     private static final Logger logger = LoggerFactory.getLogger(ZMQCommunicationVerticle.class);
 
-    private static final String PUSH_ENDPOINT = "tcp://localhost:5555";
-    private static final String PULL_ENDPOINT = "tcp://*:5556";
-    private static final long POLL_INTERVAL_MS = 100; // Poll ZMQ socket every 100ms
+    private static final int DEFAULT_BURST_LIMIT = 256; // Max frames drained per wakeup
+    private static final long REQUEST_EXPIRY_INTERVAL_MS = 30000;
+    private static final long DEFAULT_COALESCE_WINDOW_MS = 5;
+    private static final int DEFAULT_COALESCE_MAX_BATCH = 50;
+    private static final JsonArray DEFAULT_COALESCE_COMMANDS = new JsonArray().add("discovery");
 
     // Event bus addresses
     public static final String EB_ZMQ_SEND = "zmq.send";
-    public static final String EB_ZMQ_RESPONSE = "zmq.response.";
+    public static final String EB_ZMQ_STATS = "zmq.stats";
+    public static final String EB_PLUGIN_INVALIDATE = "plugin.invalidate";
 
     private ZContext zmqContext;
-    private ZMQ.Socket pushSocket;
     private ZMQ.Socket pullSocket;
-    private long timerPollId;
-    private boolean zmqInitialized = false;
+    private ZMQReceiveEngine receiveEngine;
+    private ZMQResponseRouter responseRouter;
+    private PluginSupervisor supervisor;
+    private RequestCoalescer coalescer;
+    private long timerExpiryId;
     private MessageConsumer<JsonObject> sendConsumer;
+    private MessageConsumer<JsonObject> statsConsumer;
+    private MessageConsumer<JsonObject> invalidateConsumer;
 
     @Override
     public void start(Promise<Void> startPromise)
     {
-        // Initialize ZMQ sockets
-        initializeZmq().future().onComplete(ar ->
-        {
-            if (ar.succeeded())
-            {
-                // Start non-blocking polling of ZMQ socket
-                startListening();
+        responseRouter = ZMQResponseRouter.getInstance();
+        zmqContext = new ZContext();
 
-                // Set up event bus consumer for send requests
-                setupEventBusConsumer();
+        // Created on this event loop, it runs its bookkeeping here; each worker gets its own PUSH socket
+        supervisor = new PluginSupervisor(vertx, zmqContext, config());
 
-                startPromise.complete();
-                logger.info("ZMQCommunicationVerticle started successfully");
-            }
-            else
-            {
-                startPromise.fail(ar.cause());
-                logger.error("Failed to initialize ZMQ: {}", ar.cause().getMessage());
-            }
-        });
+        // Small single-device commands are sent to the plugin in batches
+        var coalescedCommands = new HashSet<String>();
+        config().getJsonArray("zmq.coalesce.commands", DEFAULT_COALESCE_COMMANDS).forEach(command -> coalescedCommands.add((String) command));
+
+        coalescer = new RequestCoalescer(vertx, coalescedCommands,
+                config().getLong("zmq.coalesce.window.ms", DEFAULT_COALESCE_WINDOW_MS),
+                config().getInteger("zmq.coalesce.max.batch", DEFAULT_COALESCE_MAX_BATCH),
+                supervisor::send);
+
+        // Initialize ZMQ sockets, then start the plugin workers once responses can be received
+        initializeZmq().future()
+                .compose(v ->
+                {
+                    // Start the dedicated receive loop
+                    startListening();
+
+                    return supervisor.start();
+                })
+                .onComplete(ar ->
+                {
+                    if (ar.succeeded())
+                    {
+                        // Set up event bus consumer for send requests
+                        setupEventBusConsumer();
+
+                        timerExpiryId = vertx.setPeriodic(REQUEST_EXPIRY_INTERVAL_MS, id -> supervisor.expireRequests());
+
+                        startPromise.complete();
+                        logger.info("ZMQCommunicationVerticle started successfully");
+                    }
+                    else
+                    {
+                        startPromise.fail(ar.cause());
+                        logger.error("Failed to initialize ZMQ: {}", ar.cause().getMessage());
+                    }
+                });
     }
 
     @Override
     public void stop(Promise<Void> stopPromise)
     {
-        if (timerPollId != 0)
+        if (sendConsumer != null)
         {
-            vertx.cancelTimer(timerPollId);
+            sendConsumer.unregister();
         }
 
-        if (sendConsumer != null)
+        if (statsConsumer != null)
         {
-            sendConsumer.unregister();
+            statsConsumer.unregister();
+        }
+
+        if (invalidateConsumer != null)
+        {
+            invalidateConsumer.unregister();
+        }
+
+        vertx.cancelTimer(timerExpiryId);
+
+        // Hand over what is still waiting for its window
+        if (coalescer != null)
+        {
+            coalescer.flushAll();
         }
 
         // Close ZMQ resources
@@ -77,9 +125,14 @@ public class ZMQCommunicationVerticle extends AbstractVerticle
         {
             try
             {
-                if (pushSocket != null)
+                if (receiveEngine != null)
+                {
+                    receiveEngine.stop();
+                }
+
+                if (supervisor != null)
                 {
-                    pushSocket.close();
+                    supervisor.stop();
                 }
 
                 if (pullSocket != null)
@@ -115,20 +168,11 @@ public class ZMQCommunicationVerticle extends AbstractVerticle
         {
             try
             {
-                zmqContext = new ZContext();
-
-                // Socket to send requests to the Go plugin (PUSH)
-                pushSocket = zmqContext.createSocket(SocketType.PUSH);
-                pushSocket.connect(PUSH_ENDPOINT);
-
-                // Socket to receive responses from the Go plugin (PULL)
+                // Socket to receive responses from every plugin worker (PULL)
+                // Ownership passes to the receive engine thread once it is started
                 pullSocket = zmqContext.createSocket(SocketType.PULL);
+                pullSocket.bind(supervisor.getResultsEndpoint());
 
-                // Set receive timeout to make non-blocking polls possible
-                pullSocket.setReceiveTimeOut(1);
-                pullSocket.bind(PULL_ENDPOINT);
-
-                zmqInitialized = true;
                 blockingPromise.complete();
                 logger.info("ZMQ sockets initialized successfully");
             }
@@ -177,78 +221,92 @@ public class ZMQCommunicationVerticle extends AbstractVerticle
                 }
             });
         });
-    }
 
-    private void startListening()
-    {
-        // Use periodic timer to poll ZMQ socket instead of blocking loop
-        timerPollId = vertx.setPeriodic(POLL_INTERVAL_MS, id ->
+        // Register consumer for receive engine statistics
+        statsConsumer = vertx.eventBus().consumer(EB_ZMQ_STATS, message -> message.reply(receiveEngine.getStats()
+                .put("wire_format", supervisor.isBinaryWire() ? WireCodec.BINARY_CODEC_NAME : "json")
+                .put("plugin", supervisor.getStats())
+                .put("coalescer", coalescer.getStats())));
+
+        // Close the pooled SSH connections of devices whose address or credentials changed, on every worker
+        invalidateConsumer = vertx.eventBus().localConsumer(EB_PLUGIN_INVALIDATE, message ->
         {
-            if (zmqInitialized)
-            {
-                listenZmqSocket();
-            }
-        });
+            var monitorIds = message.body().getJsonArray("monitor_ids");
 
-        logger.info("Started periodic polling of ZMQ socket every {} ms", POLL_INTERVAL_MS);
+            logger.info("Invalidating pooled SSH sessions of monitors {}", monitorIds);
+
+            supervisor.broadcast(new JsonObject()
+                            .put("command", "invalidate")
+                            .put("data", new JsonObject().put("monitor_ids", monitorIds)))
+                    .onFailure(error -> logger.warn("Failed to invalidate SSH sessions of monitors {}: {}", monitorIds, error.getMessage()));
+        });
     }
 
-    private void listenZmqSocket()
+    private void startListening()
     {
-        vertx.executeBlocking(promise ->
-        {
-            try
-            {
-                // Non-blocking poll of the ZMQ socket
-                var responseBytes = pullSocket.recv(ZMQ.DONTWAIT);
+        var burstLimit = config().getInteger("zmq.burst.limit", DEFAULT_BURST_LIMIT);
+        var context = vertx.getOrCreateContext();
 
-                if (responseBytes != null && responseBytes.length > 0)
-                {
-                    var responseJson = new String(responseBytes);
+        // Frames are drained on the engine thread and processed on this verticle's event loop in batches
+        receiveEngine = new ZMQReceiveEngine(zmqContext, pullSocket, burstLimit, frames ->
+                context.runOnContext(v -> processBatch(frames)));
 
-                    // Process the response on the event loop
-                    vertx.runOnContext(v -> processResponse(responseJson));
+        receiveEngine.start();
+    }
 
-                    promise.complete(true); // Indicate message was received
-                }
-                else
-                {
-                    promise.complete(false); // No message received
-                }
-            }
-            catch (Exception exception)
-            {
-                logger.error("Error polling ZMQ socket", exception);
-                promise.fail(exception);
-            }
-        }, false, result ->
+    private void processBatch(List<byte[]> frames)
+    {
+        try
         {
-            // Optional handling of the polling result
-            if (result.failed())
+            for (var frame : frames)
             {
-                logger.warn("ZMQ polling failed: {}", result.cause().getMessage());
+                processResponse(frame);
             }
-        });
+        }
+        finally
+        {
+            receiveEngine.markProcessed(frames.size());
+        }
     }
 
-    private void processResponse(String responseJson)
+    private void processResponse(byte[] frame)
     {
         try
         {
-            logger.debug("Processing ZMQ response: {}", responseJson);
+            // Decode straight from the received bytes, whichever format the plugin used
+            var response = WireCodec.decode(frame);
+
+            logger.debug("Processing ZMQ response: {}", response);
 
-            var response = new JsonObject(responseJson);
             var requestId = response.getString("request_id");
 
+            // Lets the supervisor know which requests are fully answered
+            supervisor.onResponse(response);
+
+            // Results of a coalesced batch arrive as they are ready, each goes to the waiter of its own request
+            if (response.getBoolean("batch", false))
+            {
+                var results = response.getJsonArray("results", new JsonArray());
+
+                for (var i = 0; i < results.size(); i++)
+                {
+                    responseRouter.dispatch(results.getJsonObject(i));
+                }
+
+                return;
+            }
+
             if (requestId != null)
             {
-                // Publish the response to the event bus
-                vertx.eventBus().publish(EB_ZMQ_RESPONSE , response);
-                logger.info("Published response for request ID: {} to event bus", requestId);
+                // Deliver the response to the waiter or subscriber for this request
+                if (responseRouter.dispatch(response))
+                {
+                    logger.debug("Routed response for request ID: {}", requestId);
+                }
             }
             else
             {
-                logger.warn("Response has no request_id: {}", responseJson);
+                logger.warn("Response has no request_id: {}", response);
             }
         }
         catch (Exception exception)
@@ -261,29 +319,15 @@ public class ZMQCommunicationVerticle extends AbstractVerticle
     {
         var promise = Promise.<Void>promise();
 
-        // Execute on a worker thread to avoid blocking the event loop
-        vertx.executeBlocking(p ->
+        // The supervisor picks the worker and sends off the event loop
+        if (coalescer.accepts(message))
         {
-            try
-            {
-                pushSocket.send(message.encode().getBytes(), 1);
-                p.complete();
-            }
-            catch (Exception exception)
-            {
-                p.fail(exception);
-            }
-        }, false, result ->
+            coalescer.submit(message).onComplete(promise);
+        }
+        else
         {
-            if (result.succeeded())
-            {
-                promise.complete();
-            }
-            else
-            {
-                promise.fail(result.cause());
-            }
-        });
+            supervisor.send(message).onComplete(promise);
+        }
 
         return promise;
     }
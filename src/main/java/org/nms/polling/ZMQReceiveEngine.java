@@ -0,0 +1,185 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Dedicated receive loop for the PULL socket.
+ * The thread blocks in a ZMQ poller until the socket is readable, drains every
+ * available frame up to the burst limit and hands them to the event loop as one batch.
+ * Once started, the PULL socket is used only by this thread, as ZMQ sockets are not thread safe.
+ */
+public class ZMQReceiveEngine implements Runnable
+{
+    private static final Logger logger = LoggerFactory.getLogger(ZMQReceiveEngine.class);
+
+    private static final long POLL_TIMEOUT_MS = 500; // Wake up periodically to check for shutdown
+
+    private final ZContext zmqContext;
+    private final ZMQ.Socket pullSocket;
+    private final int burstLimit;
+    private final Consumer<List<byte[]>> batchHandler;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    // Counters
+    private final AtomicLong wakeups = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicInteger lastBurstSize = new AtomicInteger();
+    private final AtomicInteger maxBurstSize = new AtomicInteger();
+    private final AtomicLong burstLimitHits = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public ZMQReceiveEngine(ZContext zmqContext, ZMQ.Socket pullSocket, int burstLimit, Consumer<List<byte[]>> batchHandler)
+    {
+        this.zmqContext = zmqContext;
+        this.pullSocket = pullSocket;
+        this.burstLimit = burstLimit;
+        this.batchHandler = batchHandler;
+    }
+
+    public void start()
+    {
+        running = true;
+
+        thread = new Thread(this, "zmq-receive-engine");
+        thread.setDaemon(true);
+        thread.start();
+
+        logger.info("ZMQ receive engine started with burst limit {}", burstLimit);
+    }
+
+    public void stop()
+    {
+        running = false;
+
+        if (thread != null)
+        {
+            try
+            {
+                thread.join(POLL_TIMEOUT_MS * 2);
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        logger.info("ZMQ receive engine stopped");
+    }
+
+    @Override
+    public void run()
+    {
+        var poller = zmqContext.createPoller(1);
+        poller.register(pullSocket, ZMQ.Poller.POLLIN);
+
+        try
+        {
+            while (running && !Thread.currentThread().isInterrupted())
+            {
+                // Block until the socket is readable or the timeout expires
+                if (poller.poll(POLL_TIMEOUT_MS) <= 0 || !poller.pollin(0))
+                {
+                    continue;
+                }
+
+                wakeups.incrementAndGet();
+
+                var frames = drain();
+
+                if (!frames.isEmpty())
+                {
+                    recordBurst(frames.size());
+                    batchHandler.accept(frames);
+                }
+            }
+        }
+        catch (Exception exception)
+        {
+            if (running)
+            {
+                logger.error("ZMQ receive engine terminated unexpectedly", exception);
+            }
+        }
+        finally
+        {
+            poller.close();
+        }
+    }
+
+    // Read every frame that is already queued, up to the burst limit
+    private List<byte[]> drain()
+    {
+        var frames = new ArrayList<byte[]>();
+
+        while (frames.size() < burstLimit)
+        {
+            var frame = pullSocket.recv(ZMQ.DONTWAIT);
+
+            if (frame == null)
+            {
+                break;
+            }
+
+            if (frame.length > 0)
+            {
+                frames.add(frame);
+            }
+        }
+
+        if (frames.size() >= burstLimit)
+        {
+            burstLimitHits.incrementAndGet();
+        }
+
+        return frames;
+    }
+
+    private void recordBurst(int size)
+    {
+        framesReceived.addAndGet(size);
+        lastBurstSize.set(size);
+        maxBurstSize.accumulateAndGet(size, Math::max);
+
+        var depth = queueDepth.addAndGet(size);
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Called by the consumer once frames handed over by this engine have been processed.
+     * @param count Number of frames processed
+     */
+    public void markProcessed(int count)
+    {
+        queueDepth.addAndGet(-count);
+    }
+
+    public JsonObject getStats()
+    {
+        var totalWakeups = wakeups.get();
+        var totalFrames = framesReceived.get();
+
+        return new JsonObject()
+                .put("wakeups", totalWakeups)
+                .put("frames_received", totalFrames)
+                .put("frames_per_wakeup", totalWakeups == 0 ? 0.0 : (double) totalFrames / totalWakeups)
+                .put("last_burst_size", lastBurstSize.get())
+                .put("max_burst_size", maxBurstSize.get())
+                .put("burst_limit", burstLimit)
+                .put("burst_limit_hits", burstLimitHits.get())
+                .put("queue_depth", queueDepth.get())
+                .put("max_queue_depth", maxQueueDepth.get());
+    }
+}
@@ -0,0 +1,152 @@
+package org.nms.polling;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.nms.Main;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Routes plugin responses to the caller that is waiting for them.
+ * One-shot requests register their request ID and receive a Future that is completed
+ * by exactly one response, looked up in a concurrent map. Streaming responses such as
+ * metrics batches are delivered by response type to a single subscriber.
+ * Handlers always run on the context of the caller that registered them.
+ */
+public class ZMQResponseRouter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZMQResponseRouter.class);
+    private static ZMQResponseRouter instance;
+
+    private final Vertx vertx;
+    private final ConcurrentMap<String, PendingResponse> pendingResponses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private ZMQResponseRouter()
+    {
+        this.vertx = Main.getVertx();
+    }
+
+    public static synchronized ZMQResponseRouter getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ZMQResponseRouter();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a one-shot request. Must be called before the request is sent.
+     * @param requestId Request ID the plugin will echo back
+     * @param timeoutMs Time to wait before the future fails with a TimeoutException
+     * @return Future completed with the plugin response
+     */
+    public Future<JsonObject> register(String requestId, long timeoutMs)
+    {
+        var context = vertx.getOrCreateContext();
+        var promise = Promise.<JsonObject>promise();
+
+        var timerId = vertx.setTimer(timeoutMs, id ->
+        {
+            if (pendingResponses.remove(requestId) != null)
+            {
+                LOGGER.warn("Request {} timed out after {} ms", requestId, timeoutMs);
+                promise.tryFail(new TimeoutException("Timeout waiting for response to " + requestId));
+            }
+        });
+
+        pendingResponses.put(requestId, new PendingResponse(context, promise, timerId));
+
+        return promise.future();
+    }
+
+    /**
+     * Drop a registered request, e.g. when sending failed. Its future fails with a CancellationException.
+     * @param requestId Request ID to forget
+     */
+    public void cancel(String requestId)
+    {
+        var pending = pendingResponses.remove(requestId);
+
+        if (pending != null)
+        {
+            vertx.cancelTimer(pending.timerId());
+            pending.context().runOnContext(v -> pending.promise().tryFail(new CancellationException("Request " + requestId + " was cancelled")));
+        }
+    }
+
+    /**
+     * Subscribe to every response of the given type, independent of request ID.
+     * @param type Value of the response "type" field, e.g. "metrics"
+     * @param handler Handler invoked on the subscriber's context
+     */
+    public void subscribe(String type, Handler<JsonObject> handler)
+    {
+        subscriptions.put(type, new Subscription(vertx.getOrCreateContext(), handler));
+
+        LOGGER.info("Subscribed to streaming responses of type {}", type);
+    }
+
+    public void unsubscribe(String type)
+    {
+        subscriptions.remove(type);
+    }
+
+    /**
+     * Deliver a response to its waiter or subscriber.
+     * @param response Decoded plugin response
+     * @return true if someone was waiting for the response
+     */
+    public boolean dispatch(JsonObject response)
+    {
+        var type = response.getString("type");
+
+        if (type != null)
+        {
+            var subscription = subscriptions.get(type);
+
+            if (subscription != null)
+            {
+                subscription.context().runOnContext(v -> subscription.handler().handle(response));
+                return true;
+            }
+        }
+
+        var requestId = response.getString("request_id");
+        var pending = requestId != null ? pendingResponses.remove(requestId) : null;
+
+        if (pending == null)
+        {
+            LOGGER.warn("No waiter for response with request ID: {}", requestId);
+            return false;
+        }
+
+        vertx.cancelTimer(pending.timerId());
+        pending.context().runOnContext(v -> pending.promise().tryComplete(response));
+
+        return true;
+    }
+
+    public int getPendingCount()
+    {
+        return pendingResponses.size();
+    }
+
+    private record PendingResponse(Context context, Promise<JsonObject> promise, long timerId)
+    {
+    }
+
+    private record Subscription(Context context, Handler<JsonObject> handler)
+    {
+    }
+}
@@ -47,6 +47,16 @@ public class ApiResponse
         return new ApiResponse(200, true, data, null);
     }
 
+    /**
+     * Create a response for work accepted to run in the background
+     * @param data The response data
+     * @return ApiResponse instance
+     */
+    public static ApiResponse accepted(JsonObject data)
+    {
+        return new ApiResponse(202, true, data, null);
+    }
+
     /**
      * Create an error response
      * @param statusCode HTTP status code
@@ -5,8 +5,11 @@ import io.vertx.core.Promise;
 import io.vertx.ext.web.Router;
 import org.nms.routerController.subRoutes.CredentialRoutes;
 import org.nms.routerController.subRoutes.DiscoveryRoutes;
+import org.nms.routerController.subRoutes.JobRoutes;
 import org.nms.routerController.subRoutes.PollingRoutes;
 import org.nms.routerController.subRoutes.ProvisionRoutes;
+import org.nms.service.JobManager;
+import org.nms.utils.ReachabilityEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,18 +22,24 @@ public class HttpVerticle extends AbstractVerticle
     private static final String DISCOVERY_PATH = "/api/v1/discovery";
     private static final String POLLING_PATH = "/api/v1/polling";
     private static final String PROVISION_PATH = "/api/v1/provision";
+    private static final String JOB_PATH = "/api/v1/jobs";
 
 
     @Override
     public void start(Promise<Void> startPromise)
     {
+        // Shared singletons, created here so they use this verticle's config
+        ReachabilityEngine.configure(config());
+        JobManager.configure(config());
+
         var router = Router.router(vertx);
 
         // Mount sub-routers
         router.mountSubRouter(CREDENTIAL_PATH, new CredentialRoutes().createRouter(vertx));
-        router.mountSubRouter(DISCOVERY_PATH, new DiscoveryRoutes().createRouter(vertx));
+        router.mountSubRouter(DISCOVERY_PATH, new DiscoveryRoutes(config()).createRouter(vertx));
         router.mountSubRouter(POLLING_PATH, new PollingRoutes().createRouter(vertx));
         router.mountSubRouter(PROVISION_PATH, new ProvisionRoutes().createRouter(vertx));
+        router.mountSubRouter(JOB_PATH, new JobRoutes().createRouter(vertx));
 
         vertx.createHttpServer()
                 .requestHandler(router)
@@ -1,8 +1,10 @@
 package org.nms.routerController.subRoutes;
 
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import org.nms.service.BaseService;
 import org.nms.utils.MiddleWare;
@@ -13,6 +15,7 @@ import org.slf4j.LoggerFactory;
 public abstract class BaseRoutes<T>
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseRoutes.class);
+    private static final String EXPORT_PATH = "/export/ndjson";
     protected final BaseService<T> service;
     protected final String idPath;
     protected final String idField;
@@ -38,16 +41,72 @@ public abstract class BaseRoutes<T>
                             .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
                 });
 
+        // One page at a time: ?limit=&after=<next_cursor of the previous page>, filter fields as further parameters
         router.get("/")
                 .handler(ctx ->
                 {
-                    service.getAll()
-                            .onSuccess(result ->
-                                    ResponseUtil.handleResponse(ctx, result)
-                            )
+                    try
+                    {
+                        var limitParam = ctx.request().getParam("limit");
+                        var limit = limitParam != null ? Integer.parseInt(limitParam) : BaseService.DEFAULT_PAGE_LIMIT;
+
+                        service.getPage(ctx.request().getParam("after"), limit, queryFilters(ctx))
+                                .onSuccess(result ->
+                                        ResponseUtil.handleResponse(ctx, result)
+                                )
+                                .onFailure(error ->
+                                        ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage()))
+                                );
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        ctx.response()
+                                .setStatusCode(400)
+                                .putHeader("content-type", "application/json")
+                                .end(new JsonObject().put("error", "Invalid limit format").encodePrettily());
+                    }
+                });
+
+        // Every entity as one JSON object per line, streamed from the database as the client reads
+        router.get(EXPORT_PATH)
+                .handler(ctx ->
+                {
+                    var response = ctx.response()
+                            .setChunked(true)
+                            .putHeader("content-type", "application/x-ndjson");
+
+                    // A client that goes away ends the export, so its cursor and transaction are released
+                    var closed = Promise.<Void>promise();
+                    response.closeHandler(v -> closed.tryComplete());
+                    response.exceptionHandler(error -> closed.tryComplete());
+
+                    service.export(ctx.request().getParam("after"), queryFilters(ctx), response, closed.future())
+                            .onSuccess(count ->
+                            {
+                                LOGGER.info("Exported {} entities", count);
+                                response.end();
+                            })
                             .onFailure(error ->
-                                    ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage()))
-                            );
+                            {
+                                LOGGER.error("Export failed: {}", error.getMessage());
+
+                                if (response.ended() || response.closed())
+                                {
+                                    return;
+                                }
+
+                                if (!response.headWritten())
+                                {
+                                    response.setStatusCode(error instanceof IllegalArgumentException ? 400 : 500)
+                                            .putHeader("content-type", "application/json")
+                                            .end(new JsonObject().put("error", error.getMessage()).encodePrettily());
+                                }
+                                else
+                                {
+                                    // Part of the export was sent, the client must not take it for all of it
+                                    response.reset();
+                                }
+                            });
                 });
 
         router.get(idPath)
@@ -117,5 +176,12 @@ public abstract class BaseRoutes<T>
         return router;
     }
 
+    private static JsonObject queryFilters(RoutingContext ctx)
+    {
+        var filters = new JsonObject();
+        ctx.queryParams().forEach(entry -> filters.put(entry.getKey(), entry.getValue()));
+        return filters;
+    }
+
     protected abstract void configureAdditionalRoutes(Router router);
 }
\ No newline at end of file
@@ -4,18 +4,23 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import org.nms.routerController.ApiResponse;
 import org.nms.service.DiscoveryService;
+import org.nms.service.JobManager;
 import org.nms.utils.ResponseUtil;
 
 public class DiscoveryRoutes extends BaseRoutes<JsonObject>
 {
     private static final String RUN_DISCOVERY_PATH = "/run/:discoveryId";
     private static final String DISCOVERY_STATUS_PATH = "/status/:status";
+    private static final String BULK_DISCOVERY_PATH = "/bulk/run";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    private static final String DISCOVERY_JOB_PATH = "/jobs/run/:discoveryId";
+    private static final String BULK_DISCOVERY_JOB_PATH = "/jobs/bulk";
     private static final String DISCOVERY_STATUS = "status";
     private final DiscoveryService discoveryService;
 
-    public DiscoveryRoutes()
+    public DiscoveryRoutes(JsonObject config)
     {
-        super(new DiscoveryService(), "discoveryId");
+        super(new DiscoveryService(config), "discoveryId");
         this.discoveryService = (DiscoveryService) service;
     }
 
@@ -41,6 +46,92 @@ public class DiscoveryRoutes extends BaseRoutes<JsonObject>
                     }
                 });
 
+        // Progress streams back as newline delimited JSON, the last line is the response with the summary
+        router.post(BULK_DISCOVERY_PATH)
+                .handler(ctx ->
+                {
+                    var body = ctx.getBodyAsJson();
+
+                    if (body == null)
+                    {
+                        ResponseUtil.handleResponse(ctx, ApiResponse.error(400, "Request body is required").toJson());
+                        return;
+                    }
+
+                    var response = ctx.response();
+
+                    discoveryService.runBulkDiscovery(body, event ->
+                            {
+                                if (response.closed())
+                                {
+                                    return;
+                                }
+
+                                if (!response.headWritten())
+                                {
+                                    response.setChunked(true).putHeader("content-type", NDJSON_CONTENT_TYPE);
+                                }
+
+                                response.write(event.encode() + "\n");
+                            })
+                            .onSuccess(result ->
+                            {
+                                if (response.closed())
+                                {
+                                    return;
+                                }
+
+                                if (response.headWritten())
+                                {
+                                    response.end(result.encode() + "\n");
+                                }
+                                else
+                                {
+                                    ResponseUtil.handleResponse(ctx, result);
+                                }
+                            })
+                            .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                });
+
+        // Same discovery as a job, answers with the job ID right away
+        router.post(DISCOVERY_JOB_PATH)
+                .handler(ctx ->
+                {
+                    try
+                    {
+                        var discoveryId = Long.parseLong(ctx.pathParam("discoveryId"));
+
+                        ResponseUtil.handleResponse(ctx, JobManager.getInstance()
+                                .submit("discovery", "discovery:" + discoveryId, progress -> discoveryService.runDiscovery(discoveryId)));
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        ResponseUtil.handleResponse(ctx, ApiResponse.error(400, "Invalid discovery ID format").toJson());
+                    }
+                });
+
+        // Bulk discovery as a job, the job keeps the latest progress event
+        router.post(BULK_DISCOVERY_JOB_PATH)
+                .handler(ctx ->
+                {
+                    var body = ctx.getBodyAsJson();
+
+                    if (body == null)
+                    {
+                        ResponseUtil.handleResponse(ctx, ApiResponse.error(400, "Request body is required").toJson());
+                        return;
+                    }
+
+                    ResponseUtil.handleResponse(ctx, JobManager.getInstance()
+                            .submit("bulk_discovery", null, progress -> discoveryService.runBulkDiscovery(body, event ->
+                            {
+                                if ("progress".equals(event.getString("event")))
+                                {
+                                    progress.accept(event);
+                                }
+                            })));
+                });
+
         router.get(DISCOVERY_STATUS_PATH)
                 .handler(ctx ->
                 {
@@ -0,0 +1,59 @@
+package org.nms.routerController.subRoutes;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.nms.routerController.ApiResponse;
+import org.nms.service.JobManager;
+import org.nms.utils.ResponseUtil;
+
+/**
+ * Status of jobs started through the job routes of the other resources.
+ */
+public class JobRoutes
+{
+    private static final String JOB_ID = "jobId";
+    private static final String JOB_PATH = "/:" + JOB_ID;
+    private static final String JOB_WAIT_PATH = "/:" + JOB_ID + "/wait";
+    private static final long DEFAULT_WAIT_MS = 30000;
+
+    private final JobManager jobManager = JobManager.getInstance();
+
+    public Router createRouter(Vertx vertx)
+    {
+        var router = Router.router(vertx);
+
+        // GET /?status=running for the most recent jobs
+        router.get("/")
+                .handler(ctx -> ResponseUtil.handleResponse(ctx, jobManager.listJobs(ctx.request().getParam("status"))));
+
+        router.get(JOB_PATH)
+                .handler(ctx ->
+                {
+                    jobManager.getJob(ctx.pathParam(JOB_ID))
+                            .onSuccess(result -> ResponseUtil.handleResponse(ctx, result))
+                            .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                });
+
+        // GET /:jobId/wait?timeout_ms=30000 answers once the job finished, or with its state when the wait timed out
+        router.get(JOB_WAIT_PATH)
+                .handler(ctx ->
+                {
+                    try
+                    {
+                        var timeout = ctx.request().getParam("timeout_ms");
+                        var timeoutMs = timeout != null ? Long.parseLong(timeout) : DEFAULT_WAIT_MS;
+
+                        jobManager.awaitJob(ctx.pathParam(JOB_ID), timeoutMs)
+                                .onSuccess(result -> ResponseUtil.handleResponse(ctx, result))
+                                .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        ResponseUtil.handleResponse(ctx, ApiResponse.error(400, "Invalid timeout_ms format").toJson());
+                    }
+                });
+
+        return router;
+    }
+}
@@ -2,11 +2,15 @@ package org.nms.routerController.subRoutes;
 
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
-import org.nms.service.BaseService;
+import org.nms.routerController.ApiResponse;
 import org.nms.service.PollingService;
+import org.nms.utils.ResponseUtil;
 
 public class PollingRoutes extends BaseRoutes<JsonObject>
 {
+    private static final String DEVICE_HEALTH_PATH = "/health/devices";
+    private static final String DEVICE_HEALTH_BY_ID_PATH = "/health/devices/:monitorId";
+    private static final String DISPATCH_SETTINGS_PATH = "/dispatch/settings";
 
     private final PollingService pollingService;
 
@@ -19,6 +23,36 @@ public class PollingRoutes extends BaseRoutes<JsonObject>
     @Override
     protected void configureAdditionalRoutes(Router router)
     {
+        router.get(DEVICE_HEALTH_PATH)
+                .handler(ctx ->
+                {
+                    pollingService.getDeviceHealth(null)
+                            .onSuccess(result -> ResponseUtil.handleResponse(ctx, result))
+                            .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                });
 
+        router.get(DEVICE_HEALTH_BY_ID_PATH)
+                .handler(ctx ->
+                {
+                    try
+                    {
+                        var monitorId = Long.parseLong(ctx.pathParam("monitorId"));
+                        pollingService.getDeviceHealth(monitorId)
+                                .onSuccess(result -> ResponseUtil.handleResponse(ctx, result))
+                                .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        ResponseUtil.handleResponse(ctx, ApiResponse.error(400, "Invalid monitor ID format").toJson());
+                    }
+                });
+
+        router.get(DISPATCH_SETTINGS_PATH)
+                .handler(ctx ->
+                {
+                    pollingService.getDispatchSettings()
+                            .onSuccess(result -> ResponseUtil.handleResponse(ctx, result))
+                            .onFailure(error -> ResponseUtil.handleResponse(ctx, new JsonObject().put("error", error.getMessage())));
+                });
     }
 }
@@ -1,13 +1,10 @@
 package org.nms.routerController.subRoutes;
 
-import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
-import org.nms.database.queries.ProvisionQueries;
-import org.nms.routerController.ApiResponse;
+import org.nms.service.JobManager;
 import org.nms.service.ProvisionService;
 import org.nms.utils.Constants;
 import org.nms.utils.MiddleWare;
@@ -44,39 +41,7 @@ public class ProvisionRoutes extends BaseRoutes<JsonObject>
                     try
                     {
                         var discoveryId = Long.parseLong(context.pathParam(Constants.DISCOVERY_ID));
-                        var request = new JsonObject()
-                                .put(Constants.DB_QUERY, ProvisionQueries.SELECT_PROVISION_BY_DISCOVERY_ID)
-                                .put(Constants.DB_PARAMS, new JsonArray().add(discoveryId));
-
-                        ((ProvisionService) service)
-                                .customQueryExecutor(request)
-                                .compose(queryResult ->
-                                {
-                                    LOGGER.info("Query result: {}", queryResult);
-                                    var result = queryResult.getJsonObject("data").getJsonObject("result");
-
-                                    if (result.getInteger("rowCount")!=0)
-                                    {
-                                        if(result.getJsonArray("rows").getJsonObject(0).getBoolean("is_deleted"))
-                                        {
-                                            var softInsert = new JsonObject()
-                                                    .put(Constants.DB_QUERY, ProvisionQueries.SOFT_INSERT_PROVISION)
-                                                    .put(Constants.DB_PARAMS, new JsonArray().add(result.getJsonArray("rows").getJsonObject(0).getLong("monitor_id")));
-                                             return ((ProvisionService) service).customQueryExecutor(softInsert);
-                                        }
-                                        else
-                                        {
-                                            LOGGER.info("Provision already exists for discoveryId: {}", discoveryId);
-                                            var alreadyExistsPromise = Promise.<JsonObject>promise();
-                                            alreadyExistsPromise.complete(ApiResponse.error(409,"Device is already provisioned").toJson());
-                                            return alreadyExistsPromise.future();
-                                        }
-                                    }
-                                    else
-                                    {
-                                        return ((ProvisionService) service).createProvision(discoveryId);
-                                    }
-                                })
+                        ((ProvisionService) service).provision(discoveryId)
                                 .onComplete(result ->
                                 {
 
@@ -100,6 +65,24 @@ public class ProvisionRoutes extends BaseRoutes<JsonObject>
                 });
 
 
+        // POST /jobs/:discoveryId for creating provision as a job, answers with the job ID right away
+        router.post("/jobs/:" + Constants.DISCOVERY_ID)
+                .handler(context -> MiddleWare.validateContextPath(context, Constants.DISCOVERY_ID))
+                .handler(context ->
+                {
+                    try
+                    {
+                        var discoveryId = Long.parseLong(context.pathParam(Constants.DISCOVERY_ID));
+
+                        ResponseUtil.handleResponse(context, JobManager.getInstance()
+                                .submit("provision", "provision:" + discoveryId, progress -> ((ProvisionService) service).provision(discoveryId)));
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        MiddleWare.respondWithError(context, 400, "Invalid discoveryId format: " + exception.getMessage());
+                    }
+                });
+
         // GET /status/:status for provisions by status
         router.get("/status/:" + Constants.PROVISION_STATUS)
                 .handler(context ->
@@ -3,8 +3,11 @@ package org.nms.service;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.sqlclient.Tuple;
 import org.nms.Main;
 import org.nms.routerController.ApiResponse;
 import org.nms.utils.Constants;
@@ -12,11 +15,41 @@ import org.nms.utils.DbUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 public abstract class BaseService<T>
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseService.class);
+
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    public static final int MAX_PAGE_LIMIT = 1000;
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    // Date with optional time and offset, as PostgreSQL prints timestamptz or as ISO 8601
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart()
+            .optionalStart().appendLiteral('T').optionalEnd()
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart().appendOffset("+HH:mm", "Z").optionalEnd()
+            .optionalEnd()
+            .toFormatter()
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    // Type the page query casts a cursor or filter field to
+    protected enum PageFieldType
+    {
+        TEXT, INTEGER, BOOLEAN, TIMESTAMP
+    }
     protected final Vertx vertx;
 
     public BaseService()
@@ -35,6 +68,19 @@ public abstract class BaseService<T>
     protected abstract Function<JsonObject, JsonObject> getResponseMapper();
     protected abstract Function<JsonObject, JsonObject> getRowToResponseMapper();
 
+    // Keyset pagination: the page query takes the cursor fields, then the filter fields, then the limit
+    protected abstract String getPageQuery();
+    protected abstract String[] getCursorFields();
+    protected abstract String[] getFilterFields();
+
+    // Types of the cursor and filter fields that are not text, checked before the query runs
+    protected abstract Map<String, PageFieldType> getPageFieldTypes();
+
+    // Called with the rows the update query returned, after the entity was updated
+    protected void onUpdated(JsonObject entity, JsonArray rows)
+    {
+    }
+
     public Future<JsonObject> create(JsonObject entity)
     {
         var json =  entity;
@@ -168,6 +214,300 @@ public abstract class BaseService<T>
         }
     }
 
+    /**
+     * One page of entities in key order, starting after the cursor.
+     * @param after Cursor returned as next_cursor with the previous page, null for the first page
+     * @param limit Page size, capped at MAX_PAGE_LIMIT
+     * @param filters Values of the filter fields, fields without a value do not filter
+     * @return Future with the entities and the next_cursor, null on the last page
+     */
+    public Future<JsonObject> getPage(String after, int limit, JsonObject filters)
+    {
+        LOGGER.info("Fetching page of entities after: {}", after);
+
+        try
+        {
+            var pageLimit = Math.max(1, Math.min(limit, MAX_PAGE_LIMIT));
+
+            var dbRequest = new JsonObject()
+                    .put(Constants.DB_QUERY, getPageQuery())
+                    .put(Constants.DB_PARAMS, pageParams(after, filters, pageLimit));
+
+            var promise = Promise.<JsonObject>promise();
+
+            vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest, reply ->
+            {
+                try
+                {
+                    if (reply.succeeded())
+                    {
+                        var rowsArray = reply.result().body().getJsonArray("rows", new JsonArray());
+
+                        if (rowsArray.isEmpty() && after == null)
+                        {
+                            LOGGER.error("No entities found");
+
+                            promise.complete(ApiResponse.error(404, "No entities found").toJson());
+
+                            return;
+                        }
+
+                        var entities = new JsonArray();
+                        for (var i = 0; i < rowsArray.size(); i++)
+                        {
+                            try
+                            {
+                                entities.add(getRowToResponseMapper().apply(rowsArray.getJsonObject(i)));
+                            }
+                            catch (Exception exception)
+                            {
+                                LOGGER.error("Error processing row: {}", exception.getMessage());
+                            }
+                        }
+
+                        // A full page may be followed by more rows
+                        var nextCursor = rowsArray.size() == pageLimit
+                                ? encodeCursor(rowsArray.getJsonObject(rowsArray.size() - 1))
+                                : null;
+
+                        promise.complete(ApiResponse.success(new JsonObject()
+                                .put("entities", entities)
+                                .put("limit", pageLimit)
+                                .put("next_cursor", nextCursor)).toJson());
+                    }
+                    else
+                    {
+                        handleDbError(reply.cause(), promise);
+                    }
+                }
+                catch (Exception exception)
+                {
+                    LOGGER.error("Error processing DB response: {}", exception.getMessage());
+
+                    promise.complete(ApiResponse.error(500, "Error processing DB response").toJson());
+                }
+            });
+
+            return promise.future();
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return Future.succeededFuture(ApiResponse.error(400, exception.getMessage()).toJson());
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("Error handling page fetch: {}", exception.getMessage());
+
+            return Future.succeededFuture(ApiResponse.error(500, exception.getMessage()).toJson());
+        }
+    }
+
+    /**
+     * Write every entity in key order, starting after the cursor, to the output as one JSON object per line.
+     * Rows come from a database cursor and are only fetched as fast as the output drains, so memory use
+     * does not grow with the table.
+     * @param closed Completes when the client goes away, which closes the cursor and rolls back its transaction
+     * @return Future with the number of entities written, failed with IllegalArgumentException for a bad cursor
+     */
+    public Future<Long> export(String after, JsonObject filters, WriteStream<Buffer> output, Future<Void> closed)
+    {
+        Tuple params;
+
+        try
+        {
+            params = DbUtil.jsonArrayToTuple(pageParams(after, filters, null));
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return Future.failedFuture(exception);
+        }
+
+        var mapper = getRowToResponseMapper();
+        var written = new AtomicLong();
+
+        return DatabaseService.getInstance().streamQuery(getPageQuery(), params, EXPORT_FETCH_SIZE, (stream, promise) ->
+        {
+            // A paused stream waits for a drain that never comes once the client is gone
+            closed.onComplete(v ->
+            {
+                stream.close();
+                promise.tryFail(new IllegalStateException("Client closed the connection"));
+            });
+
+            stream.handler(row ->
+            {
+                JsonObject entity;
+
+                try
+                {
+                    entity = mapper.apply(DbUtil.rowToJson(row));
+                }
+                catch (Exception exception)
+                {
+                    LOGGER.error("Error processing row: {}", exception.getMessage());
+                    return;
+                }
+
+                // The client went away, stop reading
+                output.write(Buffer.buffer(entity.encode()).appendString("\n")).onFailure(error ->
+                {
+                    stream.close();
+                    promise.tryFail(error);
+                });
+
+                written.incrementAndGet();
+
+                if (output.writeQueueFull())
+                {
+                    stream.pause();
+                    output.drainHandler(v -> stream.resume());
+                }
+            });
+        })
+                .map(v -> written.get());
+    }
+
+    // Cursor values, or nulls for the first page, then the filter values, then the limit (null for no limit)
+    private JsonArray pageParams(String after, JsonObject filters, Integer limit)
+    {
+        var params = new JsonArray();
+        var cursorFields = getCursorFields();
+
+        if (after == null || after.isEmpty())
+        {
+            for (var i = 0; i < cursorFields.length; i++)
+            {
+                params.addNull();
+            }
+        }
+        else
+        {
+            JsonArray cursor;
+
+            try
+            {
+                cursor = new JsonArray(new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8));
+            }
+            catch (RuntimeException exception)
+            {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+
+            if (cursor.size() != cursorFields.length)
+            {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+
+            for (var i = 0; i < cursorFields.length; i++)
+            {
+                params.add(checkCursorValue(cursorFields[i], cursor.getValue(i)));
+            }
+        }
+
+        for (var field : getFilterFields())
+        {
+            params.add(checkFilterValue(field, filters != null ? filters.getString(field) : null));
+        }
+
+        params.add(limit);
+
+        return params;
+    }
+
+    // A cursor holds the JSON values of the last row, so each must already have the field's type
+    private Object checkCursorValue(String field, Object value)
+    {
+        var type = getPageFieldTypes().getOrDefault(field, PageFieldType.TEXT);
+
+        var valid = switch (type)
+        {
+            case INTEGER -> (value instanceof Integer || value instanceof Long) && isInteger(((Number) value).longValue());
+            case BOOLEAN -> value instanceof Boolean;
+            case TIMESTAMP -> value instanceof String text && isTimestamp(text);
+            case TEXT -> value instanceof String;
+        };
+
+        if (!valid)
+        {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        return value;
+    }
+
+    // Filters arrive as query parameters and are passed on as text, the query casts them
+    private String checkFilterValue(String field, String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        switch (getPageFieldTypes().getOrDefault(field, PageFieldType.TEXT))
+        {
+            case INTEGER ->
+            {
+                try
+                {
+                    Integer.parseInt(value.trim());
+                }
+                catch (NumberFormatException exception)
+                {
+                    throw new IllegalArgumentException(field + " must be an integer");
+                }
+            }
+            case BOOLEAN ->
+            {
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+                {
+                    throw new IllegalArgumentException(field + " must be true or false");
+                }
+            }
+            case TIMESTAMP ->
+            {
+                if (!isTimestamp(value))
+                {
+                    throw new IllegalArgumentException(field + " must be a timestamp");
+                }
+            }
+            case TEXT ->
+            {
+            }
+        }
+
+        return value;
+    }
+
+    private static boolean isInteger(long value)
+    {
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+
+    private static boolean isTimestamp(String value)
+    {
+        try
+        {
+            TIMESTAMP_FORMAT.parse(value.trim());
+            return true;
+        }
+        catch (RuntimeException exception)
+        {
+            return false;
+        }
+    }
+
+    private String encodeCursor(JsonObject row)
+    {
+        var cursor = new JsonArray();
+
+        for (var field : getCursorFields())
+        {
+            cursor.add(row.getValue(field));
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.encode().getBytes(StandardCharsets.UTF_8));
+    }
+
     public Future<JsonObject> getById(Long id)
     {
         LOGGER.info("Fetching entity with ID: {}", id);
@@ -264,6 +604,8 @@ public abstract class BaseService<T>
 
                         LOGGER.info("Entity updated successfully");
 
+                        onUpdated(json, rows.getJsonArray("rows", new JsonArray()));
+
                         promise.complete(ApiResponse.success("Entity updated successfully with ID: " + id).toJson());
                     }
                     else
@@ -0,0 +1,383 @@
+package org.nms.service;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.database.queries.DiscoveryQueries;
+import org.nms.polling.ZMQCommunicationVerticle;
+import org.nms.polling.ZMQResponseRouter;
+import org.nms.utils.Constants;
+import org.nms.utils.ReachabilityEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Discovers many devices at once. Every device moves through the ping, port and SSH stages on its own,
+ * each stage running at most its own number of checks at once, so a slow SSH check never holds back the
+ * pings of other devices. Results are written back to discovery_profiles in batches: profiles that were
+ * run get their status updated, hosts of a range that pass every stage are created or refreshed.
+ * Progress goes to the listener as events: one "device" event per finished device and a "progress"
+ * event every second. Runs on the context that created it. The number of checks each stage runs at once is set
+ * with discovery.bulk.{ping,port,ssh}.concurrency in the NMS config file.
+ */
+public class BulkDiscoveryPipeline
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDiscoveryPipeline.class);
+
+    private static final long DISCOVERY_TIMEOUT_MS = 30000;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    private static final int WRITE_BATCH_SIZE = 100;
+    private static final int MAX_MESSAGE_LENGTH = 255;
+    private static final int DEFAULT_PING_CONCURRENCY = 2000;
+    private static final int DEFAULT_PORT_CONCURRENCY = 500;
+    private static final int DEFAULT_SSH_CONCURRENCY = 50;
+
+    public static final String DISCOVERY_TIMEOUT_MESSAGE = "Timeout waiting for discovery response";
+    public static final String DISCOVERY_NOT_SENT_MESSAGE = "Failed to send discovery request";
+
+    /**
+     * A device to discover. Profiles being run have an ID, hosts of a range do not.
+     */
+    public record Target(Long discoveryId, String name, String ipAddress, int port,
+                         long credentialId, String username, String password, String protocol)
+    {
+    }
+
+    private final Vertx vertx;
+    private final Context context;
+    private final List<Target> targets;
+    private final Consumer<JsonObject> listener;
+    private final ReachabilityEngine reachability = ReachabilityEngine.getInstance();
+
+    private final Stage pingStage;
+    private final Stage portStage;
+    private final Stage sshStage;
+
+    private final List<JsonArray> pendingUpdates = new ArrayList<>();
+    private final List<JsonArray> pendingUpserts = new ArrayList<>();
+    private final List<Future<Void>> writes = new ArrayList<>();
+    private final Promise<JsonObject> promise = Promise.promise();
+
+    private long startedAt;
+    private long progressTimerId = -1;
+
+    // Counters
+    private int completed;
+    private int discovered;
+    private int written;
+    private int writeFailures;
+
+    public BulkDiscoveryPipeline(Vertx vertx, JsonObject config, List<Target> targets, Consumer<JsonObject> listener)
+    {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.targets = targets;
+        this.listener = listener;
+
+        this.sshStage = new Stage("ssh", config.getInteger("discovery.bulk.ssh.concurrency", DEFAULT_SSH_CONCURRENCY),
+                target -> discover(vertx, target).mapEmpty(), null);
+        this.portStage = new Stage("port", config.getInteger("discovery.bulk.port.concurrency", DEFAULT_PORT_CONCURRENCY),
+                target -> reachability.checkPort(target.ipAddress(), target.port()), sshStage);
+        this.pingStage = new Stage("ping", config.getInteger("discovery.bulk.ping.concurrency", DEFAULT_PING_CONCURRENCY), this::ping, portStage);
+    }
+
+    /**
+     * Discover every target.
+     * @return Future completed with the summary once every device finished and every result was written
+     */
+    public Future<JsonObject> run()
+    {
+        context.runOnContext(v ->
+        {
+            startedAt = System.currentTimeMillis();
+
+            LOGGER.info("Bulk discovery of {} devices started", targets.size());
+
+            if (targets.isEmpty())
+            {
+                finish();
+                return;
+            }
+
+            progressTimerId = vertx.setPeriodic(PROGRESS_INTERVAL_MS, id ->
+            {
+                listener.accept(progress().put("event", "progress"));
+                flushWrites();
+            });
+
+            targets.forEach(pingStage::submit);
+        });
+
+        return promise.future();
+    }
+
+    private Future<Void> ping(Target target)
+    {
+        return reachability.ping(target.ipAddress(), target.port())
+                .compose(alive -> alive
+                        ? Future.succeededFuture()
+                        : Future.failedFuture("Device is not reachable"));
+    }
+
+    /**
+     * The plugin request that runs the SSH discovery of one device, shared by single and bulk discoveries.
+     * @param requestId ID the response is routed by
+     */
+    public static JsonObject discoveryRequest(String requestId, Target target)
+    {
+        return new JsonObject()
+                .put("request_id", requestId)
+                .put("command", "discovery")
+                .put("data", new JsonObject()
+                        .put("ip", target.ipAddress())
+                        .put("port", target.port())
+                        .put("username", target.username())
+                        .put("password", target.password())
+                        .put("protocol", target.protocol().toLowerCase())
+                        .put("discovery_id", target.discoveryId() != null ? target.discoveryId().intValue() : 0));
+    }
+
+    /**
+     * SSH check of one device through the plugin, the same request a single discovery sends.
+     * @return Future with the details the plugin reported, failed with them when the check failed or with
+     * DISCOVERY_TIMEOUT_MESSAGE when the plugin did not answer or DISCOVERY_NOT_SENT_MESSAGE when it was never sent
+     */
+    public static Future<String> discover(Vertx vertx, Target target)
+    {
+        var requestId = "discovery-bulk-" + target.ipAddress() + "-" + System.nanoTime();
+        var zmqRequest = discoveryRequest(requestId, target);
+
+        var router = ZMQResponseRouter.getInstance();
+        var response = router.register(requestId, DISCOVERY_TIMEOUT_MS);
+
+        vertx.eventBus().<JsonObject>request(ZMQCommunicationVerticle.EB_ZMQ_SEND, zmqRequest, reply ->
+        {
+            if (reply.failed())
+            {
+                router.cancel(requestId);
+            }
+        });
+
+        return response
+                .recover(error -> Future.failedFuture(error instanceof CancellationException
+                        ? DISCOVERY_NOT_SENT_MESSAGE
+                        : DISCOVERY_TIMEOUT_MESSAGE))
+                .compose(body -> body.getBoolean("success", false)
+                        ? Future.succeededFuture(body.getString("details", ""))
+                        : Future.failedFuture(body.getString("details", "Discovery failed")));
+    }
+
+    private void complete(Target target, String stage, boolean success, String message)
+    {
+        completed++;
+
+        if (success)
+        {
+            discovered++;
+        }
+
+        var now = Instant.now().toString();
+        var storedMessage = message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+
+        if (target.discoveryId() != null)
+        {
+            pendingUpdates.add(new JsonArray().add(success).add(now).add(storedMessage).add(target.discoveryId()));
+        }
+        else if (success)
+        {
+            pendingUpserts.add(new JsonArray()
+                    .add(target.name())
+                    .add(target.credentialId())
+                    .add(target.ipAddress())
+                    .add(target.port())
+                    .add(true)
+                    .add(now)
+                    .add(storedMessage));
+        }
+
+        listener.accept(new JsonObject()
+                .put("event", "device")
+                .put("discovery_id", target.discoveryId())
+                .put("ip_address", target.ipAddress())
+                .put("port_no", target.port())
+                .put("stage", stage)
+                .put("success", success)
+                .put("message", message));
+
+        if (pendingUpdates.size() + pendingUpserts.size() >= WRITE_BATCH_SIZE)
+        {
+            flushWrites();
+        }
+
+        if (completed == targets.size())
+        {
+            finish();
+        }
+    }
+
+    private void flushWrites()
+    {
+        if (!pendingUpdates.isEmpty())
+        {
+            writes.add(writeBatch(DiscoveryQueries.UPDATE_DISCOVERY_RESULT, new ArrayList<>(pendingUpdates)));
+            pendingUpdates.clear();
+        }
+
+        if (!pendingUpserts.isEmpty())
+        {
+            writes.add(writeBatch(DiscoveryQueries.UPSERT_DISCOVERED_PROFILE, new ArrayList<>(pendingUpserts)));
+            pendingUpserts.clear();
+        }
+    }
+
+    private Future<Void> writeBatch(String query, List<JsonArray> rows)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_BATCH_PARAMS, new JsonArray(new ArrayList<>(rows)));
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_BATCH_EVENTBUS, dbRequest)
+                .<Void>map(reply ->
+                {
+                    written += rows.size();
+                    return null;
+                })
+                .recover(error ->
+                {
+                    // Results stay in the stream, a failed write does not fail the discovery
+                    LOGGER.error("Failed to write {} discovery results: {}", rows.size(), error.getMessage());
+                    writeFailures += rows.size();
+                    return Future.succeededFuture();
+                });
+    }
+
+    private void finish()
+    {
+        if (progressTimerId != -1)
+        {
+            vertx.cancelTimer(progressTimerId);
+            progressTimerId = -1;
+        }
+
+        flushWrites();
+
+        Future.join(new ArrayList<>(writes)).onComplete(result ->
+        {
+            if (written > 0)
+            {
+                // Profiles changed, provisions built on them are reloaded
+                vertx.eventBus().publish(ProvisionRegistry.EVENT_DISCOVERY_CHANGED, new JsonObject());
+            }
+
+            var summary = progress()
+                    .put("written", written)
+                    .put("write_failures", writeFailures)
+                    .put("duration_ms", System.currentTimeMillis() - startedAt);
+
+            LOGGER.info("Bulk discovery finished: {}", summary.encode());
+
+            promise.complete(summary);
+        });
+    }
+
+    private JsonObject progress()
+    {
+        return new JsonObject()
+                .put("total", targets.size())
+                .put("completed", completed)
+                .put("discovered", discovered)
+                .put("failed", completed - discovered)
+                .put("stages", new JsonObject()
+                        .put(pingStage.name, pingStage.getStats())
+                        .put(portStage.name, portStage.getStats())
+                        .put(sshStage.name, sshStage.getStats()));
+    }
+
+    /**
+     * One stage of the pipeline, running at most limit checks at once. A device that passes moves on to the
+     * next stage, or is discovered after the last one; a device that fails stops here.
+     */
+    private final class Stage
+    {
+        private final String name;
+        private final int limit;
+        private final Function<Target, Future<Void>> check;
+        private final Stage next;
+        private final ArrayDeque<Target> queue = new ArrayDeque<>();
+
+        private int active;
+        private int passed;
+        private int failed;
+
+        private Stage(String name, int limit, Function<Target, Future<Void>> check, Stage next)
+        {
+            this.name = name;
+            this.limit = Math.max(1, limit);
+            this.check = check;
+            this.next = next;
+        }
+
+        private void submit(Target target)
+        {
+            queue.add(target);
+            pump();
+        }
+
+        private void pump()
+        {
+            while (active < limit && !queue.isEmpty())
+            {
+                var target = queue.poll();
+
+                active++;
+
+                // Checks complete on other threads, results are handled back on the pipeline's context
+                check.apply(target).onComplete(result -> context.runOnContext(v ->
+                {
+                    active--;
+
+                    if (result.failed())
+                    {
+                        failed++;
+                        complete(target, name, false, result.cause().getMessage() != null ? result.cause().getMessage() : name + " check failed");
+                    }
+                    else
+                    {
+                        passed++;
+
+                        if (next != null)
+                        {
+                            next.submit(target);
+                        }
+                        else
+                        {
+                            complete(target, name, true, "Discovery successful");
+                        }
+                    }
+
+                    pump();
+                }));
+            }
+        }
+
+        private JsonObject getStats()
+        {
+            return new JsonObject()
+                    .put("queued", queue.size())
+                    .put("active", active)
+                    .put("passed", passed)
+                    .put("failed", failed);
+        }
+    }
+}
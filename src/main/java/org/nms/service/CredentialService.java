@@ -1,9 +1,11 @@
 package org.nms.service;
 
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonObject;
 import org.nms.database.queries.CredentialQueries;
 import org.nms.utils.Constants;
 
+import java.util.Map;
 import java.util.function.Function;
 
 public class CredentialService extends BaseService<JsonObject>
@@ -37,6 +39,30 @@ public class CredentialService extends BaseService<JsonObject>
         return CredentialQueries.SELECT_ALL_CREDENTIAL_PROFILES;
     }
 
+    @Override
+    protected String getPageQuery()
+    {
+        return CredentialQueries.SELECT_CREDENTIAL_PROFILES_PAGE;
+    }
+
+    @Override
+    protected String[] getCursorFields()
+    {
+        return new String[]{"id"};
+    }
+
+    @Override
+    protected String[] getFilterFields()
+    {
+        return new String[]{Constants.CRED_PROTOCOL};
+    }
+
+    @Override
+    protected Map<String, PageFieldType> getPageFieldTypes()
+    {
+        return Map.of("id", PageFieldType.INTEGER);
+    }
+
     @Override
     protected String getSelectByIdQuery()
     {
@@ -90,6 +116,27 @@ public class CredentialService extends BaseService<JsonObject>
                 .put(Constants.CRED_USERNAME_RESPONSE, row.getString(Constants.CRED_USERNAME))
                 .put(Constants.CRED_ID_RESPONSE, row.getLong(Constants.CRED_ID));
     }
+
+    @Override
+    public Future<JsonObject> update(JsonObject entity)
+    {
+        // Provisioned devices carry these credentials, let the registry pick up the change
+        return super.update(entity).onSuccess(result -> publishChanged(result, entity.getLong(CREDENTIAL_ID)));
+    }
+
+    @Override
+    public Future<JsonObject> delete(Long id)
+    {
+        return super.delete(id).onSuccess(result -> publishChanged(result, id));
+    }
+
+    private void publishChanged(JsonObject result, Long credentialId)
+    {
+        if (result.getBoolean("success", false))
+        {
+            vertx.eventBus().publish(ProvisionRegistry.EVENT_CREDENTIAL_CHANGED, new JsonObject().put(CREDENTIAL_ID, credentialId));
+        }
+    }
 }
 
 
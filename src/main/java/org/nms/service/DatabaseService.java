@@ -8,12 +8,17 @@ import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.Tuple;
 import io.vertx.sqlclient.RowSet;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowStream;
 import org.nms.Main;
 import org.nms.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+
 public class DatabaseService
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseService.class);
@@ -40,16 +45,22 @@ public class DatabaseService
             return;
         }
 
-        var connectOptions = new PgConnectOptions()
+        var poolOptions = new PoolOptions().setMaxSize(5);
+        pool = PgPool.pool(vertx, getConnectOptions(), poolOptions);
+        LOGGER.info("Database connection established.");
+    }
+
+    /**
+     * Connection settings of the application database, also used by connections kept outside the pool.
+     */
+    public static PgConnectOptions getConnectOptions()
+    {
+        return new PgConnectOptions()
                 .setPort(Constants.DB_PORT)
                 .setHost(Constants.DB_HOST)
                 .setDatabase(Constants.DB_NAME)
                 .setUser(Constants.DB_USER)
                 .setPassword(Constants.DB_PASSWORD);
-
-        var poolOptions = new PoolOptions().setMaxSize(5);
-        pool = PgPool.pool(vertx, connectOptions, poolOptions);
-        LOGGER.info("Database connection established.");
     }
 
     public Future<RowSet<Row>> executeQuery(String query)
@@ -61,4 +72,31 @@ public class DatabaseService
     {
         return pool.preparedQuery(query).execute(params);
     }
+
+    public Future<RowSet<Row>> executeBatch(String query, List<Tuple> batch)
+    {
+        return pool.preparedQuery(query).executeBatch(batch);
+    }
+
+    /**
+     * Read the rows of a query through a cursor, fetchSize rows at a time, so the result is never held in memory.
+     * The handler sets the row handler of the stream and may pause it; it fails the promise to stop early.
+     * @return Future completed when the stream ended, the connection is then given back to the pool
+     */
+    public Future<Void> streamQuery(String query, Tuple params, int fetchSize, BiConsumer<RowStream<Row>, Promise<Void>> handler)
+    {
+        // Cursors only live inside a transaction
+        return pool.withTransaction(connection -> connection.prepare(query).compose(statement ->
+        {
+            var promise = Promise.<Void>promise();
+            var stream = statement.createStream(fetchSize, params);
+
+            stream.exceptionHandler(promise::tryFail);
+            stream.endHandler(v -> promise.tryComplete());
+
+            handler.accept(stream, promise);
+
+            return promise.future();
+        }));
+    }
 }
\ No newline at end of file
@@ -5,21 +5,35 @@ import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.Promise;
+import org.nms.database.queries.CredentialQueries;
 import org.nms.database.queries.DiscoveryQueries;
 import org.nms.polling.ZMQCommunicationVerticle;
+import org.nms.polling.ZMQResponseRouter;
 import org.nms.routerController.ApiResponse;
 import org.nms.utils.Constants;
-import org.nms.utils.DeviceReachability;
+import org.nms.utils.ReachabilityEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class DiscoveryService extends BaseService<JsonObject>
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryService.class);
 
+    private static final long DISCOVERY_TIMEOUT_MS = 30000;
+    private static final int DEFAULT_SSH_PORT = 22;
+    private static final int MIN_CIDR_PREFIX = 16;
+
+    // Config of the verticle serving discovery, passed on to bulk runs
+    private final JsonObject config;
+
     public static final String[] CREATE_PARAM_MAPPING = {
             Constants.DISC_NAME,
             Constants.DISC_CREDENTIAL_ID,
@@ -38,6 +52,11 @@ public class DiscoveryService extends BaseService<JsonObject>
             Constants.DISC_ID
     };
 
+    public DiscoveryService(JsonObject config)
+    {
+        this.config = config;
+    }
+
     @Override
     protected String getInsertQuery()
     {
@@ -50,6 +69,30 @@ public class DiscoveryService extends BaseService<JsonObject>
         return DiscoveryQueries.SELECT_DISCOVERY_WITH_CREDENTIALS;
     }
 
+    @Override
+    protected String getPageQuery()
+    {
+        return DiscoveryQueries.SELECT_DISCOVERY_PAGE_WITH_CREDENTIALS;
+    }
+
+    @Override
+    protected String[] getCursorFields()
+    {
+        return new String[]{Constants.DISC_ID};
+    }
+
+    @Override
+    protected String[] getFilterFields()
+    {
+        return new String[]{Constants.DISC_STATUS};
+    }
+
+    @Override
+    protected Map<String, PageFieldType> getPageFieldTypes()
+    {
+        return Map.of(Constants.DISC_ID, PageFieldType.INTEGER, Constants.DISC_STATUS, PageFieldType.BOOLEAN);
+    }
+
     @Override
     protected String getSelectByIdQuery()
     {
@@ -114,6 +157,17 @@ public class DiscoveryService extends BaseService<JsonObject>
         };
     }
 
+    @Override
+    protected void onUpdated(JsonObject entity, JsonArray rows)
+    {
+        // Only a new address, port or credential affects provisioned devices
+        if (!rows.isEmpty() && rows.getJsonObject(0).getBoolean("connection_changed", false))
+        {
+            vertx.eventBus().publish(ProvisionRegistry.EVENT_DISCOVERY_CHANGED,
+                    new JsonObject().put(Constants.DISC_ID, entity.getLong(Constants.DISC_ID)));
+        }
+    }
+
     public Future<JsonObject> getDiscoveriesByStatus(boolean status)
     {
         LOGGER.info("Fetching discovery profiles by status: {}", status);
@@ -230,33 +284,8 @@ public class DiscoveryService extends BaseService<JsonObject>
                     var password = row.getString(Constants.CRED_PASSWORD);
                     var protocol = row.getString(Constants.CRED_PROTOCOL);
 
-                    // Perform all blocking operations (ping, port check) in a single executeBlocking
-                    vertx.executeBlocking(blockingPromise ->
-                    {
-                        try
-                        {
-                            // Step 1: Ping Check
-                            DeviceReachability.performPingCheck(ipAddress);
-
-                            LOGGER.info(
-                                    "Ping check successful for IP: {}, Port: {}, Protocol: {}",
-                                    ipAddress, portNo, protocol
-                            );
-
-                            // Step 2: Port Check
-                            DeviceReachability.performPortCheck(ipAddress, portNo);
-                            LOGGER.info(
-                                    "Port check successful for IP: {}, Port: {}, Protocol: {}",
-                                    ipAddress, portNo, protocol
-                            );
-
-                            blockingPromise.complete();
-                        }
-                        catch (Exception exception)
-                        {
-                            blockingPromise.fail(exception);
-                        }
-                    }, result ->
+                    // Ping and port check, both asynchronous on the reachability engine
+                    ReachabilityEngine.getInstance().check(ipAddress, portNo).onComplete(result ->
                     {
                         if (result.failed())
                         {
@@ -271,76 +300,65 @@ public class DiscoveryService extends BaseService<JsonObject>
                             return;
                         }
 
+                        LOGGER.info("Reachability checks successful for IP: {}, Port: {}, Protocol: {}", ipAddress, portNo, protocol);
+
                         // Step 3: SSH Check via ZMQ instead of Go Plugin directly
                         // Create a unique request ID for this discovery
                         var requestId = "discovery-" + discoveryId + "-" + System.currentTimeMillis();
 
-                        // Create the ZMQ request payload
-                        // The Go plugin expects a different structure - "data" field should have the device info
-                        var deviceInput = new JsonObject()
-                                .put("ip", ipAddress)
-                                .put("port", portNo)
-                                .put("username", username)
-                                .put("password", password)
-                                .put("protocol", protocol.toLowerCase())
-                                .put("discovery_id", discoveryId.intValue());
-
-                        var zmqRequest = new JsonObject()
-                                .put("request_id", requestId)
-                                .put("command", "discovery")
-                                .put("data", deviceInput);
-
-                        // Create and register the consumer
-                        var consumer = vertx.eventBus().<JsonObject>consumer(ZMQCommunicationVerticle.EB_ZMQ_RESPONSE);
-
-                        // Set a timeout for the response
-                        final long timeoutId = vertx.setTimer(30000, id ->
+                        // Same ZMQ request as a bulk discovery sends
+                        var zmqRequest = BulkDiscoveryPipeline.discoveryRequest(requestId, new BulkDiscoveryPipeline.Target(
+                                discoveryId,
+                                row.getString(Constants.DISC_NAME),
+                                ipAddress,
+                                portNo,
+                                row.getLong(Constants.DISC_CREDENTIAL_ID),
+                                username,
+                                password,
+                                protocol));
+
+                        // Register for the response before sending so it cannot be missed
+                        var router = ZMQResponseRouter.getInstance();
+
+                        router.register(requestId, DISCOVERY_TIMEOUT_MS).onComplete(responseResult ->
                         {
-                            consumer.unregister();
-                            promise.complete(ApiResponse.error(408, "Timeout waiting for discovery response").toJson());
-                        });
-
-                        // Set up the handler
-                        consumer.handler(msg ->
-                        {
-                            var responseBody = msg.body();
-                            LOGGER.info("Received ZMQ response: {}", responseBody.encodePrettily());
-                            if (requestId.equals(responseBody.getString("request_id")))
+                            if (responseResult.failed())
                             {
-                                // Unregister the consumer since we got our response
-                                consumer.unregister();
-
-                                // Cancel the timeout timer
-                                vertx.cancelTimer(timeoutId);
-
-                                var discoverySuccess = responseBody.getBoolean("success", false);
-                                String details = responseBody.getString("details", "");
-
-                                discoveryDetails.put("status", discoverySuccess)
-                                        .put("lastdiscoverytime", Instant.now().toString())
-                                        .put("message", details);
-
-                                LOGGER.info(
-                                        "Discovery result for ID {}:",
-                                        discoveryDetails
-                                );
-                                // Create the request to send to DBVerticle
-                                update(discoveryDetails)
-                                        .onSuccess(updateResponse ->
-                                        {
-                                            var response = new JsonObject()
-                                                    .put("discoveryId", discoveryId)
-                                                    .put("success", discoverySuccess)
-                                                    .put("details", details);
-
-                                            promise.complete(ApiResponse.success(response).toJson());
-                                        })
-                                        .onFailure(error ->
-                                        {
-                                            LOGGER.error("Failed to update discovery profile: {}", error.getMessage());
-                                            promise.complete(ApiResponse.error(500, "Failed to update discovery profile").toJson());
-                                        });
+                                // A cancelled request was already answered by the send failure below
+                                promise.tryComplete(ApiResponse.error(408, "Timeout waiting for discovery response").toJson());
+                                return;
                             }
+
+                            var responseBody = responseResult.result();
+                            LOGGER.info("Received ZMQ response: {}", responseBody.encodePrettily());
+
+                            var discoverySuccess = responseBody.getBoolean("success", false);
+                            String details = responseBody.getString("details", "");
+
+                            discoveryDetails.put("status", discoverySuccess)
+                                    .put("lastdiscoverytime", Instant.now().toString())
+                                    .put("message", details);
+
+                            LOGGER.info(
+                                    "Discovery result for ID {}:",
+                                    discoveryDetails
+                            );
+                            // Create the request to send to DBVerticle
+                            update(discoveryDetails)
+                                    .onSuccess(updateResponse ->
+                                    {
+                                        var response = new JsonObject()
+                                                .put("discoveryId", discoveryId)
+                                                .put("success", discoverySuccess)
+                                                .put("details", details);
+
+                                        promise.complete(ApiResponse.success(response).toJson());
+                                    })
+                                    .onFailure(error ->
+                                    {
+                                        LOGGER.error("Failed to update discovery profile: {}", error.getMessage());
+                                        promise.complete(ApiResponse.error(500, "Failed to update discovery profile").toJson());
+                                    });
                         });
 
                         // Send the request to the ZMQ verticle
@@ -348,12 +366,11 @@ public class DiscoveryService extends BaseService<JsonObject>
                         {
                             if (zmqSendReply.failed())
                             {
-                                consumer.unregister();
-                                vertx.cancelTimer(timeoutId);
+                                router.cancel(requestId);
                                 promise.complete(ApiResponse.error(500, "Failed to send discovery request: " +
                                         zmqSendReply.cause().getMessage()).toJson());
                             }
-                            // For successful send, we wait for the response via the consumer
+                            // For successful send, we wait for the response via the router
                         });
                     });
                 }
@@ -373,5 +390,203 @@ public class DiscoveryService extends BaseService<JsonObject>
         }
     }
 
+    /**
+     * Discover many devices: the profiles listed in discovery_ids, or every host of a CIDR range with
+     * the credential profile credential_id on port (default 22).
+     * @param listener Receives the progress events of the pipeline
+     * @return Future completed with the summary once every device was discovered
+     */
+    public Future<JsonObject> runBulkDiscovery(JsonObject request, Consumer<JsonObject> listener)
+    {
+        try
+        {
+            Future<List<BulkDiscoveryPipeline.Target>> targets;
+
+            if (request.getJsonArray("discovery_ids") != null)
+            {
+                targets = resolveProfiles(request.getJsonArray("discovery_ids"));
+            }
+            else if (request.getString("cidr") != null)
+            {
+                var hosts = expandCidr(request.getString("cidr"));
+                var credentialId = request.getLong(Constants.DISC_CREDENTIAL_ID);
 
-}
\ No newline at end of file
+                if (credentialId == null)
+                {
+                    return Future.succeededFuture(ApiResponse.error(400, "credential_id is required with cidr").toJson());
+                }
+
+                targets = resolveRange(hosts, request.getInteger("port", DEFAULT_SSH_PORT), credentialId);
+            }
+            else
+            {
+                return Future.succeededFuture(ApiResponse.error(400, "discovery_ids or cidr is required").toJson());
+            }
+
+            return targets
+                    .compose(resolved -> resolved.isEmpty()
+                            ? Future.succeededFuture(ApiResponse.error(404, "No devices to discover").toJson())
+                            : new BulkDiscoveryPipeline(vertx, config, resolved, listener).run()
+                                    .map(summary -> ApiResponse.success(summary).toJson()))
+                    .recover(error ->
+                    {
+                        LOGGER.error("Bulk discovery failed: {}", error.getMessage());
+                        return Future.succeededFuture(ApiResponse.error(500, error.getMessage()).toJson());
+                    });
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return Future.succeededFuture(ApiResponse.error(400, exception.getMessage()).toJson());
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("Error in runBulkDiscovery: {}", exception.getMessage());
+            return Future.succeededFuture(ApiResponse.error(500, exception.getMessage()).toJson());
+        }
+    }
+
+    private Future<List<BulkDiscoveryPipeline.Target>> resolveProfiles(JsonArray discoveryIds)
+    {
+        var ids = new StringJoiner(",");
+
+        for (var i = 0; i < discoveryIds.size(); i++)
+        {
+            ids.add(String.valueOf(discoveryIds.getLong(i)));
+        }
+
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, DiscoveryQueries.SELECT_DISCOVERIES_BY_IDS_WITH_CREDENTIALS)
+                .put(Constants.DB_PARAMS, new JsonArray().add(ids.toString()));
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest).map(reply ->
+        {
+            var rows = reply.body().getJsonArray("rows", new JsonArray());
+            var targets = new ArrayList<BulkDiscoveryPipeline.Target>(rows.size());
+
+            for (var i = 0; i < rows.size(); i++)
+            {
+                var row = rows.getJsonObject(i);
+
+                targets.add(new BulkDiscoveryPipeline.Target(
+                        row.getLong(Constants.DISC_ID),
+                        row.getString(Constants.DISC_NAME),
+                        row.getString(Constants.DISC_IP_ADDRESS),
+                        row.getInteger(Constants.DISC_PORT_NO),
+                        row.getLong(Constants.DISC_CREDENTIAL_ID),
+                        row.getString(Constants.CRED_USERNAME),
+                        row.getString(Constants.CRED_PASSWORD),
+                        row.getString(Constants.CRED_PROTOCOL)));
+            }
+
+            return targets;
+        });
+    }
+
+    private Future<List<BulkDiscoveryPipeline.Target>> resolveRange(List<String> hosts, int port, long credentialId)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, CredentialQueries.SELECT_CREDENTIAL_PROFILE_BY_ID)
+                .put(Constants.DB_PARAMS, new JsonArray().add(credentialId));
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest).compose(reply ->
+        {
+            var rows = reply.body().getJsonArray("rows", new JsonArray());
+
+            if (rows.isEmpty())
+            {
+                return Future.failedFuture("Credential profile not found");
+            }
+
+            var credential = rows.getJsonObject(0);
+            var targets = new ArrayList<BulkDiscoveryPipeline.Target>(hosts.size());
+
+            for (var host : hosts)
+            {
+                targets.add(new BulkDiscoveryPipeline.Target(
+                        null,
+                        "discovered-" + host + ":" + port,
+                        host,
+                        port,
+                        credentialId,
+                        credential.getString(Constants.CRED_USERNAME),
+                        credential.getString(Constants.CRED_PASSWORD),
+                        credential.getString(Constants.CRED_PROTOCOL)));
+            }
+
+            return Future.succeededFuture(targets);
+        });
+    }
+
+    /**
+     * Host addresses of an IPv4 CIDR range, without the network and broadcast addresses of ranges larger than /31.
+     * @throws IllegalArgumentException if the range is malformed or larger than /16
+     */
+    static List<String> expandCidr(String cidr)
+    {
+        var parts = cidr.trim().split("/");
+
+        if (parts.length != 2)
+        {
+            throw new IllegalArgumentException("Invalid CIDR range: " + cidr);
+        }
+
+        var octets = parts[0].split("\\.");
+        int prefix;
+
+        try
+        {
+            prefix = Integer.parseInt(parts[1]);
+        }
+        catch (NumberFormatException exception)
+        {
+            throw new IllegalArgumentException("Invalid CIDR prefix: " + cidr);
+        }
+
+        if (octets.length != 4 || prefix < MIN_CIDR_PREFIX || prefix > 32)
+        {
+            throw new IllegalArgumentException("CIDR range must be IPv4 with a prefix from /" + MIN_CIDR_PREFIX + " to /32: " + cidr);
+        }
+
+        var address = 0L;
+
+        for (var octet : octets)
+        {
+            int value;
+
+            try
+            {
+                value = Integer.parseInt(octet);
+            }
+            catch (NumberFormatException exception)
+            {
+                throw new IllegalArgumentException("Invalid CIDR address: " + cidr);
+            }
+
+            if (value < 0 || value > 255)
+            {
+                throw new IllegalArgumentException("Invalid CIDR address: " + cidr);
+            }
+
+            address = (address << 8) | value;
+        }
+
+        var size = 1L << (32 - prefix);
+        var first = address & ~(size - 1) & 0xFFFFFFFFL;
+        var last = first + size - 1;
+
+        if (prefix < 31)
+        {
+            first++;
+            last--;
+        }
+
+        var hosts = new ArrayList<String>((int) (last - first + 1));
+
+        for (var host = first; host <= last; host++)
+        {
+            hosts.add(((host >> 24) & 0xFF) + "." + ((host >> 16) & 0xFF) + "." + ((host >> 8) & 0xFF) + "." + (host & 0xFF));
+        }
+
+        return hosts;
+    }
+}
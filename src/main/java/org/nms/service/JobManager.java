@@ -0,0 +1,454 @@
+package org.nms.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.Main;
+import org.nms.database.queries.JobQueries;
+import org.nms.routerController.ApiResponse;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs long operations, such as discoveries and provisioning, as jobs so the HTTP request that starts one
+ * returns its job ID right away. At most jobs.max.running jobs run at once, the others wait queued.
+ * A job submitted with a key while another job with the same key is queued or running is not started,
+ * the running job is returned instead.
+ * Jobs are kept in a bounded in-memory table, from which the oldest finished jobs are evicted, and in the
+ * jobs table, where they can still be looked up until they expire. Finished jobs are published on
+ * EVENT_JOB_COMPLETED. Jobs a previous run left queued or running are marked failed when the manager is created.
+ * Settings come from the NMS config file (see Main), handed over by HttpVerticle through configure().
+ */
+public class JobManager
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobManager.class);
+
+    public static final String EVENT_JOB_COMPLETED = "job.completed";
+
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_SUCCEEDED = "succeeded";
+    public static final String STATUS_FAILED = "failed";
+
+    private static final int DEFAULT_MAX_JOBS = 10000;
+    private static final int DEFAULT_MAX_RUNNING = 50;
+    private static final long RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final long CLEANUP_INTERVAL_MS = 60 * 60 * 1000;
+    private static final long MAX_WAIT_MS = 60000;
+    private static final int LIST_LIMIT = 100;
+    private static final String INTERRUPTED_MESSAGE = "Interrupted by restart";
+
+    private static JobManager instance;
+
+    private final Vertx vertx;
+    private final int maxJobs;
+    private final int maxRunning;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Job> jobs = new LinkedHashMap<>();
+    private final Map<String, Job> activeByKey = new HashMap<>();
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private int running;
+
+    // Counters, guarded by this
+    private long submitted;
+    private long deduplicated;
+    private long evicted;
+
+    private JobManager(JsonObject config)
+    {
+        this.vertx = Main.getVertx();
+        this.maxJobs = config.getInteger("jobs.max.retained", DEFAULT_MAX_JOBS);
+        this.maxRunning = config.getInteger("jobs.max.running", DEFAULT_MAX_RUNNING);
+
+        failInterrupted();
+        deleteExpired();
+        vertx.setPeriodic(CLEANUP_INTERVAL_MS, id -> deleteExpired());
+    }
+
+    /**
+     * Create the manager from the given config, before its first use. Later calls are ignored.
+     */
+    public static synchronized void configure(JsonObject config)
+    {
+        if (instance == null)
+        {
+            instance = new JobManager(config);
+        }
+    }
+
+    public static synchronized JobManager getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new JobManager(new JsonObject());
+        }
+        return instance;
+    }
+
+    /**
+     * Submit a job.
+     * @param type Kind of job, such as "discovery"
+     * @param key Jobs with the same key do not run at once, null if the job may run alongside any other
+     * @param work Runs the job and completes with its ApiResponse, it may report progress to the given consumer
+     * @return ApiResponse (202) with the job, flagged "deduplicated" when an active job with the same key was returned
+     */
+    public JsonObject submit(String type, String key, Function<Consumer<JsonObject>, Future<JsonObject>> work)
+    {
+        Job job;
+        List<Job> started;
+
+        synchronized (this)
+        {
+            var active = key != null ? activeByKey.get(key) : null;
+
+            if (active != null)
+            {
+                deduplicated++;
+                return ApiResponse.accepted(active.toJson().put("deduplicated", true)).toJson();
+            }
+
+            job = new Job(UUID.randomUUID().toString(), type, key, work);
+            jobs.put(job.id, job);
+            queue.add(job);
+            submitted++;
+
+            if (key != null)
+            {
+                activeByKey.put(key, job);
+            }
+
+            started = takeStartable();
+            evict();
+        }
+
+        persist(JobQueries.INSERT_JOB, new JsonArray()
+                .add(job.id)
+                .add(job.type)
+                .add(job.key)
+                .add(job.status)
+                .add(job.createdAt)
+                .add(job.startedAt));
+
+        started.forEach(this::run);
+
+        return ApiResponse.accepted(job.toJson().put("deduplicated", false)).toJson();
+    }
+
+    /**
+     * The job with the given ID, from memory or else from the jobs table.
+     */
+    public Future<JsonObject> getJob(String jobId)
+    {
+        synchronized (this)
+        {
+            var job = jobs.get(jobId);
+
+            if (job != null)
+            {
+                return Future.succeededFuture(ApiResponse.success(job.toJson()).toJson());
+            }
+        }
+
+        return loadJob(jobId);
+    }
+
+    /**
+     * Wait for the job to finish, at most timeoutMs (capped at one minute).
+     * @return Future with the job once it finished, or as it is when the wait timed out
+     */
+    public Future<JsonObject> awaitJob(String jobId, long timeoutMs)
+    {
+        var promise = Promise.<JsonObject>promise();
+
+        synchronized (this)
+        {
+            var job = jobs.get(jobId);
+
+            if (job == null)
+            {
+                return loadJob(jobId);
+            }
+
+            if (job.isFinished())
+            {
+                return Future.succeededFuture(ApiResponse.success(job.toJson()).toJson());
+            }
+
+            job.waiters.add(promise);
+
+            var timerId = vertx.setTimer(Math.max(1, Math.min(timeoutMs, MAX_WAIT_MS)), id ->
+            {
+                synchronized (this)
+                {
+                    job.waiters.remove(promise);
+                }
+                promise.tryComplete(ApiResponse.success(job.toJson()).toJson());
+            });
+
+            promise.future().onComplete(result -> vertx.cancelTimer(timerId));
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * The most recent jobs in memory, optionally only those with the given status, and the job counters.
+     */
+    public synchronized JsonObject listJobs(String status)
+    {
+        var list = new ArrayList<JsonObject>();
+
+        for (var job : jobs.values())
+        {
+            if (status == null || status.equals(job.status))
+            {
+                list.add(job.toJson());
+            }
+        }
+
+        var recent = list.subList(Math.max(0, list.size() - LIST_LIMIT), list.size());
+
+        return ApiResponse.success(new JsonObject()
+                .put("jobs", new JsonArray(new ArrayList<>(recent)))
+                .put("stats", new JsonObject()
+                        .put("retained", jobs.size())
+                        .put("queued", queue.size())
+                        .put("running", running)
+                        .put("max_running", maxRunning)
+                        .put("max_retained", maxJobs)
+                        .put("submitted", submitted)
+                        .put("deduplicated", deduplicated)
+                        .put("evicted", evicted)))
+                .toJson();
+    }
+
+    // Queued jobs that can start now, marked running
+    private List<Job> takeStartable()
+    {
+        var started = new ArrayList<Job>();
+
+        while (running < maxRunning && !queue.isEmpty())
+        {
+            var job = queue.poll();
+
+            job.status = STATUS_RUNNING;
+            job.startedAt = System.currentTimeMillis();
+            running++;
+            started.add(job);
+        }
+
+        return started;
+    }
+
+    private void run(Job job)
+    {
+        Future<JsonObject> result;
+
+        try
+        {
+            result = job.work.apply(progress ->
+            {
+                synchronized (this)
+                {
+                    job.progress = progress;
+                }
+            });
+        }
+        catch (Exception exception)
+        {
+            result = Future.failedFuture(exception);
+        }
+
+        result.onComplete(outcome -> finish(job, outcome.succeeded() ? outcome.result() : null,
+                outcome.failed() ? outcome.cause().getMessage() : null));
+    }
+
+    private void finish(Job job, JsonObject response, String error)
+    {
+        List<Promise<JsonObject>> waiters;
+        List<Job> started;
+        JsonObject completed;
+
+        synchronized (this)
+        {
+            // Services answer with an ApiResponse, a failed one fails the job
+            var success = response != null && response.getBoolean("success", false);
+
+            job.status = success ? STATUS_SUCCEEDED : STATUS_FAILED;
+            job.result = response;
+            job.error = success ? null : (error != null ? error : response != null ? response.getString("message") : null);
+            job.finishedAt = System.currentTimeMillis();
+            job.work = null;
+            running--;
+
+            if (job.key != null)
+            {
+                activeByKey.remove(job.key, job);
+            }
+
+            waiters = new ArrayList<>(job.waiters);
+            job.waiters.clear();
+            completed = job.toJson();
+            started = takeStartable();
+            evict();
+        }
+
+        LOGGER.info("Job {} ({}) {} in {} ms", job.id, job.type, job.status, job.finishedAt - job.startedAt);
+
+        waiters.forEach(waiter -> waiter.tryComplete(ApiResponse.success(completed).toJson()));
+        vertx.eventBus().publish(EVENT_JOB_COMPLETED, completed);
+
+        persist(JobQueries.UPSERT_JOB_RESULT, new JsonArray()
+                .add(job.id)
+                .add(job.type)
+                .add(job.key)
+                .add(job.status)
+                .add(job.result)
+                .add(job.error)
+                .add(job.createdAt)
+                .add(job.startedAt)
+                .add(job.finishedAt));
+
+        started.forEach(this::run);
+    }
+
+    // Drop the oldest finished jobs beyond the limit, they stay in the jobs table
+    private void evict()
+    {
+        var iterator = jobs.values().iterator();
+
+        while (jobs.size() > maxJobs && iterator.hasNext())
+        {
+            if (iterator.next().isFinished())
+            {
+                iterator.remove();
+                evicted++;
+            }
+        }
+    }
+
+    private Future<JsonObject> loadJob(String jobId)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, JobQueries.SELECT_JOB_BY_ID)
+                .put(Constants.DB_PARAMS, new JsonArray().add(jobId));
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .map(reply ->
+                {
+                    var rows = reply.body().getJsonArray("rows", new JsonArray());
+
+                    return rows.isEmpty()
+                            ? ApiResponse.error(404, "Job not found: " + jobId).toJson()
+                            : ApiResponse.success(rows.getJsonObject(0)).toJson();
+                })
+                .recover(error ->
+                {
+                    LOGGER.error("Failed to load job {}: {}", jobId, error.getMessage());
+                    return Future.succeededFuture(ApiResponse.error(500, error.getMessage()).toJson());
+                });
+    }
+
+    private void persist(String query, JsonArray params)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_PARAMS, params);
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .onFailure(error -> LOGGER.warn("Failed to persist job {}: {}", params.getString(0), error.getMessage()));
+    }
+
+    // Their work was lost with the previous process, without this they would be reported as running forever
+    private void failInterrupted()
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, JobQueries.FAIL_INTERRUPTED_JOBS)
+                .put(Constants.DB_PARAMS, new JsonArray()
+                        .add(STATUS_FAILED)
+                        .add(INTERRUPTED_MESSAGE)
+                        .add(System.currentTimeMillis()));
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .onSuccess(reply ->
+                {
+                    var count = reply.body().getInteger("rowCount", 0);
+
+                    if (count > 0)
+                    {
+                        LOGGER.warn("Marked {} jobs interrupted by a restart as failed", count);
+                    }
+                })
+                .onFailure(error -> LOGGER.warn("Failed to mark interrupted jobs as failed: {}", error.getMessage()));
+    }
+
+    private void deleteExpired()
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, JobQueries.DELETE_EXPIRED_JOBS)
+                .put(Constants.DB_PARAMS, new JsonArray().add(System.currentTimeMillis() - RETENTION_MS));
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .onSuccess(reply -> LOGGER.debug("Deleted {} expired jobs", reply.body().getInteger("rowCount", 0)))
+                .onFailure(error -> LOGGER.warn("Failed to delete expired jobs: {}", error.getMessage()));
+    }
+
+    private static final class Job
+    {
+        private final String id;
+        private final String type;
+        private final String key;
+        private final long createdAt = System.currentTimeMillis();
+        private final List<Promise<JsonObject>> waiters = new ArrayList<>();
+
+        private Function<Consumer<JsonObject>, Future<JsonObject>> work;
+        private String status = STATUS_QUEUED;
+        private Long startedAt;
+        private Long finishedAt;
+        private JsonObject result;
+        private String error;
+        private JsonObject progress;
+
+        private Job(String id, String type, String key, Function<Consumer<JsonObject>, Future<JsonObject>> work)
+        {
+            this.id = id;
+            this.type = type;
+            this.key = key;
+            this.work = work;
+        }
+
+        private boolean isFinished()
+        {
+            return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+        }
+
+        private JsonObject toJson()
+        {
+            return new JsonObject()
+                    .put("id", id)
+                    .put("type", type)
+                    .put("job_key", key)
+                    .put("status", status)
+                    .put("result", result)
+                    .put("error", error)
+                    .put("progress", progress)
+                    .put("created_at", createdAt)
+                    .put("started_at", startedAt)
+                    .put("finished_at", finishedAt);
+        }
+    }
+}
@@ -4,13 +4,15 @@ import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.nms.database.queries.PollingQueries;
-import org.nms.database.queries.ProvisionQueries;
+import org.nms.polling.MetricsCollectionVerticle;
 import org.nms.routerController.ApiResponse;
 import org.nms.utils.Constants;
+import org.nms.utils.DbUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 public class PollingService extends BaseService<JsonObject>
@@ -18,7 +20,6 @@ public class PollingService extends BaseService<JsonObject>
     private static final Logger LOGGER = LoggerFactory.getLogger(PollingService.class);
 
     public static final String POLLING_ID = "monitorId";
-    private static final String EVENT_PROVISION_CHANGED = "provision.changed";
 
     public static final String[] CREATE_PARAM_MAPPING = {
             Constants.MONITOR_ID,
@@ -32,72 +33,44 @@ public class PollingService extends BaseService<JsonObject>
             Constants.MONITOR_ID
     };
 
-    private final ConcurrentHashMap<Long, JsonObject> cache = new ConcurrentHashMap<>();
-
-    public PollingService() {
-        super();
-        setupEventBusConsumer();
+    @Override
+    protected String getInsertQuery()
+    {
+        return PollingQueries.INSERT_POLLING_DATA_PROFILE;
     }
 
-    private void setupEventBusConsumer()
+    @Override
+    protected String getSelectAllQuery()
     {
-        vertx.eventBus().<JsonObject>consumer(EVENT_PROVISION_CHANGED, message ->
-        {
-
-            var event =  message.body();
-
-            var action = event.getString("action");
-            var provision = event.getJsonObject("provision");
-
-            var monitorId = provision != null ? provision.getLong(Constants.MONITOR_ID) : null;
-
-            if (monitorId == null)
-            {
-                LOGGER.warn("Provision ID missing in event: {}", event.encodePrettily());
-                return;
-            }
-
-            switch (action)
-            {
-                case "create":
-                    // Add provision to cache
-                    cache.put(monitorId, provision);
-                    LOGGER.info("Added provision {} to cache", monitorId);
-                    break;
-
-                case "update":
-                    // Add or update provision in cache
-                    var updateProvision = cache.get(monitorId);
-
-                    if(updateProvision != null)
-                    {
-                        var status = provision.getBoolean(Constants.PROVISION_STATUS, true);
-                        cache.put(monitorId, updateProvision.put("status",status));
-                        LOGGER.info("Added/Updated provision {} in cache", monitorId);
-                    }
-                    break;
+        return PollingQueries.SELECT_ALL_POLLING_DATA;
+    }
 
-                case "delete":
-                    // Mark provision as inactive
-                    cache.remove(monitorId);
-                    break;
+    @Override
+    protected String getPageQuery()
+    {
+        return PollingQueries.SELECT_POLLING_DATA_PAGE;
+    }
 
-                default:
-                    LOGGER.warn("Unknown action in event: {}", action);
-            }
-        });
+    @Override
+    protected String[] getCursorFields()
+    {
+        return new String[]{"monitor_id", "timestamp"};
     }
 
     @Override
-    protected String getInsertQuery()
+    protected String[] getFilterFields()
     {
-        return PollingQueries.INSERT_POLLING_DATA_PROFILE;
+        return new String[]{"monitor_id", "from", "to"};
     }
 
     @Override
-    protected String getSelectAllQuery()
+    protected Map<String, PageFieldType> getPageFieldTypes()
     {
-        return PollingQueries.SELECT_ALL_POLLING_DATA;
+        return Map.of(
+                "monitor_id", PageFieldType.INTEGER,
+                "timestamp", PageFieldType.TIMESTAMP,
+                "from", PageFieldType.TIMESTAMP,
+                "to", PageFieldType.TIMESTAMP);
     }
 
     @Override
@@ -153,81 +126,81 @@ public class PollingService extends BaseService<JsonObject>
                 .put("timestamp", row.getString("timestamp"));
     }
 
+    /**
+     * Active devices from the shared provision registry.
+     * @return Future with the current snapshot's provisions under "provisions"
+     */
     public Future<JsonObject> getDeviceToMonitor()
     {
-        LOGGER.info("Fetching devices to monitor");
+        var snapshot = ProvisionRegistry.getInstance().getSnapshot();
 
-        // Check if cache has active provisions
-        var activeProvisions = new JsonArray();
-        cache.forEach((provisionId, provision) ->
-        {
-            if (provision.getBoolean("status", true))
-            {
-                activeProvisions.add(provision);
-            }
-        });
+        return Future.succeededFuture(new JsonObject()
+                .put("provisions", snapshot.getProvisions())
+                .put("version", snapshot.getVersion()));
+    }
 
-        if (!activeProvisions.isEmpty())
-        {
-            LOGGER.info("cache hit, {} active devices from cache", activeProvisions.size());
-            return Future.succeededFuture(new JsonObject().put("provisions", activeProvisions));
-        }
+    public Future<JsonObject> insertPollingData(JsonObject params)
+    {
+        LOGGER.info("Inserting polling data: {}", params);
+        return create(params);
+    }
 
-        try
+    /**
+     * Insert many polling rows with a single batched statement.
+     * @param records Rows with monitor_id, data and timestamp
+     * @return Future with the number of inserted rows
+     */
+    public Future<Integer> insertPollingDataBatch(List<JsonObject> records)
+    {
+        var batchParams = new JsonArray();
+
+        for (var record : records)
         {
-            var dbRequest = new JsonObject()
-                    .put(Constants.DB_QUERY, ProvisionQueries.SELECT_ALL_STATUS_TRUE_PROVISIONS);
-
-            return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_WITHOUT_PARAM_EVENTBUS, dbRequest)
-                    .compose(reply ->
-                    {
-                        var rows = reply.body();
-                        var provisionList = new JsonArray();
-
-                        LOGGER.info("Received rows: {}", rows.size());
-                        var rowsArray = rows.getJsonArray("rows", new JsonArray());
-                        for (var i = 0; i < rowsArray.size(); i++)
-                        {
-                            try
-                            {
-                                var row = rowsArray.getJsonObject(i);
-                                var provision = new JsonObject()
-                                        .put("monitor_id", row.getInteger(Constants.MONITOR_ID))
-                                        .put("ip", row.getString(Constants.DISC_IP_ADDRESS))
-                                        .put("port", row.getInteger(Constants.DISC_PORT_NO))
-                                        .put("username", row.getString(Constants.CRED_USERNAME))
-                                        .put("password", row.getString(Constants.CRED_PASSWORD))
-                                        .put("protocol", row.getString(Constants.CRED_PROTOCOL))
-                                        .put("status", row.getBoolean(Constants.PROVISION_STATUS, true));
-
-                                provisionList.add(provision);
-                                cache.put(row.getLong(Constants.MONITOR_ID), provision);
-                            }
-                            catch (Exception exception)
-                            {
-                                LOGGER.error("Error processing row {}: {}", i, exception.getMessage());
-                            }
-                        }
-
-                        LOGGER.info("Cached {} devices to monitor", provisionList.size());
-                        return Future.succeededFuture(new JsonObject().put("provisions", provisionList));
-                    })
-                    .recover(error ->
-                    {
-                        LOGGER.error("Failed to fetch devices: {}", error.getMessage());
-                        return Future.succeededFuture(ApiResponse.error(500, "Failed to fetch devices: " + error.getMessage()).toJson());
-                    });
+            batchParams.add(DbUtil.jsonToJsonArray(record, CREATE_PARAM_MAPPING));
         }
-        catch (Exception exception)
+
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, PollingQueries.INSERT_POLLING_DATA_PROFILE)
+                .put(Constants.DB_BATCH_PARAMS, batchParams);
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_BATCH_EVENTBUS, dbRequest)
+                .map(reply -> reply.body().getInteger("rowCount", 0));
+    }
+
+    /**
+     * Circuit breaker state of polled devices.
+     * @param monitorId Device to report, or null for every device that is not healthy
+     * @return Future with the breaker state wrapped in an ApiResponse
+     */
+    public Future<JsonObject> getDeviceHealth(Long monitorId)
+    {
+        var request = new JsonObject();
+
+        if (monitorId != null)
         {
-            LOGGER.error("Error in getDeviceToMonitor: {}", exception.getMessage());
-            return Future.succeededFuture(ApiResponse.error(500, "Error fetching devices: " + exception.getMessage()).toJson());
+            request.put(Constants.MONITOR_ID, monitorId);
         }
+
+        return vertx.eventBus().<JsonObject>request(MetricsCollectionVerticle.EB_POLLING_HEALTH, request)
+                .map(reply -> ApiResponse.success(reply.body()).toJson())
+                .recover(error ->
+                {
+                    LOGGER.error("Failed to fetch device health: {}", error.getMessage());
+                    return Future.succeededFuture(ApiResponse.error(503, "Device health unavailable: " + error.getMessage()).toJson());
+                });
     }
 
-    public Future<JsonObject> insertPollingData(JsonObject params)
+    /**
+     * Current batch size and parallelism used for metrics requests, with the controller state behind them.
+     */
+    public Future<JsonObject> getDispatchSettings()
     {
-        LOGGER.info("Inserting polling data: {}", params);
-        return create(params);
+        return vertx.eventBus().<JsonObject>request(MetricsCollectionVerticle.EB_DISPATCH_SETTINGS, new JsonObject())
+                .map(reply -> ApiResponse.success(reply.body()).toJson())
+                .recover(error ->
+                {
+                    LOGGER.error("Failed to fetch dispatch settings: {}", error.getMessage());
+                    return Future.succeededFuture(ApiResponse.error(503, "Dispatch settings unavailable: " + error.getMessage()).toJson());
+                });
     }
-}
\ No newline at end of file
+}
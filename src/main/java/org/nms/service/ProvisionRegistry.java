@@ -0,0 +1,475 @@
+package org.nms.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.Main;
+import org.nms.database.queries.ProvisionQueries;
+import org.nms.polling.ZMQCommunicationVerticle;
+import org.nms.utils.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Process-wide registry of the devices to monitor.
+ * Loaded in bulk at startup and kept current from provision, credential and discovery changes.
+ * Changes arrive from the database change feed, so edits made by other nodes or with plain SQL are seen too;
+ * while the feed is down the local change events are used instead.
+ * Readers get an immutable, versioned snapshot; changes publish a new snapshot (copy on write),
+ * so reading the active set is a volatile read without allocation or locking. Incremental changes are
+ * collected for a short window and applied together, so a burst of changes copies the registry once.
+ * Devices whose address or credentials changed, or that were removed, have their pooled plugin SSH
+ * connections invalidated.
+ */
+public class ProvisionRegistry
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProvisionRegistry.class);
+
+    public static final String EVENT_PROVISION_CHANGED = "provision.changed";
+    public static final String EVENT_CREDENTIAL_CHANGED = "credential.changed";
+    public static final String EVENT_DISCOVERY_CHANGED = "discovery.changed";
+
+    public static final String ENTITY_PROVISION = "provision";
+    public static final String ENTITY_DISCOVERY = "discovery_profiles";
+    public static final String ENTITY_CREDENTIAL = "credential_profiles";
+
+    private static final long RELOAD_DEBOUNCE_MS = 500;
+    private static final long CHANGE_WINDOW_MS = 100;
+
+    private static ProvisionRegistry instance;
+
+    private final Vertx vertx;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private boolean consumersRegistered = false;
+    private long reloadTimerId = -1;
+    private volatile boolean changeFeedActive = false;
+
+    // Incremental changes waiting for the next snapshot, guarded by this
+    private final List<Change> pendingChanges = new ArrayList<>();
+    private long changeTimerId = -1;
+
+    private ProvisionRegistry()
+    {
+        this.vertx = Main.getVertx();
+    }
+
+    public static synchronized ProvisionRegistry getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ProvisionRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Current snapshot of active provisions. Never null.
+     */
+    public Snapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Load every active provision in one query and start listening for changes.
+     * @return Future with the loaded snapshot
+     */
+    public synchronized Future<Snapshot> load()
+    {
+        if (!consumersRegistered)
+        {
+            setupEventBusConsumers();
+            consumersRegistered = true;
+        }
+
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, ProvisionQueries.SELECT_ALL_STATUS_TRUE_PROVISIONS);
+
+        return vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_WITHOUT_PARAM_EVENTBUS, dbRequest)
+                .map(reply ->
+                {
+                    var devices = new LinkedHashMap<Long, JsonObject>();
+                    var rowsArray = reply.body().getJsonArray("rows", new JsonArray());
+
+                    for (var i = 0; i < rowsArray.size(); i++)
+                    {
+                        try
+                        {
+                            var provision = toProvision(rowsArray.getJsonObject(i));
+                            devices.put(provision.getLong(Constants.MONITOR_ID), provision);
+                        }
+                        catch (Exception exception)
+                        {
+                            LOGGER.error("Error processing row {}: {}", i, exception.getMessage());
+                        }
+                    }
+
+                    var previous = snapshot.devices;
+                    var loaded = publish(devices);
+                    invalidateSessions(previous, loaded.devices);
+                    LOGGER.info("Loaded {} active provisions, registry version {}", loaded.size(), loaded.getVersion());
+                    return loaded;
+                })
+                .onFailure(error -> LOGGER.error("Failed to load provisions: {}", error.getMessage()));
+    }
+
+    /**
+     * Set while the database change feed is connected. The feed then reports every change,
+     * including the ones made by this node, so the local events are ignored.
+     */
+    public void setChangeFeedActive(boolean active)
+    {
+        changeFeedActive = active;
+    }
+
+    /**
+     * Apply one change reported by the database change feed.
+     * @param entity Table that changed
+     * @param id Primary key of the changed row
+     */
+    public void applyChange(String entity, long id)
+    {
+        switch (entity)
+        {
+            case ENTITY_PROVISION -> reloadMonitor(id);
+            case ENTITY_DISCOVERY -> reloadWhere(ProvisionQueries.SELECT_ACTIVE_PROVISIONS_BY_DISCOVERY_ID, Constants.DISC_ID, id);
+            case ENTITY_CREDENTIAL -> reloadWhere(ProvisionQueries.SELECT_ACTIVE_PROVISIONS_BY_CREDENTIAL_ID, Constants.DISC_CREDENTIAL_ID, id);
+            default -> LOGGER.warn("Ignoring change of unknown entity {}", entity);
+        }
+    }
+
+    private void setupEventBusConsumers()
+    {
+        vertx.eventBus().<JsonObject>consumer(EVENT_PROVISION_CHANGED, message ->
+        {
+            if (changeFeedActive)
+            {
+                return;
+            }
+
+            var provision = message.body().getJsonObject("provision");
+            var monitorId = provision != null ? provision.getLong(Constants.MONITOR_ID) : null;
+
+            if (monitorId == null)
+            {
+                LOGGER.warn("Provision ID missing in event: {}", message.body().encode());
+                return;
+            }
+
+            reloadMonitor(monitorId);
+        });
+
+        // Credential and discovery edits can touch many devices, reload everything once they settle
+        vertx.eventBus().<JsonObject>consumer(EVENT_CREDENTIAL_CHANGED, message ->
+        {
+            if (!changeFeedActive)
+            {
+                scheduleReload();
+            }
+        });
+        vertx.eventBus().<JsonObject>consumer(EVENT_DISCOVERY_CHANGED, message ->
+        {
+            if (!changeFeedActive)
+            {
+                scheduleReload();
+            }
+        });
+    }
+
+    private synchronized void scheduleReload()
+    {
+        if (reloadTimerId != -1)
+        {
+            vertx.cancelTimer(reloadTimerId);
+        }
+
+        reloadTimerId = vertx.setTimer(RELOAD_DEBOUNCE_MS, id ->
+        {
+            synchronized (this)
+            {
+                reloadTimerId = -1;
+            }
+            load();
+        });
+    }
+
+    // Re-read one device; it is dropped when no longer active, deleted or disabled
+    private void reloadMonitor(long monitorId)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, ProvisionQueries.SELECT_PROVISION_BY_MONITOR_ID)
+                .put(Constants.DB_PARAMS, new JsonArray().add(monitorId));
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .onSuccess(reply ->
+                {
+                    var rowsArray = reply.body().getJsonArray("rows", new JsonArray());
+                    var provision = rowsArray.isEmpty() ? null : toProvision(rowsArray.getJsonObject(0));
+
+                    LOGGER.debug("Provision {} {}", monitorId, provision != null ? "changed" : "removed");
+
+                    enqueue(new Change(null, 0, provision != null ? List.of(provision) : List.of(), monitorId));
+                })
+                .onFailure(error -> LOGGER.error("Failed to reload provision {}: {}", monitorId, error.getMessage()));
+    }
+
+    // Replace every device whose provision has the given key value with the rows of the query
+    private void reloadWhere(String query, String key, long id)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, query)
+                .put(Constants.DB_PARAMS, new JsonArray().add(id));
+
+        vertx.eventBus().<JsonObject>request(Constants.DB_EXECUTE_PARAM_EVENTBUS, dbRequest)
+                .onSuccess(reply ->
+                {
+                    var rowsArray = reply.body().getJsonArray("rows", new JsonArray());
+
+                    var provisions = new ArrayList<JsonObject>(rowsArray.size());
+
+                    for (var i = 0; i < rowsArray.size(); i++)
+                    {
+                        provisions.add(toProvision(rowsArray.getJsonObject(i)));
+                    }
+
+                    LOGGER.debug("Reloaded {} provisions of {} {}", provisions.size(), key, id);
+
+                    enqueue(new Change(key, id, provisions, null));
+                })
+                .onFailure(error -> LOGGER.error("Failed to reload provisions of {} {}: {}", key, id, error.getMessage()));
+    }
+
+    private synchronized void enqueue(Change change)
+    {
+        pendingChanges.add(change);
+
+        if (changeTimerId == -1)
+        {
+            changeTimerId = vertx.setTimer(CHANGE_WINDOW_MS, id -> applyPendingChanges());
+        }
+    }
+
+    // Apply every change of the window in one pass over the registry, in the order they arrived
+    private synchronized void applyPendingChanges()
+    {
+        changeTimerId = -1;
+
+        if (pendingChanges.isEmpty())
+        {
+            return;
+        }
+
+        // Latest value of every device a change wrote (null when removed) and the position of that write
+        var written = new HashMap<Long, JsonObject>();
+        var writtenAt = new HashMap<Long, Integer>();
+
+        // Position of the latest reload of every key value, e.g. discovery_id 5
+        var scopes = new HashMap<String, Map<Long, Integer>>();
+
+        for (var position = 0; position < pendingChanges.size(); position++)
+        {
+            var change = pendingChanges.get(position);
+
+            if (change.removedMonitorId != null)
+            {
+                written.put(change.removedMonitorId, null);
+                writtenAt.put(change.removedMonitorId, position);
+            }
+
+            if (change.scopeKey != null)
+            {
+                scopes.computeIfAbsent(change.scopeKey, key -> new HashMap<>()).put(change.scopeId, position);
+            }
+
+            for (var provision : change.provisions)
+            {
+                var monitorId = provision.getLong(Constants.MONITOR_ID);
+                written.put(monitorId, provision);
+                writtenAt.put(monitorId, position);
+            }
+        }
+
+        var changes = pendingChanges.size();
+        pendingChanges.clear();
+
+        var previous = snapshot.devices;
+        var devices = new LinkedHashMap<Long, JsonObject>(previous.size() + written.size());
+        var invalidated = new JsonArray();
+
+        previous.forEach((monitorId, provision) ->
+        {
+            var current = written.containsKey(monitorId) ? written.get(monitorId) : provision;
+
+            if (current != null && reloadedWithout(current, writtenAt.getOrDefault(monitorId, -1), scopes))
+            {
+                current = null;
+            }
+
+            if (current != provision && connectionChanged(provision, current))
+            {
+                invalidated.add(monitorId);
+            }
+
+            if (current != null)
+            {
+                devices.put(monitorId, current);
+            }
+        });
+
+        written.forEach((monitorId, provision) ->
+        {
+            if (provision != null && !previous.containsKey(monitorId)
+                    && !reloadedWithout(provision, writtenAt.get(monitorId), scopes))
+            {
+                devices.put(monitorId, provision);
+            }
+        });
+
+        var updated = publish(devices);
+
+        if (!invalidated.isEmpty())
+        {
+            sendInvalidate(invalidated);
+        }
+
+        LOGGER.info("Applied {} provision changes, {} active provisions, registry version {}", changes, updated.size(), updated.getVersion());
+    }
+
+    // Whether a later reload of one of the device's keys did not return the device, which drops it
+    private static boolean reloadedWithout(JsonObject provision, int writtenAt, Map<String, Map<Long, Integer>> scopes)
+    {
+        for (var scope : scopes.entrySet())
+        {
+            var value = provision.getLong(scope.getKey());
+            var reloadedAt = value != null ? scope.getValue().get(value) : null;
+
+            if (reloadedAt != null && reloadedAt > writtenAt)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Compare the devices before and after a change and invalidate the sessions of the ones that changed
+    private void invalidateSessions(Map<Long, JsonObject> before, Map<Long, JsonObject> after)
+    {
+        var monitorIds = new JsonArray();
+
+        before.forEach((monitorId, provision) ->
+        {
+            if (connectionChanged(provision, after.get(monitorId)))
+            {
+                monitorIds.add(monitorId);
+            }
+        });
+
+        if (!monitorIds.isEmpty())
+        {
+            sendInvalidate(monitorIds);
+        }
+    }
+
+    private void sendInvalidate(JsonArray monitorIds)
+    {
+        vertx.eventBus().send(ZMQCommunicationVerticle.EB_PLUGIN_INVALIDATE, new JsonObject().put("monitor_ids", monitorIds));
+    }
+
+    // A pooled connection stays valid while the device keeps its address and credentials
+    private static boolean connectionChanged(JsonObject before, JsonObject after)
+    {
+        return after == null
+                || !Objects.equals(before.getString("ip"), after.getString("ip"))
+                || !Objects.equals(before.getInteger("port"), after.getInteger("port"))
+                || !Objects.equals(before.getString("username"), after.getString("username"))
+                || !Objects.equals(before.getString("password"), after.getString("password"))
+                || !Objects.equals(before.getString("protocol"), after.getString("protocol"));
+    }
+
+    // Takes ownership of the map, which must not be modified afterwards
+    private synchronized Snapshot publish(Map<Long, JsonObject> devices)
+    {
+        snapshot = new Snapshot(snapshot.version + 1, devices);
+        return snapshot;
+    }
+
+    private static JsonObject toProvision(JsonObject row)
+    {
+        return new JsonObject()
+                .put(Constants.MONITOR_ID, row.getLong(Constants.MONITOR_ID))
+                .put("ip", row.getString(Constants.DISC_IP_ADDRESS))
+                .put("port", row.getInteger(Constants.DISC_PORT_NO))
+                .put(Constants.DISC_ID, row.getLong(Constants.DISC_ID))
+                .put(Constants.DISC_CREDENTIAL_ID, row.getLong(Constants.DISC_CREDENTIAL_ID))
+                .put("username", row.getString(Constants.CRED_USERNAME))
+                .put("password", row.getString(Constants.CRED_PASSWORD))
+                .put("protocol", row.getString(Constants.CRED_PROTOCOL))
+                .put("status", row.getBoolean(Constants.PROVISION_STATUS, true))
+                .put(Constants.PROVISION_POLL_INTERVAL, row.getInteger(Constants.PROVISION_POLL_INTERVAL));
+    }
+
+    /**
+     * Rows of one reload. A reload of a key value (scopeKey set) replaces every device with that value,
+     * a reload of one device that found no active row removes it.
+     */
+    private record Change(String scopeKey, long scopeId, List<JsonObject> provisions, Long removedMonitorId)
+    {
+    }
+
+    /**
+     * Immutable view of the active provisions at one version.
+     * The provision objects are shared between readers and must not be modified.
+     */
+    public static final class Snapshot
+    {
+        private static final Snapshot EMPTY = new Snapshot(0, Collections.emptyMap());
+
+        private final long version;
+        private final Map<Long, JsonObject> devices;
+        private final JsonArray provisions;
+
+        private Snapshot(long version, Map<Long, JsonObject> devices)
+        {
+            this.version = version;
+            this.devices = Collections.unmodifiableMap(devices);
+
+            // Built once per version so readers never iterate the map
+            var list = new JsonArray();
+            devices.values().forEach(list::add);
+            this.provisions = list;
+        }
+
+        public long getVersion()
+        {
+            return version;
+        }
+
+        public int size()
+        {
+            return devices.size();
+        }
+
+        public JsonObject get(long monitorId)
+        {
+            return devices.get(monitorId);
+        }
+
+        /**
+         * Active provisions in load order. Shared, do not modify.
+         */
+        public JsonArray getProvisions()
+        {
+            return provisions;
+        }
+    }
+}
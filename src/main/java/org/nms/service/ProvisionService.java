@@ -10,6 +10,7 @@ import org.nms.utils.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
 import java.util.function.Function;
 
 public class ProvisionService extends BaseService<JsonObject>
@@ -44,6 +45,30 @@ public class ProvisionService extends BaseService<JsonObject>
         return ProvisionQueries.SELECT_ALL_PROVISIONS;
     }
 
+    @Override
+    protected String getPageQuery()
+    {
+        return ProvisionQueries.SELECT_PROVISIONS_PAGE;
+    }
+
+    @Override
+    protected String[] getCursorFields()
+    {
+        return new String[]{"monitor_id"};
+    }
+
+    @Override
+    protected String[] getFilterFields()
+    {
+        return new String[]{"status"};
+    }
+
+    @Override
+    protected Map<String, PageFieldType> getPageFieldTypes()
+    {
+        return Map.of("monitor_id", PageFieldType.INTEGER, "status", PageFieldType.BOOLEAN);
+    }
+
         @Override
     protected String getSelectByIdQuery()
     {
@@ -99,6 +124,39 @@ public class ProvisionService extends BaseService<JsonObject>
                 .put("status", row.getBoolean(Constants.PROVISION_STATUS, true));
     }
 
+    /**
+     * Provision a discovered device, restoring its provision if it was soft-deleted.
+     * @param discoveryId Discovery ID of the device
+     * @return Future with the result wrapped in an ApiResponse, 409 if the device is already provisioned
+     */
+    public Future<JsonObject> provision(Long discoveryId)
+    {
+        var request = new JsonObject()
+                .put(Constants.DB_QUERY, ProvisionQueries.SELECT_PROVISION_BY_DISCOVERY_ID)
+                .put(Constants.DB_PARAMS, new JsonArray().add(discoveryId));
+
+        return customQueryExecutor(request)
+                .compose(queryResult ->
+                {
+                    LOGGER.info("Query result: {}", queryResult);
+                    var result = queryResult.getJsonObject("data").getJsonObject("result");
+
+                    if (result.getInteger("rowCount") != 0)
+                    {
+                        if (result.getJsonArray("rows").getJsonObject(0).getBoolean("is_deleted"))
+                        {
+                            var monitorId = result.getJsonArray("rows").getJsonObject(0).getLong("monitor_id");
+                            return restoreProvision(monitorId);
+                        }
+
+                        LOGGER.info("Provision already exists for discoveryId: {}", discoveryId);
+                        return Future.succeededFuture(ApiResponse.error(409, "Device is already provisioned").toJson());
+                    }
+
+                    return createProvision(discoveryId);
+                });
+    }
+
     public Future<JsonObject> createProvision(Long discoveryId)
     {
         if (discoveryId == null)
@@ -160,6 +218,28 @@ public class ProvisionService extends BaseService<JsonObject>
         return promise.future();
     }
 
+    /**
+     * Undo the soft delete of a provision and let the registry pick it up again.
+     * @param monitorId Monitor ID of the soft-deleted provision
+     * @return Future with the query result wrapped in an ApiResponse
+     */
+    public Future<JsonObject> restoreProvision(Long monitorId)
+    {
+        var dbRequest = new JsonObject()
+                .put(Constants.DB_QUERY, ProvisionQueries.SOFT_INSERT_PROVISION)
+                .put(Constants.DB_PARAMS, new JsonArray().add(monitorId));
+
+        return customQueryExecutor(dbRequest).onSuccess(result ->
+        {
+            if (result.getBoolean("success", false))
+            {
+                vertx.eventBus().publish(EVENT_PROVISION_CHANGED, new JsonObject()
+                        .put("action", "create")
+                        .put("provision", new JsonObject().put(Constants.MONITOR_ID, monitorId)));
+            }
+        });
+    }
+
     public Future<JsonObject> getProvisionsByStatus(boolean status)
     {
         LOGGER.info("Fetching provisions with status: {}", status);
@@ -226,7 +306,8 @@ public class ProvisionService extends BaseService<JsonObject>
     @Override
     public Future<JsonObject> delete(Long id) {
         return getById(id).compose(result -> {
-            JsonObject provision = result.getJsonObject("response", new JsonObject()).getJsonObject("entity", new JsonObject());
+            JsonObject provision = result.getJsonObject("data", new JsonObject()).getJsonObject("entity", new JsonObject())
+                    .put(Constants.MONITOR_ID, id);
             return super.delete(id).compose(deleteResult -> {
                 LOGGER.info("Provision deleted, publishing event");
                 vertx.eventBus().publish(EVENT_PROVISION_CHANGED, new JsonObject()
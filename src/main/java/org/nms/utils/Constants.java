@@ -95,8 +95,10 @@ public class Constants
     // EventBus addresses
     public static final String DB_EXECUTE_WITHOUT_PARAM_EVENTBUS = "db.execute.no.params";
     public static final String DB_EXECUTE_PARAM_EVENTBUS = "db.execute.params";
+    public static final String DB_EXECUTE_BATCH_EVENTBUS = "db.execute.batch";
     public static final String DB_QUERY = "query";
     public static final String DB_PARAMS = "params";
+    public static final String DB_BATCH_PARAMS = "batch_params";
 
     // Credential column names
     public static final String ID = "id";
@@ -128,4 +130,5 @@ public class Constants
     // Provision column names
     public static final String DISCOVERY_ID = "discoveryId";
     public static final String PROVISION_STATUS = "provision_status";
+    public static final String PROVISION_POLL_INTERVAL = "poll_interval_seconds";
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package org.nms.utils;
 
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.Tuple;
 
 import java.util.logging.Logger;
@@ -18,6 +19,16 @@ public class DbUtil
         return tuple;
     }
 
+    public static JsonObject rowToJson(Row row)
+    {
+        var json = new JsonObject();
+        for (var i = 0; i < row.size(); i++)
+        {
+            json.put(row.getColumnName(i), row.getValue(i));
+        }
+        return json;
+    }
+
     public static JsonArray jsonToJsonArray(JsonObject json, String[] keys)
     {
         var array = new JsonArray();
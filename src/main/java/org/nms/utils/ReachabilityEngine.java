@@ -0,0 +1,343 @@
+package org.nms.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import org.nms.Main;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous reachability checks used by discovery.
+ * Port checks are non-blocking NetClient connects, with at most reachability.max.connects in flight.
+ * Ping checks are coalesced: targets requested within a short window are pinged by a single fping run,
+ * on the dedicated nms-reachability worker executor. When fping is missing, or ICMP is disabled with
+ * reachability.icmp=false, a host counts as up when a TCP connect to it is accepted or actively refused.
+ * Settings come from the NMS config file (see Main), handed over by HttpVerticle through configure().
+ */
+public class ReachabilityEngine
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReachabilityEngine.class);
+
+    private static final String EXECUTOR_NAME = "nms-reachability";
+    private static final int DEFAULT_EXECUTOR_SIZE = 4;
+    private static final int DEFAULT_MAX_CONNECTS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final int PING_TIMEOUT_MS = 1000;
+    private static final long PING_WINDOW_MS = 20;
+    private static final int MAX_PING_BATCH = 2000;
+    private static final long FPING_MAX_RUNTIME_MS = 60000;
+
+    private static ReachabilityEngine instance;
+
+    private final Vertx vertx;
+    private final WorkerExecutor executor;
+    private final NetClient netClient;
+    private final int maxConnects;
+    private final boolean icmpEnabled;
+    private volatile boolean fpingAvailable = true;
+
+    // Guarded by this
+    private final ArrayDeque<Runnable> waitingConnects = new ArrayDeque<>();
+    private int activeConnects = 0;
+    private Map<String, List<PendingPing>> pendingPings = new LinkedHashMap<>();
+    private long pingTimerId = -1;
+
+    private ReachabilityEngine(JsonObject config)
+    {
+        this.vertx = Main.getVertx();
+        this.executor = vertx.createSharedWorkerExecutor(EXECUTOR_NAME, config.getInteger("reachability.executor.size", DEFAULT_EXECUTOR_SIZE));
+        this.netClient = vertx.createNetClient(new NetClientOptions().setConnectTimeout(CONNECT_TIMEOUT_MS));
+        this.maxConnects = config.getInteger("reachability.max.connects", DEFAULT_MAX_CONNECTS);
+        this.icmpEnabled = config.getBoolean("reachability.icmp", true);
+    }
+
+    /**
+     * Create the engine from the given config, before its first use. Later calls are ignored.
+     */
+    public static synchronized void configure(JsonObject config)
+    {
+        if (instance == null)
+        {
+            instance = new ReachabilityEngine(config);
+        }
+    }
+
+    public static synchronized ReachabilityEngine getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ReachabilityEngine(new JsonObject());
+        }
+        return instance;
+    }
+
+    /**
+     * Ping the host, then check that the port accepts connections.
+     * @return Future failed with the reason when the host or port is not reachable
+     */
+    public Future<Void> check(String ipAddress, int port)
+    {
+        return ping(ipAddress, port)
+                .compose(alive -> alive
+                        ? checkPort(ipAddress, port)
+                        : Future.failedFuture("fping check failed: Device is not reachable"));
+    }
+
+    /**
+     * Whether the host answers, by fping or by the TCP fallback on the given port.
+     */
+    public Future<Boolean> ping(String ipAddress, int port)
+    {
+        if (!icmpEnabled || !fpingAvailable)
+        {
+            return probe(ipAddress, port);
+        }
+
+        var promise = Promise.<Boolean>promise();
+        var flushNow = false;
+
+        synchronized (this)
+        {
+            pendingPings.computeIfAbsent(ipAddress, key -> new ArrayList<>()).add(new PendingPing(port, promise));
+
+            if (pendingPings.size() >= MAX_PING_BATCH)
+            {
+                flushNow = true;
+            }
+            else if (pingTimerId == -1)
+            {
+                pingTimerId = vertx.setTimer(PING_WINDOW_MS, id -> flushPings());
+            }
+        }
+
+        if (flushNow)
+        {
+            flushPings();
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Hosts among the given ones that answer a ping, checked in as few fping runs as possible.
+     */
+    public Future<Set<String>> pingAll(Collection<String> ipAddresses, int port)
+    {
+        var futures = new ArrayList<Future<Boolean>>(ipAddresses.size());
+        var targets = new ArrayList<>(ipAddresses);
+
+        targets.forEach(ipAddress -> futures.add(ping(ipAddress, port)));
+
+        return Future.join(futures).map(result ->
+        {
+            var alive = new HashSet<String>();
+
+            for (var i = 0; i < targets.size(); i++)
+            {
+                if (Boolean.TRUE.equals(futures.get(i).result()))
+                {
+                    alive.add(targets.get(i));
+                }
+            }
+
+            return alive;
+        });
+    }
+
+    /**
+     * Check that the port accepts a TCP connection.
+     */
+    public Future<Void> checkPort(String ipAddress, int port)
+    {
+        var promise = Promise.<Void>promise();
+
+        runLimited(() -> netClient.connect(port, ipAddress).onComplete(result ->
+        {
+            releaseConnect();
+
+            if (result.succeeded())
+            {
+                result.result().close();
+                promise.complete();
+            }
+            else
+            {
+                promise.fail("Port check failed: " + result.cause().getMessage());
+            }
+        }));
+
+        return promise.future();
+    }
+
+    // ICMP-free liveness: a refused connection still proves the host is up
+    private Future<Boolean> probe(String ipAddress, int port)
+    {
+        return checkPort(ipAddress, port)
+                .map(true)
+                .recover(error -> Future.succeededFuture(error.getMessage() != null
+                        && error.getMessage().toLowerCase().contains("refused")));
+    }
+
+    private void runLimited(Runnable connect)
+    {
+        synchronized (this)
+        {
+            if (activeConnects >= maxConnects)
+            {
+                waitingConnects.add(connect);
+                return;
+            }
+
+            activeConnects++;
+        }
+
+        connect.run();
+    }
+
+    private void releaseConnect()
+    {
+        Runnable next;
+
+        synchronized (this)
+        {
+            next = waitingConnects.poll();
+
+            if (next == null)
+            {
+                activeConnects--;
+                return;
+            }
+        }
+
+        // The slot passes to the next connect, started from the event loop rather than this callback's stack
+        vertx.runOnContext(v -> next.run());
+    }
+
+    private void flushPings()
+    {
+        Map<String, List<PendingPing>> batch;
+
+        synchronized (this)
+        {
+            if (pingTimerId != -1)
+            {
+                vertx.cancelTimer(pingTimerId);
+                pingTimerId = -1;
+            }
+
+            batch = pendingPings;
+            pendingPings = new LinkedHashMap<>();
+        }
+
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        executor.<Set<String>>executeBlocking(promise ->
+                {
+                    try
+                    {
+                        promise.complete(runFping(batch.keySet()));
+                    }
+                    catch (Exception exception)
+                    {
+                        promise.fail(exception);
+                    }
+                }, false)
+                .onComplete(result ->
+                {
+                    if (result.succeeded())
+                    {
+                        var alive = result.result();
+                        batch.forEach((ipAddress, waiters) -> waiters.forEach(waiter -> waiter.promise.complete(alive.contains(ipAddress))));
+                        return;
+                    }
+
+                    // Without fping every later ping goes straight to the TCP fallback
+                    if (result.cause() instanceof IOException)
+                    {
+                        fpingAvailable = false;
+                        LOGGER.warn("fping unavailable ({}), using TCP probes for reachability", result.cause().getMessage());
+                    }
+                    else
+                    {
+                        LOGGER.warn("fping run for {} hosts failed: {}, using TCP probes", batch.size(), result.cause().getMessage());
+                    }
+
+                    batch.forEach((ipAddress, waiters) -> waiters.forEach(waiter -> probe(ipAddress, waiter.port).onComplete(waiter.promise)));
+                });
+    }
+
+    // One fping run for every target, the targets are passed on stdin and the alive ones printed back
+    private static Set<String> runFping(Collection<String> targets) throws Exception
+    {
+        var processBuilder = new ProcessBuilder("fping", "-a", "-r1", "-i1", "-t" + PING_TIMEOUT_MS)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        // Throws IOException when fping is not installed
+        var process = processBuilder.start();
+
+        try (var writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8))
+        {
+            for (var target : targets)
+            {
+                writer.write(target);
+                writer.write('\n');
+            }
+        }
+
+        var alive = new HashSet<String>();
+
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                if (!line.isBlank())
+                {
+                    alive.add(line.trim());
+                }
+            }
+        }
+
+        if (!process.waitFor(FPING_MAX_RUNTIME_MS, TimeUnit.MILLISECONDS))
+        {
+            process.destroyForcibly();
+            throw new IllegalStateException("fping did not finish within " + FPING_MAX_RUNTIME_MS + " ms");
+        }
+
+        // 0: all alive, 1: some unreachable, 2: some unknown hosts; anything else is a usage or system error
+        if (process.exitValue() > 2)
+        {
+            throw new IllegalStateException("fping exited with code " + process.exitValue());
+        }
+
+        return alive;
+    }
+
+    private record PendingPing(int port, Promise<Boolean> promise)
+    {
+    }
+}
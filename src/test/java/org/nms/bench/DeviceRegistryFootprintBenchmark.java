@@ -0,0 +1,166 @@
+package org.nms.bench;
+
+import io.vertx.core.json.JsonObject;
+import org.nms.polling.CompactDeviceRegistry;
+import org.nms.utils.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares the retained heap of one million devices held as JsonObject provisions in a map
+ * against the same devices in a CompactDeviceRegistry, and times a full scan of each.
+ * Heap is measured as used memory after repeated GCs, so run it with a fixed heap, e.g. -Xmx4g.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.nms.bench.DeviceRegistryFootprintBenchmark
+ */
+public class DeviceRegistryFootprintBenchmark
+{
+    private static final int DEVICES = 1_000_000;
+    private static final int CREDENTIAL_PROFILES = 50;
+    private static final int SCAN_ITERATIONS = 20;
+
+    public static void main(String[] args)
+    {
+        var jsonBytes = measureRetained(DeviceRegistryFootprintBenchmark::buildJsonMap);
+        var compactBytes = measureRetained(DeviceRegistryFootprintBenchmark::buildCompact);
+
+        var jsonMap = buildJsonMap();
+        var compact = buildCompact();
+
+        var jsonScanNanos = scanJson(jsonMap);
+        var compactScanNanos = scanCompact(compact);
+
+        System.out.printf("%,d devices, %d credential profiles%n", DEVICES, CREDENTIAL_PROFILES);
+        System.out.printf("  json map : %,14d bytes (%6.1f per device), %8.2f ms per scan%n",
+                jsonBytes, (double) jsonBytes / DEVICES, jsonScanNanos / 1e6);
+        System.out.printf("  compact  : %,14d bytes (%6.1f per device), %8.2f ms per scan, estimate %,d bytes%n",
+                compactBytes, (double) compactBytes / DEVICES, compactScanNanos / 1e6, compact.estimateFootprintBytes());
+        System.out.printf("  ratio    : %6.2fx smaller, %6.2fx faster scan%n",
+                (double) jsonBytes / compactBytes, jsonScanNanos / compactScanNanos);
+    }
+
+    private static JsonObject provision(int monitorId)
+    {
+        var profile = monitorId % CREDENTIAL_PROFILES;
+
+        return new JsonObject()
+                .put(Constants.MONITOR_ID, (long) monitorId)
+                .put("ip", "10." + ((monitorId >>> 16) & 0xFF) + "." + ((monitorId >>> 8) & 0xFF) + "." + (monitorId & 0xFF))
+                .put("port", 22)
+                .put("username", "user" + profile)
+                .put("password", "secret" + profile)
+                .put("protocol", "ssh")
+                .put("status", true);
+    }
+
+    private static Map<Long, JsonObject> buildJsonMap()
+    {
+        var devices = new HashMap<Long, JsonObject>();
+
+        for (var monitorId = 1; monitorId <= DEVICES; monitorId++)
+        {
+            devices.put((long) monitorId, provision(monitorId));
+        }
+
+        return devices;
+    }
+
+    private static CompactDeviceRegistry buildCompact()
+    {
+        var registry = new CompactDeviceRegistry(DEVICES);
+
+        for (var monitorId = 1; monitorId <= DEVICES; monitorId++)
+        {
+            var slot = registry.upsert(provision(monitorId), 60000);
+            registry.setNextDueMs(slot, monitorId);
+        }
+
+        return registry;
+    }
+
+    private static double scanJson(Map<Long, JsonObject> devices)
+    {
+        var sink = 0L;
+        var start = 0L;
+
+        for (var i = -5; i < SCAN_ITERATIONS; i++)
+        {
+            if (i == 0)
+            {
+                start = System.nanoTime();
+            }
+
+            for (var provision : devices.values())
+            {
+                sink += provision.getInteger("port") + provision.getString("ip").length();
+            }
+        }
+
+        var elapsed = System.nanoTime() - start;
+        System.out.println("  (json sink " + sink + ")");
+        return (double) elapsed / SCAN_ITERATIONS;
+    }
+
+    private static double scanCompact(CompactDeviceRegistry registry)
+    {
+        var sink = 0L;
+        var start = 0L;
+        var cursor = registry.cursor();
+
+        for (var i = -5; i < SCAN_ITERATIONS; i++)
+        {
+            if (i == 0)
+            {
+                start = System.nanoTime();
+            }
+
+            cursor.reset();
+
+            while (cursor.next())
+            {
+                sink += cursor.port() + cursor.packedIp() + cursor.nextDueMs();
+            }
+        }
+
+        var elapsed = System.nanoTime() - start;
+        System.out.println("  (compact sink " + sink + ")");
+        return (double) elapsed / SCAN_ITERATIONS;
+    }
+
+    private static long measureRetained(Supplier<Object> builder)
+    {
+        var before = usedAfterGc();
+        var retained = builder.get();
+        var after = usedAfterGc();
+
+        // Keep the structure reachable until measured
+        if (System.identityHashCode(retained) == 42)
+        {
+            System.out.println();
+        }
+
+        return after - before;
+    }
+
+    private static long usedAfterGc()
+    {
+        var runtime = Runtime.getRuntime();
+
+        for (var i = 0; i < 5; i++)
+        {
+            System.gc();
+
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
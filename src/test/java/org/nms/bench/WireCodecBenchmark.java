@@ -0,0 +1,105 @@
+package org.nms.bench;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.nms.polling.WireCodec;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Compares the JSON and binary wire formats for a metrics batch of 20 devices.
+ * Reports bytes on the wire and mean decode time per batch.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.nms.bench.WireCodecBenchmark
+ */
+public class WireCodecBenchmark
+{
+    private static final int DEVICES_PER_BATCH = 20;
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 100000;
+
+    public static void main(String[] args)
+    {
+        var batch = createBatch();
+
+        var jsonFrame = WireCodec.encodeJson(batch);
+        var binaryFrame = WireCodec.encodeBatchMetrics(batch);
+
+        // Both formats must decode to the same metrics
+        if (!WireCodec.decode(binaryFrame).getJsonObject("metrics").equals(WireCodec.decode(jsonFrame).getJsonObject("metrics")))
+        {
+            throw new IllegalStateException("Binary and JSON frames decode to different metrics");
+        }
+
+        var jsonNanos = measureDecode(jsonFrame);
+        var binaryNanos = measureDecode(binaryFrame);
+
+        System.out.printf("Metrics batch of %d devices%n", DEVICES_PER_BATCH);
+        System.out.printf("  json    : %6d bytes, %8.2f us per batch decode%n", jsonFrame.length, jsonNanos / 1000.0);
+        System.out.printf("  binary  : %6d bytes, %8.2f us per batch decode%n", binaryFrame.length, binaryNanos / 1000.0);
+        System.out.printf("  ratio   : %6.2fx smaller, %6.2fx faster%n",
+                (double) jsonFrame.length / binaryFrame.length, jsonNanos / binaryNanos);
+    }
+
+    private static double measureDecode(byte[] frame)
+    {
+        var sink = 0L;
+
+        for (var i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            sink += WireCodec.decode(frame).size();
+        }
+
+        var start = System.nanoTime();
+
+        for (var i = 0; i < MEASURED_ITERATIONS; i++)
+        {
+            sink += WireCodec.decode(frame).size();
+        }
+
+        var elapsed = System.nanoTime() - start;
+
+        // Keep the JIT from discarding the decode work
+        if (sink == 42)
+        {
+            System.out.println(sink);
+        }
+
+        return (double) elapsed / MEASURED_ITERATIONS;
+    }
+
+    private static JsonObject createBatch()
+    {
+        var now = OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        var metrics = new JsonObject();
+
+        for (var monitorId = 1; monitorId <= DEVICES_PER_BATCH; monitorId++)
+        {
+            metrics.put(String.valueOf(monitorId), new JsonObject()
+                    .put("ip", "10.20.30." + monitorId)
+                    .put("monitor_id", monitorId)
+                    .put("system_type", "Linux")
+                    .put("hostname", "host-" + monitorId)
+                    .put("uptime", "10:15:01 up 12 days,  3:04,  2 users,  load average: 0.15, 0.10, 0.05")
+                    .put("in_traffic", 9876543210L + monitorId)
+                    .put("out_traffic", 1234567890L + monitorId)
+                    .put("interfaces", new JsonArray().add("eth0").add("docker0"))
+                    .put("cpu_usage", "12.5%")
+                    .put("memory_usage", "Total: 15890MB, Used: 6120MB, Free: 3210MB, Usage: 38%")
+                    .put("disk_usage", "Total: 468G, Used: 120G, Free: 325G, Usage: 27%")
+                    .put("os_info", "\"Ubuntu 22.04.4 LTS\"")
+                    .put("bandwidth", 1000000000L)
+                    .put("timestamp", now));
+        }
+
+        return new JsonObject()
+                .put("request_id", "3f0c2a9e-5b7d-4d8e-9c1a-7e6f5d4c3b2a")
+                .put("type", "metrics")
+                .put("batch_id", 1)
+                .put("metrics", metrics)
+                .put("batch_size", DEVICES_PER_BATCH)
+                .put("total_batches", 1)
+                .put("processed_at", now)
+                .put("execution_ms", 1520L);
+    }
+}
@@ -0,0 +1,80 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceCircuitBreakerTest
+{
+    private static final long MONITOR_ID = 7;
+
+    // Opens on the first failure, a zero backoff makes every reopened breaker due for a probe at once
+    private static DeviceCircuitBreaker breaker(long baseBackoffMs)
+    {
+        return new DeviceCircuitBreaker(new JsonObject()
+                .put("polling.breaker.failure.threshold", 1)
+                .put("polling.breaker.backoff.base.ms", baseBackoffMs)
+                .put("polling.breaker.backoff.max.ms", 3600000L));
+    }
+
+    @Test
+    void timedOutProbeReopens()
+    {
+        var breaker = breaker(0);
+
+        breaker.recordFailure(MONITOR_ID, "ssh: connection refused");
+        assertEquals(DeviceCircuitBreaker.State.OPEN, breaker.getState(MONITOR_ID));
+
+        // Backoff elapsed: one probe, further polls wait for its result
+        assertTrue(breaker.allowPoll(MONITOR_ID));
+        assertEquals(DeviceCircuitBreaker.State.HALF_OPEN, breaker.getState(MONITOR_ID));
+        assertFalse(breaker.allowPoll(MONITOR_ID));
+
+        // The probe's request timed out
+        assertTrue(breaker.abortProbe(MONITOR_ID, "Metrics request timed out"));
+        assertEquals(DeviceCircuitBreaker.State.OPEN, breaker.getState(MONITOR_ID));
+        assertEquals("Metrics request timed out", breaker.getHealth(MONITOR_ID).getString("last_error"));
+
+        // Probed again after the next backoff, and closed by a successful probe
+        assertTrue(breaker.allowPoll(MONITOR_ID));
+        assertEquals(DeviceCircuitBreaker.State.HALF_OPEN, breaker.getState(MONITOR_ID));
+
+        breaker.recordSuccess(MONITOR_ID);
+        assertEquals(DeviceCircuitBreaker.State.CLOSED, breaker.getState(MONITOR_ID));
+    }
+
+    @Test
+    void abortedProbeDoublesBackoff() throws InterruptedException
+    {
+        var breaker = breaker(20);
+
+        breaker.recordFailure(MONITOR_ID, "ssh: connection refused");
+        assertEquals(20L, breaker.getHealth(MONITOR_ID).getLong("backoff_ms"));
+
+        // Not due yet, so not probing either
+        assertFalse(breaker.allowPoll(MONITOR_ID));
+        assertFalse(breaker.abortProbe(MONITOR_ID, "Failed to send metrics request"));
+
+        Thread.sleep(50);
+
+        assertTrue(breaker.allowPoll(MONITOR_ID));
+        assertTrue(breaker.abortProbe(MONITOR_ID, "Failed to send metrics request"));
+        assertEquals(40L, breaker.getHealth(MONITOR_ID).getLong("backoff_ms"));
+        assertFalse(breaker.allowPoll(MONITOR_ID));
+    }
+
+    @Test
+    void abortProbeLeavesClosedDevicesAlone()
+    {
+        var breaker = breaker(0);
+
+        assertTrue(breaker.allowPoll(MONITOR_ID));
+        assertFalse(breaker.abortProbe(MONITOR_ID, "Failed to send metrics request"));
+
+        assertEquals(DeviceCircuitBreaker.State.CLOSED, breaker.getState(MONITOR_ID));
+        assertTrue(breaker.allowPoll(MONITOR_ID));
+    }
+}
@@ -0,0 +1,101 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillLogTest
+{
+    // Room for four {"v":n} records per segment
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsPastDrainedHeadAfterRoll() throws IOException
+    {
+        var log = new SpillLog(directory, SEGMENT_SIZE);
+        log.open();
+
+        log.append(records(0, 4));
+        log.commit(log.read(10));
+
+        assertFalse(log.hasPending());
+        assertEquals(1, log.getSegmentCount());
+
+        // The drained segment is full, so this rolls to a new one
+        log.append(records(4, 1));
+        assertEquals(2, log.getSegmentCount());
+
+        var result = log.read(10);
+
+        assertEquals(records(4, 1), result.getRecords());
+        assertEquals(1, log.getSegmentCount());
+
+        log.commit(result);
+        assertFalse(log.hasPending());
+    }
+
+    @Test
+    void replaysInOrderAcrossSegments() throws IOException
+    {
+        var log = new SpillLog(directory, SEGMENT_SIZE);
+        log.open();
+        log.append(records(0, 10));
+
+        var replayed = new ArrayList<JsonObject>();
+
+        while (log.hasPending())
+        {
+            var result = log.read(3);
+
+            assertFalse(result.getRecords().isEmpty());
+            replayed.addAll(result.getRecords());
+            log.commit(result);
+        }
+
+        assertEquals(records(0, 10), replayed);
+        assertEquals(1, log.getSegmentCount());
+    }
+
+    @Test
+    void reopenKeepsUncommittedRecords() throws IOException
+    {
+        var log = new SpillLog(directory, SEGMENT_SIZE);
+        log.open();
+        log.append(records(0, 6));
+        log.commit(log.read(2));
+
+        // Read but not committed, replayed again after a restart
+        log.read(2);
+
+        var reopened = new SpillLog(directory, SEGMENT_SIZE);
+        reopened.open();
+
+        assertTrue(reopened.hasPending());
+        assertEquals(4, reopened.getPendingRecords());
+        assertEquals(records(2, 2), reopened.read(2).getRecords());
+    }
+
+    private static List<JsonObject> records(int from, int count)
+    {
+        var records = new ArrayList<JsonObject>();
+
+        for (var i = from; i < from + count; i++)
+        {
+            records.add(new JsonObject().put("v", i));
+        }
+
+        return records;
+    }
+}
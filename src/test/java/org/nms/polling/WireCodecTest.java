@@ -0,0 +1,227 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the binary wire format against the golden vectors in modular-plugin/codec/testdata.
+ * The plugin's binary_test.go checks its codec against the same files, so both sides agree byte for byte.
+ */
+class WireCodecTest
+{
+    static final Path VECTORS = Path.of("modular-plugin", "codec", "testdata");
+
+    // Frames Java sends, decoded by the plugin
+
+    static JsonObject deviceListRequest()
+    {
+        return new JsonObject()
+                .put("request_id", "r-1")
+                .put("command", "metrics")
+                .put("data", new JsonArray()
+                        .add(new JsonObject()
+                                .put("ip", "10.0.0.1")
+                                .put("port", 22)
+                                .put("username", "admin")
+                                .put("password", "")
+                                .put("protocol", "ssh")
+                                .put("monitor_id", 7))
+                        .add(new JsonObject()
+                                .put("ip", "")
+                                .put("port", 65535)
+                                .put("username", "")
+                                .put("password", "pässwörd")
+                                .put("protocol", "")
+                                .put("monitor_id", Integer.MAX_VALUE)))
+                .put("parallelism", 64);
+    }
+
+    static JsonObject deviceRequest()
+    {
+        return new JsonObject()
+                .put("request_id", "d-1")
+                .put("command", "discovery")
+                .put("data", new JsonObject()
+                        .put("ip", "192.168.1.10")
+                        .put("port", 22)
+                        .put("username", "root")
+                        .put("password", "secret")
+                        .put("protocol", "ssh")
+                        .put("monitor_id", -1));
+    }
+
+    static JsonObject jsonRequest()
+    {
+        return new JsonObject()
+                .put("request_id", "")
+                .put("command", "hello")
+                .put("data", new JsonObject()
+                        .put("codecs", new JsonArray().add("binary-v1"))
+                        .put("nested", new JsonObject()
+                                .put("map", new JsonObject()
+                                        .put("empty", new JsonObject())
+                                        .put("list", new JsonArray().add(1).add("two").addNull()))));
+    }
+
+    // Frames the plugin sends, decoded by Java
+
+    static JsonObject deviceMetricsResult()
+    {
+        return new JsonObject()
+                .put("request_id", "m-1")
+                .put("type", "metrics")
+                .put("seq", 1)
+                .put("total_devices", 1)
+                .put("execution_ms", 0L)
+                .put("metrics", new JsonObject()
+                        .put("monitor_id", 7)
+                        .put("ip", "10.0.0.1")
+                        .put("system_type", "")
+                        .put("hostname", "host-ä")
+                        .put("uptime", "")
+                        .put("in_traffic", Long.MAX_VALUE)
+                        .put("out_traffic", Long.MIN_VALUE)
+                        .put("interfaces", new JsonArray().add("eth0").add(""))
+                        .put("cpu_usage", "12.5")
+                        .put("memory_usage", "")
+                        .put("disk_usage", "")
+                        .put("os_info", "Linux")
+                        .put("bandwidth", 0L)
+                        .put("timestamp", "2024-01-02T03:04:05.6+05:30"));
+    }
+
+    static JsonObject batchMetricsResult()
+    {
+        return new JsonObject()
+                .put("request_id", "b-1")
+                .put("type", "metrics")
+                .put("batch_id", 3)
+                .put("batch_size", 1)
+                .put("total_batches", 4)
+                .put("processed_at", "2024-01-02T03:04:05Z")
+                .put("execution_ms", 1500L)
+                .put("metrics", new JsonObject()
+                        .put("7", new JsonObject()
+                                .put("monitor_id", 7)
+                                .put("ip", "10.0.0.1")
+                                .put("system_type", "linux")
+                                .put("hostname", "")
+                                .put("uptime", "")
+                                .put("in_traffic", 0L)
+                                .put("out_traffic", 0L)
+                                .put("interfaces", new JsonArray())
+                                .put("cpu_usage", "")
+                                .put("memory_usage", "")
+                                .put("disk_usage", "")
+                                .put("os_info", "")
+                                .put("bandwidth", -1L)
+                                .put("timestamp", "2024-01-02T03:04:05Z")
+                                .put("error", "ssh: handshake failed")));
+    }
+
+    @Test
+    void requestsMatchVectors() throws IOException
+    {
+        assertRequest("request_device_list", deviceListRequest());
+        assertRequest("request_device", deviceRequest());
+        assertRequest("request_json", jsonRequest());
+    }
+
+    @Test
+    void deviceMetricsMatchesVector() throws IOException
+    {
+        var frame = readVector("device_metrics");
+
+        assertEquals(deviceMetricsResult(), WireCodec.decode(frame));
+        assertArrayEquals(frame, WireCodec.encodeDeviceMetrics(WireCodec.decode(frame)));
+    }
+
+    @Test
+    void batchMetricsMatchesVector() throws IOException
+    {
+        var frame = readVector("batch_metrics");
+
+        assertEquals(batchMetricsResult(), WireCodec.decode(frame));
+        assertArrayEquals(frame, WireCodec.encodeBatchMetrics(WireCodec.decode(frame)));
+    }
+
+    @Test
+    void discoveryResultsMatchVectors() throws IOException
+    {
+        // Empty details and uptime, an empty uptime is left out
+        assertEquals(new JsonObject().put("request_id", "d-1").put("success", false).put("details", ""),
+                WireCodec.decode(readVector("discovery_result_empty")));
+
+        assertEquals(new JsonObject().put("request_id", "d-2").put("success", true).put("details", "Discovery successful").put("uptime", "up 3 days"),
+                WireCodec.decode(readVector("discovery_result")));
+    }
+
+    @Test
+    void varintsMatchVectors() throws IOException
+    {
+        for (var line : Files.readAllLines(VECTORS.resolve("varints.txt")))
+        {
+            if (line.isBlank() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            var fields = line.trim().split("\\s+");
+            var signed = fields[0].equals("s");
+            var value = signed ? Long.parseLong(fields[1]) : Long.parseUnsignedLong(fields[1]);
+            var bytes = HexFormat.of().parseHex(fields[2]);
+
+            var writer = new WireCodec.Writer(16);
+            if (signed)
+            {
+                writer.writeVarint(value);
+            }
+            else
+            {
+                writer.writeUvarint(value);
+            }
+
+            assertArrayEquals(bytes, writer.toBytes(), line);
+
+            var reader = new WireCodec.Reader(bytes);
+            assertEquals(value, signed ? reader.readVarint() : reader.readUvarint(), line);
+        }
+    }
+
+    @Test
+    void truncatedFramesAreRejected() throws IOException
+    {
+        var frame = readVector("device_metrics");
+
+        for (var length = 3; length < frame.length; length++)
+        {
+            var truncated = new byte[length];
+            System.arraycopy(frame, 0, truncated, 0, length);
+
+            assertThrows(IllegalArgumentException.class, () -> WireCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    private static void assertRequest(String name, JsonObject request) throws IOException
+    {
+        var frame = readVector(name);
+
+        assertArrayEquals(frame, WireCodec.encodeRequest(request), name);
+        assertEquals(request, WireCodec.decode(frame), name);
+    }
+
+    static byte[] readVector(String name) throws IOException
+    {
+        return HexFormat.of().parseHex(Files.readString(VECTORS.resolve(name + ".hex")).trim());
+    }
+}
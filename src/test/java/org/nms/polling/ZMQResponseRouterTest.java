@@ -0,0 +1,48 @@
+package org.nms.polling;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZMQResponseRouterTest
+{
+    private final ZMQResponseRouter router = ZMQResponseRouter.getInstance();
+
+    @Test
+    void cancelFailsTheWaitingFuture() throws Exception
+    {
+        var future = router.register("cancel-test", 60000);
+
+        router.cancel("cancel-test");
+
+        var cause = future.toCompletionStage().toCompletableFuture()
+                .handle((response, error) -> error)
+                .get(5, TimeUnit.SECONDS);
+
+        assertInstanceOf(CancellationException.class, cause);
+        assertFalse(router.dispatch(new JsonObject().put("request_id", "cancel-test")));
+    }
+
+    @Test
+    void dispatchCompletesTheWaitingFuture() throws Exception
+    {
+        var future = router.register("dispatch-test", 60000);
+
+        assertTrue(router.dispatch(new JsonObject().put("request_id", "dispatch-test").put("success", true)));
+
+        var response = future.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(true, response.getBoolean("success"));
+
+        // Cancelling after the answer arrived changes nothing
+        router.cancel("dispatch-test");
+        assertTrue(future.succeeded());
+    }
+}